@@ -33,6 +33,8 @@ package core;
 
 import java.io.Serializable;
 
+import datacenter.Server;
+
 /**
  * An Abstract implementation of the Event interface.
  * Provides basic time and experiment methods.
@@ -53,6 +55,33 @@ public abstract class AbstractEvent
     /** The experiment the even is associated with. */
     private Experiment experiment;
 
+    /**
+     * The position of the event in a {@link HeapEventQueue} or in a
+     * fixed-delay lane, or -1 if it is not in one. Lets the event be
+     * canceled without searching for it.
+     */
+    private int queueIndex;
+
+    /**
+     * The fixed-delay lane of an {@link EventQueue} the event is in
+     * or -1 if it is not in a lane.
+     */
+    private int queueLane;
+
+    /**
+     * The position (in processing order) of the event that scheduled this
+     * one during a parallel run, -1 if it was scheduled before the run
+     * started, or a placeholder the {@link ParallelEngine} fills in once
+     * the position is known. Together with {@link #originChild} it orders
+     * simultaneous events just as a sequential run's event queue would.
+     */
+    private long originEvent;
+
+    /**
+     * The number of events scheduled before this one by the same event.
+     */
+    private int originChild;
+
     /**
      * A constructor for subclasses to use.
      * @param theTime - The time the event occurs at
@@ -60,8 +89,10 @@ public abstract class AbstractEvent
      */
     public AbstractEvent(final double theTime,
                          final Experiment anExperiment) {
-        this.time = theTime;
         this.experiment = anExperiment;
+        this.time = this.onClock(theTime);
+        this.queueIndex = -1;
+        this.queueLane = -1;
     }
 
     /**
@@ -81,17 +112,120 @@ public abstract class AbstractEvent
         return this.experiment;
     }
 
+    /**
+     * Get the server the event acts on. Used by event queues that
+     * keep a separate agenda for each server.
+     * @return the server the event acts on or null if the event
+     * is not tied to a single server
+     */
+    public Server getServer() {
+        return null;
+    }
+
+    /**
+     * Re-arms a recycled event to take place at a new time.
+     * @param theTime - the new time the event occurs at
+     */
+    final void rearm(final double theTime) {
+        this.time = this.onClock(theTime);
+        this.queueIndex = -1;
+        this.queueLane = -1;
+    }
+
+    /**
+     * Rounds a time to the experiment's clock, if it has one.
+     * @param theTime - the time to round
+     * @return the time of the nearest tick or the time itself
+     * if the experiment doesn't round times
+     */
+    private double onClock(final double theTime) {
+        if (this.experiment == null) {
+            return theTime;
+        }
+
+        TickClock clock = this.experiment.getTickClock();
+        if (clock == null) {
+            return theTime;
+        }
+
+        return clock.round(theTime);
+    }
+
+    /**
+     * Get the position of the event in a {@link HeapEventQueue}
+     * or fixed-delay lane.
+     * @return the position of the event or -1 if it is not in a queue
+     */
+    final int getQueueIndex() {
+        return this.queueIndex;
+    }
+
+    /**
+     * Set the position of the event in a {@link HeapEventQueue}
+     * or fixed-delay lane.
+     * @param theQueueIndex - the position of the event
+     * or -1 if it is no longer in a queue
+     */
+    final void setQueueIndex(final int theQueueIndex) {
+        this.queueIndex = theQueueIndex;
+    }
+
+    /**
+     * Get the fixed-delay lane the event is in.
+     * @return the lane of the event or -1 if it is not in a lane
+     */
+    final int getQueueLane() {
+        return this.queueLane;
+    }
+
+    /**
+     * Set the fixed-delay lane the event is in.
+     * @param theQueueLane - the lane of the event
+     * or -1 if it is not in a lane
+     */
+    final void setQueueLane(final int theQueueLane) {
+        this.queueLane = theQueueLane;
+    }
+
+    /**
+     * Get the position of the event that scheduled this one
+     * during a parallel run.
+     * @return the position of the event that scheduled this one
+     */
+    final long getOriginEvent() {
+        return this.originEvent;
+    }
+
+    /**
+     * Get the number of events scheduled before this one by the same event
+     * during a parallel run.
+     * @return the number of earlier events scheduled by the same event
+     */
+    final int getOriginChild() {
+        return this.originChild;
+    }
+
+    /**
+     * Set which event scheduled this one during a parallel run.
+     * @param theOriginEvent - the position of the event that scheduled
+     * this one
+     * @param theOriginChild - the number of events scheduled before this
+     * one by the same event
+     */
+    final void setOrigin(final long theOriginEvent, final int theOriginChild) {
+        this.originEvent = theOriginEvent;
+        this.originChild = theOriginChild;
+    }
+
     /**
      * Checks if an event takes place before or after this one.
      * @param otherEvent - the event to compare to this one
      * @return the value of
-     * {@link java.lang.Double#compareTo(Double anotherDouble)}
+     * {@link java.lang.Double#compare(double d1, double d2)}
      * comparing the times of the two events
      */
     public final int compareTo(final Event otherEvent) {
-        Double thisTime = this.time;
-        Double otherTime = new Double(otherEvent.getTime());
-        return thisTime.compareTo(otherTime);
+        return Double.compare(this.time, otherEvent.getTime());
     }
 
 }
@@ -0,0 +1,362 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+
+package core;
+
+import java.io.Serializable;
+import java.util.IdentityHashMap;
+
+import datacenter.Server;
+
+/**
+ * A two-level event queue. Each server has its own small agenda
+ * (a {@link HeapEventQueue}) holding the events that act on it
+ * (see {@link AbstractEvent#getServer()}), and a top-level heap orders
+ * the agendas by their earliest event. Adding or canceling an event costs
+ * O(log events on the server + log servers) rather than O(log events).
+ * Events not tied to a single server share one agenda.
+ *
+ * Events with identical times are returned in the order they were added.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public final class AgendaEventQueue extends EventQueue {
+
+    /**
+     * The serialization id.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The initial capacity of the top-level heap. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The events of one server.
+     */
+    private static final class Agenda implements Serializable {
+
+        /**
+         * The serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /** The server's events. */
+        private final HeapEventQueue events;
+
+        /** The time of the agenda's first event. */
+        private double firstTime;
+
+        /** The order the agenda's first event was added in. */
+        private long firstOrder;
+
+        /** The position of the agenda in the top-level heap or -1. */
+        private int index;
+
+        /**
+         * Creates a new, empty agenda.
+         */
+        private Agenda() {
+            this.events = new HeapEventQueue();
+            this.index = -1;
+        }
+
+        /**
+         * Updates the cached key of the agenda from its first event.
+         * @return false if the agenda is empty
+         */
+        private boolean updateFirst() {
+            Event first = this.events.peekFirst();
+            if (first == null) {
+                return false;
+            }
+            this.firstTime = first.getTime();
+            this.firstOrder = this.events.peekFirstOrder();
+
+            return true;
+        }
+
+        /**
+         * Checks if this agenda's first event comes before another's.
+         * @param other - the other agenda
+         * @return if this agenda's first event comes first
+         */
+        private boolean precedes(final Agenda other) {
+            return this.firstTime < other.firstTime
+                    || (this.firstTime == other.firstTime
+                            && this.firstOrder < other.firstOrder);
+        }
+
+    }
+
+    /** The agenda of each server. */
+    private IdentityHashMap<Server, Agenda> agendas;
+
+    /** The agenda of events not tied to a single server. */
+    private Agenda sharedAgenda;
+
+    /** The heap of non-empty agendas ordered by their first event. */
+    private Agenda[] heap;
+
+    /** The number of agendas in the heap. */
+    private int heapSize;
+
+    /** The number of events in all agendas. */
+    private int size;
+
+    /**
+     * Creates a new AgendaEventQueue.
+     */
+    public AgendaEventQueue() {
+        this.agendas = new IdentityHashMap<Server, Agenda>();
+        this.sharedAgenda = new Agenda();
+        this.heap = new Agenda[INITIAL_CAPACITY];
+        this.heapSize = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Create a new, empty AgendaEventQueue.
+     * @return the new queue
+     */
+    @Override
+    public EventQueue createEmptyQueue() {
+        return new AgendaEventQueue();
+    }
+
+    /**
+     * Add an event to its server's agenda.
+     * @param event - the event to add
+     * @param order - the order the event was added in
+     */
+    @Override
+    protected void insert(final Event event, final long order) {
+        Agenda agenda = this.getAgenda(event, true);
+        agenda.events.insert(event, order);
+        this.size++;
+        if (agenda.index == -1) {
+            agenda.updateFirst();
+            this.heapAdd(agenda);
+        } else if (agenda.events.peekFirst() == event) {
+            agenda.updateFirst();
+            this.siftUp(agenda.index, agenda);
+        }
+    }
+
+    /**
+     * Get and remove the first event of the earliest agenda.
+     * @return the first event or null if the queue is empty
+     */
+    @Override
+    protected Event removeFirst() {
+        if (this.heapSize == 0) {
+            return null;
+        }
+        Agenda agenda = this.heap[0];
+        Event event = agenda.events.removeFirst();
+        this.size--;
+        this.firstChanged(agenda);
+
+        return event;
+    }
+
+    /**
+     * Get the first event of the earliest agenda without removing it.
+     * @return the first event or null if the queue is empty
+     */
+    @Override
+    protected Event peekFirst() {
+        if (this.heapSize == 0) {
+            return null;
+        }
+
+        return this.heap[0].events.peekFirst();
+    }
+
+    /**
+     * Get the order the first event of the earliest agenda was added in.
+     * @return the order the first event was added in
+     */
+    @Override
+    protected long peekFirstOrder() {
+        return this.heap[0].firstOrder;
+    }
+
+    /**
+     * Remove an event from its server's agenda.
+     * @param event - the event to remove
+     * @return if the event was found and removed
+     */
+    @Override
+    protected boolean remove(final Event event) {
+        Agenda agenda = this.getAgenda(event, false);
+        if (agenda == null) {
+            return false;
+        }
+        boolean wasFirst = agenda.events.peekFirst() == event;
+        if (!agenda.events.remove(event)) {
+            return false;
+        }
+        this.size--;
+        if (wasFirst) {
+            this.firstChanged(agenda);
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the number of events in all agendas.
+     * @return the number of events in all agendas
+     */
+    @Override
+    protected int mainSize() {
+        return this.size;
+    }
+
+    /**
+     * Get the agenda an event belongs in.
+     * @param event - the event
+     * @param create - if a missing agenda should be created
+     * @return the agenda or null if it is missing and not created
+     */
+    private Agenda getAgenda(final Event event, final boolean create) {
+        Server server = null;
+        if (event instanceof AbstractEvent) {
+            server = ((AbstractEvent) event).getServer();
+        }
+        if (server == null) {
+            return this.sharedAgenda;
+        }
+
+        Agenda agenda = this.agendas.get(server);
+        if (agenda == null && create) {
+            agenda = new Agenda();
+            this.agendas.put(server, agenda);
+        }
+
+        return agenda;
+    }
+
+    /**
+     * Reposition an agenda in the heap after its first event was removed.
+     * @param agenda - the agenda (which is in the heap)
+     */
+    private void firstChanged(final Agenda agenda) {
+        int index = agenda.index;
+        if (agenda.updateFirst()) {
+            this.siftDown(index, agenda);
+            return;
+        }
+
+        // The agenda is empty, so take it out of the heap
+        agenda.index = -1;
+        this.heapSize--;
+        Agenda last = this.heap[this.heapSize];
+        this.heap[this.heapSize] = null;
+        if (last != agenda) {
+            if (index > 0 && last.precedes(this.heap[(index - 1) / 2])) {
+                this.siftUp(index, last);
+            } else {
+                this.siftDown(index, last);
+            }
+        }
+    }
+
+    /**
+     * Add an agenda to the heap.
+     * @param agenda - the agenda to add
+     */
+    private void heapAdd(final Agenda agenda) {
+        if (this.heapSize == this.heap.length) {
+            Agenda[] newHeap = new Agenda[2 * this.heap.length];
+            System.arraycopy(this.heap, 0, newHeap, 0, this.heapSize);
+            this.heap = newHeap;
+        }
+        this.heapSize++;
+        this.siftUp(this.heapSize - 1, agenda);
+    }
+
+    /**
+     * Move an agenda up the heap from a position until its parent
+     * comes before it.
+     * @param startIndex - the (empty) position to start from
+     * @param agenda - the agenda to place
+     */
+    private void siftUp(final int startIndex, final Agenda agenda) {
+        int index = startIndex;
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!agenda.precedes(this.heap[parent])) {
+                break;
+            }
+            this.place(index, this.heap[parent]);
+            index = parent;
+        }
+        this.place(index, agenda);
+    }
+
+    /**
+     * Move an agenda down the heap from a position until it comes
+     * before its children.
+     * @param startIndex - the (empty) position to start from
+     * @param agenda - the agenda to place
+     */
+    private void siftDown(final int startIndex, final Agenda agenda) {
+        int index = startIndex;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= this.heapSize) {
+                break;
+            }
+            if (child + 1 < this.heapSize
+                    && this.heap[child + 1].precedes(this.heap[child])) {
+                child++;
+            }
+            if (!this.heap[child].precedes(agenda)) {
+                break;
+            }
+            this.place(index, this.heap[child]);
+            index = child;
+        }
+        this.place(index, agenda);
+    }
+
+    /**
+     * Put an agenda at a position in the heap.
+     * @param index - the position
+     * @param agenda - the agenda
+     */
+    private void place(final int index, final Agenda agenda) {
+        this.heap[index] = agenda;
+        agenda.index = index;
+    }
+
+}
@@ -0,0 +1,410 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+
+package core;
+
+import java.io.Serializable;
+
+/**
+ * An event queue backed by a calendar queue (R. Brown, 1988).
+ * Events are hashed by time into an array of "day" buckets, each
+ * a sorted list, which are visited in turn like the days of a calendar.
+ * The number of buckets and their width adapt to the number of
+ * pending events and their spacing, giving amortized O(1) insertion
+ * and removal for the event-time distributions typical of BigHouse.
+ *
+ * Events with identical times are returned in the order they were added.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public final class CalendarEventQueue extends EventQueue {
+
+    /**
+     * The serialization id.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The smallest number of buckets the calendar will shrink to. */
+    private static final int MIN_BUCKETS = 2;
+
+    /** The number of events sampled to estimate a new bucket width. */
+    private static final int WIDTH_SAMPLE_SIZE = 25;
+
+    /** The bucket width in multiples of the average event separation. */
+    private static final double WIDTH_SEPARATION_MULTIPLE = 3.0;
+
+    /** The bucket width (in seconds) used until the calendar first resizes. */
+    private static final double DEFAULT_BUCKET_WIDTH = 1.0;
+
+    /**
+     * An entry of a bucket's sorted list.
+     */
+    private static final class Entry implements Serializable {
+
+        /**
+         * The serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /** The event of the entry. */
+        private final Event event;
+
+        /** The time of the event. */
+        private final double time;
+
+        /** The order the event was added to the queue in (breaks ties). */
+        private final long order;
+
+        /** The next entry in the bucket. */
+        private Entry next;
+
+        /**
+         * Creates a new entry.
+         * @param theEvent - the event of the entry
+         * @param theOrder - the order the event was added in
+         */
+        private Entry(final Event theEvent, final long theOrder) {
+            this.event = theEvent;
+            this.time = theEvent.getTime();
+            this.order = theOrder;
+        }
+
+        /**
+         * Checks if this entry comes before another entry.
+         * @param other - the other entry
+         * @return if this entry comes before the other entry
+         */
+        private boolean precedes(final Entry other) {
+            return this.time < other.time
+                    || (this.time == other.time && this.order < other.order);
+        }
+
+    }
+
+    /** The buckets of the calendar, each a sorted list of entries. */
+    private Entry[] buckets;
+
+    /** The mask to map a virtual bucket to a bucket (buckets - 1). */
+    private int bucketMask;
+
+    /** The width (in seconds) of a bucket. */
+    private double bucketWidth;
+
+    /**
+     * The virtual bucket (time / bucketWidth) currently being dequeued.
+     * No pending event is in an earlier virtual bucket.
+     */
+    private long currentBucket;
+
+    /** The number of events in the queue. */
+    private int size;
+
+    /**
+     * Creates a new CalendarEventQueue.
+     */
+    public CalendarEventQueue() {
+        this(DEFAULT_BUCKET_WIDTH);
+    }
+
+    /**
+     * Creates a new CalendarEventQueue.
+     * @param initialBucketWidth - the bucket width (in seconds) to use
+     * until the calendar first resizes
+     */
+    public CalendarEventQueue(final double initialBucketWidth) {
+        if (!(initialBucketWidth > 0.0)) {
+            Sim.fatalError("Calendar bucket width must be positive: "
+                    + initialBucketWidth);
+        }
+        this.bucketWidth = initialBucketWidth;
+        this.buckets = new Entry[MIN_BUCKETS];
+        this.bucketMask = MIN_BUCKETS - 1;
+        this.currentBucket = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Create a new, empty CalendarEventQueue.
+     * @return the new queue
+     */
+    @Override
+    public EventQueue createEmptyQueue() {
+        return new CalendarEventQueue();
+    }
+
+    /**
+     * Add an event to the calendar.
+     * @param event - the event to add
+     * @param order - the order the event was added in
+     */
+    @Override
+    protected void insert(final Event event, final long order) {
+        this.insert(new Entry(event, order));
+        this.size++;
+        if (this.size > 2 * this.buckets.length) {
+            this.resize(2 * this.buckets.length);
+        }
+    }
+
+    /**
+     * Get and remove the first event of the calendar.
+     * @return the first event or null if the calendar is empty
+     */
+    @Override
+    protected Event removeFirst() {
+        if (this.size == 0) {
+            return null;
+        }
+        Entry entry = this.removeFirstEntry();
+        this.size--;
+        if (this.size < this.buckets.length / 2
+                && this.buckets.length > MIN_BUCKETS) {
+            this.resize(this.buckets.length / 2);
+        }
+
+        return entry.event;
+    }
+
+    /**
+     * Get the first event of the calendar without removing it.
+     * @return the first event or null if the calendar is empty
+     */
+    @Override
+    protected Event peekFirst() {
+        if (this.size == 0) {
+            return null;
+        }
+
+        return this.buckets[this.findFirst()].event;
+    }
+
+    /**
+     * Get the order the first event of the calendar was added in.
+     * @return the order the first event was added in
+     */
+    @Override
+    protected long peekFirstOrder() {
+        return this.buckets[this.findFirst()].order;
+    }
+
+    /**
+     * Remove an event from the calendar.
+     * Only the event's own bucket is searched.
+     * @param event - the event to remove
+     * @return if the event was found and removed
+     */
+    @Override
+    protected boolean remove(final Event event) {
+        int index = this.bucketIndex(this.virtualBucket(event.getTime()));
+        Entry previous = null;
+        Entry current = this.buckets[index];
+        while (current != null) {
+            if (current.event == event) {
+                if (previous == null) {
+                    this.buckets[index] = current.next;
+                } else {
+                    previous.next = current.next;
+                }
+                current.next = null;
+                this.size--;
+                return true;
+            }
+            previous = current;
+            current = current.next;
+        }
+
+        return false;
+    }
+
+    /**
+     * Get the number of events in the calendar.
+     * @return the number of events in the calendar
+     */
+    @Override
+    protected int mainSize() {
+        return this.size;
+    }
+
+    /**
+     * Get the virtual bucket a time falls in.
+     * @param time - the time
+     * @return the virtual bucket the time falls in
+     */
+    private long virtualBucket(final double time) {
+        return (long) (time / this.bucketWidth);
+    }
+
+    /**
+     * Get the index in the bucket array of a virtual bucket.
+     * @param theVirtualBucket - the virtual bucket
+     * @return the index of the bucket
+     */
+    private int bucketIndex(final long theVirtualBucket) {
+        return (int) (theVirtualBucket & this.bucketMask);
+    }
+
+    /**
+     * Insert an entry into its bucket's sorted list.
+     * Does not update the size of the queue.
+     * @param entry - the entry to insert
+     */
+    private void insert(final Entry entry) {
+        long virtual = this.virtualBucket(entry.time);
+        if (virtual < this.currentBucket) {
+            this.currentBucket = virtual;
+        }
+        int index = this.bucketIndex(virtual);
+        Entry previous = null;
+        Entry current = this.buckets[index];
+        while (current != null && current.precedes(entry)) {
+            previous = current;
+            current = current.next;
+        }
+        entry.next = current;
+        if (previous == null) {
+            this.buckets[index] = entry;
+        } else {
+            previous.next = entry;
+        }
+    }
+
+    /**
+     * Find the bucket holding the first entry of a non-empty calendar.
+     * The calendar's current bucket is advanced to the entry's bucket.
+     * @return the index of the bucket whose head is the first entry
+     */
+    private int findFirst() {
+        // Walk the calendar one day at a time for up to a full year
+        for (int i = 0; i < this.buckets.length; i++) {
+            int index = this.bucketIndex(this.currentBucket);
+            Entry head = this.buckets[index];
+            if (head != null
+                    && this.virtualBucket(head.time) <= this.currentBucket) {
+                return index;
+            }
+            this.currentBucket++;
+        }
+
+        // The next event is more than a year away, search for it directly
+        int bestIndex = -1;
+        for (int index = 0; index < this.buckets.length; index++) {
+            Entry head = this.buckets[index];
+            if (head != null && (bestIndex == -1
+                    || head.precedes(this.buckets[bestIndex]))) {
+                bestIndex = index;
+            }
+        }
+        this.currentBucket = this.virtualBucket(this.buckets[bestIndex].time);
+
+        return bestIndex;
+    }
+
+    /**
+     * Remove the first entry of a non-empty calendar.
+     * Does not update the size of the queue.
+     * @return the first entry
+     */
+    private Entry removeFirstEntry() {
+        int index = this.findFirst();
+        Entry first = this.buckets[index];
+        this.buckets[index] = first.next;
+        first.next = null;
+
+        return first;
+    }
+
+    /**
+     * Rebuild the calendar with a new number of buckets.
+     * The bucket width is re-estimated from the events at the head
+     * of the queue.
+     * @param nBuckets - the new number of buckets (a power of two)
+     */
+    private void resize(final int nBuckets) {
+        double newWidth = this.estimateBucketWidth();
+        Entry[] oldBuckets = this.buckets;
+        this.buckets = new Entry[nBuckets];
+        this.bucketMask = nBuckets - 1;
+        this.bucketWidth = newWidth;
+        this.currentBucket = Long.MAX_VALUE;
+        for (int i = 0; i < oldBuckets.length; i++) {
+            Entry entry = oldBuckets[i];
+            while (entry != null) {
+                Entry next = entry.next;
+                this.insert(entry);
+                entry = next;
+            }
+        }
+        if (this.size == 0) {
+            this.currentBucket = 0;
+        }
+    }
+
+    /**
+     * Estimate a good bucket width from the separation of the
+     * next few events in the queue. Unusually large separations are
+     * ignored so that a few outliers do not skew the width.
+     * @return the estimated bucket width
+     */
+    private double estimateBucketWidth() {
+        int nSamples = Math.min(this.size, WIDTH_SAMPLE_SIZE);
+        if (nSamples < 2) {
+            return this.bucketWidth;
+        }
+
+        Entry[] samples = new Entry[nSamples];
+        for (int i = 0; i < nSamples; i++) {
+            samples[i] = this.removeFirstEntry();
+        }
+        for (int i = 0; i < nSamples; i++) {
+            this.insert(samples[i]);
+        }
+
+        double averageSeparation = (samples[nSamples - 1].time
+                - samples[0].time) / (nSamples - 1);
+        double totalSeparation = 0.0;
+        int nSeparations = 0;
+        for (int i = 1; i < nSamples; i++) {
+            double separation = samples[i].time - samples[i - 1].time;
+            if (separation <= 2.0 * averageSeparation) {
+                totalSeparation += separation;
+                nSeparations++;
+            }
+        }
+        double width = WIDTH_SEPARATION_MULTIPLE
+                * (totalSeparation / nSeparations);
+        if (!(width > 0.0) || Double.isInfinite(width)) {
+            return this.bucketWidth;
+        }
+
+        return width;
+    }
+
+}
@@ -0,0 +1,329 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Writes checkpoints of a running experiment to a file and restores
+ * experiments from them.
+ *
+ * The event loop only stalls long enough to serialize the experiment
+ * into memory. Compressing the bytes and writing them out happens on
+ * a background thread, into a temporary file that replaces the previous
+ * checkpoint once it's complete, so a crash mid-write leaves the last
+ * checkpoint intact. A checkpoint holds the whole experiment (event
+ * queue, servers, random number generators and statistics), so a
+ * restored experiment continues exactly as the original would have.
+ *
+ * A checkpoint file is a header (magic number, format version,
+ * uncompressed length and compressed length) followed by
+ * the deflated serialized experiment.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public final class Checkpointer {
+
+    /** Identifies checkpoint files. */
+    private static final int MAGIC = 0x4249474B;
+
+    /** The version of the checkpoint format. */
+    private static final int VERSION = 1;
+
+    /** The size (in bytes) of a checkpoint's header. */
+    private static final int HEADER_SIZE = 16;
+
+    /** The file checkpoints are written to. */
+    private File file;
+
+    /** The temporary file checkpoints are written to before they're done. */
+    private File partialFile;
+
+    /** Serializes the experiment, reused between checkpoints. */
+    private ByteArrayOutputStream buffer;
+
+    /** The thread writing checkpoints. */
+    private ExecutorService writer;
+
+    /** The checkpoint being written, or null if none is. */
+    private Future<Object> pending;
+
+    /**
+     * Creates a new Checkpointer.
+     *
+     * @param fileName - the name of the file to write checkpoints to
+     */
+    public Checkpointer(final String fileName) {
+        this.file = new File(fileName);
+        this.partialFile = new File(fileName + ".partial");
+        this.buffer = new ByteArrayOutputStream();
+        this.writer = null;
+        this.pending = null;
+    }
+
+    /**
+     * Checkpoints an experiment. The experiment is serialized right away,
+     * but written in the background. Waits for the previous checkpoint to
+     * be written first, so at most one checkpoint is held in memory.
+     *
+     * @param experiment - the experiment to checkpoint
+     */
+    public void checkpoint(final Experiment experiment) {
+        this.finish();
+        this.buffer.reset();
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(this.buffer);
+            out.writeObject(experiment);
+            out.close();
+        } catch (IOException e) {
+            Sim.fatalError("Couldn't checkpoint the experiment: " + e);
+        }
+        final byte[] bytes = this.buffer.toByteArray();
+
+        if (this.writer == null) {
+            this.writer = Executors.newSingleThreadExecutor(
+                    new ThreadFactory() {
+                        public Thread newThread(final Runnable runnable) {
+                            Thread thread = new Thread(runnable);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        this.pending = this.writer.submit(new Runnable() {
+            public void run() {
+                write(bytes);
+            }
+        }, null);
+    }
+
+    /**
+     * Waits for the checkpoint being written, if any, to be done.
+     */
+    public void finish() {
+        if (this.pending == null) {
+            return;
+        }
+
+        try {
+            this.pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Sim.fatalError("Interrupted while writing a checkpoint");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            Sim.fatalError("Couldn't write a checkpoint: " + e.getCause());
+        } finally {
+            this.pending = null;
+        }
+    }
+
+    /**
+     * Waits for the checkpoint being written, if any, and stops
+     * the writing thread.
+     */
+    public void close() {
+        try {
+            this.finish();
+        } finally {
+            if (this.writer != null) {
+                this.writer.shutdown();
+                this.writer = null;
+            }
+        }
+    }
+
+    /**
+     * Compresses a serialized experiment and writes it to the checkpoint
+     * file, replacing the previous checkpoint.
+     *
+     * @param bytes - the serialized experiment
+     */
+    private void write(final byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(bytes);
+        deflater.finish();
+        ByteBuffer compressed
+            = ByteBuffer.allocate(HEADER_SIZE + bytes.length);
+        compressed.position(HEADER_SIZE);
+        while (!deflater.finished()) {
+            if (!compressed.hasRemaining()) {
+                ByteBuffer larger
+                    = ByteBuffer.allocate(compressed.capacity() * 2);
+                compressed.flip();
+                larger.put(compressed);
+                compressed = larger;
+            }
+            int nBytes = deflater.deflate(compressed.array(),
+                    compressed.position(), compressed.remaining());
+            compressed.position(compressed.position() + nBytes);
+        }
+        deflater.end();
+        compressed.flip();
+        compressed.putInt(MAGIC);
+        compressed.putInt(VERSION);
+        compressed.putInt(bytes.length);
+        compressed.putInt(compressed.limit() - HEADER_SIZE);
+        compressed.rewind();
+
+        try {
+            FileOutputStream out = new FileOutputStream(this.partialFile);
+            try {
+                FileChannel channel = out.getChannel();
+                while (compressed.hasRemaining()) {
+                    channel.write(compressed);
+                }
+                channel.force(true);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Sim.fatalError("Couldn't write checkpoint " + this.partialFile
+                    + ": " + e);
+        }
+
+        // Replace the old checkpoint only once the new one is complete
+        if (!this.partialFile.renameTo(this.file)) {
+            this.file.delete();
+            if (!this.partialFile.renameTo(this.file)) {
+                Sim.fatalError("Couldn't move checkpoint " + this.partialFile
+                        + " to " + this.file);
+            }
+        }
+    }
+
+    /**
+     * Restores an experiment from a checkpoint file. Running the restored
+     * experiment continues from where the checkpoint was taken.
+     *
+     * @param fileName - the name of the checkpoint file
+     * @return the restored experiment
+     */
+    public static Experiment restore(final String fileName) {
+        byte[] bytes = null;
+        try {
+            FileInputStream in = new FileInputStream(fileName);
+            try {
+                FileChannel channel = in.getChannel();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                readFully(channel, header, fileName);
+                if (header.getInt() != MAGIC) {
+                    Sim.fatalError(fileName + " isn't a checkpoint");
+                }
+                int version = header.getInt();
+                if (version != VERSION) {
+                    Sim.fatalError("Can't restore version " + version
+                            + " checkpoints");
+                }
+                bytes = new byte[header.getInt()];
+                ByteBuffer compressed = ByteBuffer.allocate(header.getInt());
+                readFully(channel, compressed, fileName);
+
+                Inflater inflater = new Inflater();
+                inflater.setInput(compressed.array());
+                int nBytes = 0;
+                while (nBytes < bytes.length && !inflater.finished()
+                        && !inflater.needsInput()) {
+                    nBytes += inflater.inflate(bytes, nBytes,
+                            bytes.length - nBytes);
+                }
+                inflater.end();
+                if (nBytes != bytes.length) {
+                    Sim.fatalError("Checkpoint " + fileName
+                            + " is truncated");
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Sim.fatalError("Couldn't read checkpoint " + fileName + ": " + e);
+        } catch (DataFormatException e) {
+            Sim.fatalError("Checkpoint " + fileName + " is corrupt: " + e);
+        }
+
+        Experiment experiment = null;
+        try {
+            ObjectInputStream in = new ObjectInputStream(
+                    new ByteArrayInputStream(bytes));
+            experiment = (Experiment) in.readObject();
+            in.close();
+        } catch (IOException e) {
+            Sim.fatalError("Couldn't restore checkpoint " + fileName
+                    + ": " + e);
+        } catch (ClassNotFoundException e) {
+            Sim.fatalError("Couldn't restore checkpoint " + fileName
+                    + ": " + e);
+        }
+        experiment.markRestored();
+
+        return experiment;
+    }
+
+    /**
+     * Fills a buffer from a channel and readies it to be read.
+     *
+     * @param channel - the channel to read from
+     * @param buffer - the buffer to fill
+     * @param fileName - the name of the file being read
+     * @throws IOException if the channel can't be read
+     */
+    private static void readFully(final FileChannel channel,
+                                  final ByteBuffer buffer,
+                                  final String fileName)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                Sim.fatalError("Checkpoint " + fileName + " is truncated");
+            }
+        }
+        buffer.flip();
+    }
+
+}
@@ -32,6 +32,7 @@
 package core;
 
 import datacenter.Core;
+import datacenter.Server;
 
 /**
  * Represents a core entering park mode.
@@ -64,6 +65,25 @@ public final class CoreEnteredParkEvent extends AbstractEvent {
         this.core = aCore;
     }
 
+    /**
+     * Re-arms a recycled event.
+     * @param time - the time the core enters park
+     * @param aCore - the core being parked
+     */
+    void reset(final double time, final Core aCore) {
+        this.rearm(time);
+        this.core = aCore;
+    }
+
+    /**
+     * Get the server the event acts on.
+     * @return the server of the core
+     */
+    @Override
+    public Server getServer() {
+        return this.core.getSocket().getServer();
+    }
+
     /**
      * Puts the core into park.
      */
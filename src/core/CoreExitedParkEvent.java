@@ -32,6 +32,7 @@
 package core;
 
 import datacenter.Core;
+import datacenter.Server;
 
 /**
  * Represents a core leaving parking.
@@ -63,6 +64,15 @@ public final class CoreExitedParkEvent extends AbstractEvent {
         this.core = aCore;
     }
 
+    /**
+     * Get the server the event acts on.
+     * @return the server of the core
+     */
+    @Override
+    public Server getServer() {
+        return this.core.getSocket().getServer();
+    }
+
     /**
      * Takes the core out of park.
      */
@@ -32,6 +32,7 @@
 package core;
 
 import datacenter.DreamWeaverServer;
+import datacenter.Server;
 
 /**
  * Represents a job in a DreamWeaver reaching is maximum allowed delay.
@@ -72,6 +73,15 @@ public final class DreamWeaverJobTimeoutEvent extends AbstractEvent {
         this.job = theJob;
     }
 
+    /**
+     * Get the server the event acts on.
+     * @return the server the event acts on
+     */
+    @Override
+    public Server getServer() {
+        return this.dreamWeaverServer;
+    }
+
     /**
      * Notifies the DreamWeaver server processing the job that the job
      * has timed out.
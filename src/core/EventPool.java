@@ -0,0 +1,276 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+
+package core;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+
+import datacenter.Core;
+import datacenter.Server;
+import datacenter.Socket;
+
+/**
+ * Creates the events and jobs that are made at a high rate during a
+ * simulation and, when pooling is enabled, recycles them once they have
+ * been processed or canceled. In steady state this makes the event loop
+ * nearly allocation free.
+ *
+ * Only objects the simulator no longer references may be recycled:
+ * a job is recycled with its {@link JobFinishEvent} once the job is done,
+ * and canceled events must not be used by their creator afterwards.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public final class EventPool implements Serializable {
+
+    /**
+     * The serialization id.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The experiment the pooled events belong to. */
+    private Experiment experiment;
+
+    /** If objects are recycled. */
+    private boolean enabled;
+
+    /** Recycled jobs. */
+    private ArrayDeque<Job> jobs;
+
+    /** Recycled job arrival events. */
+    private ArrayDeque<JobArrivalEvent> arrivalEvents;
+
+    /** Recycled job finish events. */
+    private ArrayDeque<JobFinishEvent> finishEvents;
+
+    /** Recycled core park events. */
+    private ArrayDeque<CoreEnteredParkEvent> coreParkEvents;
+
+    /** Recycled socket park events. */
+    private ArrayDeque<SocketEnteredParkEvent> socketParkEvents;
+
+    /**
+     * Creates a new EventPool. Pooling starts disabled.
+     * @param anExperiment - the experiment the pooled events belong to
+     */
+    public EventPool(final Experiment anExperiment) {
+        this.experiment = anExperiment;
+        this.enabled = false;
+        this.jobs = new ArrayDeque<Job>();
+        this.arrivalEvents = new ArrayDeque<JobArrivalEvent>();
+        this.finishEvents = new ArrayDeque<JobFinishEvent>();
+        this.coreParkEvents = new ArrayDeque<CoreEnteredParkEvent>();
+        this.socketParkEvents = new ArrayDeque<SocketEnteredParkEvent>();
+    }
+
+    /**
+     * Sets if objects are recycled. Disabling pooling drops
+     * any recycled objects.
+     * @param isEnabled - if objects should be recycled
+     */
+    public void setEnabled(final boolean isEnabled) {
+        this.enabled = isEnabled;
+        if (!isEnabled) {
+            this.jobs.clear();
+            this.arrivalEvents.clear();
+            this.finishEvents.clear();
+            this.coreParkEvents.clear();
+            this.socketParkEvents.clear();
+        }
+    }
+
+    /**
+     * Checks if objects are recycled.
+     * @return if objects are recycled
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Gets a new job.
+     * @param size - the size of the job
+     * @return the job
+     */
+    public Job createJob(final double size) {
+        long jobId = this.experiment.getContext().assignJobId();
+        Job job = this.jobs.pollLast();
+        if (job == null) {
+            return new Job(size, jobId);
+        }
+        job.reset(size, jobId);
+
+        return job;
+    }
+
+    /**
+     * Gets a new job arrival event.
+     * @param time - the time the job arrives
+     * @param job - the arriving job
+     * @param server - the server the job arrives at
+     * @return the event
+     */
+    public JobArrivalEvent createJobArrivalEvent(final double time,
+                                                 final Job job,
+                                                 final Server server) {
+        JobArrivalEvent event = this.arrivalEvents.pollLast();
+        if (event == null) {
+            return new JobArrivalEvent(time, this.experiment, job, server);
+        }
+        event.reset(time, job, server);
+
+        return event;
+    }
+
+    /**
+     * Gets a new job finish event.
+     * @param time - the time the job finishes
+     * @param job - the finishing job
+     * @param server - the server the job finishes on
+     * @param finishTimeSet - the time the finish time was set
+     * @param finishSpeed - the speed the job is running at
+     * @return the event
+     */
+    public JobFinishEvent createJobFinishEvent(final double time,
+                                               final Job job,
+                                               final Server server,
+                                               final double finishTimeSet,
+                                               final double finishSpeed) {
+        JobFinishEvent event = this.finishEvents.pollLast();
+        if (event == null) {
+            return new JobFinishEvent(time, this.experiment, job, server,
+                    finishTimeSet, finishSpeed);
+        }
+        event.reset(time, job, server, finishTimeSet, finishSpeed);
+
+        return event;
+    }
+
+    /**
+     * Gets a new event for a core entering park.
+     * @param time - the time the core enters park
+     * @param core - the core
+     * @return the event
+     */
+    public CoreEnteredParkEvent createCoreEnteredParkEvent(final double time,
+                                                           final Core core) {
+        CoreEnteredParkEvent event = this.coreParkEvents.pollLast();
+        if (event == null) {
+            return new CoreEnteredParkEvent(time, this.experiment, core);
+        }
+        event.reset(time, core);
+
+        return event;
+    }
+
+    /**
+     * Gets a new event for a socket entering park.
+     * @param time - the time the socket enters park
+     * @param socket - the socket
+     * @return the event
+     */
+    public SocketEnteredParkEvent createSocketEnteredParkEvent(
+                                                final double time,
+                                                final Socket socket) {
+        SocketEnteredParkEvent event = this.socketParkEvents.pollLast();
+        if (event == null) {
+            return new SocketEnteredParkEvent(time, this.experiment, socket);
+        }
+        event.reset(time, socket);
+
+        return event;
+    }
+
+    /**
+     * Recycles an event that has just been processed.
+     * A processed job finish event also recycles its job.
+     * @param event - the processed event
+     */
+    public void recycleProcessed(final Event event) {
+        if (!this.enabled) {
+            return;
+        }
+
+        if (event.getClass() == JobFinishEvent.class) {
+            Job job = ((JobFinishEvent) event).getJob();
+            this.recycleEvent(event);
+            if (job.getClass() == Job.class) {
+                this.jobs.addLast(job);
+            }
+        } else {
+            this.recycleEvent(event);
+        }
+    }
+
+    /**
+     * Recycles an event that has just been canceled.
+     * @param event - the canceled event
+     */
+    public void recycleCanceled(final Event event) {
+        if (!this.enabled) {
+            return;
+        }
+
+        this.recycleEvent(event);
+    }
+
+    /**
+     * Puts an event in its pool, if it is a pooled type.
+     * @param event - the event to recycle
+     */
+    private void recycleEvent(final Event event) {
+        Class<?> eventClass = event.getClass();
+        if (eventClass == JobArrivalEvent.class) {
+            JobArrivalEvent arrivalEvent = (JobArrivalEvent) event;
+            arrivalEvent.reset(0.0, null, null);
+            this.arrivalEvents.addLast(arrivalEvent);
+        } else if (eventClass == JobFinishEvent.class) {
+            JobFinishEvent finishEvent = (JobFinishEvent) event;
+            Job job = finishEvent.getJob();
+            // Don't leave the job pointing at a recycled event
+            if (job.getJobFinishEvent() == finishEvent) {
+                job.setJobFinishEvent(null);
+            }
+            finishEvent.reset(0.0, null, null, 0.0, 0.0);
+            this.finishEvents.addLast(finishEvent);
+        } else if (eventClass == CoreEnteredParkEvent.class) {
+            CoreEnteredParkEvent parkEvent = (CoreEnteredParkEvent) event;
+            parkEvent.reset(0.0, null);
+            this.coreParkEvents.addLast(parkEvent);
+        } else if (eventClass == SocketEnteredParkEvent.class) {
+            SocketEnteredParkEvent parkEvent = (SocketEnteredParkEvent) event;
+            parkEvent.reset(0.0, null);
+            this.socketParkEvents.addLast(parkEvent);
+        }
+    }
+
+}
@@ -32,16 +32,26 @@
 package core;
 
 import java.io.Serializable;
-import java.util.PriorityQueue;
+import java.util.Collection;
+import java.util.Iterator;
 
 /**
  * The EvenQueue manages events in the discrete event simulation.
  * The events are ordered by when they occur in time, so the
  * head of the queue represents the next event to occur.
+ * Events with identical times occur in the order they were added.
+ *
+ * Subclasses provide the main data structure
+ * (e.g., {@link HeapEventQueue} or {@link CalendarEventQueue}).
+ * In addition, events that are always scheduled a constant delay
+ * after the current time can be put in a fixed-delay lane
+ * (see {@link #registerFixedDelay(double)}). Such events arrive in time
+ * order, so a lane is a simple FIFO that is merged with the main
+ * queue when the next event is taken.
  *
  * @author David Meisner (meisner@umich.edu)
  */
-public final class EventQueue implements Serializable {
+public abstract class EventQueue implements Serializable {
 
     /**
      * The serialization id.
@@ -49,23 +59,374 @@ public final class EventQueue implements Serializable {
     private static final long serialVersionUID = 1L;
 
     /**
-     * The queue of events. Events are time ordered in a priority queue.
+     * A FIFO of events scheduled a fixed delay after the current time.
+     * Canceled events leave an empty slot behind.
      */
-    private PriorityQueue<Event> queue;
+    private static final class FixedDelayLane implements Serializable {
+
+        /**
+         * The serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /** The initial capacity of a lane (a power of two). */
+        private static final int INITIAL_CAPACITY = 16;
+
+        /** The delay of the lane. */
+        private final double delay;
+
+        /** The ring buffer of events (null for canceled events). */
+        private Event[] events;
+
+        /** The time of each event in the ring buffer. */
+        private double[] times;
+
+        /** The order each event in the ring buffer was added in. */
+        private long[] orders;
+
+        /** The slot of the first event. */
+        private int head;
+
+        /** The number of slots in use, including canceled ones. */
+        private int count;
+
+        /** The number of events in the lane. */
+        private int live;
+
+        /** The time of the last event added to the lane. */
+        private double lastTime;
+
+        /**
+         * Creates a new lane.
+         * @param theDelay - the delay of the lane
+         */
+        private FixedDelayLane(final double theDelay) {
+            this.delay = theDelay;
+            this.events = new Event[INITIAL_CAPACITY];
+            this.times = new double[INITIAL_CAPACITY];
+            this.orders = new long[INITIAL_CAPACITY];
+            this.head = 0;
+            this.count = 0;
+            this.live = 0;
+            this.lastTime = Double.NEGATIVE_INFINITY;
+        }
+
+        /**
+         * Checks if an event can be added without breaking time order.
+         * @param time - the time of the event
+         * @return if the event can be added to the lane
+         */
+        private boolean accepts(final double time) {
+            return this.live == 0 || time >= this.lastTime;
+        }
+
+        /**
+         * Adds an event to the end of the lane.
+         * @param event - the event to add
+         * @param order - the order the event was added to the queue in
+         * @param lane - the index of this lane
+         */
+        private void add(final Event event, final long order,
+                         final int lane) {
+            if (this.live == 0) {
+                this.head = 0;
+                this.count = 0;
+            } else if (this.count == this.events.length) {
+                this.grow();
+            }
+            int slot = (this.head + this.count) & (this.events.length - 1);
+            this.events[slot] = event;
+            this.times[slot] = event.getTime();
+            this.orders[slot] = order;
+            this.count++;
+            this.live++;
+            this.lastTime = event.getTime();
+            setHandle(event, lane, slot);
+        }
+
+        /**
+         * Removes the first event of a non-empty lane.
+         * @return the first event
+         */
+        private Event poll() {
+            Event event = this.events[this.head];
+            this.events[this.head] = null;
+            this.live--;
+            this.advance();
+            setHandle(event, -1, -1);
+
+            return event;
+        }
+
+        /**
+         * Removes an event from the lane.
+         * @param event - the event to remove
+         * @param slot - the slot the event is in
+         * @return if the event was in the slot
+         */
+        private boolean remove(final Event event, final int slot) {
+            if (slot < 0 || slot >= this.events.length
+                    || this.events[slot] != event) {
+                return false;
+            }
+            this.events[slot] = null;
+            this.live--;
+            setHandle(event, -1, -1);
+            if (slot == this.head) {
+                this.advance();
+            }
+
+            return true;
+        }
+
+        /**
+         * Moves the head past the first slot and any canceled slots after it.
+         */
+        private void advance() {
+            int mask = this.events.length - 1;
+            do {
+                this.head = (this.head + 1) & mask;
+                this.count--;
+            } while (this.count > 0 && this.events[this.head] == null);
+        }
+
+        /**
+         * Doubles the capacity of the lane, dropping canceled slots.
+         */
+        private void grow() {
+            int capacity = 2 * this.events.length;
+            Event[] newEvents = new Event[capacity];
+            double[] newTimes = new double[capacity];
+            long[] newOrders = new long[capacity];
+            int mask = this.events.length - 1;
+            int newCount = 0;
+            for (int i = 0; i < this.count; i++) {
+                int slot = (this.head + i) & mask;
+                Event event = this.events[slot];
+                if (event != null) {
+                    newEvents[newCount] = event;
+                    newTimes[newCount] = this.times[slot];
+                    newOrders[newCount] = this.orders[slot];
+                    if (event instanceof AbstractEvent) {
+                        ((AbstractEvent) event).setQueueIndex(newCount);
+                    }
+                    newCount++;
+                }
+            }
+            this.events = newEvents;
+            this.times = newTimes;
+            this.orders = newOrders;
+            this.head = 0;
+            this.count = newCount;
+        }
+
+    }
+
+    /** The fixed-delay lanes. */
+    private FixedDelayLane[] lanes;
+
+    /** The number of events in all the lanes. */
+    private int laneSize;
+
+    /** The number of events that have been added to the queue. */
+    private long nAdded;
+
+    /** The lane the last event taken from the queue came from. */
+    private int lastLane;
 
     /**
      * Creates a new EventQueue.
      */
     public EventQueue() {
-        this.queue = new PriorityQueue<Event>();
+        this.lanes = new FixedDelayLane[0];
+        this.laneSize = 0;
+        this.nAdded = 0;
+        this.lastLane = -1;
+    }
+
+    /**
+     * Add an event to the main data structure.
+     * @param event - the event to add
+     * @param order - the order the event was added in (breaks ties)
+     */
+    protected abstract void insert(final Event event, final long order);
+
+    /**
+     * Add several events to the main data structure. Subclasses can
+     * override this to add them faster than one at a time.
+     * @param events - the events to add
+     * @param firstOrder - the order the first event was added in;
+     * the rest follow in sequence
+     */
+    protected void insertAll(final Collection<? extends Event> events,
+                             final long firstOrder) {
+        long order = firstOrder;
+        Iterator<? extends Event> iter = events.iterator();
+        while (iter.hasNext()) {
+            this.insert(iter.next(), order);
+            order++;
+        }
+    }
+
+    /**
+     * Makes room for a number of events in the main data structure,
+     * so it doesn't have to grow as they're added (e.g., when
+     * scheduling an event for each of many servers). Only a hint:
+     * by default it does nothing.
+     * @param capacity - the number of events to make room for
+     */
+    public void ensureCapacity(final int capacity) {
+    }
+
+    /**
+     * Get and remove the first event of the main data structure.
+     * @return the first event or null if it is empty
+     */
+    protected abstract Event removeFirst();
+
+    /**
+     * Get the first event of the main data structure without removing it.
+     * @return the first event or null if it is empty
+     */
+    protected abstract Event peekFirst();
+
+    /**
+     * Get the order the first event of the main data structure was
+     * added in. Only valid if it is not empty.
+     * @return the order the first event was added in
+     */
+    protected abstract long peekFirstOrder();
+
+    /**
+     * Remove an event from the main data structure.
+     * @param event - the event to remove
+     * @return if the event was found and removed
+     */
+    protected abstract boolean remove(final Event event);
+
+    /**
+     * Get the number of events in the main data structure.
+     * @return the number of events in the main data structure
+     */
+    protected abstract int mainSize();
+
+    /**
+     * Registers a fixed-delay lane. Events added to the lane should be
+     * scheduled the lane's delay after the current time. Lanes with the
+     * same delay are shared.
+     * @param delay - the delay of the lane
+     * @return the index of the lane
+     */
+    public final int registerFixedDelay(final double delay) {
+        for (int i = 0; i < this.lanes.length; i++) {
+            if (this.lanes[i].delay == delay) {
+                return i;
+            }
+        }
+        FixedDelayLane[] newLanes = new FixedDelayLane[this.lanes.length + 1];
+        System.arraycopy(this.lanes, 0, newLanes, 0, this.lanes.length);
+        newLanes[this.lanes.length] = new FixedDelayLane(delay);
+        this.lanes = newLanes;
+
+        return this.lanes.length - 1;
+    }
+
+    /**
+     * Create a new, empty queue of the same kind as this one.
+     * It has no fixed-delay lanes.
+     * @return the new queue
+     */
+    public abstract EventQueue createEmptyQueue();
+
+    /**
+     * Registers the same fixed-delay lanes (with the same indices)
+     * as another queue.
+     * @param otherQueue - the queue whose lanes to copy
+     */
+    public final void registerFixedDelays(final EventQueue otherQueue) {
+        for (int i = 0; i < otherQueue.lanes.length; i++) {
+            if (this.registerFixedDelay(otherQueue.lanes[i].delay) != i) {
+                Sim.fatalError("Queues have different fixed-delay lanes");
+            }
+        }
     }
 
     /**
      * Get and remove the next event from the queue.
-     * @return the next event
+     * @return the next event or null if the queue is empty
+     */
+    public final Event nextEvent() {
+        if (this.laneSize == 0) {
+            this.lastLane = -1;
+            return this.removeFirst();
+        }
+
+        int lane = this.findNextLane();
+        this.lastLane = lane;
+        if (lane == -1) {
+            return this.removeFirst();
+        }
+        this.laneSize--;
+
+        return this.lanes[lane].poll();
+    }
+
+    /**
+     * Get the next event of the queue without removing it.
+     * @return the next event or null if the queue is empty
+     */
+    public final Event peekEvent() {
+        if (this.laneSize == 0) {
+            return this.peekFirst();
+        }
+
+        int lane = this.findNextLane();
+        if (lane == -1) {
+            return this.peekFirst();
+        }
+        FixedDelayLane fixedDelayLane = this.lanes[lane];
+
+        return fixedDelayLane.events[fixedDelayLane.head];
+    }
+
+    /**
+     * Get the lane the last event taken from the queue came from.
+     * @return the lane of the last event or -1 if it came from
+     * the main data structure
      */
-    public Event nextEvent() {
-        return this.queue.poll();
+    final int getLastLane() {
+        return this.lastLane;
+    }
+
+    /**
+     * Find where the next event is: the main data structure
+     * or the head of a lane.
+     * @return the lane with the next event or -1 for the main queue
+     */
+    private int findNextLane() {
+        int bestLane = -1;
+        double bestTime = Double.POSITIVE_INFINITY;
+        long bestOrder = Long.MAX_VALUE;
+        Event first = this.peekFirst();
+        if (first != null) {
+            bestTime = first.getTime();
+            bestOrder = this.peekFirstOrder();
+        }
+        for (int i = 0; i < this.lanes.length; i++) {
+            FixedDelayLane lane = this.lanes[i];
+            if (lane.live > 0) {
+                double time = lane.times[lane.head];
+                long order = lane.orders[lane.head];
+                if (time < bestTime || (time == bestTime
+                        && order < bestOrder)) {
+                    bestLane = i;
+                    bestTime = time;
+                    bestOrder = order;
+                }
+            }
+        }
+
+        return bestLane;
     }
 
     /**
@@ -73,18 +434,66 @@ public final class EventQueue implements Serializable {
      * This event will now happen sometime in the future.
      * @param event - the event to add
      */
-    public void addEvent(final Event event) {
-        this.queue.add(event);
+    public final void addEvent(final Event event) {
+        setHandle(event, -1, -1);
+        this.insert(event, this.nAdded);
+        this.nAdded++;
+    }
+
+    /**
+     * Add several events to the event queue at once. Ties between them
+     * are broken in the order they are given, as if they had been added
+     * one at a time.
+     * @param events - the events to add
+     */
+    public final void addEvents(final Collection<? extends Event> events) {
+        Iterator<? extends Event> iter = events.iterator();
+        while (iter.hasNext()) {
+            setHandle(iter.next(), -1, -1);
+        }
+        this.insertAll(events, this.nAdded);
+        this.nAdded += events.size();
+    }
+
+    /**
+     * Add an event to a fixed-delay lane of the event queue.
+     * If the event would be out of order in the lane
+     * it is added to the main queue instead.
+     * @param event - the event to add
+     * @param lane - the lane to add the event to
+     */
+    public final void addEvent(final Event event, final int lane) {
+        FixedDelayLane fixedDelayLane = this.lanes[lane];
+        if (!(event instanceof AbstractEvent)
+                || !fixedDelayLane.accepts(event.getTime())) {
+            this.addEvent(event);
+            return;
+        }
+        fixedDelayLane.add(event, this.nAdded, lane);
+        this.nAdded++;
+        this.laneSize++;
     }
 
     /**
      * Remove an event from the event queue.
      * @param event - the event to remove
      */
-    public void cancelEvent(final Event event) {
-        boolean removeWorked = this.queue.remove(event);
+    public final void cancelEvent(final Event event) {
+        boolean removeWorked;
+        if (event instanceof AbstractEvent
+                && ((AbstractEvent) event).getQueueLane() >= 0) {
+            AbstractEvent abstractEvent = (AbstractEvent) event;
+            removeWorked = this.lanes[abstractEvent.getQueueLane()].remove(
+                    event, abstractEvent.getQueueIndex());
+            if (removeWorked) {
+                this.laneSize--;
+            }
+        } else {
+            removeWorked = this.remove(event);
+        }
+
         // Make sure the event was actually removed
-        if (!removeWorked || this.queue.contains(event)) {
+        if (!removeWorked) {
             // TODO - we have a loop where a Timeout event will try
             // to remove itself while it is in process,
             // so cancel will fail
@@ -97,8 +506,42 @@ public final class EventQueue implements Serializable {
      * Get the size of the event queue.
      * @return the size of the event queue
      */
-    public int size() {
-        return this.queue.size();
+    public final int size() {
+        return this.mainSize() + this.laneSize;
+    }
+
+    /**
+     * Moves all the pending events of this queue into another queue,
+     * which gets the same fixed-delay lanes. Events keep their relative
+     * order. This queue is empty afterwards.
+     * @param otherQueue - the queue to move the events to
+     */
+    public final void transferTo(final EventQueue otherQueue) {
+        otherQueue.registerFixedDelays(this);
+        Event event = this.nextEvent();
+        while (event != null) {
+            if (this.lastLane == -1) {
+                otherQueue.addEvent(event);
+            } else {
+                otherQueue.addEvent(event, this.lastLane);
+            }
+            event = this.nextEvent();
+        }
+    }
+
+    /**
+     * Record where an event is in a fixed-delay lane.
+     * @param event - the event
+     * @param lane - the lane of the event or -1 if it is not in one
+     * @param slot - the slot of the event in the lane
+     */
+    private static void setHandle(final Event event, final int lane,
+                                  final int slot) {
+        if (event instanceof AbstractEvent) {
+            AbstractEvent abstractEvent = (AbstractEvent) event;
+            abstractEvent.setQueueLane(lane);
+            abstractEvent.setQueueIndex(slot);
+        }
     }
 
 }
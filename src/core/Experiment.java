@@ -35,12 +35,16 @@ package core;
 import generator.MTRandom;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Vector;
 
+import stat.RecordingStatisticsCollection;
 import stat.Statistic;
+import stat.StatisticSummary;
 import stat.StatisticsCollection;
 import datacenter.DataCenter;
+import datacenter.JobDispatcher;
 import datacenter.Server;
 
 /**
@@ -53,9 +57,60 @@ public final class Experiment implements Serializable, Cloneable {
     /** The Serialization id. */
     private static final long serialVersionUID = 1L;
 
+    /** The order of magnitude of events at which to first print progress. */
+    private static final int PROGRESS_ORDER_OF_MAG = 5;
+
+    /**
+     * The default maximum amount of simulated time (in seconds) the servers
+     * are simulated in parallel before synchronizing.
+     */
+    public static final double DEFAULT_PARALLEL_WINDOW = 1.0d;
+
+    /**
+     * The number of events a sequential run processes between checks of
+     * its time limit, so reading the clock doesn't slow down every event.
+     */
+    private static final long TIME_LIMIT_CHECK_INTERVAL = 1024;
+
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * The debug level at which the experiment reports how a run started
+     * and ended (see {@link ExperimentContext#debug(int, String)}).
+     */
+    static final int STATUS_DEBUG_LEVEL = 1;
+
+    /**
+     * The debug level at which the experiment reports its progress and
+     * partial results.
+     */
+    static final int PROGRESS_DEBUG_LEVEL = 2;
+
+    /**
+     * The ways a run can end.
+     */
+    public static enum RunStatus {
+        /** All the statistics converged. */
+        CONVERGED,
+        /** All the statistics reached steady state and the run stopped. */
+        STEADY_STATE,
+        /** The run reached its event limit. */
+        EVENT_LIMIT,
+        /** The run reached its time limit. */
+        TIME_LIMIT,
+        /** The experiment was unstable (its queues grew without bound). */
+        UNSTABLE,
+        /** The run was stopped or ran out of events. */
+        STOPPED
+    };
+
     /** The experiment's event queue. */
     private EventQueue eventQueue;
 
+    /** Creates (and optionally recycles) the experiment's events. */
+    private EventPool eventPool;
+
     /** The number of events that have been processed. */
     private long nEventsProccessed;
 
@@ -88,9 +143,22 @@ public final class Experiment implements Serializable, Cloneable {
     private int eventLimit;
 
     /**
-     * THe random number generator for this experiment.
+     * The limit (in seconds of wall clock time) on how long a run can
+     * take, or 0 if there isn't one.
+     */
+    private double timeLimit;
+
+    /**
+     * The wall clock time (as in {@link System#nanoTime()}) the current
+     * run has to stop by, if it has a time limit.
+     */
+    private transient long deadline;
+
+    /**
+     * The state belonging to this experiment alone (job ids, debug level,
+     * random number generator and statistics).
      */
-    private MTRandom random;
+    private ExperimentContext context;
 
     /**
      * A flag determining if this experiment should stop once it
@@ -104,6 +172,134 @@ public final class Experiment implements Serializable, Cloneable {
      */
     private boolean stop;
 
+    /**
+     * The number of processed events at which to next print progress.
+     */
+    private long nextProgressReport;
+
+    /**
+     * Gives each server its own random number stream, seeded from the
+     * experiment's random number generator.
+     */
+    private boolean randomSubstreams;
+
+    /**
+     * The number of threads to simulate the servers with.
+     */
+    private int parallelism;
+
+    /**
+     * The maximum amount of simulated time the servers are simulated
+     * in parallel before synchronizing.
+     */
+    private double parallelWindow;
+
+    /**
+     * How far (in seconds of simulated time) each logical process of
+     * an optimistic parallel run simulates past the arrivals it has been
+     * sent, or 0 to run in parallel conservatively.
+     */
+    private double optimisticWindow;
+
+    /**
+     * Runs the servers in parallel during a parallel run.
+     */
+    private transient ParallelEngine engine;
+
+    /**
+     * Measures the experiment's events, or null if it isn't instrumented.
+     */
+    private Instrumentation instrumentation;
+
+    /**
+     * The number of regeneration cycles in each segment of a time-parallel
+     * run, or 0 to not split the run into segments.
+     */
+    private int segmentCycles;
+
+    /**
+     * Records the samples of this experiment when another engine replays
+     * them, e.g., when it's simulating one segment of a time-parallel run.
+     */
+    private transient RecordingStatisticsCollection segmentStats;
+
+    /**
+     * The file the experiment is checkpointed to, or null if it isn't.
+     */
+    private String checkpointFile;
+
+    /**
+     * The number of events between checkpoints.
+     */
+    private long checkpointInterval;
+
+    /**
+     * The number of processed events at which to next checkpoint.
+     */
+    private long nextCheckpoint;
+
+    /**
+     * The clock event times are rounded to, or null if times aren't rounded.
+     */
+    private TickClock clock;
+
+    /**
+     * The events scheduled during the current batch, which are added to
+     * the event queue together once the batch finishes. Canceled events
+     * leave a null behind.
+     */
+    private transient ArrayList<Event> eventBatch;
+
+    /**
+     * The number of batches started but not yet finished
+     * (batches can nest).
+     */
+    private transient int batchDepth;
+
+    /**
+     * The number of arrivals each server generates at a time,
+     * or 0 to generate them one at a time.
+     */
+    private int arrivalBlockSize;
+
+    /**
+     * Writes the experiment's checkpoints.
+     */
+    private transient Checkpointer checkpointer;
+
+    /**
+     * A flag indicating the experiment is already underway (i.e., it was
+     * restored from a checkpoint or forked), so running it continues
+     * the run rather than starting a new one.
+     */
+    private boolean underway;
+
+    /**
+     * A flag indicating if the experiment is watched for instability.
+     */
+    private boolean stabilityMonitoring;
+
+    /**
+     * Watches the experiment for instability, or null if it isn't.
+     */
+    private StabilityMonitor stabilityMonitor;
+
+    /**
+     * Why the experiment is unstable, or null if it isn't.
+     */
+    private String instabilityReason;
+
+    /**
+     * How the last run ended, or null if the experiment hasn't run.
+     */
+    private RunStatus status;
+
+    /**
+     * A flag indicating if servers check their counters against a full
+     * recount of their sockets and cores as they run.
+     */
+    private boolean validating;
+
     /**
      * Constructs a new experiment.
      *
@@ -117,14 +313,422 @@ public final class Experiment implements Serializable, Cloneable {
                       final ExperimentInput theExperimentInput,
                       final ExperimentOutput thExperimentOutput) {
         this.stop = false;
-        this.random = aRandom;
+        this.context = new ExperimentContext(aRandom,
+                thExperimentOutput.getStats());
         this.currentTime = 0.0d;
         this.eventLimit = 0;
+        this.timeLimit = 0.0d;
         this.experimentName = theExperimentName;
         this.experimentInput = theExperimentInput;
         this.exprimentOutput = thExperimentOutput;
-        this.eventQueue = new EventQueue();
+        this.eventQueue = new HeapEventQueue();
+        this.eventPool = new EventPool(this);
         this.stopAtSteadyState = false;
+        this.randomSubstreams = false;
+        this.parallelism = 1;
+        this.parallelWindow = DEFAULT_PARALLEL_WINDOW;
+        this.optimisticWindow = 0.0d;
+        this.segmentCycles = 0;
+        this.stabilityMonitoring = false;
+        this.validating = false;
+    }
+
+    /**
+     * Sets the event queue implementation the experiment uses.
+     * Any events already scheduled are moved to the new queue.
+     * @param newEventQueue - the event queue to use
+     */
+    public void setEventQueue(final EventQueue newEventQueue) {
+        this.eventQueue.transferTo(newEventQueue);
+        this.eventQueue = newEventQueue;
+    }
+
+    /**
+     * Sets if events and jobs are recycled once they are
+     * processed or canceled.
+     * @param pooling - if events and jobs should be recycled
+     */
+    public void setEventPooling(final boolean pooling) {
+        this.eventPool.setEnabled(pooling);
+    }
+
+    /**
+     * Gets the pool that creates the experiment's events and jobs.
+     * @return the experiment's event pool
+     */
+    public EventPool getEventPool() {
+        if (this.engine != null) {
+            EventPool pool = this.engine.getEventPool();
+            if (pool != null) {
+                return pool;
+            }
+        }
+
+        return this.eventPool;
+    }
+
+    /**
+     * Sets if the experiment measures its events (counts, processing time,
+     * allocations and queue size per event type) and reports them at the
+     * end of the run.
+     * @param instrumented - if the experiment measures its events
+     */
+    public void setInstrumented(final boolean instrumented) {
+        if (instrumented) {
+            if (this.instrumentation == null) {
+                this.instrumentation = new Instrumentation();
+            }
+        } else {
+            this.instrumentation = null;
+        }
+    }
+
+    /**
+     * Gets the measurements of the experiment's events.
+     * @return the measurements or null if the experiment isn't instrumented
+     */
+    public Instrumentation getInstrumentation() {
+        return this.instrumentation;
+    }
+
+    /**
+     * Sets the experiment to round event times to whole ticks of a clock
+     * (e.g., {@link TickClock#NANOSECONDS}), so long runs don't lose
+     * the precision of short delays and events that land on the same tick
+     * happen in the order they were scheduled. Must be set before any
+     * events are created (e.g., before a power capping enforcer
+     * schedules its first recalculation).
+     * @param ticksPerSecond - the number of ticks per second,
+     * or 0 to not round event times
+     */
+    public void setTickClock(final long ticksPerSecond) {
+        if (this.underway || this.eventQueue.size() > 0) {
+            Sim.fatalError("The tick clock has to be set before any events"
+                    + " are scheduled");
+        }
+        if (ticksPerSecond == 0) {
+            this.clock = null;
+        } else {
+            this.clock = new TickClock(ticksPerSecond);
+        }
+    }
+
+    /**
+     * Gets the clock event times are rounded to.
+     * @return the clock or null if event times aren't rounded
+     */
+    public TickClock getTickClock() {
+        return this.clock;
+    }
+
+    /**
+     * Sets the number of arrivals each server generates at a time.
+     * Generating interarrival and service times (and recording them in
+     * the generated time statistics) in blocks amortizes the cost of
+     * drawing them. Since a block draws its interarrival times before its
+     * service times, results differ from generating one at a time.
+     * @param blockSize - the number of arrivals per block,
+     * or 0 to generate arrivals one at a time
+     */
+    public void setArrivalBlockSize(final int blockSize) {
+        if (blockSize < 0) {
+            Sim.fatalError("Can't generate blocks of " + blockSize
+                    + " arrivals");
+        }
+        this.arrivalBlockSize = blockSize;
+    }
+
+    /**
+     * Gets the number of arrivals each server generates at a time.
+     * @return the number of arrivals per block, or 0 (or 1) if arrivals
+     * are generated one at a time
+     */
+    public int getArrivalBlockSize() {
+        return this.arrivalBlockSize;
+    }
+
+    /**
+     * Sets if a sequential run is watched for instability (see
+     * {@link StabilityMonitor}) and ends early if it's unstable.
+     * Runs aren't watched by default. Whether or not they are watched,
+     * a run ends as unstable if a server's queue grows past
+     * {@link Constants#MAX_QUEUE_SIZE}.
+     * @param monitoring - if the run is watched for instability
+     */
+    public void setStabilityMonitoring(final boolean monitoring) {
+        this.stabilityMonitoring = monitoring;
+    }
+
+    /**
+     * Sets if servers check their job and capacity counters against
+     * a full recount of their sockets and cores every time a job is
+     * inserted or removed. This is slow, so it's only meant for
+     * tracking down bookkeeping bugs. It's off by default.
+     * @param validate - if servers recount their sockets and cores
+     */
+    public void setValidating(final boolean validate) {
+        this.validating = validate;
+    }
+
+    /**
+     * Checks if servers check their counters against a full recount
+     * of their sockets and cores.
+     * @return if servers recount their sockets and cores
+     */
+    public boolean isValidating() {
+        return this.validating;
+    }
+
+    /**
+     * Ends the run because the experiment is unstable.
+     * Can be called from any thread.
+     * @param reason - why the experiment is unstable
+     */
+    public synchronized void markUnstable(final String reason) {
+        if (this.instabilityReason == null) {
+            this.instabilityReason = reason;
+            this.context.debug(STATUS_DEBUG_LEVEL,
+                               "Ending from instability: " + reason);
+        }
+        this.stop = true;
+    }
+
+    /**
+     * Gets why the experiment is unstable.
+     * @return why the experiment is unstable, or null if it isn't
+     */
+    public synchronized String getInstabilityReason() {
+        return this.instabilityReason;
+    }
+
+    /**
+     * Gets how the last run ended.
+     * @return how the last run ended, or null if the experiment
+     * hasn't run
+     */
+    public RunStatus getStatus() {
+        return this.status;
+    }
+
+    /**
+     * Sets if each server gets its own random number stream. Each server's
+     * stream is seeded from the experiment's random number generator, so
+     * the jobs a server sees don't depend on the other servers.
+     * Parallel runs always use random substreams.
+     * @param substreams - if each server gets its own random number stream
+     */
+    public void setRandomSubstreams(final boolean substreams) {
+        this.randomSubstreams = substreams;
+    }
+
+    /**
+     * Sets the number of threads the servers are simulated with.
+     * With more than one thread, the servers are partitioned across
+     * the threads, which synchronize at every event that isn't tied
+     * to a single server (e.g., power cap recalculations), unless the run
+     * is optimistic (see {@link #setOptimisticWindow(double)}). Without
+     * such events, the servers are independent and the threads only
+     * synchronize to merge statistics. Otherwise, a parallel run is
+     * identical to a sequential run with random substreams
+     * (see {@link #setRandomSubstreams(boolean)}).
+     * @param nThreads - the number of threads
+     */
+    public void setParallelism(final int nThreads) {
+        if (nThreads < 1) {
+            Sim.fatalError("Need at least one thread, not " + nThreads);
+        }
+        this.parallelism = nThreads;
+    }
+
+    /**
+     * Sets the maximum amount of simulated time the servers are simulated
+     * in parallel before synchronizing. Within that limit, each window is
+     * sized from the rate events were simulated at so far, so the events
+     * and statistics recorded in a window stay bounded however busy the
+     * servers are.
+     * @param window - the maximum amount of simulated time (in seconds)
+     */
+    public void setParallelWindow(final double window) {
+        if (!(window > 0.0)) {
+            Sim.fatalError("The parallel window must be positive, not "
+                    + window);
+        }
+        this.parallelWindow = window;
+    }
+
+    /**
+     * Runs a parallel experiment whose jobs come from a
+     * {@link JobDispatcher} optimistically (see {@link OptimisticEngine})
+     * instead of synchronizing at every arrival. The dispatcher works
+     * one parallel window (see {@link #setParallelWindow(double)}) ahead
+     * of the servers, which simulate up to the optimistic window past the
+     * arrivals they have been sent and roll back if an earlier arrival
+     * turns up. Its router can't look at the servers' state.
+     * @param window - how far past their arrivals (in seconds of simulated
+     * time) the servers are simulated, or 0 to run in parallel
+     * conservatively
+     */
+    public void setOptimisticWindow(final double window) {
+        if (!(window >= 0.0)) {
+            Sim.fatalError("The optimistic window can't be " + window);
+        }
+        this.optimisticWindow = window;
+    }
+
+    /**
+     * Splits the run into segments of regeneration cycles (which start
+     * whenever a job arrives to an empty data center), simulated
+     * independently on the experiment's threads (see
+     * {@link #setParallelism(int)}) and then laid end to end.
+     * Meant for single machines, which empty often.
+     * @param cycles - the number of regeneration cycles in each segment,
+     * or 0 to not split the run
+     */
+    public void setRegenerativeSegments(final int cycles) {
+        if (cycles < 0) {
+            Sim.fatalError("Segments can't have " + cycles + " cycles");
+        }
+        this.segmentCycles = cycles;
+    }
+
+    /**
+     * Sets the experiment to periodically checkpoint itself to a file,
+     * from which it can be restored with
+     * {@link Checkpointer#restore(String)}. Checkpoints are written in the
+     * background and are only taken in sequential runs.
+     * @param fileName - the file to checkpoint to, or null to not checkpoint
+     * @param nEvents - the number of events between checkpoints
+     */
+    public void setCheckpointing(final String fileName, final long nEvents) {
+        if (fileName != null && nEvents < 1) {
+            Sim.fatalError("Can't checkpoint every " + nEvents + " events");
+        }
+        this.checkpointFile = fileName;
+        this.checkpointInterval = nEvents;
+        this.nextCheckpoint = this.nEventsProccessed + nEvents;
+    }
+
+    /**
+     * Marks the experiment as restored from a checkpoint, so running it
+     * continues the run rather than starting a new one.
+     */
+    void markRestored() {
+        this.underway = true;
+    }
+
+    /**
+     * Forks copies of the experiment once it has reached steady state
+     * (e.g., with {@link #runToSteadyState()}), so each copy skips warmup
+     * and calibration. The copies share the experiment's immutable parts
+     * (e.g., distributions), get their own copy of everything else, start
+     * with no steady state samples (so combining them doesn't count the
+     * experiment's samples more than once), get a new stability monitor
+     * (see {@link #setStabilityMonitoring(boolean)}) and are reseeded
+     * from the experiment's random number generator.
+     * Running a copy, locally or on a slave, continues from steady state
+     * until its statistics converge.
+     *
+     * @param nCopies - the number of copies to fork
+     * @return the copies
+     */
+    public Experiment[] fork(final int nCopies) {
+        if (!this.exprimentOutput.getStats().allStatsSteadyState()) {
+            Sim.fatalError("Can only fork an experiment in steady state");
+        }
+
+        ExperimentCopier copier = new ExperimentCopier(this);
+        Experiment[] copies = new Experiment[nCopies];
+        for (int i = 0; i < nCopies; i++) {
+            Experiment copy = copier.copy();
+            copy.exprimentOutput.getStats().discardSteadyStateSamples();
+            copy.underway = true;
+            copy.stopAtSteadyState = false;
+            copy.stop = false;
+            copy.checkpointFile = null;
+            copy.reseed(this.context.getRandom().nextLong());
+            // The experiment's monitor compares against samples
+            // the copy no longer has
+            copy.stabilityMonitor = null;
+            if (copy.stabilityMonitoring && copy.parallelism == 1) {
+                copy.stabilityMonitor
+                    = new StabilityMonitor(copy, copy.nEventsProccessed);
+            }
+            copies[i] = copy;
+        }
+
+        return copies;
+    }
+
+    /**
+     * Reseeds the experiment's random number generator and, if the servers
+     * have their own random number streams, reseeds those from it.
+     * Arrivals the servers generated ahead of time are thrown away.
+     * @param seed - the new seed
+     */
+    private void reseed(final long seed) {
+        this.context.getRandom().setSeed(seed);
+        boolean substreams = this.randomSubstreams || this.parallelism > 1;
+        Iterator<Server> iterator = this.dataCenter.getServers().iterator();
+        while (iterator.hasNext()) {
+            Server server = iterator.next();
+            if (substreams) {
+                server.setRandomSubstream(this.context.newRandomSubstream());
+            } else {
+                // Arrivals drawn before the reseed would repeat in every copy
+                server.discardArrivalBuffer();
+            }
+        }
+    }
+
+    /**
+     * Prepares a copy of this experiment to simulate one segment of
+     * a time-parallel run.
+     * @param seed - the seed for the segment's random number generator
+     * @param stats - records the segment's samples
+     */
+    void prepareSegment(final long seed,
+                        final RecordingStatisticsCollection stats) {
+        this.prepareCopy(stats);
+        this.context.getRandom().setSeed(seed);
+    }
+
+    /**
+     * Prepares a copy of this experiment to simulate part of a run
+     * sequentially for another engine, which replays its samples.
+     * @param stats - records the copy's samples
+     */
+    void prepareCopy(final RecordingStatisticsCollection stats) {
+        this.segmentCycles = 0;
+        this.parallelism = 1;
+        this.optimisticWindow = 0.0d;
+        this.checkpointFile = null;
+        this.segmentStats = stats;
+        this.nextProgressReport = Long.MAX_VALUE;
+    }
+
+    /**
+     * Has the experiment record its samples instead of adding them to its
+     * statistics, while another engine decides when to replay them.
+     * @param stats - records the samples, or null to add them again
+     */
+    void setRecordingStats(final RecordingStatisticsCollection stats) {
+        this.segmentStats = stats;
+    }
+
+    /**
+     * Draws a seed from the experiment's random number generator.
+     * @return the seed
+     */
+    long nextSeed() {
+        return this.context.getRandom().nextLong();
+    }
+
+    /**
+     * Gets the experiment's event queue.
+     * @return the experiment's event queue
+     */
+    EventQueue getEventQueue() {
+        return this.eventQueue;
     }
 
     /**
@@ -133,7 +737,7 @@ public final class Experiment implements Serializable, Cloneable {
      * random number generator
      */
     public void setSeed(final long newSeed) {
-        this.random.setSeed(newSeed);
+        this.context.getRandom().setSeed(newSeed);
     }
 
     /**
@@ -144,11 +748,25 @@ public final class Experiment implements Serializable, Cloneable {
         this.dataCenter = this.experimentInput.getDataCenter();
         Vector<Server> servers = dataCenter.getServers();
         // Make sure all the arrival processes have begun
+        boolean substreams = this.randomSubstreams || this.parallelism > 1;
+        this.eventQueue.ensureCapacity(this.eventQueue.size()
+                + servers.size());
+        JobDispatcher dispatcher = this.dataCenter.getJobDispatcher();
+        this.startEventBatch();
         Iterator<Server> iterator = servers.iterator();
         while (iterator.hasNext()) {
             Server server = iterator.next();
-            server.createNewArrival(0.0);
+            if (substreams) {
+                server.setRandomSubstream(this.context.newRandomSubstream());
+            }
+            if (dispatcher == null) {
+                server.createNewArrival(0.0);
+            }
+        }
+        if (dispatcher != null) {
+            dispatcher.createNewArrival(0.0);
         }
+        this.finishEventBatch();
     }
 
     /**
@@ -184,7 +802,27 @@ public final class Experiment implements Serializable, Cloneable {
      * @return the statistics collection for the experiment
      */
     public StatisticsCollection getStats() {
-        return this.exprimentOutput.getStats();
+        if (this.segmentStats != null) {
+            return this.segmentStats;
+        }
+        if (this.engine != null) {
+            StatisticsCollection stats = this.engine.getStats();
+            if (stats != null) {
+                return stats;
+            }
+        }
+
+        return this.context.getStats();
+    }
+
+    /**
+     * Gets the state belonging to this experiment alone (job ids,
+     * debug level, random number generator and statistics).
+     *
+     * @return the experiment's context
+     */
+    public ExperimentContext getContext() {
+        return this.context;
     }
 
     /**
@@ -196,66 +834,323 @@ public final class Experiment implements Serializable, Cloneable {
         this.eventLimit = theEventLimit;
     }
 
+    /**
+     * Sets a limit on how long (in seconds of wall clock time) each run
+     * of the experiment can take. A run that reaches its time or event
+     * limit before converging stops cleanly and prints each statistic's
+     * estimates so far (see {@link #getStats()} to get them). If the run
+     * was sequential, running the experiment again (or checkpointing it
+     * and running the restored copy) continues it with a new time limit,
+     * e.g., to spend more time on the experiments that need it.
+     *
+     * @param seconds - the time limit or 0 for none
+     */
+    public void setTimeLimit(final double seconds) {
+        if (seconds < 0) {
+            Sim.fatalError("A time limit can't be negative: " + seconds);
+        }
+        this.timeLimit = seconds;
+    }
+
     /**
      * Runs the experiment.
      * The builk of simulation happens in this.
      */
     public void run() {
-        this.initialize();
+        if (this.checkpointFile != null
+                && (this.segmentCycles > 0 || this.parallelism > 1)) {
+            Sim.fatalError("Checkpoints are only taken in sequential runs");
+        }
+        RegenerativeEngine segments = null;
+        if (this.underway) {
+            // Everything, including the event queue, is already in place
+            this.underway = false;
+        } else {
+            if (this.segmentCycles > 0) {
+                // The segments start from copies of
+                // the uninitialized experiment
+                segments = new RegenerativeEngine(this,
+                                                  this.segmentCycles,
+                                                  this.parallelism);
+            } else {
+                this.initialize();
+                if (this.stabilityMonitoring && this.parallelism == 1) {
+                    this.stabilityMonitor = new StabilityMonitor(this, 0);
+                }
+            }
+            this.nEventsProccessed = 0;
+            this.nextProgressReport
+                = (long) Math.pow(10, PROGRESS_ORDER_OF_MAG);
+            this.nextCheckpoint = this.checkpointInterval;
+        }
         long startTime = System.currentTimeMillis();
+        this.deadline = System.nanoTime()
+            + (long) (this.timeLimit * NANOS_PER_SECOND);
 
-        this.nEventsProccessed = 0;
-        Sim.printBanner();
-        System.out.println("Starting simulation");
-        //TODO fix magic numbers
-        int orderOfMag = 5;
-        long printSamples = (long) Math.pow(10, orderOfMag);
-        while (!stop) {
-            Event currentEvent = this.eventQueue.nextEvent();
-            this.currentTime = currentEvent.getTime();
-            currentEvent.process();
-            this.nEventsProccessed++;
-            if (this.nEventsProccessed > printSamples) {
-                System.out.println("Processed " + this.nEventsProccessed
-                            + " events");
-                Iterator<Statistic> statIter = this.exprimentOutput.getStats()
-                        .getAllStats();
-                while (statIter.hasNext()) {
-                    Statistic currentStat = statIter.next();
-                    if (!currentStat.isConverged()) {
-                        System.out.println("Still waiting for "
-                                + currentStat.getStatName()
-                                + " at mean converge of "
-                                + currentStat.getMeanAccuracy()
-                                + " and quantile converge of "
-                                + currentStat.getQuantileAccuracy());
-                        currentStat.printStatInfo();
+        if (this.context.getDebugLevel() >= STATUS_DEBUG_LEVEL) {
+            Sim.printBanner();
+        }
+        this.context.debug(STATUS_DEBUG_LEVEL, "Starting simulation");
+        if (this.instrumentation != null) {
+            this.instrumentation.start();
+        }
+        if (segments != null) {
+            segments.run();
+        } else if (this.parallelism > 1 && this.optimisticWindow > 0.0) {
+            new OptimisticEngine(this,
+                                 this.eventQueue,
+                                 this.dataCenter,
+                                 this.parallelism,
+                                 this.parallelWindow,
+                                 this.optimisticWindow).run();
+        } else if (this.parallelism > 1) {
+            this.engine = new ParallelEngine(this,
+                                             this.eventQueue,
+                                             this.dataCenter.getServers(),
+                                             this.parallelism,
+                                             this.parallelWindow);
+            try {
+                this.engine.run();
+            } finally {
+                this.engine = null;
+            }
+        } else {
+            try {
+                while (!stop) {
+                    this.processEvent(this.eventQueue.nextEvent());
+                    if (this.isHalted() || this.isOverEventLimit()) {
+                        break;
+                    }
+                    if (this.nEventsProccessed % TIME_LIMIT_CHECK_INTERVAL == 0
+                            && this.isPastDeadline()) {
+                        this.context.debug(STATUS_DEBUG_LEVEL,
+                                           "Ending from time limit");
+                        break;
+                    }
+                    if (this.stabilityMonitor != null && this.stabilityMonitor
+                            .check(this.nEventsProccessed)) {
+                        this.markUnstable(this.stabilityMonitor.getReason());
+                        break;
                     }
+                    if (this.checkpointFile != null
+                            && this.nEventsProccessed >= this.nextCheckpoint) {
+                        this.checkpoint();
+                    }
+                }
+            } finally {
+                if (this.checkpointer != null) {
+                    this.checkpointer.close();
+                    this.checkpointer = null;
                 }
-                orderOfMag++;
-                printSamples = (long) Math.pow(10, orderOfMag);
             }
+        }
+
+        this.status = this.getEndStatus();
+        if (this.status == RunStatus.EVENT_LIMIT
+                || this.status == RunStatus.TIME_LIMIT) {
+            this.printPartialResults();
+            // A sequential run can pick up where it stopped
+            this.underway = segments == null && this.parallelism == 1;
+        }
+        if (this.instrumentation != null) {
+            this.instrumentation.stop();
+            this.instrumentation.printReport();
+        }
 
-            if (this.getStats().allStatsConverged()) {
-                System.out.println("Ending from convergence");
-                break;
+        long endTime = System.currentTimeMillis();
+        double execTime = (endTime - startTime) / 1000.0;
+        this.context.debug(STATUS_DEBUG_LEVEL, "The experiment took "
+                           + execTime + " seconds to run");
+    }
+
+    /**
+     * Prints each statistic's estimates for a run that stopped
+     * before converging, if the experiment's debug level is at least
+     * {@link #PROGRESS_DEBUG_LEVEL}.
+     */
+    private void printPartialResults() {
+        if (this.context.getDebugLevel() < PROGRESS_DEBUG_LEVEL) {
+            return;
+        }
+        System.out.println("Partial results after "
+                + this.nEventsProccessed + " events:");
+        Iterator<StatisticSummary> iter
+            = this.exprimentOutput.getStats().summarize().iterator();
+        while (iter.hasNext()) {
+            System.out.println(iter.next());
+        }
+    }
+
+    /**
+     * Checkpoints the experiment to its checkpoint file.
+     */
+    private void checkpoint() {
+        this.nextCheckpoint = this.nEventsProccessed + this.checkpointInterval;
+        if (this.checkpointer == null) {
+            this.checkpointer = new Checkpointer(this.checkpointFile);
+        }
+        this.checkpointer.checkpoint(this);
+    }
+
+    /**
+     * Processes an event and advances the simulation to its time.
+     *
+     * @param event - the event to process
+     */
+    void processEvent(final Event event) {
+        this.currentTime = event.getTime();
+        if (this.instrumentation == null) {
+            event.process();
+        } else {
+            this.instrumentation.process(event);
+            this.instrumentation.observeQueueSize(this.eventQueue.size());
+        }
+        this.eventPool.recycleProcessed(event);
+        this.addProcessedEvents(1, this.currentTime);
+    }
+
+    /**
+     * Accounts for events processed outside the experiment
+     * (e.g., in parallel) and advances the simulation.
+     *
+     * @param nEvents - the number of events processed
+     * @param time - the time the simulation has advanced to
+     */
+    void addProcessedEvents(final long nEvents, final double time) {
+        this.currentTime = time;
+        this.nEventsProccessed += nEvents;
+        if (this.nEventsProccessed > this.nextProgressReport) {
+            this.printProgress();
+            while (this.nextProgressReport <= this.nEventsProccessed) {
+                this.nextProgressReport *= 10;
             }
+        }
+    }
 
-            if (this.getStats().allStatsSteadyState()
-                    && this.stopAtSteadyState) {
-                System.out.println("Halting at steady state");
-                break;
+    /**
+     * Prints how many events have been processed and the statistics
+     * that have yet to converge, if the experiment's debug level is at
+     * least {@link #PROGRESS_DEBUG_LEVEL}.
+     */
+    private void printProgress() {
+        if (this.context.getDebugLevel() < PROGRESS_DEBUG_LEVEL) {
+            return;
+        }
+        System.out.println("Processed " + this.nEventsProccessed
+                    + " events");
+        Iterator<Statistic> statIter = this.exprimentOutput.getStats()
+                .getAllStats();
+        while (statIter.hasNext()) {
+            Statistic currentStat = statIter.next();
+            if (!currentStat.isConverged()) {
+                System.out.println("Still waiting for "
+                        + currentStat.getStatName()
+                        + " at mean converge of "
+                        + currentStat.getMeanAccuracy()
+                        + " and quantile converge of "
+                        + currentStat.getQuantileAccuracy());
+                currentStat.printStatInfo();
             }
+        }
+    }
 
-            if (eventLimit > 0 && nEventsProccessed > eventLimit) {
-                break;
+    /**
+     * Checks if the simulation should halt because its statistics have
+     * converged (or reached steady state, if that's all that's needed).
+     *
+     * @return if the simulation should halt
+     */
+    boolean isHalted() {
+        StatisticsCollection stats = this.exprimentOutput.getStats();
+        if (stats.allStatsConverged()) {
+            if (this.stabilityMonitor != null
+                    && this.stabilityMonitor.isStillGrowing()) {
+                this.markUnstable(this.stabilityMonitor.getReason());
+                return true;
             }
+            this.context.debug(STATUS_DEBUG_LEVEL, "Ending from convergence");
+            return true;
         }
 
-        long endTime = System.currentTimeMillis();
-        double execTime = (endTime - startTime) / 1000.0;
-        System.out.println("The experiment took " + execTime
-                        + " seconds to run");
+        if (stats.allStatsSteadyState() && this.stopAtSteadyState) {
+            this.context.debug(STATUS_DEBUG_LEVEL, "Halting at steady state");
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Works out how the run ended.
+     *
+     * @return how the run ended
+     */
+    private RunStatus getEndStatus() {
+        StatisticsCollection stats = this.exprimentOutput.getStats();
+        if (this.getInstabilityReason() != null) {
+            return RunStatus.UNSTABLE;
+        } else if (stats.allStatsConverged()) {
+            return RunStatus.CONVERGED;
+        } else if (stats.allStatsSteadyState() && this.stopAtSteadyState) {
+            return RunStatus.STEADY_STATE;
+        } else if (this.isOverEventLimit()) {
+            return RunStatus.EVENT_LIMIT;
+        } else if (this.isPastDeadline()) {
+            return RunStatus.TIME_LIMIT;
+        }
+
+        return RunStatus.STOPPED;
+    }
+
+    /**
+     * Checks if the simulation has processed more events than its limit.
+     *
+     * @return if the event limit has been exceeded
+     */
+    boolean isOverEventLimit() {
+        return this.eventLimit > 0 && this.nEventsProccessed > this.eventLimit;
+    }
+
+    /**
+     * Gets the number of events left to process before the simulation
+     * is over its event limit.
+     *
+     * @return the number of events left or Long.MAX_VALUE if there's
+     * no event limit
+     */
+    long getEventsToLimit() {
+        if (this.eventLimit <= 0) {
+            return Long.MAX_VALUE;
+        }
+
+        return this.eventLimit + 1L - this.nEventsProccessed;
+    }
+
+    /**
+     * Checks if the current run has gone past its time limit.
+     *
+     * @return if the time limit has been exceeded
+     */
+    boolean isPastDeadline() {
+        return this.timeLimit > 0 && System.nanoTime() - this.deadline > 0;
+    }
+
+    /**
+     * Checks if the current run has gone past its event or time limit.
+     *
+     * @return if either limit has been exceeded
+     */
+    boolean isOverBudget() {
+        return this.isOverEventLimit() || this.isPastDeadline();
+    }
+
+    /**
+     * Checks if the simulation was asked to stop.
+     *
+     * @return if the simulation was asked to stop
+     */
+    synchronized boolean isStopped() {
+        return this.stop;
     }
 
     /**
@@ -267,22 +1162,147 @@ public final class Experiment implements Serializable, Cloneable {
         return nEventsProccessed;
     }
 
+    /**
+     * Gets the monitor watching the run for instability.
+     *
+     * @return the monitor, or null if the run isn't watched
+     */
+    public StabilityMonitor getStabilityMonitor() {
+        return this.stabilityMonitor;
+    }
+
     /**
      * Adds an event to the experiment's event queue.
      *
      * @param event - the event to add
      */
     public void addEvent(final Event event) {
+        if (this.engine != null) {
+            this.engine.addEvent(event, -1);
+            return;
+        }
+        if (this.batchDepth > 0) {
+            if (event instanceof AbstractEvent) {
+                // Remember where the event is in case it's canceled
+                ((AbstractEvent) event).setQueueIndex(
+                        -2 - this.eventBatch.size());
+            }
+            this.eventBatch.add(event);
+            return;
+        }
         this.eventQueue.addEvent(event);
     }
 
+    /**
+     * Starts a batch of events. Events scheduled until the batch finishes
+     * are added to the event queue all at once, which is faster for large
+     * bursts of events (e.g., one for every server). Ties between them
+     * are broken just as if they had been added one at a time.
+     * Batches can nest; the events are added when the outermost finishes.
+     */
+    public void startEventBatch() {
+        if (this.engine != null) {
+            // Parallel runs route each event to its own queue right away
+            return;
+        }
+        if (this.eventBatch == null) {
+            this.eventBatch = new ArrayList<Event>();
+        }
+        this.batchDepth++;
+    }
+
+    /**
+     * Finishes a batch of events started with {@link #startEventBatch()}.
+     */
+    public void finishEventBatch() {
+        if (this.engine != null) {
+            return;
+        }
+        if (this.batchDepth == 0) {
+            Sim.fatalError("Finished an event batch that wasn't started");
+        }
+        this.batchDepth--;
+        if (this.batchDepth == 0) {
+            this.flushEventBatch();
+        }
+    }
+
+    /**
+     * Adds the events of the current batch to the event queue.
+     */
+    private void flushEventBatch() {
+        if (this.eventBatch.isEmpty()) {
+            return;
+        }
+
+        ArrayList<Event> events = new ArrayList<Event>(this.eventBatch.size());
+        Iterator<Event> iter = this.eventBatch.iterator();
+        while (iter.hasNext()) {
+            Event event = iter.next();
+            if (event != null) {
+                events.add(event);
+            }
+        }
+        this.eventBatch.clear();
+        this.eventQueue.addEvents(events);
+    }
+
+    /**
+     * Adds an event to one of the experiment's fixed-delay lanes.
+     * The event should be scheduled the lane's delay after
+     * the current time.
+     *
+     * @param event - the event to add
+     * @param lane - the lane from {@link #registerFixedDelay(double)}
+     */
+    public void addEvent(final Event event, final int lane) {
+        if (this.engine != null) {
+            this.engine.addEvent(event, lane);
+            return;
+        }
+        if (this.batchDepth > 0) {
+            // Keep ties in the order the events were scheduled
+            this.flushEventBatch();
+        }
+        this.eventQueue.addEvent(event, lane);
+    }
+
+    /**
+     * Registers a fixed-delay lane for events that are always scheduled
+     * a constant delay after the current time. Such events skip the
+     * event queue's main data structure.
+     *
+     * @param delay - the delay of the events in the lane
+     * @return the lane to pass to {@link #addEvent(Event, int)}
+     */
+    public int registerFixedDelay(final double delay) {
+        return this.eventQueue.registerFixedDelay(delay);
+    }
+
     /**
      * Cancels an event so that it no longer occurs.
      *
      * @param event - the event to cancel
      */
     public void cancelEvent(final Event event) {
-        this.eventQueue.cancelEvent(event);
+        Instrumentation counters = this.instrumentation;
+        if (this.engine != null) {
+            this.engine.cancelEvent(event);
+            if (counters != null && this.engine.getInstrumentation() != null) {
+                counters = this.engine.getInstrumentation();
+            }
+        } else if (this.batchDepth > 0 && event instanceof AbstractEvent
+                && ((AbstractEvent) event).getQueueIndex() <= -2) {
+            AbstractEvent abstractEvent = (AbstractEvent) event;
+            this.eventBatch.set(-2 - abstractEvent.getQueueIndex(), null);
+            abstractEvent.setQueueIndex(-1);
+        } else {
+            this.eventQueue.cancelEvent(event);
+        }
+        if (counters != null) {
+            counters.countCancel(event);
+        }
+        this.getEventPool().recycleCanceled(event);
     }
 
     /**
@@ -291,6 +1311,13 @@ public final class Experiment implements Serializable, Cloneable {
      * @return the current time of the simulation
      */
     public double getCurrentTime() {
+        if (this.engine != null) {
+            double time = this.engine.getCurrentTime();
+            if (!Double.isNaN(time)) {
+                return time;
+            }
+        }
+
         return this.currentTime;
     }
 
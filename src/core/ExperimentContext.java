@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package core;
+
+import generator.MTRandom;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import stat.StatisticsCollection;
+
+/**
+ * Holds the state that belongs to a single experiment rather than to the
+ * whole simulator: the job id allocator, the debug level, the random
+ * number generator and the statistics. The experiment reports its
+ * progress through {@link #debug(int, String)}, so two experiments in
+ * one JVM can be made more or less verbose independently; code that
+ * has no experiment at hand still logs through {@link Sim#debug}, which
+ * uses the simulator-wide level. Nothing in an experiment's
+ * simulation touches state shared with other experiments (as long as each
+ * experiment is given its own random number generator and generators),
+ * so independent experiments can run concurrently on threads in one JVM.
+ *
+ * The context is part of the experiment, so it's checkpointed and copied
+ * along with it and job ids carry on where they left off.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public final class ExperimentContext implements Serializable {
+
+    /**
+     * The serialization id.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The id the next job will be assigned. */
+    private AtomicLong nextJobId;
+
+    /** The debug level of the experiment. */
+    private int debugLevel;
+
+    /** The experiment's random number generator. */
+    private MTRandom random;
+
+    /** The experiment's statistics. */
+    private StatisticsCollection stats;
+
+    /**
+     * Creates a new ExperimentContext. The debug level starts at
+     * the simulator's debug level.
+     *
+     * @param aRandom - the experiment's random number generator
+     * @param theStats - the experiment's statistics
+     */
+    public ExperimentContext(final MTRandom aRandom,
+                             final StatisticsCollection theStats) {
+        this.nextJobId = new AtomicLong();
+        this.debugLevel = Sim.getDebugLevel();
+        this.random = aRandom;
+        this.stats = theStats;
+    }
+
+    /**
+     * Assigns an id to a new job. Ids are unique within the experiment,
+     * even when jobs are created on several threads.
+     *
+     * @return the id for the job
+     */
+    public long assignJobId() {
+        return this.nextJobId.getAndIncrement();
+    }
+
+    /**
+     * Gets the id the next job will be assigned.
+     *
+     * @return the id the next job will be assigned
+     */
+    public long getNextJobId() {
+        return this.nextJobId.get();
+    }
+
+    /**
+     * Sets the level of debugging for the experiment.
+     * Higher levels of debugging print more information.
+     *
+     * @param level - the level of debugging
+     */
+    public void setDebugLevel(final int level) {
+        this.debugLevel = level;
+    }
+
+    /**
+     * Gets the level of debugging for the experiment.
+     *
+     * @return the level of debugging
+     */
+    public int getDebugLevel() {
+        return this.debugLevel;
+    }
+
+    /**
+     * Prints a debug message if the experiment's debug level is at or
+     * above the provided threshold.
+     *
+     * @param levelThreshold - the level the debug level must be
+     * at to print this message
+     * @param message - the message to print
+     */
+    public void debug(final int levelThreshold, final String message) {
+        if (levelThreshold <= this.debugLevel) {
+            System.out.println(message);
+        }
+    }
+
+    /**
+     * Prints a debug message if the experiment's debug level is at or
+     * above the provided threshold and annotates the time the message
+     * occurred.
+     *
+     * @param levelThreshold - the level the debug level must be
+     * at to print this message
+     * @param time - the time (in simulation time) the debug is printed
+     * @param message - the message to print
+     */
+    public void debug(final int levelThreshold,
+                      final double time,
+                      final String message) {
+        if (levelThreshold <= this.debugLevel) {
+            this.debug(levelThreshold, "[" + time + "] " + message);
+        }
+    }
+
+    /**
+     * Gets the experiment's random number generator.
+     *
+     * @return the experiment's random number generator
+     */
+    public MTRandom getRandom() {
+        return this.random;
+    }
+
+    /**
+     * Creates a random number stream seeded from the experiment's
+     * random number generator (e.g., for one server).
+     *
+     * @return the new random number stream
+     */
+    public MTRandom newRandomSubstream() {
+        return new MTRandom(this.random.nextLong());
+    }
+
+    /**
+     * Gets the experiment's statistics.
+     *
+     * @return the experiment's statistics
+     */
+    public StatisticsCollection getStats() {
+        return this.stats;
+    }
+
+}
@@ -0,0 +1,244 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import math.EmpiricalDistribution;
+
+/**
+ * Makes deep copies of an experiment as it was when the copier was created.
+ * The experiment is serialized once and each copy is deserialized from
+ * those bytes, except for immutable parts (e.g., the empirical
+ * distributions), which all the copies share with the original.
+ * Copies can be made from several threads at once.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public final class ExperimentCopier {
+
+    /** The serialized experiment, without its shared parts. */
+    private byte[] bytes;
+
+    /** The parts of the experiment shared by all copies. */
+    private ArrayList<Object> shared;
+
+    /**
+     * A mutable part of the experiment the copies share anyway,
+     * or null if there isn't one.
+     */
+    private Object sharedPart;
+
+    /**
+     * Creates a new ExperimentCopier.
+     *
+     * @param experiment - the experiment to copy
+     */
+    public ExperimentCopier(final Experiment experiment) {
+        this(experiment, null);
+    }
+
+    /**
+     * Creates a new ExperimentCopier whose copies also share a mutable part
+     * of the experiment (e.g., statistics the copies don't add samples to),
+     * which makes copying cheaper.
+     *
+     * @param experiment - the experiment to copy
+     * @param theSharedPart - the part the copies share, or null for none
+     */
+    public ExperimentCopier(final Experiment experiment,
+                            final Object theSharedPart) {
+        this.shared = new ArrayList<Object>();
+        this.sharedPart = theSharedPart;
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            ObjectOutputStream out = new SharingOutputStream(buffer);
+            out.writeObject(experiment);
+            out.close();
+            this.bytes = buffer.toByteArray();
+        } catch (IOException e) {
+            Sim.fatalError("Couldn't copy the experiment: " + e);
+        }
+    }
+
+    /**
+     * Makes a copy of the experiment.
+     *
+     * @return the copy
+     */
+    public Experiment copy() {
+        Experiment copy = null;
+        try {
+            ObjectInputStream in = new SharingInputStream(
+                    new ByteArrayInputStream(this.bytes));
+            copy = (Experiment) in.readObject();
+            in.close();
+        } catch (IOException e) {
+            Sim.fatalError("Couldn't copy the experiment: " + e);
+        } catch (ClassNotFoundException e) {
+            Sim.fatalError("Couldn't copy the experiment: " + e);
+        }
+
+        return copy;
+    }
+
+    /**
+     * Gets the size of the serialized experiment.
+     *
+     * @return the number of bytes each copy is deserialized from
+     */
+    int getSize() {
+        return this.bytes.length;
+    }
+
+    /**
+     * Checks if copies can share an object, because it's immutable or
+     * it's the part they share anyway.
+     *
+     * @param obj - the object to check
+     * @return if copies can share the object
+     */
+    private boolean isShareable(final Object obj) {
+        return obj instanceof EmpiricalDistribution
+                || (this.sharedPart != null && obj == this.sharedPart);
+    }
+
+    /**
+     * Stands in for a shared object in the serialized experiment.
+     */
+    private static final class SharedReference implements Serializable {
+
+        /**
+         * The serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /** The index of the shared object. */
+        private int index;
+
+        /**
+         * Creates a new SharedReference.
+         *
+         * @param theIndex - the index of the shared object
+         */
+        public SharedReference(final int theIndex) {
+            this.index = theIndex;
+        }
+
+    }
+
+    /**
+     * Serializes an experiment, leaving out its shareable objects.
+     */
+    private final class SharingOutputStream extends ObjectOutputStream {
+
+        /** The index of each shareable object written so far. */
+        private IdentityHashMap<Object, SharedReference> references;
+
+        /**
+         * Creates a new SharingOutputStream.
+         *
+         * @param out - the stream to write to
+         * @throws IOException if the stream header can't be written
+         */
+        public SharingOutputStream(final OutputStream out) throws IOException {
+            super(out);
+            this.references = new IdentityHashMap<Object, SharedReference>();
+            this.enableReplaceObject(true);
+        }
+
+        /**
+         * Replaces shareable objects with references to them.
+         *
+         * @param obj - the object being written
+         * @return the object to write in its place
+         */
+        @Override
+        protected Object replaceObject(final Object obj) {
+            if (!isShareable(obj)) {
+                return obj;
+            }
+
+            SharedReference reference = this.references.get(obj);
+            if (reference == null) {
+                reference = new SharedReference(shared.size());
+                shared.add(obj);
+                this.references.put(obj, reference);
+            }
+
+            return reference;
+        }
+
+    }
+
+    /**
+     * Deserializes an experiment, filling in its shared objects.
+     */
+    private final class SharingInputStream extends ObjectInputStream {
+
+        /**
+         * Creates a new SharingInputStream.
+         *
+         * @param in - the stream to read from
+         * @throws IOException if the stream header can't be read
+         */
+        public SharingInputStream(final InputStream in) throws IOException {
+            super(in);
+            this.enableResolveObject(true);
+        }
+
+        /**
+         * Replaces references to shared objects with the objects.
+         *
+         * @param obj - the object read
+         * @return the object to use in its place
+         */
+        @Override
+        protected Object resolveObject(final Object obj) {
+            if (obj instanceof SharedReference) {
+                return shared.get(((SharedReference) obj).index);
+            }
+
+            return obj;
+        }
+
+    }
+
+}
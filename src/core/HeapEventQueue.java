@@ -0,0 +1,373 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+
+package core;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * An event queue backed by an indexed 4-ary heap.
+ * Event times and insertion order are kept in primitive arrays
+ * parallel to the events so comparisons never touch the events
+ * themselves. Each {@link AbstractEvent} records its position in the
+ * heap, so canceling an event is O(log n) instead of a linear search.
+ *
+ * Events with identical times are returned in the order they were added.
+ * Adding many events at once (e.g., one for every server) rebuilds the
+ * heap in linear time rather than sifting each event up.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public final class HeapEventQueue extends EventQueue {
+
+    /**
+     * The serialization id.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The number of children of each node of the heap. */
+    private static final int ARITY = 4;
+
+    /** log2 of the heap's arity. */
+    private static final int ARITY_SHIFT = 2;
+
+    /** The initial capacity of the heap. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** The events in the heap. */
+    private Event[] events;
+
+    /** The time of each event in the heap. */
+    private double[] times;
+
+    /** The order each event in the heap was added in (breaks ties). */
+    private long[] orders;
+
+    /** The number of events in the heap. */
+    private int size;
+
+    /**
+     * Creates a new HeapEventQueue.
+     */
+    public HeapEventQueue() {
+        this.events = new Event[INITIAL_CAPACITY];
+        this.times = new double[INITIAL_CAPACITY];
+        this.orders = new long[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+    /**
+     * Create a new, empty HeapEventQueue.
+     * @return the new queue
+     */
+    @Override
+    public EventQueue createEmptyQueue() {
+        return new HeapEventQueue();
+    }
+
+    /**
+     * Add an event to the heap.
+     * @param event - the event to add
+     * @param order - the order the event was added in
+     */
+    @Override
+    protected void insert(final Event event, final long order) {
+        if (this.size == this.events.length) {
+            this.resize(2 * this.events.length);
+        }
+        this.size++;
+        this.siftUp(this.size - 1, event, event.getTime(), order);
+    }
+
+    /**
+     * Add several events to the heap. If there are at least as many new
+     * events as old ones, they are appended and the heap is rebuilt
+     * bottom-up in linear time.
+     * @param newEvents - the events to add
+     * @param firstOrder - the order the first event was added in
+     */
+    @Override
+    protected void insertAll(final Collection<? extends Event> newEvents,
+                             final long firstOrder) {
+        int nNew = newEvents.size();
+        if (nNew < this.size) {
+            super.insertAll(newEvents, firstOrder);
+            return;
+        }
+
+        this.ensureCapacity(this.size + nNew);
+        long order = firstOrder;
+        Iterator<? extends Event> iter = newEvents.iterator();
+        while (iter.hasNext()) {
+            Event event = iter.next();
+            this.place(this.size, event, event.getTime(), order);
+            this.size++;
+            order++;
+        }
+        for (int i = (this.size - 2) >> ARITY_SHIFT; i >= 0; i--) {
+            this.siftDown(i, this.events[i], this.times[i], this.orders[i]);
+        }
+    }
+
+    /**
+     * Makes room for a number of events in the heap.
+     * @param capacity - the number of events to make room for
+     */
+    @Override
+    public void ensureCapacity(final int capacity) {
+        if (capacity > this.events.length) {
+            this.resize(Math.max(capacity, 2 * this.events.length));
+        }
+    }
+
+    /**
+     * Get and remove the first event of the heap.
+     * @return the first event or null if the heap is empty
+     */
+    @Override
+    protected Event removeFirst() {
+        if (this.size == 0) {
+            return null;
+        }
+        Event event = this.events[0];
+        this.removeAt(0);
+
+        return event;
+    }
+
+    /**
+     * Get the first event of the heap without removing it.
+     * @return the first event or null if the heap is empty
+     */
+    @Override
+    protected Event peekFirst() {
+        return this.events[0];
+    }
+
+    /**
+     * Get the order the first event of the heap was added in.
+     * @return the order the first event was added in
+     */
+    @Override
+    protected long peekFirstOrder() {
+        return this.orders[0];
+    }
+
+    /**
+     * Remove an event from the heap.
+     * @param event - the event to remove
+     * @return if the event was found and removed
+     */
+    @Override
+    protected boolean remove(final Event event) {
+        int index = this.indexOf(event);
+        if (index < 0) {
+            return false;
+        }
+        this.removeAt(index);
+
+        return true;
+    }
+
+    /**
+     * Get the number of events in the heap.
+     * @return the number of events in the heap
+     */
+    @Override
+    protected int mainSize() {
+        return this.size;
+    }
+
+    /**
+     * Find the position of an event in the heap.
+     * @param event - the event to find
+     * @return the position of the event or -1 if it is not in the heap
+     */
+    private int indexOf(final Event event) {
+        if (event instanceof AbstractEvent) {
+            int index = ((AbstractEvent) event).getQueueIndex();
+            if (index >= 0 && index < this.size
+                    && this.events[index] == event) {
+                return index;
+            }
+            return -1;
+        }
+
+        for (int i = 0; i < this.size; i++) {
+            if (this.events[i] == event) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Remove the event at a position in the heap.
+     * @param index - the position of the event to remove
+     */
+    private void removeAt(final int index) {
+        setIndex(this.events[index], -1);
+        this.size--;
+        int last = this.size;
+        if (index != last) {
+            Event event = this.events[last];
+            double time = this.times[last];
+            long order = this.orders[last];
+            this.events[last] = null;
+            if (index > 0 && precedes(time, order,
+                    this.times[(index - 1) >> ARITY_SHIFT],
+                    this.orders[(index - 1) >> ARITY_SHIFT])) {
+                this.siftUp(index, event, time, order);
+            } else {
+                this.siftDown(index, event, time, order);
+            }
+        } else {
+            this.events[last] = null;
+        }
+    }
+
+    /**
+     * Move an event up the heap from a position until its parent
+     * comes before it.
+     * @param startIndex - the (empty) position to start from
+     * @param event - the event to place
+     * @param time - the time of the event
+     * @param order - the order the event was added in
+     */
+    private void siftUp(final int startIndex, final Event event,
+                        final double time, final long order) {
+        int index = startIndex;
+        while (index > 0) {
+            int parent = (index - 1) >> ARITY_SHIFT;
+            if (!precedes(time, order, this.times[parent],
+                    this.orders[parent])) {
+                break;
+            }
+            this.place(index, this.events[parent], this.times[parent],
+                    this.orders[parent]);
+            index = parent;
+        }
+        this.place(index, event, time, order);
+    }
+
+    /**
+     * Move an event down the heap from a position until it comes
+     * before all its children.
+     * @param startIndex - the (empty) position to start from
+     * @param event - the event to place
+     * @param time - the time of the event
+     * @param order - the order the event was added in
+     */
+    private void siftDown(final int startIndex, final Event event,
+                          final double time, final long order) {
+        int index = startIndex;
+        while (true) {
+            int firstChild = (index << ARITY_SHIFT) + 1;
+            if (firstChild >= this.size) {
+                break;
+            }
+            int lastChild = Math.min(firstChild + ARITY, this.size);
+            int best = firstChild;
+            for (int child = firstChild + 1; child < lastChild; child++) {
+                if (precedes(this.times[child], this.orders[child],
+                        this.times[best], this.orders[best])) {
+                    best = child;
+                }
+            }
+            if (!precedes(this.times[best], this.orders[best], time, order)) {
+                break;
+            }
+            this.place(index, this.events[best], this.times[best],
+                    this.orders[best]);
+            index = best;
+        }
+        this.place(index, event, time, order);
+    }
+
+    /**
+     * Put an event at a position in the heap.
+     * @param index - the position
+     * @param event - the event
+     * @param time - the time of the event
+     * @param order - the order the event was added in
+     */
+    private void place(final int index, final Event event,
+                       final double time, final long order) {
+        this.events[index] = event;
+        this.times[index] = time;
+        this.orders[index] = order;
+        setIndex(event, index);
+    }
+
+    /**
+     * Change the capacity of the heap.
+     * @param capacity - the new capacity (at least the size of the heap)
+     */
+    private void resize(final int capacity) {
+        Event[] newEvents = new Event[capacity];
+        double[] newTimes = new double[capacity];
+        long[] newOrders = new long[capacity];
+        System.arraycopy(this.events, 0, newEvents, 0, this.size);
+        System.arraycopy(this.times, 0, newTimes, 0, this.size);
+        System.arraycopy(this.orders, 0, newOrders, 0, this.size);
+        this.events = newEvents;
+        this.times = newTimes;
+        this.orders = newOrders;
+    }
+
+    /**
+     * Checks if one event comes before another.
+     * @param time - the time of the first event
+     * @param order - the order the first event was added in
+     * @param otherTime - the time of the second event
+     * @param otherOrder - the order the second event was added in
+     * @return if the first event comes before the second
+     */
+    private static boolean precedes(final double time, final long order,
+                                    final double otherTime,
+                                    final long otherOrder) {
+        return time < otherTime || (time == otherTime && order < otherOrder);
+    }
+
+    /**
+     * Record the position of an event in the heap.
+     * @param event - the event
+     * @param index - the position of the event or -1 if it was removed
+     */
+    private static void setIndex(final Event event, final int index) {
+        if (event instanceof AbstractEvent) {
+            ((AbstractEvent) event).setQueueIndex(index);
+        }
+    }
+
+}
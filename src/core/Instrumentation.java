@@ -0,0 +1,430 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package core;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Measures how an experiment spends its time, per type of event:
+ * how many events are processed and canceled, how long processing takes
+ * and how many bytes it allocates, as well as how big the event queue
+ * gets and, in parallel runs, how many events each window holds and,
+ * in optimistic runs, how many states are saved to roll back to.
+ * Experiments only create one when asked to
+ * (see {@link Experiment#setInstrumented(boolean)}), so an experiment
+ * without instrumentation pays one null check per event.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public final class Instrumentation implements Serializable {
+
+    /**
+     * The serialization id.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Reports how many bytes threads allocate, or null if the JVM can't.
+     * Looking it up allocates, so it's only done once.
+     */
+    private static final com.sun.management.ThreadMXBean THREADS
+        = findThreadBean();
+
+    /** The measurements for each type of event. */
+    private HashMap<Class<?>, EventTypeMetrics> metrics;
+
+    /** The measurements for the last type of event seen. */
+    private transient EventTypeMetrics lastMetrics;
+
+    /** The largest the event queue has been. */
+    private int queueHighWaterMark;
+
+    /** The number of parallel windows simulated. */
+    private long nWindows;
+
+    /** The most events simulated in one parallel window. */
+    private long windowHighWaterMark;
+
+    /** The number of states saved to roll back to. */
+    private long nSavedStates;
+
+    /** The number of bytes the saved states took up in all. */
+    private long savedStateBytes;
+
+    /** The wall clock time (in nanoseconds) measurement started. */
+    private long startNanos;
+
+    /** The wall clock time (in nanoseconds) spent measuring. */
+    private long elapsedNanos;
+
+    /**
+     * Creates a new Instrumentation.
+     */
+    public Instrumentation() {
+        this.metrics = new HashMap<Class<?>, EventTypeMetrics>();
+        this.queueHighWaterMark = 0;
+        this.nWindows = 0;
+        this.windowHighWaterMark = 0;
+        this.nSavedStates = 0;
+        this.savedStateBytes = 0;
+        this.startNanos = 0;
+        this.elapsedNanos = 0;
+    }
+
+    /**
+     * Starts the wall clock used for event rates.
+     */
+    public void start() {
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Stops the wall clock used for event rates.
+     */
+    public void stop() {
+        this.elapsedNanos += System.nanoTime() - this.startNanos;
+    }
+
+    /**
+     * Processes an event, measuring how long it takes and how many
+     * bytes it allocates.
+     *
+     * @param event - the event to process
+     */
+    public void process(final Event event) {
+        EventTypeMetrics typeMetrics = this.getMetrics(event);
+        long startBytes = allocatedBytes();
+        long start = System.nanoTime();
+        event.process();
+        typeMetrics.nanos += System.nanoTime() - start;
+        typeMetrics.bytes += allocatedBytes() - startBytes;
+        typeMetrics.processed++;
+    }
+
+    /**
+     * Counts an event being canceled.
+     *
+     * @param event - the canceled event
+     */
+    public void countCancel(final Event event) {
+        this.getMetrics(event).canceled++;
+    }
+
+    /**
+     * Records the size of the event queue.
+     *
+     * @param size - the number of events in the queue
+     */
+    public void observeQueueSize(final int size) {
+        if (size > this.queueHighWaterMark) {
+            this.queueHighWaterMark = size;
+        }
+    }
+
+    /**
+     * Records a window of a parallel run
+     * (see {@link Experiment#setParallelWindow(double)}).
+     *
+     * @param nEvents - the number of events simulated in the window
+     */
+    public void observeWindow(final long nEvents) {
+        this.nWindows++;
+        if (nEvents > this.windowHighWaterMark) {
+            this.windowHighWaterMark = nEvents;
+        }
+    }
+
+    /**
+     * Records states saved to roll back to in an optimistic run
+     * (see {@link OptimisticEngine}).
+     *
+     * @param nStates - the number of states saved
+     * @param nBytes - the number of bytes the states took up in all
+     */
+    public void observeSavedStates(final long nStates, final long nBytes) {
+        this.nSavedStates += nStates;
+        this.savedStateBytes += nBytes;
+    }
+
+    /**
+     * Adds the measurements of another Instrumentation (e.g., from another
+     * thread) to this one. The high-water marks become the larger of
+     * the two and the wall clock isn't changed.
+     *
+     * @param other - the measurements to add
+     */
+    public void merge(final Instrumentation other) {
+        Iterator<Map.Entry<Class<?>, EventTypeMetrics>> iter
+            = other.metrics.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Class<?>, EventTypeMetrics> entry = iter.next();
+            EventTypeMetrics mine = this.metrics.get(entry.getKey());
+            if (mine == null) {
+                mine = new EventTypeMetrics(entry.getKey());
+                this.metrics.put(entry.getKey(), mine);
+            }
+            EventTypeMetrics theirs = entry.getValue();
+            mine.processed += theirs.processed;
+            mine.canceled += theirs.canceled;
+            mine.nanos += theirs.nanos;
+            mine.bytes += theirs.bytes;
+        }
+        this.observeQueueSize(other.queueHighWaterMark);
+        this.nWindows += other.nWindows;
+        this.windowHighWaterMark = Math.max(this.windowHighWaterMark,
+                other.windowHighWaterMark);
+        this.nSavedStates += other.nSavedStates;
+        this.savedStateBytes += other.savedStateBytes;
+    }
+
+    /**
+     * Gets the number of processed events of a type.
+     *
+     * @param eventType - the type of event
+     * @return the number of processed events of the type
+     */
+    public long getProcessed(final Class<?> eventType) {
+        EventTypeMetrics typeMetrics = this.metrics.get(eventType);
+        if (typeMetrics == null) {
+            return 0;
+        }
+
+        return typeMetrics.processed;
+    }
+
+    /**
+     * Gets the number of canceled events of a type.
+     *
+     * @param eventType - the type of event
+     * @return the number of canceled events of the type
+     */
+    public long getCanceled(final Class<?> eventType) {
+        EventTypeMetrics typeMetrics = this.metrics.get(eventType);
+        if (typeMetrics == null) {
+            return 0;
+        }
+
+        return typeMetrics.canceled;
+    }
+
+    /**
+     * Gets the largest the event queue has been.
+     *
+     * @return the largest the event queue has been
+     */
+    public int getQueueHighWaterMark() {
+        return this.queueHighWaterMark;
+    }
+
+    /**
+     * Gets the number of parallel windows simulated.
+     *
+     * @return the number of parallel windows simulated
+     */
+    public long getWindows() {
+        return this.nWindows;
+    }
+
+    /**
+     * Gets the most events simulated in one parallel window.
+     *
+     * @return the most events simulated in one parallel window
+     */
+    public long getWindowHighWaterMark() {
+        return this.windowHighWaterMark;
+    }
+
+    /**
+     * Gets the number of states saved to roll back to.
+     *
+     * @return the number of states saved to roll back to
+     */
+    public long getSavedStates() {
+        return this.nSavedStates;
+    }
+
+    /**
+     * Gets the number of bytes the states saved to roll back to
+     * took up in all.
+     *
+     * @return the number of bytes the saved states took up
+     */
+    public long getSavedStateBytes() {
+        return this.savedStateBytes;
+    }
+
+    /**
+     * Prints the measurements, busiest event type first.
+     */
+    public void printReport() {
+        long nProcessed = 0;
+        ArrayList<EventTypeMetrics> sorted
+            = new ArrayList<EventTypeMetrics>(this.metrics.values());
+        Iterator<EventTypeMetrics> iter = sorted.iterator();
+        while (iter.hasNext()) {
+            nProcessed += iter.next().processed;
+        }
+        Collections.sort(sorted, new Comparator<EventTypeMetrics>() {
+            public int compare(final EventTypeMetrics first,
+                               final EventTypeMetrics second) {
+                return Long.compare(second.processed, first.processed);
+            }
+        });
+
+        double seconds = this.elapsedNanos / NANOS_PER_SECOND;
+        System.out.println("Processed " + nProcessed + " events in "
+                + seconds + " seconds, event queue high-water mark "
+                + this.queueHighWaterMark);
+        if (this.nWindows > 0) {
+            System.out.println("Simulated " + this.nWindows
+                    + " parallel windows, at most "
+                    + this.windowHighWaterMark + " events in one");
+        }
+        if (this.nSavedStates > 0) {
+            System.out.println("Saved " + this.nSavedStates
+                    + " states to roll back to, " + this.savedStateBytes
+                    + " bytes in all");
+        }
+        iter = sorted.iterator();
+        while (iter.hasNext()) {
+            EventTypeMetrics typeMetrics = iter.next();
+            double perEvent = Math.max(typeMetrics.processed, 1);
+            System.out.println(typeMetrics.eventType.getSimpleName()
+                    + ": processed " + typeMetrics.processed
+                    + " (" + typeMetrics.processed / seconds + " per second)"
+                    + ", canceled " + typeMetrics.canceled
+                    + ", " + typeMetrics.nanos / perEvent + " ns"
+                    + " and " + typeMetrics.bytes / perEvent + " bytes"
+                    + " per event");
+        }
+    }
+
+    /**
+     * Gets the measurements for an event's type.
+     *
+     * @param event - the event
+     * @return the measurements for the event's type
+     */
+    private EventTypeMetrics getMetrics(final Event event) {
+        Class<?> eventType = event.getClass();
+        EventTypeMetrics typeMetrics = this.lastMetrics;
+        if (typeMetrics == null || typeMetrics.eventType != eventType) {
+            typeMetrics = this.metrics.get(eventType);
+            if (typeMetrics == null) {
+                typeMetrics = new EventTypeMetrics(eventType);
+                this.metrics.put(eventType, typeMetrics);
+            }
+            this.lastMetrics = typeMetrics;
+        }
+
+        return typeMetrics;
+    }
+
+    /**
+     * Gets the number of bytes the current thread has allocated, if the
+     * JVM can tell.
+     *
+     * @return the number of bytes allocated or 0 if unknown
+     */
+    private static long allocatedBytes() {
+        if (THREADS == null) {
+            return 0;
+        }
+
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Finds the bean that reports how many bytes threads allocate.
+     *
+     * @return the bean or null if the JVM doesn't have one
+     */
+    private static com.sun.management.ThreadMXBean findThreadBean() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return (com.sun.management.ThreadMXBean) threads;
+        }
+
+        return null;
+    }
+
+    /**
+     * The measurements for one type of event.
+     */
+    private static final class EventTypeMetrics implements Serializable {
+
+        /**
+         * The serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /** The type of event. */
+        private Class<?> eventType;
+
+        /** The number of events processed. */
+        private long processed;
+
+        /** The number of events canceled. */
+        private long canceled;
+
+        /** The time (in nanoseconds) spent processing events. */
+        private long nanos;
+
+        /** The bytes allocated while processing events. */
+        private long bytes;
+
+        /**
+         * Creates a new EventTypeMetrics.
+         *
+         * @param theEventType - the type of event
+         */
+        public EventTypeMetrics(final Class<?> theEventType) {
+            this.eventType = theEventType;
+            this.processed = 0;
+            this.canceled = 0;
+            this.nanos = 0;
+            this.bytes = 0;
+        }
+
+    }
+
+}
@@ -31,6 +31,10 @@
 
 package core;
 
+import java.io.Serializable;
+
+import datacenter.Server;
+
 /**
  * A job is the basic unit of work that servers process.
  * The amount of "work" they represent is quantified in seconds.
@@ -40,7 +44,12 @@ package core;
  *
  * @author David Meisner (meisner@umich.edu)
  */
-public class Job {
+public class Job implements Serializable {
+
+    /**
+     * The serialization id.
+     */
+    private static final long serialVersionUID = 1L;
 
     /**
      * When the job arrived in the system This variable should be set only once.
@@ -59,7 +68,8 @@ public class Job {
     private double finishTime;
 
     /**
-     * Every job has a unique monotonically increasing id.
+     * Every job has a monotonically increasing id,
+     * unique within its experiment.
      */
     private long jobId;
 
@@ -80,11 +90,6 @@ public class Job {
      */
     private double amountDelayed;
 
-    /**
-     * A static incrementing variable for creating job IDs.
-     */
-    private static long currentId;
-
 //    /**
 //     *
 //     */
@@ -101,18 +106,62 @@ public class Job {
      */
     private double lastResumeTime;
 
+    /**
+     * The server the job has been placed on,
+     * or null if the job isn't running on a server.
+     */
+    private Server server;
+
+    /**
+     * The index of the socket running the job within its server,
+     * or -1 if the job isn't running on a socket.
+     */
+    private int socketIndex;
+
+    /**
+     * The index of the core running the job within its socket,
+     * or -1 if the job isn't running on a core.
+     */
+    private int coreIndex;
+
     /**
      * Constructs a new job.
      * @param theJobSize - The size of the job in seconds.
+     * @param theJobId - The job's id, unique within its experiment
+     * (see {@link ExperimentContext#assignJobId()}).
      */
-    public Job(final double theJobSize) {
+    public Job(final double theJobSize, final long theJobId) {
         this.amountCompleted = 0.0;
         this.amountDelayed = 0.0;
         this.jobSize = theJobSize;
-        this.jobId = assignId();
+        this.jobId = theJobId;
 //        this.atLimit = false;
         this.jobFinishEvent = null;
         this.lastResumeTime = 0.0;
+        this.server = null;
+        this.socketIndex = -1;
+        this.coreIndex = -1;
+    }
+
+    /**
+     * Resets a recycled job so it is indistinguishable from a new job.
+     * The job gets a new id.
+     * @param theJobSize - The size of the job in seconds.
+     * @param theJobId - The job's new id.
+     */
+    final void reset(final double theJobSize, final long theJobId) {
+        this.arrivalTime = 0.0;
+        this.startTime = 0.0;
+        this.finishTime = 0.0;
+        this.amountCompleted = 0.0;
+        this.amountDelayed = 0.0;
+        this.jobSize = theJobSize;
+        this.jobId = theJobId;
+        this.jobFinishEvent = null;
+        this.lastResumeTime = 0.0;
+        this.server = null;
+        this.socketIndex = -1;
+        this.coreIndex = -1;
     }
 
 //    public void setAtLimit(boolean atLimit) {
@@ -155,17 +204,6 @@ public class Job {
         return this.amountCompleted;
     }
 
-    /**
-     * Assigns an id to this job.
-     * Increments the current id for future jobs.
-     * @return the id assigned to the calling job
-     */
-    private long assignId() {
-        long toReturn = Job.currentId;
-        Job.currentId++;
-        return toReturn;
-    }
-
     /**
      * Gets the job id of the job.
      * @return the job's job id
@@ -310,4 +348,53 @@ public class Job {
         return this.lastResumeTime;
     }
 
+    /**
+     * Sets where the job is running: its server and the index of
+     * the socket within the server.
+     * @param theServer - the server or null if the job isn't running
+     * on a server
+     * @param theSocketIndex - the index of the socket or -1 if the job
+     * isn't running on a socket
+     */
+    public final void setPlacement(final Server theServer,
+                                   final int theSocketIndex) {
+        this.server = theServer;
+        this.socketIndex = theSocketIndex;
+    }
+
+    /**
+     * Gets the server the job is running on.
+     * @return the server or null if the job isn't running on a server
+     */
+    public final Server getServer() {
+        return this.server;
+    }
+
+    /**
+     * Gets the index of the socket running the job within its server.
+     * @return the index of the socket or -1 if the job isn't
+     * running on a socket
+     */
+    public final int getSocketIndex() {
+        return this.socketIndex;
+    }
+
+    /**
+     * Sets the index of the core running the job within its socket.
+     * @param index - the index of the core or -1 if the job isn't
+     * running on a core
+     */
+    public final void setCoreIndex(final int index) {
+        this.coreIndex = index;
+    }
+
+    /**
+     * Gets the index of the core running the job within its socket.
+     * @return the index of the core or -1 if the job isn't
+     * running on a core
+     */
+    public final int getCoreIndex() {
+        return this.coreIndex;
+    }
+
 }
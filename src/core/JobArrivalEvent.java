@@ -66,6 +66,27 @@ public final class JobArrivalEvent extends JobEvent {
         this.server = aServer;
     }
 
+    /**
+     * Re-arms a recycled event.
+     * @param time - the time the job arrives
+     * @param job - the arriving job
+     * @param aServer - the server the job arrives at
+     */
+    void reset(final double time, final Job job, final Server aServer) {
+        this.rearm(time);
+        this.setJob(job);
+        this.server = aServer;
+    }
+
+    /**
+     * Get the server the event acts on.
+     * @return the server the event acts on
+     */
+    @Override
+    public Server getServer() {
+        return this.server;
+    }
+
     /**
      * Has the job arrive at a server.
      */
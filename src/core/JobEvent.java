@@ -72,4 +72,12 @@ public abstract class JobEvent extends AbstractEvent {
         return this.job;
     }
 
+    /**
+     * Sets the job the event is associated with (for recycled events).
+     * @param aJob - the job the event is associated with
+     */
+    final void setJob(final Job aJob) {
+        this.job = aJob;
+    }
+
 }
@@ -105,6 +105,38 @@ public final class JobFinishEvent extends JobEvent {
         this.finishingSpeed = theFinishSpeed;
     }
 
+    /**
+     * Re-arms a recycled event.
+     * @param time - the time the job finishes
+     * @param job - the finishing job
+     * @param aServer - the server the job finishes on
+     * @param theFinishTimeSet - the time the finish time was set
+     * @param theFinishSpeed - the speed the job is running at
+     */
+    void reset(final double time,
+               final Job job,
+               final Server aServer,
+               final double theFinishTimeSet,
+               final double theFinishSpeed) {
+        this.rearm(time);
+        this.setJob(job);
+        this.server = aServer;
+        if (job != null) {
+            job.setJobFinishEvent(this);
+        }
+        this.finishTimeSet = theFinishTimeSet;
+        this.finishingSpeed = theFinishSpeed;
+    }
+
+    /**
+     * Get the server the event acts on.
+     * @return the server the event acts on
+     */
+    @Override
+    public Server getServer() {
+        return this.server;
+    }
+
     /**
      * Get the speed at which the job finishes.
      * @return the finish speed
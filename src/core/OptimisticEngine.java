@@ -0,0 +1,1052 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import stat.RecordingStatisticsCollection;
+import stat.StatisticsCollection;
+import datacenter.DataCenter;
+import datacenter.JobDispatchEvent;
+import datacenter.JobDispatcher;
+import datacenter.Server;
+
+/**
+ * Runs the servers of an experiment whose jobs come from a
+ * {@link JobDispatcher} in parallel, using optimistic (Time Warp)
+ * synchronization.
+ *
+ * Every arrival from a dispatcher is an event not tied to a single
+ * server, so a conservative {@link ParallelEngine} synchronizes at each
+ * one. Instead, the coordinating thread runs the dispatcher a window
+ * ahead of the servers, turning its arrivals into messages for the
+ * logical processes the servers are partitioned into. Each logical
+ * process simulates its servers in its own copy of the experiment and
+ * doesn't wait for the arrivals of the window the dispatcher is still
+ * working on: it speculates that none of them are for its servers, up
+ * to the optimistic window past the arrivals it has. Before it
+ * speculates, it saves its state (a serialized copy of its part of the
+ * experiment). When the window's arrivals are delivered, a logical
+ * process that has simulated past one of them (a straggler) rolls back
+ * to its saved state, throws away the samples recorded since and
+ * simulates forward again with the new arrivals.
+ *
+ * Global virtual time is the end of the last window of arrivals
+ * delivered: no message can arrive before it, so nothing before it is
+ * ever rolled back. Once the logical processes have simulated up to it,
+ * the events before it are committed: their recorded samples are
+ * replayed into the experiment's statistics in time order, checking if
+ * the experiment should halt after each event, and arrivals that
+ * can no longer be simulated again are thrown away.
+ *
+ * The servers only receive messages, so a rollback never has to cancel
+ * messages it sent (with anti-messages) and the dispatcher never rolls
+ * back. That requires a router that doesn't look at the servers' state
+ * (see {@link datacenter.JobRouter#readsServerState()}), and no other
+ * events that aren't tied to a single server (e.g., power capping).
+ *
+ * A saved state is the whole of a logical process' part of the
+ * experiment rather than only the servers that changed since the last
+ * save: its servers, jobs and events refer to each other and to the
+ * experiment, so they're serialized together. What a logical process
+ * never changes isn't saved (its own statistics, and the dispatcher,
+ * which it doesn't get a copy of), and a logical process saves at most
+ * once per window of arrivals, just before it first speculates, so
+ * saving costs one copy of its servers per window rather than per event
+ * (see {@link Instrumentation#getSavedStates()}).
+ *
+ * Rolling back and simulating again reproduces the same events, so with
+ * the same seed and random substreams, an optimistic run is identical to
+ * a sequential run as long as no two events happen at the same time
+ * (e.g., with a coarse tick clock). A logical process simulates its own
+ * events before an arrival at the same time, which a sequential run may
+ * not. Speculating pays off when each logical process gets few arrivals
+ * per optimistic window; otherwise most of it is rolled back.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public final class OptimisticEngine {
+
+    /** The initial capacity of the logs of uncommitted events. */
+    private static final int INITIAL_LOG_CAPACITY = 1024;
+
+    /** The experiment being run. */
+    private Experiment experiment;
+
+    /** The experiment's queue, which holds the dispatcher's arrivals. */
+    private EventQueue globalQueue;
+
+    /** Generates the jobs and picks the servers they're sent to. */
+    private JobDispatcher dispatcher;
+
+    /** The index of each of the experiment's servers. */
+    private IdentityHashMap<Server, Integer> serverIndices;
+
+    /** The logical process each server (by index) belongs to. */
+    private int[] serverProcesses;
+
+    /** The position of each server (by index) in its logical process. */
+    private int[] serverSlots;
+
+    /** The logical processes the servers are partitioned into. */
+    private LogicalProcess[] processes;
+
+    /** The amount of simulated time the dispatcher works on at a time. */
+    private double window;
+
+    /**
+     * How far the logical processes simulate past the arrivals they have
+     * been sent.
+     */
+    private double optimism;
+
+    /**
+     * The time before which all arrivals have been delivered
+     * (global virtual time).
+     */
+    private double horizon;
+
+    /** The arrivals generated for the next window. */
+    private ArrayList<Arrival> outbox;
+
+    /** Records the samples the dispatcher adds. */
+    private RecordingStatisticsCollection dispatchStats;
+
+    /** The number of uncommitted arrivals generated by the dispatcher. */
+    private int dispatchLogSize;
+
+    /** The time of each uncommitted arrival. */
+    private double[] dispatchTimes;
+
+    /** The number of samples recorded once each arrival was generated. */
+    private int[] dispatchSampleEnds;
+
+    /** The number of arrivals the dispatcher has generated. */
+    private long nDispatches;
+
+    /** The number of times a logical process has rolled back. */
+    private long nRollbacks;
+
+    /** The number of events simulated and then rolled back. */
+    private long nRolledBack;
+
+    /** The threads simulating the logical processes. */
+    private ExecutorService executor;
+
+    /**
+     * Creates a new OptimisticEngine, giving each logical process its own
+     * copy of the (initialized) experiment.
+     *
+     * @param anExperiment - the experiment being run
+     * @param theGlobalQueue - the experiment's event queue
+     * @param dataCenter - the data center whose servers are partitioned
+     * @param nThreads - the number of worker threads
+     * @param theWindow - the amount of simulated time the dispatcher
+     * works on at a time
+     * @param theOptimism - how far the logical processes simulate past
+     * the arrivals they have been sent
+     */
+    public OptimisticEngine(final Experiment anExperiment,
+                            final EventQueue theGlobalQueue,
+                            final DataCenter dataCenter,
+                            final int nThreads,
+                            final double theWindow,
+                            final double theOptimism) {
+        if (nThreads < 1) {
+            Sim.fatalError("Need at least one thread, not " + nThreads);
+        }
+        if (!(theWindow > 0.0)) {
+            Sim.fatalError("The parallel window must be positive, not "
+                    + theWindow);
+        }
+        if (!(theOptimism >= 0.0)) {
+            Sim.fatalError("The optimistic window can't be " + theOptimism);
+        }
+        this.dispatcher = dataCenter.getJobDispatcher();
+        if (this.dispatcher == null) {
+            Sim.fatalError("Optimistic runs need a job dispatcher");
+        }
+        if (this.dispatcher.getRouter().readsServerState()) {
+            Sim.fatalError("Optimistic runs route jobs ahead of the servers,"
+                    + " so a " + this.dispatcher.getRouter().getClass()
+                    .getName() + " can't look at their state");
+        }
+        this.experiment = anExperiment;
+        this.globalQueue = theGlobalQueue;
+        this.window = theWindow;
+        this.optimism = theOptimism;
+        this.horizon = anExperiment.getCurrentTime();
+        this.checkGlobalEvents();
+
+        Vector<Server> servers = dataCenter.getServers();
+        int nProcesses = Math.max(1, Math.min(nThreads, servers.size()));
+        this.serverIndices = new IdentityHashMap<Server, Integer>();
+        this.serverProcesses = new int[servers.size()];
+        this.serverSlots = new int[servers.size()];
+        for (int i = 0; i < servers.size(); i++) {
+            this.serverIndices.put(servers.get(i), i);
+            this.serverProcesses[i] = i % nProcesses;
+            this.serverSlots[i] = i / nProcesses;
+        }
+
+        StatisticsCollection stats = anExperiment.getOutput().getStats();
+        ExperimentCopier copier = new ExperimentCopier(anExperiment);
+        this.processes = new LogicalProcess[nProcesses];
+        for (int i = 0; i < nProcesses; i++) {
+            this.processes[i] = new LogicalProcess(i, copier.copy(), stats);
+        }
+        this.outbox = new ArrayList<Arrival>();
+        this.dispatchStats = new RecordingStatisticsCollection(stats);
+        this.dispatchLogSize = 0;
+        this.dispatchTimes = new double[INITIAL_LOG_CAPACITY];
+        this.dispatchSampleEnds = new int[INITIAL_LOG_CAPACITY];
+        this.nDispatches = 0;
+        this.nRollbacks = 0;
+        this.nRolledBack = 0;
+
+        this.executor = Executors.newFixedThreadPool(nProcesses,
+                new ThreadFactory() {
+                    public Thread newThread(final Runnable runnable) {
+                        Thread thread = new Thread(runnable);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Makes sure the only events in the experiment's queue are the
+     * dispatcher's arrivals, leaving them in the same order.
+     */
+    private void checkGlobalEvents() {
+        ArrayList<Event> events = new ArrayList<Event>();
+        Event event = this.globalQueue.nextEvent();
+        while (event != null) {
+            if (!(event instanceof JobDispatchEvent)) {
+                Sim.fatalError("Optimistic runs can only start with the"
+                        + " dispatcher's arrivals scheduled, not a "
+                        + event.getClass().getName()
+                        + " (e.g., from power capping or a run that's"
+                        + " already underway)");
+            }
+            events.add(event);
+            event = this.globalQueue.nextEvent();
+        }
+        Iterator<Event> iter = events.iterator();
+        while (iter.hasNext()) {
+            this.globalQueue.addEvent(iter.next());
+        }
+    }
+
+    /**
+     * Runs the experiment until it halts.
+     */
+    public void run() {
+        this.experiment.setRecordingStats(this.dispatchStats);
+        try {
+            // The dispatcher starts a window ahead
+            double generated = this.horizon + this.window;
+            this.generate(generated);
+            while (!this.experiment.isStopped()) {
+                this.deliver(generated);
+                generated = this.horizon + this.window;
+                this.simulate(generated);
+                if (this.commit()) {
+                    break;
+                }
+                this.experiment.addProcessedEvents(0, this.horizon);
+                if (this.experiment.isOverBudget()) {
+                    break;
+                }
+            }
+        } finally {
+            this.experiment.setRecordingStats(null);
+            this.shutdown();
+        }
+    }
+
+    /**
+     * Has the dispatcher generate the arrivals before a time, recording
+     * its samples and adding the arrivals to the outbox.
+     *
+     * @param end - the time to generate arrivals up to
+     */
+    private void generate(final double end) {
+        Event next = this.globalQueue.peekEvent();
+        while (next != null && next.getTime() < end) {
+            Event event = this.globalQueue.nextEvent();
+            if (!(event instanceof JobDispatchEvent)) {
+                Sim.fatalError("Optimistic runs can only have arrivals"
+                        + " outside the servers, not a "
+                        + event.getClass().getName());
+            }
+            Job job = ((JobDispatchEvent) event).getJob();
+            double time = event.getTime();
+            this.dispatchStats.setClock(time, this.nDispatches);
+            Server server = this.dispatcher.route(time, job);
+            this.logDispatch(time);
+            this.outbox.add(new Arrival(time, job.getSize(),
+                    this.serverIndices.get(server)));
+            this.nDispatches++;
+            next = this.globalQueue.peekEvent();
+        }
+    }
+
+    /**
+     * Adds an arrival the dispatcher just generated to its log.
+     *
+     * @param time - the time of the arrival
+     */
+    private void logDispatch(final double time) {
+        if (this.dispatchLogSize == this.dispatchTimes.length) {
+            int capacity = 2 * this.dispatchTimes.length;
+            double[] newTimes = new double[capacity];
+            int[] newSampleEnds = new int[capacity];
+            System.arraycopy(this.dispatchTimes, 0, newTimes, 0,
+                    this.dispatchLogSize);
+            System.arraycopy(this.dispatchSampleEnds, 0, newSampleEnds, 0,
+                    this.dispatchLogSize);
+            this.dispatchTimes = newTimes;
+            this.dispatchSampleEnds = newSampleEnds;
+        }
+        this.dispatchTimes[this.dispatchLogSize] = time;
+        this.dispatchSampleEnds[this.dispatchLogSize]
+            = this.dispatchStats.size();
+        this.dispatchLogSize++;
+    }
+
+    /**
+     * Delivers the arrivals in the outbox to their logical processes,
+     * rolling back the ones that have simulated past an arrival, and
+     * advances global virtual time.
+     *
+     * @param newHorizon - the time before which all arrivals have now
+     * been generated
+     */
+    private void deliver(final double newHorizon) {
+        double[] earliest = new double[this.processes.length];
+        for (int i = 0; i < earliest.length; i++) {
+            earliest[i] = Double.POSITIVE_INFINITY;
+        }
+        Iterator<Arrival> iter = this.outbox.iterator();
+        while (iter.hasNext()) {
+            Arrival arrival = iter.next();
+            int process = this.serverProcesses[arrival.server];
+            this.processes[process].inputs.add(arrival);
+            earliest[process] = Math.min(earliest[process], arrival.time);
+        }
+        this.outbox.clear();
+        for (int i = 0; i < this.processes.length; i++) {
+            if (earliest[i] < this.processes[i].lastTime) {
+                this.processes[i].rollback();
+            }
+        }
+        this.horizon = newHorizon;
+    }
+
+    /**
+     * Simulates every logical process up to the optimistic window past
+     * global virtual time while the dispatcher generates the next window
+     * of arrivals.
+     *
+     * @param generateEnd - the time to generate arrivals up to
+     */
+    private void simulate(final double generateEnd) {
+        List<Future<Long>> results = new ArrayList<Future<Long>>();
+        for (int i = 0; i < this.processes.length; i++) {
+            this.processes[i].end = this.horizon + this.optimism;
+            results.add(this.executor.submit(this.processes[i]));
+        }
+        this.generate(generateEnd);
+        try {
+            Iterator<Future<Long>> iter = results.iterator();
+            while (iter.hasNext()) {
+                iter.next().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Sim.fatalError("Interrupted while simulating a window");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            Sim.fatalError("Logical process failed: " + e.getCause());
+        }
+    }
+
+    /**
+     * Commits the events before global virtual time: merges the
+     * dispatcher's and the logical processes' events in time order,
+     * replaying the samples each recorded into the experiment's
+     * statistics and checking if the experiment should halt (or has
+     * reached its event limit) after each.
+     *
+     * @return if the experiment should halt
+     */
+    private boolean commit() {
+        int nSources = this.processes.length + 1;
+        int[] positions = new int[nSources];
+        int[] heap = new int[nSources];
+        int heapSize = 0;
+        for (int i = 0; i < nSources; i++) {
+            if (this.isCommittable(i, 0)) {
+                heap[heapSize] = i;
+                heapSize++;
+            }
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            this.siftDown(heap, heapSize, i, positions);
+        }
+
+        boolean halted = false;
+        while (!halted && heapSize > 0) {
+            int best = heap[0];
+            int index = positions[best];
+            if (best == this.processes.length) {
+                // The dispatcher's part of an arrival; the server's part
+                // comes next, so the experiment can't halt in between
+                int sample = 0;
+                if (index > 0) {
+                    sample = this.dispatchSampleEnds[index - 1];
+                }
+                while (sample < this.dispatchSampleEnds[index]) {
+                    this.dispatchStats.replay(sample);
+                    sample++;
+                }
+                this.experiment.addProcessedEvents(1,
+                        this.dispatchTimes[index]);
+            } else {
+                halted = this.processes[best].commit(index);
+            }
+
+            positions[best] = index + 1;
+            if (!this.isCommittable(best, index + 1)) {
+                heapSize--;
+                heap[0] = heap[heapSize];
+            }
+            this.siftDown(heap, heapSize, 0, positions);
+        }
+
+        for (int i = 0; i < this.processes.length; i++) {
+            this.processes[i].forgetCommitted(positions[i]);
+        }
+        this.forgetCommittedDispatches(positions[this.processes.length]);
+
+        return halted;
+    }
+
+    /**
+     * Checks if an uncommitted event of the dispatcher or a logical
+     * process can be committed.
+     *
+     * @param source - the index of the logical process,
+     * or the number of logical processes for the dispatcher
+     * @param index - the index of the event in its log
+     * @return if the event exists and happens before global virtual time
+     */
+    private boolean isCommittable(final int source, final int index) {
+        if (source == this.processes.length) {
+            return index < this.dispatchLogSize
+                && this.dispatchTimes[index] < this.horizon;
+        }
+        LogicalProcess process = this.processes[source];
+
+        return index < process.logSize
+            && process.logTimes[index] < this.horizon;
+    }
+
+    /**
+     * Gets the time of an uncommitted event of the dispatcher or
+     * a logical process.
+     *
+     * @param source - the index of the logical process,
+     * or the number of logical processes for the dispatcher
+     * @param index - the index of the event in its log
+     * @return the time of the event
+     */
+    private double getLogTime(final int source, final int index) {
+        if (source == this.processes.length) {
+            return this.dispatchTimes[index];
+        }
+
+        return this.processes[source].logTimes[index];
+    }
+
+    /**
+     * Restores the order of a heap of the dispatcher and the logical
+     * processes, ordered by their next event to commit. At the same time,
+     * the dispatcher goes first, then the logical processes in order.
+     *
+     * @param heap - the indices of the sources
+     * @param heapSize - the number of sources in the heap
+     * @param start - the position to sift down from
+     * @param positions - the next event of each source
+     */
+    private void siftDown(final int[] heap,
+                          final int heapSize,
+                          final int start,
+                          final int[] positions) {
+        int position = start;
+        int source = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize
+                    && this.precedes(heap[child + 1], heap[child],
+                                     positions)) {
+                child++;
+            }
+            if (!this.precedes(heap[child], source, positions)) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = source;
+    }
+
+    /**
+     * Checks if the next event of one source comes before the next one
+     * of another.
+     *
+     * @param first - the index of the first source
+     * @param second - the index of the second source
+     * @param positions - the next event of each source
+     * @return if the first source's event comes first
+     */
+    private boolean precedes(final int first,
+                             final int second,
+                             final int[] positions) {
+        double firstTime = this.getLogTime(first, positions[first]);
+        double secondTime = this.getLogTime(second, positions[second]);
+        if (firstTime != secondTime) {
+            return firstTime < secondTime;
+        }
+        int dispatcherIndex = this.processes.length;
+        if (first == dispatcherIndex || second == dispatcherIndex) {
+            return first == dispatcherIndex;
+        }
+
+        return first < second;
+    }
+
+    /**
+     * Forgets the committed arrivals of the dispatcher and their samples.
+     *
+     * @param count - the number of committed arrivals
+     */
+    private void forgetCommittedDispatches(final int count) {
+        if (count == 0) {
+            return;
+        }
+        int samples = this.dispatchSampleEnds[count - 1];
+        this.dispatchStats.discard(samples);
+        int remaining = this.dispatchLogSize - count;
+        System.arraycopy(this.dispatchTimes, count, this.dispatchTimes, 0,
+                remaining);
+        System.arraycopy(this.dispatchSampleEnds, count,
+                this.dispatchSampleEnds, 0, remaining);
+        for (int i = 0; i < remaining; i++) {
+            this.dispatchSampleEnds[i] -= samples;
+        }
+        this.dispatchLogSize = remaining;
+    }
+
+    /**
+     * Stops the worker threads and reports how much was rolled back.
+     */
+    private void shutdown() {
+        this.executor.shutdownNow();
+        Instrumentation instrumentation = this.experiment.getInstrumentation();
+        for (int i = 0; i < this.processes.length; i++) {
+            Instrumentation processInstrumentation
+                = this.processes[i].replica.getInstrumentation();
+            if (instrumentation != null && processInstrumentation != null) {
+                instrumentation.merge(processInstrumentation);
+            }
+            if (instrumentation != null) {
+                instrumentation.observeSavedStates(this.processes[i].nSaves,
+                        this.processes[i].nSavedBytes);
+            }
+        }
+        this.experiment.getContext().debug(Experiment.STATUS_DEBUG_LEVEL,
+                "Rolled back " + this.nRollbacks + " times,"
+                + " simulating " + this.nRolledBack + " events again");
+    }
+
+    /**
+     * Checks if an event isn't tied to a single server.
+     *
+     * @param event - the event to check
+     * @return if the event isn't tied to a server
+     */
+    private static boolean isGlobal(final Event event) {
+        return !(event instanceof AbstractEvent)
+                || ((AbstractEvent) event).getServer() == null;
+    }
+
+    /**
+     * A job the dispatcher sent to a server.
+     */
+    private static final class Arrival {
+
+        /** The time the job arrives. */
+        private double time;
+
+        /** The size of the job. */
+        private double size;
+
+        /** The index of the server the job is sent to. */
+        private int server;
+
+        /**
+         * Creates a new Arrival.
+         *
+         * @param theTime - the time the job arrives
+         * @param theSize - the size of the job
+         * @param theServer - the index of the server the job is sent to
+         */
+        private Arrival(final double theTime,
+                        final double theSize,
+                        final int theServer) {
+            this.time = theTime;
+            this.size = theSize;
+            this.server = theServer;
+        }
+
+    }
+
+    /**
+     * The state of a logical process saved before it speculates.
+     */
+    private static final class SavedState {
+
+        /** Copies the logical process' part of the experiment. */
+        private ExperimentCopier copier;
+
+        /** The number of events the logical process had simulated. */
+        private long nProcessed;
+
+        /** The index of the next arrival it had to simulate. */
+        private long nextInput;
+
+        /** The time of the last event it had simulated. */
+        private double lastTime;
+
+        /**
+         * Creates a new SavedState.
+         *
+         * @param theCopier - copies the logical process' part of
+         * the experiment
+         * @param theNProcessed - the number of events simulated
+         * @param theNextInput - the index of the next arrival to simulate
+         * @param theLastTime - the time of the last event simulated
+         */
+        private SavedState(final ExperimentCopier theCopier,
+                           final long theNProcessed,
+                           final long theNextInput,
+                           final double theLastTime) {
+            this.copier = theCopier;
+            this.nProcessed = theNProcessed;
+            this.nextInput = theNextInput;
+            this.lastTime = theLastTime;
+        }
+
+    }
+
+    /**
+     * A partition of the servers, simulated in its own copy of the
+     * experiment by one thread at a time.
+     */
+    private final class LogicalProcess implements Callable<Long> {
+
+        /** The index of the logical process. */
+        private int index;
+
+        /**
+         * The logical process' copy of the experiment, whose data center
+         * only has the logical process' servers.
+         */
+        private Experiment replica;
+
+        /** The servers of the copy. */
+        private Vector<Server> servers;
+
+        /** The copy's own statistics, which it doesn't add samples to. */
+        private StatisticsCollection unusedStats;
+
+        /** Records the samples added by the logical process' events. */
+        private RecordingStatisticsCollection stats;
+
+        /** The arrivals sent to the logical process' servers. */
+        private ArrayList<Arrival> inputs;
+
+        /** The index of the first arrival in the list of arrivals. */
+        private long inputBase;
+
+        /** The index of the next arrival to simulate. */
+        private long nextInput;
+
+        /** The time to simulate up to. */
+        private double end;
+
+        /** The time of the last event simulated. */
+        private double lastTime;
+
+        /**
+         * The number of events simulated, which is also the id of the
+         * next one (simulating an event again gives it the same id).
+         */
+        private long nProcessed;
+
+        /** The id of the first uncommitted event. */
+        private long logBase;
+
+        /** The number of uncommitted events. */
+        private int logSize;
+
+        /** The time of each uncommitted event. */
+        private double[] logTimes;
+
+        /** If each uncommitted event is an arrival. */
+        private boolean[] logArrivals;
+
+        /** The number of samples recorded once each event was simulated. */
+        private int[] logSampleEnds;
+
+        /**
+         * The id of the event after which the copy became unstable,
+         * or -1 if it hasn't.
+         */
+        private long unstableEvent;
+
+        /** The state to roll back to, or null if none was saved. */
+        private SavedState saved;
+
+        /** The number of states saved. */
+        private long nSaves;
+
+        /** The number of bytes the saved states took up in all. */
+        private long nSavedBytes;
+
+        /**
+         * Creates a new LogicalProcess.
+         *
+         * @param theIndex - the index of the logical process
+         * @param copy - a copy of the initialized experiment
+         * @param targetStats - the statistics recorded samples are
+         * replayed into
+         */
+        public LogicalProcess(final int theIndex,
+                              final Experiment copy,
+                              final StatisticsCollection targetStats) {
+            this.index = theIndex;
+            this.stats = new RecordingStatisticsCollection(targetStats);
+            this.replica = copy;
+            this.replica.prepareCopy(this.stats);
+            this.unusedStats = copy.getOutput().getStats();
+
+            // The dispatcher's next arrival stays with the coordinator
+            EventQueue queue = copy.getEventQueue();
+            while (queue.nextEvent() != null) {
+                continue;
+            }
+            // and the other servers with other logical processes
+            this.servers = copy.getInput().getDataCenter().getServers();
+            Vector<Server> own = new Vector<Server>();
+            for (int i = 0; i < this.servers.size(); i++) {
+                if (serverProcesses[i] == theIndex) {
+                    own.add(this.servers.get(i));
+                }
+            }
+            this.servers.clear();
+            this.servers.addAll(own);
+            // The coordinator runs the dispatcher, so it isn't saved
+            copy.getInput().getDataCenter().setJobDispatcher(null);
+
+            this.inputs = new ArrayList<Arrival>();
+            this.inputBase = 0;
+            this.nextInput = 0;
+            this.end = Double.NEGATIVE_INFINITY;
+            this.lastTime = Double.NEGATIVE_INFINITY;
+            this.nProcessed = 0;
+            this.logBase = 0;
+            this.logSize = 0;
+            this.logTimes = new double[INITIAL_LOG_CAPACITY];
+            this.logArrivals = new boolean[INITIAL_LOG_CAPACITY];
+            this.logSampleEnds = new int[INITIAL_LOG_CAPACITY];
+            this.unstableEvent = -1;
+            this.saved = null;
+            this.nSaves = 0;
+            this.nSavedBytes = 0;
+        }
+
+        /**
+         * Simulates the logical process' events and arrivals up to
+         * the end of its window, saving its state before it speculates
+         * past global virtual time.
+         *
+         * @return the number of events simulated
+         */
+        public Long call() {
+            long processed = 0;
+            EventQueue queue = this.replica.getEventQueue();
+            while (this.unstableEvent < 0) {
+                Event local = queue.peekEvent();
+                Arrival arrival = null;
+                if (this.nextInput - this.inputBase < this.inputs.size()) {
+                    arrival = this.inputs.get(
+                            (int) (this.nextInput - this.inputBase));
+                }
+                // Events go before arrivals at the same time
+                boolean isArrival = arrival != null
+                    && (local == null || arrival.time < local.getTime());
+                double time;
+                if (isArrival) {
+                    time = arrival.time;
+                } else if (local != null) {
+                    time = local.getTime();
+                } else {
+                    break;
+                }
+                if (!(time < this.end)) {
+                    break;
+                }
+                if (time >= horizon && this.lastTime < horizon) {
+                    this.saveState();
+                    queue = this.replica.getEventQueue();
+                }
+
+                int sampleStart = this.stats.size();
+                this.stats.setClock(time, this.nProcessed);
+                if (isArrival) {
+                    this.nextInput++;
+                    this.receive(arrival);
+                } else {
+                    Event event = queue.nextEvent();
+                    if (isGlobal(event)) {
+                        Sim.fatalError("Optimistic runs can only have"
+                                + " arrivals outside the servers, not a "
+                                + event.getClass().getName());
+                    }
+                    this.replica.processEvent(event);
+                }
+                this.lastTime = time;
+                if (this.nProcessed < this.logBase) {
+                    // Simulating an already committed event again
+                    this.stats.truncate(sampleStart);
+                } else {
+                    this.log(time, isArrival);
+                }
+                if (this.replica.getInstabilityReason() != null) {
+                    this.unstableEvent = this.nProcessed;
+                }
+                this.nProcessed++;
+                processed++;
+            }
+
+            return processed;
+        }
+
+        /**
+         * Sends an arriving job to its server in the copy.
+         *
+         * @param arrival - the arrival
+         */
+        private void receive(final Arrival arrival) {
+            Server server = this.servers.get(serverSlots[arrival.server]);
+            Job job = this.replica.getEventPool().createJob(arrival.size);
+            this.replica.addProcessedEvents(0, arrival.time);
+            server.insertJob(arrival.time, job);
+            job.markArrival(arrival.time);
+        }
+
+        /**
+         * Adds an event that was just simulated to the log.
+         *
+         * @param time - the time of the event
+         * @param isArrival - if the event was an arrival
+         */
+        private void log(final double time, final boolean isArrival) {
+            if (this.logSize == this.logTimes.length) {
+                int capacity = 2 * this.logTimes.length;
+                double[] newTimes = new double[capacity];
+                boolean[] newArrivals = new boolean[capacity];
+                int[] newSampleEnds = new int[capacity];
+                System.arraycopy(this.logTimes, 0, newTimes, 0, this.logSize);
+                System.arraycopy(this.logArrivals, 0, newArrivals, 0,
+                        this.logSize);
+                System.arraycopy(this.logSampleEnds, 0, newSampleEnds, 0,
+                        this.logSize);
+                this.logTimes = newTimes;
+                this.logArrivals = newArrivals;
+                this.logSampleEnds = newSampleEnds;
+            }
+            this.logTimes[this.logSize] = time;
+            this.logArrivals[this.logSize] = isArrival;
+            this.logSampleEnds[this.logSize] = this.stats.size();
+            this.logSize++;
+        }
+
+        /**
+         * Saves the logical process' state, replacing the one saved before.
+         * The copy is serialized right away, so rolling back gets it as it
+         * is now, except for its own statistics, which it doesn't use.
+         */
+        private void saveState() {
+            ExperimentCopier copier
+                = new ExperimentCopier(this.replica, this.unusedStats);
+            this.saved = new SavedState(copier, this.nProcessed,
+                    this.nextInput, this.lastTime);
+            this.nSaves++;
+            this.nSavedBytes += copier.getSize();
+        }
+
+        /**
+         * Rolls the logical process back to its saved state, throwing
+         * away the samples recorded since.
+         */
+        private void rollback() {
+            if (this.saved == null) {
+                Sim.fatalError(this + " has to roll back without a saved"
+                        + " state");
+            }
+            nRollbacks++;
+            nRolledBack += this.nProcessed - this.saved.nProcessed;
+            this.replica = this.saved.copier.copy();
+            this.replica.prepareCopy(this.stats);
+            this.servers = this.replica.getInput().getDataCenter()
+                    .getServers();
+            this.nProcessed = this.saved.nProcessed;
+            this.nextInput = this.saved.nextInput;
+            this.lastTime = this.saved.lastTime;
+            this.unstableEvent = -1;
+
+            int kept = (int) Math.max(0, this.nProcessed - this.logBase);
+            this.logSize = kept;
+            if (kept == 0) {
+                this.stats.truncate(0);
+            } else {
+                this.stats.truncate(this.logSampleEnds[kept - 1]);
+            }
+        }
+
+        /**
+         * Commits one of the logical process' events, replaying its
+         * samples into the experiment's statistics.
+         *
+         * @param logIndex - the index of the event in the log
+         * @return if the experiment should halt
+         */
+        private boolean commit(final int logIndex) {
+            int sample = 0;
+            if (logIndex > 0) {
+                sample = this.logSampleEnds[logIndex - 1];
+            }
+            while (sample < this.logSampleEnds[logIndex]) {
+                this.stats.replay(sample);
+                sample++;
+            }
+            // An arrival was counted with the dispatcher's part of it
+            long nEvents = 1;
+            if (this.logArrivals[logIndex]) {
+                nEvents = 0;
+            }
+            experiment.addProcessedEvents(nEvents, this.logTimes[logIndex]);
+            if (this.unstableEvent == this.logBase + logIndex) {
+                experiment.markUnstable(
+                        this.replica.getInstabilityReason());
+                return true;
+            }
+
+            return experiment.isHalted() || experiment.isOverEventLimit();
+        }
+
+        /**
+         * Forgets the committed events and their samples, and the
+         * arrivals that can't be simulated again.
+         *
+         * @param count - the number of committed events
+         */
+        private void forgetCommitted(final int count) {
+            if (count > 0) {
+                int samples = this.logSampleEnds[count - 1];
+                this.stats.discard(samples);
+                int remaining = this.logSize - count;
+                System.arraycopy(this.logTimes, count, this.logTimes, 0,
+                        remaining);
+                System.arraycopy(this.logArrivals, count, this.logArrivals,
+                        0, remaining);
+                System.arraycopy(this.logSampleEnds, count,
+                        this.logSampleEnds, 0, remaining);
+                for (int i = 0; i < remaining; i++) {
+                    this.logSampleEnds[i] -= samples;
+                }
+                this.logSize = remaining;
+                this.logBase += count;
+            }
+
+            long needed = this.nextInput;
+            if (this.saved != null) {
+                needed = Math.min(needed, this.saved.nextInput);
+            }
+            int obsolete = (int) (needed - this.inputBase);
+            if (obsolete > 0) {
+                this.inputs.subList(0, obsolete).clear();
+                this.inputBase = needed;
+            }
+        }
+
+        /**
+         * Gets a description of the logical process.
+         *
+         * @return a description of the logical process
+         */
+        @Override
+        public String toString() {
+            return "LogicalProcess " + this.index;
+        }
+
+    }
+
+}
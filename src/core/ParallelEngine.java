@@ -0,0 +1,1250 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import stat.RecordingStatisticsCollection;
+import stat.Statistic;
+import stat.StatisticsCollection;
+import stat.TimeWeightedStatistic;
+import datacenter.Server;
+
+/**
+ * Runs an experiment's servers in parallel, using conservative
+ * synchronization.
+ *
+ * The servers are partitioned into logical processes, each with its own
+ * event queue, event pool and (recorded) statistics, which are simulated
+ * by worker threads. Events that aren't tied to a single server
+ * (see {@link AbstractEvent#getServer()}), such as power cap
+ * recalculations, are global and stay in the experiment's queue.
+ * Since servers only interact through global events, the logical
+ * processes can safely simulate up to the next global event (the
+ * lookahead) in parallel. At that barrier, the events they simulated are
+ * merged in the order a sequential run would have processed them,
+ * replaying the statistics each event recorded into the experiment's
+ * statistics, and the global event is processed by the coordinating
+ * thread. Because the time of every global event is known when the
+ * window starts, no logical process can receive a straggler, so nothing
+ * is ever simulated speculatively or rolled back.
+ *
+ * Every event simulated in a window is logged (and its samples recorded)
+ * until the window is merged, so a window also ends once the logical
+ * processes have simulated about as many events as
+ * {@link #EVENTS_PER_WINDOW} allows: its length is sized from the rate
+ * events were simulated at in the last one. No logical process simulates
+ * more events than are left before the experiment's event limit.
+ *
+ * A sequential run breaks ties between simultaneous events by the order
+ * they were scheduled in. Each event scheduled during a parallel run
+ * remembers the event that scheduled it (see
+ * {@link AbstractEvent#getOriginEvent()}), whose position in the merged
+ * order is known by the time the tie has to be broken. So with the same
+ * seed and random substreams, a parallel run is identical to
+ * a sequential run: it processes the same events, adds the same samples
+ * in the same order and halts (or reaches its event limit) after the same
+ * event.
+ *
+ * If there are no global events, the servers are independent. Once the
+ * statistics reach steady state, each logical process then adds samples
+ * to its own copy of the statistics, which are merged into the
+ * experiment's statistics (and checked for convergence) once per window.
+ * The results are then statistically equivalent to, but not identical
+ * with, a sequential run.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public final class ParallelEngine {
+
+    /** The initial capacity of a logical process' event log. */
+    private static final int INITIAL_LOG_CAPACITY = 1024;
+
+    /**
+     * The number of events each logical process should simulate in
+     * a window, which bounds the events and samples it records.
+     */
+    private static final int EVENTS_PER_WINDOW = 16384;
+
+    /**
+     * How much shorter than the maximum window the first window is,
+     * before the rate events are simulated at is known.
+     */
+    private static final double INITIAL_WINDOW_DIVISOR = 1024;
+
+    /** How many times longer than the last window a window can be. */
+    private static final double MAX_WINDOW_GROWTH = 2;
+
+    /** The experiment being run. */
+    private Experiment experiment;
+
+    /** The experiment's queue, which holds the global events. */
+    private EventQueue globalQueue;
+
+    /** The logical processes the servers are partitioned into. */
+    private LogicalProcess[] processes;
+
+    /** The logical process each server belongs to. */
+    private IdentityHashMap<Server, LogicalProcess> serverToProcess;
+
+    /** The logical process the current thread is simulating. */
+    private ThreadLocal<LogicalProcess> currentProcess;
+
+    /** The maximum amount of simulated time in one window. */
+    private double maxWindow;
+
+    /**
+     * The amount of simulated time the next window lasts (unless a global
+     * event ends it first), sized from the rate events were simulated at.
+     */
+    private double window;
+
+    /**
+     * The number of events each logical process may simulate in the
+     * window being simulated.
+     */
+    private long eventCap;
+
+    /** The end of the window being simulated. */
+    private double windowEnd;
+
+    /**
+     * The global event at the end of the window being simulated, or null
+     * if the window ends before the next global event.
+     */
+    private Event barrier;
+
+    /**
+     * The position of the global event the coordinating thread is
+     * processing, or -1 before the run starts.
+     */
+    private long coordinatorEvent;
+
+    /**
+     * The number of events the global event being processed has scheduled.
+     */
+    private int coordinatorChildren;
+
+    /** The threads simulating the logical processes. */
+    private ExecutorService executor;
+
+    /** The experiment's statistics. */
+    private StatisticsCollection targetStats;
+
+    /**
+     * If the logical processes add samples to their own copies of the
+     * statistics instead of recording them.
+     */
+    private boolean decoupled;
+
+    /** The statistics the copies are merged into. */
+    private ArrayList<Statistic> directTargets;
+
+    /**
+     * Creates a new ParallelEngine and moves the events of the servers
+     * out of the experiment's queue into the logical processes.
+     *
+     * @param anExperiment - the experiment being run
+     * @param theGlobalQueue - the experiment's event queue
+     * @param servers - the servers to partition
+     * @param nThreads - the number of worker threads
+     * @param theMaxWindow - the maximum amount of simulated time
+     * in one window
+     */
+    public ParallelEngine(final Experiment anExperiment,
+                          final EventQueue theGlobalQueue,
+                          final Vector<Server> servers,
+                          final int nThreads,
+                          final double theMaxWindow) {
+        if (nThreads < 1) {
+            Sim.fatalError("Need at least one thread, not " + nThreads);
+        }
+        if (!(theMaxWindow > 0.0)) {
+            Sim.fatalError("The parallel window must be positive, not "
+                    + theMaxWindow);
+        }
+        this.experiment = anExperiment;
+        this.globalQueue = theGlobalQueue;
+        this.maxWindow = theMaxWindow;
+        this.window = theMaxWindow / INITIAL_WINDOW_DIVISOR;
+        this.eventCap = Long.MAX_VALUE;
+        this.windowEnd = Double.NEGATIVE_INFINITY;
+        this.barrier = null;
+        this.coordinatorEvent = -1;
+        this.coordinatorChildren = 0;
+        this.currentProcess = new ThreadLocal<LogicalProcess>();
+        this.serverToProcess = new IdentityHashMap<Server, LogicalProcess>();
+
+        int nProcesses = Math.max(1, Math.min(nThreads, servers.size()));
+        StatisticsCollection stats = anExperiment.getOutput().getStats();
+        this.targetStats = stats;
+        this.decoupled = false;
+        this.directTargets = new ArrayList<Statistic>();
+        boolean pooling = anExperiment.getEventPool().isEnabled();
+        this.processes = new LogicalProcess[nProcesses];
+        for (int i = 0; i < nProcesses; i++) {
+            this.processes[i] = new LogicalProcess(i, stats, pooling);
+        }
+        int serverIndex = 0;
+        Iterator<Server> iter = servers.iterator();
+        while (iter.hasNext()) {
+            Server server = iter.next();
+            this.serverToProcess.put(server,
+                    this.processes[serverIndex % nProcesses]);
+            serverIndex++;
+        }
+
+        // Split the pending events, keeping their relative order
+        // (which their origins record)
+        ArrayList<Event> globalEvents = new ArrayList<Event>();
+        ArrayList<Integer> globalLanes = new ArrayList<Integer>();
+        Event event = this.globalQueue.nextEvent();
+        while (event != null) {
+            int lane = this.globalQueue.getLastLane();
+            this.setCoordinatorOrigin(event);
+            LogicalProcess process = this.getProcess(event);
+            if (process == null) {
+                globalEvents.add(event);
+                globalLanes.add(lane);
+            } else {
+                addToQueue(process.queue, event, lane);
+            }
+            event = this.globalQueue.nextEvent();
+        }
+        for (int i = 0; i < globalEvents.size(); i++) {
+            addToQueue(this.globalQueue, globalEvents.get(i),
+                    globalLanes.get(i));
+        }
+
+        this.executor = Executors.newFixedThreadPool(
+                Math.max(1, nProcesses - 1),
+                new ThreadFactory() {
+                    public Thread newThread(final Runnable runnable) {
+                        Thread thread = new Thread(runnable);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Runs the experiment until it halts.
+     */
+    public void run() {
+        boolean independent = this.globalQueue.size() == 0;
+        try {
+            while (!this.experiment.isStopped()) {
+                double start = this.experiment.getCurrentTime();
+                double end = start + this.window;
+                Event nextGlobal = this.globalQueue.peekEvent();
+                Event nextBarrier = null;
+                if (nextGlobal != null && nextGlobal.getTime() <= end) {
+                    end = nextGlobal.getTime();
+                    nextBarrier = nextGlobal;
+                }
+
+                // No process needs more events than are left before the
+                // event limit: they're all its first ones in merged order,
+                // so the run reaches its limit before needing any others.
+                // Once decoupled the order doesn't matter, so the processes
+                // share what's left.
+                this.eventCap = this.experiment.getEventsToLimit();
+                if (this.decoupled && this.eventCap < Long.MAX_VALUE) {
+                    int nProcesses = this.processes.length;
+                    this.eventCap
+                        = (this.eventCap + nProcesses - 1) / nProcesses;
+                }
+                long processed = this.simulateWindow(end, nextBarrier);
+                this.resizeWindow(end - start, processed);
+                Instrumentation instrumentation
+                    = this.experiment.getInstrumentation();
+                if (instrumentation != null) {
+                    instrumentation.observeWindow(processed);
+                }
+                if (processed == 0 && nextGlobal == null
+                        && this.isIdle()) {
+                    break;
+                }
+                if (this.decoupled) {
+                    this.assignPositions();
+                    this.experiment.addProcessedEvents(processed, end);
+                    this.mergeDirectStats();
+                    if (this.replaySamples()
+                            || this.experiment.isHalted()) {
+                        break;
+                    }
+                } else if (this.merge()) {
+                    break;
+                }
+                this.finishWindow();
+                this.experiment.addProcessedEvents(0, end);
+                if (independent && !this.decoupled
+                        && this.targetStats.allStatsSteadyState()) {
+                    this.decouple();
+                }
+
+                if (nextBarrier != null && this.processGlobalEvent()) {
+                    break;
+                }
+                if (this.experiment.isOverBudget()) {
+                    break;
+                }
+            }
+        } finally {
+            this.shutdown();
+        }
+    }
+
+    /**
+     * Sizes the next window from the rate events were simulated at in the
+     * last one, so each logical process simulates about
+     * {@link #EVENTS_PER_WINDOW} events. Windows grow gradually (and never
+     * past the maximum window), so a quiet window doesn't lead to a huge
+     * one.
+     *
+     * @param length - the amount of simulated time the last window lasted
+     * @param processed - the number of events simulated in it
+     */
+    private void resizeWindow(final double length, final long processed) {
+        if (!(length > 0.0)) {
+            return;
+        }
+        double next = MAX_WINDOW_GROWTH * length;
+        if (processed > 0) {
+            double target = length * EVENTS_PER_WINDOW
+                * this.processes.length / processed;
+            next = Math.min(next, target);
+        }
+        this.window = Math.min(this.maxWindow, next);
+    }
+
+    /**
+     * Gets the statistics of the logical process the current thread is
+     * simulating.
+     *
+     * @return the statistics or null if the thread isn't a worker
+     */
+    public StatisticsCollection getStats() {
+        LogicalProcess process = this.currentProcess.get();
+        if (process == null) {
+            return null;
+        }
+
+        return process.stats;
+    }
+
+    /**
+     * Gets the event pool of the logical process the current thread is
+     * simulating.
+     *
+     * @return the event pool or null if the thread isn't a worker
+     */
+    public EventPool getEventPool() {
+        LogicalProcess process = this.currentProcess.get();
+        if (process == null) {
+            return null;
+        }
+
+        return process.pool;
+    }
+
+    /**
+     * Gets the measurements of the logical process the current thread is
+     * simulating.
+     *
+     * @return the measurements or null if the thread isn't a worker or
+     * the experiment isn't instrumented
+     */
+    public Instrumentation getInstrumentation() {
+        LogicalProcess process = this.currentProcess.get();
+        if (process == null) {
+            return null;
+        }
+
+        return process.instrumentation;
+    }
+
+    /**
+     * Gets the simulated time of the logical process the current thread
+     * is simulating.
+     *
+     * @return the simulated time or NaN if the thread isn't a worker
+     */
+    public double getCurrentTime() {
+        LogicalProcess process = this.currentProcess.get();
+        if (process == null) {
+            return Double.NaN;
+        }
+
+        return process.time;
+    }
+
+    /**
+     * Adds an event to the queue of the logical process it belongs to or,
+     * if it's a global event, to the experiment's queue. Global events
+     * scheduled by a logical process are held back until the end of the
+     * window, so they're added in the order a sequential run would add
+     * them.
+     *
+     * @param event - the event to add
+     * @param lane - the fixed-delay lane of the event or -1 for none
+     */
+    public void addEvent(final Event event, final int lane) {
+        LogicalProcess process = this.getProcess(event);
+        LogicalProcess current = this.currentProcess.get();
+        if (current == null) {
+            this.setCoordinatorOrigin(event);
+            if (process == null) {
+                addToQueue(this.globalQueue, event, lane);
+            } else {
+                addToQueue(process.queue, event, lane);
+            }
+        } else if (process == current) {
+            current.schedule(event);
+            addToQueue(process.queue, event, lane);
+        } else if (process == null) {
+            if (event.getTime() < this.windowEnd) {
+                Sim.fatalError("Global event at " + event.getTime()
+                        + " scheduled inside the window ending at "
+                        + this.windowEnd);
+            }
+            current.scheduleGlobal(event, lane);
+        } else {
+            Sim.fatalError("Event at " + event.getTime()
+                    + " crosses logical processes");
+        }
+    }
+
+    /**
+     * Cancels an event in the queue it was added to.
+     *
+     * @param event - the event to cancel
+     */
+    public void cancelEvent(final Event event) {
+        LogicalProcess process = this.getProcess(event);
+        LogicalProcess current = this.currentProcess.get();
+        if (process == null) {
+            if (current != null) {
+                Sim.fatalError("Can't cancel a global event in parallel");
+            }
+            this.globalQueue.cancelEvent(event);
+        } else {
+            if (current != null && current != process) {
+                Sim.fatalError("Event at " + event.getTime()
+                        + " crosses logical processes");
+            }
+            process.queue.cancelEvent(event);
+        }
+    }
+
+    /**
+     * Simulates every logical process up to the end of a window.
+     *
+     * @param end - the end of the window
+     * @param endBarrier - the global event at the end of the window
+     * or null if there isn't one
+     * @return the number of events processed
+     */
+    private long simulateWindow(final double end, final Event endBarrier) {
+        this.windowEnd = end;
+        this.barrier = endBarrier;
+        List<LogicalProcess> tasks = new ArrayList<LogicalProcess>();
+        for (int i = 0; i < this.processes.length; i++) {
+            LogicalProcess process = this.processes[i];
+            Event next = process.queue.peekEvent();
+            if (next != null && this.isInWindow(next)) {
+                tasks.add(process);
+            }
+        }
+
+        // The coordinator simulates the first process itself
+        // rather than idling at the barrier
+        long processed = 0;
+        if (!tasks.isEmpty()) {
+            List<Future<Long>> results = new ArrayList<Future<Long>>();
+            for (int i = 1; i < tasks.size(); i++) {
+                results.add(this.executor.submit(tasks.get(i)));
+            }
+            processed += tasks.get(0).call();
+            try {
+                Iterator<Future<Long>> iter = results.iterator();
+                while (iter.hasNext()) {
+                    processed += iter.next().get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                Sim.fatalError("Interrupted while simulating a window");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                Sim.fatalError("Logical process failed: " + e.getCause());
+            }
+        }
+
+        return processed;
+    }
+
+    /**
+     * Checks if an event of a logical process belongs to the window being
+     * simulated: it happens before the end of the window or, if it happens
+     * at the same time as the global event ending the window, a sequential
+     * run would process it first.
+     *
+     * @param event - the event
+     * @return if the event belongs to the window
+     */
+    private boolean isInWindow(final Event event) {
+        double time = event.getTime();
+        if (time < this.windowEnd) {
+            return true;
+        }
+        if (time > this.windowEnd || !(event instanceof AbstractEvent)
+                || !(this.barrier instanceof AbstractEvent)) {
+            return false;
+        }
+
+        // Events scheduled during the window were scheduled
+        // after the barrier, so they come after it
+        long origin = ((AbstractEvent) event).getOriginEvent();
+        if (origin < -1) {
+            return false;
+        }
+        AbstractEvent barrierEvent = (AbstractEvent) this.barrier;
+        if (origin != barrierEvent.getOriginEvent()) {
+            return origin < barrierEvent.getOriginEvent();
+        }
+
+        return ((AbstractEvent) event).getOriginChild()
+                < barrierEvent.getOriginChild();
+    }
+
+    /**
+     * Merges the events simulated during the last window in the order
+     * a sequential run would have processed them. Each event gets its
+     * position in that order and its recorded samples are replayed into
+     * the experiment's statistics, checking if the experiment should halt
+     * (or has reached its event limit) after each.
+     *
+     * @return if the experiment should halt
+     */
+    private boolean merge() {
+        int nProcesses = this.processes.length;
+        int[] positions = new int[nProcesses];
+        int[] heap = new int[nProcesses];
+        int heapSize = 0;
+        for (int i = 0; i < nProcesses; i++) {
+            if (this.processes[i].logSize > 0) {
+                heap[heapSize] = i;
+                heapSize++;
+            }
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            this.siftDown(heap, heapSize, i, positions, true);
+        }
+
+        boolean halted = false;
+        while (!halted && heapSize > 0) {
+            int best = heap[0];
+            LogicalProcess process = this.processes[best];
+            int index = positions[best];
+            process.logPositions[index]
+                = this.experiment.getNEventsSimulated();
+            int sample = 0;
+            if (index > 0) {
+                sample = process.logSampleEnds[index - 1];
+            }
+            while (sample < process.logSampleEnds[index]) {
+                process.stats.replay(sample);
+                sample++;
+            }
+            this.experiment.addProcessedEvents(1, process.logTimes[index]);
+
+            positions[best] = index + 1;
+            if (index + 1 == process.logSize) {
+                heapSize--;
+                heap[0] = heap[heapSize];
+            }
+            this.siftDown(heap, heapSize, 0, positions, true);
+            halted = this.experiment.isHalted()
+                || this.experiment.isOverEventLimit();
+        }
+
+        return halted;
+    }
+
+    /**
+     * Replays the statistics recorded during the last window into the
+     * experiment's statistics, in time order, without merging the events.
+     * Samples are replayed one event at a time, checking if the
+     * experiment should halt after each.
+     *
+     * @return if the experiment should halt
+     */
+    private boolean replaySamples() {
+        int nProcesses = this.processes.length;
+        int[] positions = new int[nProcesses];
+        int[] heap = new int[nProcesses];
+        int heapSize = 0;
+        for (int i = 0; i < nProcesses; i++) {
+            if (this.processes[i].stats.size() > 0) {
+                heap[heapSize] = i;
+                heapSize++;
+            }
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            this.siftDown(heap, heapSize, i, positions, false);
+        }
+
+        boolean halted = false;
+        while (!halted && heapSize > 0) {
+            int best = heap[0];
+            RecordingStatisticsCollection stats = this.processes[best].stats;
+            int position = positions[best];
+            long event = stats.getEvent(position);
+            while (position < stats.size()
+                    && stats.getEvent(position) == event) {
+                stats.replay(position);
+                position++;
+            }
+            positions[best] = position;
+            if (position == stats.size()) {
+                heapSize--;
+                heap[0] = heap[heapSize];
+            }
+            this.siftDown(heap, heapSize, 0, positions, false);
+            halted = this.experiment.isHalted();
+        }
+
+        return halted;
+    }
+
+    /**
+     * Restores the order of a heap of logical processes, ordered by their
+     * next event or their next recorded sample.
+     *
+     * @param heap - the indices of the logical processes
+     * @param heapSize - the number of logical processes in the heap
+     * @param start - the position to sift down from
+     * @param positions - the next event or sample of each logical process
+     * @param byEvent - if the heap is ordered by event rather than sample
+     */
+    private void siftDown(final int[] heap,
+                          final int heapSize,
+                          final int start,
+                          final int[] positions,
+                          final boolean byEvent) {
+        int position = start;
+        int process = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize
+                    && this.precedes(heap[child + 1], heap[child],
+                                     positions, byEvent)) {
+                child++;
+            }
+            if (!this.precedes(heap[child], process, positions, byEvent)) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = process;
+    }
+
+    /**
+     * Checks if the next event (or recorded sample) of one logical process
+     * comes before the next one of another.
+     *
+     * @param first - the index of the first logical process
+     * @param second - the index of the second logical process
+     * @param positions - the next event or sample of each logical process
+     * @param byEvent - if events rather than samples are compared
+     * @return if the first process' event or sample comes first
+     */
+    private boolean precedes(final int first,
+                             final int second,
+                             final int[] positions,
+                             final boolean byEvent) {
+        LogicalProcess firstProcess = this.processes[first];
+        LogicalProcess secondProcess = this.processes[second];
+        int firstIndex = positions[first];
+        int secondIndex = positions[second];
+        if (!byEvent) {
+            double firstTime = firstProcess.stats.getTime(firstIndex);
+            double secondTime = secondProcess.stats.getTime(secondIndex);
+            if (firstTime != secondTime) {
+                return firstTime < secondTime;
+            }
+
+            return first < second;
+        }
+
+        double firstTime = firstProcess.logTimes[firstIndex];
+        double secondTime = secondProcess.logTimes[secondIndex];
+        if (firstTime != secondTime) {
+            return firstTime < secondTime;
+        }
+        long firstOrigin = firstProcess.getOriginPosition(firstIndex);
+        long secondOrigin = secondProcess.getOriginPosition(secondIndex);
+        if (firstOrigin != secondOrigin) {
+            return firstOrigin < secondOrigin;
+        }
+
+        return firstProcess.logChildren[firstIndex]
+            < secondProcess.logChildren[secondIndex];
+    }
+
+    /**
+     * Gives the events simulated during the last window positions without
+     * merging them (one logical process after another), for when the
+     * servers are independent.
+     */
+    private void assignPositions() {
+        long position = this.experiment.getNEventsSimulated();
+        for (int i = 0; i < this.processes.length; i++) {
+            LogicalProcess process = this.processes[i];
+            for (int j = 0; j < process.logSize; j++) {
+                process.logPositions[j] = position;
+                position++;
+            }
+        }
+    }
+
+    /**
+     * Finishes a merged window: fills in the origins of the events
+     * scheduled during it, adds the global events scheduled during it to
+     * the experiment's queue (in the order a sequential run would have)
+     * and empties the logical processes' logs.
+     */
+    private void finishWindow() {
+        ArrayList<PendingGlobalEvent> globalEvents
+            = new ArrayList<PendingGlobalEvent>();
+        for (int i = 0; i < this.processes.length; i++) {
+            LogicalProcess process = this.processes[i];
+            process.resolveOrigins();
+            Iterator<PendingGlobalEvent> iter
+                = process.globalEvents.iterator();
+            while (iter.hasNext()) {
+                PendingGlobalEvent pending = iter.next();
+                pending.origin = process.logPositions[pending.parent];
+                globalEvents.add(pending);
+            }
+            process.globalEvents.clear();
+            process.stats.discard(process.stats.size());
+            process.logSize = 0;
+        }
+
+        Collections.sort(globalEvents, new Comparator<PendingGlobalEvent>() {
+            public int compare(final PendingGlobalEvent first,
+                               final PendingGlobalEvent second) {
+                if (first.origin != second.origin) {
+                    return first.origin < second.origin ? -1 : 1;
+                }
+
+                return first.child - second.child;
+            }
+        });
+        Iterator<PendingGlobalEvent> iter = globalEvents.iterator();
+        while (iter.hasNext()) {
+            PendingGlobalEvent pending = iter.next();
+            setOrigin(pending.event, pending.origin, pending.child);
+            addToQueue(this.globalQueue, pending.event, pending.lane);
+        }
+    }
+
+    /**
+     * Gives every logical process its own steady state copy of the
+     * experiment's statistics, so samples no longer have to be recorded
+     * and replayed in time order. Only done when the servers are
+     * independent (there are no global events), since then the order in
+     * which the servers' samples arrive doesn't matter.
+     */
+    private void decouple() {
+        this.experiment.getContext().debug(Experiment.STATUS_DEBUG_LEVEL,
+                "Servers are independent, merging statistics"
+                + " every " + this.maxWindow + " seconds");
+        Iterator<Statistic> iter = this.targetStats.getAllStats();
+        while (iter.hasNext()) {
+            Statistic stat = iter.next();
+            if (stat instanceof TimeWeightedStatistic) {
+                continue;
+            }
+            this.directTargets.add(stat);
+            for (int i = 0; i < this.processes.length; i++) {
+                LogicalProcess process = this.processes[i];
+                Statistic copy = stat.createSteadyStateCopy();
+                process.directStats.add(copy);
+                process.stats.setDirectStatistic(stat.getStatName(), copy);
+            }
+        }
+        this.decoupled = true;
+    }
+
+    /**
+     * Moves the samples of the logical processes' copies of the
+     * statistics into the experiment's statistics.
+     */
+    private void mergeDirectStats() {
+        for (int i = 0; i < this.processes.length; i++) {
+            LogicalProcess process = this.processes[i];
+            for (int j = 0; j < this.directTargets.size(); j++) {
+                this.directTargets.get(j).mergeSamples(
+                        process.directStats.get(j));
+            }
+        }
+    }
+
+    /**
+     * Processes the next global event.
+     *
+     * @return if the experiment should halt
+     */
+    private boolean processGlobalEvent() {
+        this.coordinatorEvent = this.experiment.getNEventsSimulated();
+        this.coordinatorChildren = 0;
+        this.experiment.processEvent(this.globalQueue.nextEvent());
+
+        return this.experiment.isHalted()
+            || this.experiment.isOverEventLimit();
+    }
+
+    /**
+     * Checks if all the logical processes have run out of events.
+     *
+     * @return if there are no events left in any logical process
+     */
+    private boolean isIdle() {
+        for (int i = 0; i < this.processes.length; i++) {
+            if (this.processes[i].queue.size() > 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Stops the worker threads and moves the events left in the logical
+     * processes back to the experiment's queue.
+     */
+    private void shutdown() {
+        this.executor.shutdownNow();
+        Instrumentation instrumentation = this.experiment.getInstrumentation();
+        for (int i = 0; i < this.processes.length; i++) {
+            if (instrumentation != null) {
+                instrumentation.merge(this.processes[i].instrumentation);
+            }
+            EventQueue queue = this.processes[i].queue;
+            Event event = queue.nextEvent();
+            while (event != null) {
+                addToQueue(this.globalQueue, event, queue.getLastLane());
+                event = queue.nextEvent();
+            }
+        }
+    }
+
+    /**
+     * Gets the logical process an event belongs to.
+     *
+     * @param event - the event
+     * @return the logical process or null if the event is global
+     */
+    private LogicalProcess getProcess(final Event event) {
+        if (!(event instanceof AbstractEvent)) {
+            return null;
+        }
+        Server server = ((AbstractEvent) event).getServer();
+        if (server == null) {
+            return null;
+        }
+
+        return this.serverToProcess.get(server);
+    }
+
+    /**
+     * Records that the coordinating thread scheduled an event, while
+     * processing a global event or before the run started.
+     *
+     * @param event - the event
+     */
+    private void setCoordinatorOrigin(final Event event) {
+        setOrigin(event, this.coordinatorEvent, this.coordinatorChildren);
+        this.coordinatorChildren++;
+    }
+
+    /**
+     * Records which event scheduled an event, if it can remember it.
+     *
+     * @param event - the event
+     * @param origin - the position of the event that scheduled it
+     * @param child - the number of events scheduled before it
+     * by the same event
+     */
+    private static void setOrigin(final Event event,
+                                  final long origin,
+                                  final int child) {
+        if (event instanceof AbstractEvent) {
+            ((AbstractEvent) event).setOrigin(origin, child);
+        }
+    }
+
+    /**
+     * Adds an event to a queue, in a fixed-delay lane if it has one.
+     *
+     * @param queue - the queue to add to
+     * @param event - the event to add
+     * @param lane - the fixed-delay lane of the event or -1 for none
+     */
+    private static void addToQueue(final EventQueue queue,
+                                   final Event event,
+                                   final int lane) {
+        if (lane < 0) {
+            queue.addEvent(event);
+        } else {
+            queue.addEvent(event, lane);
+        }
+    }
+
+    /**
+     * A global event scheduled by a logical process, which is added to
+     * the experiment's queue at the end of the window.
+     */
+    private static final class PendingGlobalEvent {
+
+        /** The event. */
+        private Event event;
+
+        /** The fixed-delay lane of the event or -1 for none. */
+        private int lane;
+
+        /** The index (in its process' log) of the event that scheduled it. */
+        private int parent;
+
+        /** The number of events scheduled before it by the same event. */
+        private int child;
+
+        /** The position of the event that scheduled it, once merged. */
+        private long origin;
+
+        /**
+         * Creates a new PendingGlobalEvent.
+         *
+         * @param theEvent - the event
+         * @param theLane - the fixed-delay lane of the event or -1 for none
+         * @param theParent - the index of the event that scheduled it
+         * @param theChild - the number of events scheduled before it
+         * by the same event
+         */
+        private PendingGlobalEvent(final Event theEvent,
+                                   final int theLane,
+                                   final int theParent,
+                                   final int theChild) {
+            this.event = theEvent;
+            this.lane = theLane;
+            this.parent = theParent;
+            this.child = theChild;
+        }
+
+    }
+
+    /**
+     * A partition of the servers, simulated by one thread at a time.
+     */
+    private final class LogicalProcess implements Callable<Long> {
+
+        /** The index of the logical process. */
+        private int index;
+
+        /** The events of the logical process' servers. */
+        private EventQueue queue;
+
+        /** Creates and recycles the logical process' events. */
+        private EventPool pool;
+
+        /** Records the samples added by the logical process' events. */
+        private RecordingStatisticsCollection stats;
+
+        /** The logical process' copies of the experiment's statistics. */
+        private ArrayList<Statistic> directStats;
+
+        /** Measures the logical process' events, if instrumented. */
+        private Instrumentation instrumentation;
+
+        /** The time of the event being processed. */
+        private double time;
+
+        /** The number of events the logical process has processed. */
+        private long nProcessed;
+
+        /** The number of events simulated in the current window. */
+        private int logSize;
+
+        /** The time of each event simulated in the current window. */
+        private double[] logTimes;
+
+        /**
+         * The origin of each event simulated in the current window
+         * (see {@link AbstractEvent#getOriginEvent()}).
+         */
+        private long[] logOrigins;
+
+        /**
+         * The number of events scheduled before each event simulated in
+         * the current window by the same event.
+         */
+        private int[] logChildren;
+
+        /** The number of samples recorded once each event was simulated. */
+        private int[] logSampleEnds;
+
+        /** The position each event was merged at. */
+        private long[] logPositions;
+
+        /** The number of events the event being simulated has scheduled. */
+        private int children;
+
+        /**
+         * The events scheduled during the current window, whose origins are
+         * filled in once the window is merged.
+         */
+        private ArrayList<AbstractEvent> scheduled;
+
+        /** The global events scheduled during the current window. */
+        private ArrayList<PendingGlobalEvent> globalEvents;
+
+        /**
+         * Creates a new LogicalProcess.
+         *
+         * @param theIndex - the index of the logical process
+         * @param targetStats - the statistics recorded samples are
+         * replayed into
+         * @param pooling - if events should be recycled
+         */
+        public LogicalProcess(final int theIndex,
+                              final StatisticsCollection targetStats,
+                              final boolean pooling) {
+            this.index = theIndex;
+            this.queue = globalQueue.createEmptyQueue();
+            this.queue.registerFixedDelays(globalQueue);
+            this.pool = new EventPool(experiment);
+            this.pool.setEnabled(pooling);
+            this.stats = new RecordingStatisticsCollection(targetStats);
+            this.directStats = new ArrayList<Statistic>();
+            if (experiment.getInstrumentation() != null) {
+                this.instrumentation = new Instrumentation();
+            }
+            this.time = 0.0d;
+            this.nProcessed = 0;
+            this.logSize = 0;
+            this.logTimes = new double[INITIAL_LOG_CAPACITY];
+            this.logOrigins = new long[INITIAL_LOG_CAPACITY];
+            this.logChildren = new int[INITIAL_LOG_CAPACITY];
+            this.logSampleEnds = new int[INITIAL_LOG_CAPACITY];
+            this.logPositions = new long[INITIAL_LOG_CAPACITY];
+            this.scheduled = new ArrayList<AbstractEvent>();
+            this.globalEvents = new ArrayList<PendingGlobalEvent>();
+        }
+
+        /**
+         * Processes the logical process' events up to the end
+         * of the window.
+         *
+         * @return the number of events processed
+         */
+        public Long call() {
+            currentProcess.set(this);
+            long processed = 0;
+            try {
+                Event next = this.queue.peekEvent();
+                while (next != null && isInWindow(next)
+                        && processed < eventCap) {
+                    Event event = this.queue.nextEvent();
+                    this.time = event.getTime();
+                    this.log(event);
+                    this.stats.setClock(this.time, this.nProcessed);
+                    if (this.instrumentation == null) {
+                        event.process();
+                    } else {
+                        this.instrumentation.process(event);
+                        this.instrumentation.observeQueueSize(
+                                this.queue.size());
+                    }
+                    this.logSampleEnds[this.logSize - 1] = this.stats.size();
+                    this.pool.recycleProcessed(event);
+                    this.nProcessed++;
+                    processed++;
+                    next = this.queue.peekEvent();
+                }
+            } finally {
+                currentProcess.remove();
+            }
+
+            return processed;
+        }
+
+        /**
+         * Adds an event that is about to be processed to the log.
+         *
+         * @param event - the event
+         */
+        private void log(final Event event) {
+            if (this.logSize == this.logTimes.length) {
+                this.growLog();
+            }
+            this.logTimes[this.logSize] = event.getTime();
+            if (event instanceof AbstractEvent) {
+                AbstractEvent abstractEvent = (AbstractEvent) event;
+                this.logOrigins[this.logSize] = abstractEvent.getOriginEvent();
+                this.logChildren[this.logSize] = abstractEvent.getOriginChild();
+            } else {
+                this.logOrigins[this.logSize] = -1;
+                this.logChildren[this.logSize] = 0;
+            }
+            this.logSize++;
+            this.children = 0;
+        }
+
+        /**
+         * Doubles the capacity of the log.
+         */
+        private void growLog() {
+            int capacity = 2 * this.logTimes.length;
+            double[] newTimes = new double[capacity];
+            long[] newOrigins = new long[capacity];
+            int[] newChildren = new int[capacity];
+            int[] newSampleEnds = new int[capacity];
+            System.arraycopy(this.logTimes, 0, newTimes, 0, this.logSize);
+            System.arraycopy(this.logOrigins, 0, newOrigins, 0, this.logSize);
+            System.arraycopy(this.logChildren, 0, newChildren, 0,
+                    this.logSize);
+            System.arraycopy(this.logSampleEnds, 0, newSampleEnds, 0,
+                    this.logSize);
+            this.logTimes = newTimes;
+            this.logOrigins = newOrigins;
+            this.logChildren = newChildren;
+            this.logSampleEnds = newSampleEnds;
+            this.logPositions = new long[capacity];
+        }
+
+        /**
+         * Records that the event being processed scheduled an event of
+         * this logical process. Until the window is merged, the origin is
+         * a placeholder holding the index of the event in the log.
+         *
+         * @param event - the scheduled event
+         */
+        private void schedule(final Event event) {
+            if (event instanceof AbstractEvent) {
+                AbstractEvent abstractEvent = (AbstractEvent) event;
+                abstractEvent.setOrigin(-2 - (this.logSize - 1),
+                        this.children);
+                this.scheduled.add(abstractEvent);
+            }
+            this.children++;
+        }
+
+        /**
+         * Holds back a global event scheduled by the event being processed
+         * until the end of the window.
+         *
+         * @param event - the scheduled event
+         * @param lane - the fixed-delay lane of the event or -1 for none
+         */
+        private void scheduleGlobal(final Event event, final int lane) {
+            this.globalEvents.add(new PendingGlobalEvent(event, lane,
+                    this.logSize - 1, this.children));
+            this.children++;
+        }
+
+        /**
+         * Gets the position of the event that scheduled an event
+         * in the log.
+         *
+         * @param logIndex - the index of the event in the log
+         * @return the position of the event that scheduled it
+         */
+        private long getOriginPosition(final int logIndex) {
+            long origin = this.logOrigins[logIndex];
+            if (origin < -1) {
+                return this.logPositions[(int) (-2 - origin)];
+            }
+
+            return origin;
+        }
+
+        /**
+         * Replaces the placeholder origins of the events scheduled during
+         * the window with the positions of the events that scheduled them.
+         * Events that have since been recycled and rescheduled get the
+         * origin of their latest scheduling, which is just as right.
+         */
+        private void resolveOrigins() {
+            Iterator<AbstractEvent> iter = this.scheduled.iterator();
+            while (iter.hasNext()) {
+                AbstractEvent event = iter.next();
+                long origin = event.getOriginEvent();
+                if (origin < -1) {
+                    event.setOrigin(this.logPositions[(int) (-2 - origin)],
+                            event.getOriginChild());
+                }
+            }
+            this.scheduled.clear();
+        }
+
+        /**
+         * Gets a description of the logical process.
+         *
+         * @return a description of the logical process
+         */
+        @Override
+        public String toString() {
+            return "LogicalProcess " + this.index;
+        }
+
+    }
+
+}
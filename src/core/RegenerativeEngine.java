@@ -0,0 +1,390 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import stat.RecordingStatisticsCollection;
+import stat.StatisticsCollection;
+import datacenter.JobDispatchEvent;
+import datacenter.Server;
+
+/**
+ * Runs an experiment in parallel across time rather than across servers.
+ *
+ * Whenever a job arrives to an empty data center, the simulation
+ * regenerates: with independent interarrival and service times, what
+ * happens next doesn't depend on what happened before. The engine
+ * simulates many segments of the run in parallel, each from a fresh copy
+ * of the experiment (with its own seed) that starts empty, lasting a
+ * fixed number of regeneration cycles. Each segment starts at its first
+ * arrival and ends just before the arrival that would start one cycle
+ * too many, so laying the segments end to end gives one long run made of
+ * whole cycles. The samples the segments record are replayed into the
+ * experiment's statistics in that order, so warmup only discards samples
+ * from the start of the first segment, just as in a sequential run.
+ *
+ * Regeneration is exact for servers whose idle state doesn't depend on
+ * how long they have been idle (e.g., without parking or napping) and
+ * without events outside the servers other than arrivals (e.g., power
+ * capping), and other experiments are rejected. It is only practical
+ * when the data center empties often, such as with a single machine,
+ * so a segment that goes on too long without finishing its cycles
+ * stops the run.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public final class RegenerativeEngine {
+
+    /** The number of segments simulated ahead of replay per thread. */
+    private static final int SEGMENTS_PER_THREAD = 2;
+
+    /** The most events a segment can process. */
+    private static final long MAX_SEGMENT_EVENTS = 1L << 24;
+
+    /** The most samples a segment can record. */
+    private static final int MAX_SEGMENT_SAMPLES = 1 << 22;
+
+    /** The experiment being run. */
+    private Experiment experiment;
+
+    /** Copies the experiment as it was before it was initialized. */
+    private ExperimentCopier template;
+
+    /** The number of regeneration cycles in each segment. */
+    private int cyclesPerSegment;
+
+    /** The number of threads simulating segments. */
+    private int nThreads;
+
+    /** The threads simulating segments. */
+    private ExecutorService executor;
+
+    /**
+     * Creates a new RegenerativeEngine. Must be created before the
+     * experiment is initialized. Fails if the experiment doesn't
+     * regenerate when its data center empties.
+     *
+     * @param anExperiment - the experiment being run
+     * @param theCyclesPerSegment - the number of regeneration cycles
+     * in each segment
+     * @param theNThreads - the number of threads simulating segments
+     */
+    public RegenerativeEngine(final Experiment anExperiment,
+                              final int theCyclesPerSegment,
+                              final int theNThreads) {
+        if (theCyclesPerSegment < 1) {
+            Sim.fatalError("Segments need at least one cycle, not "
+                    + theCyclesPerSegment);
+        }
+        if (theNThreads < 1) {
+            Sim.fatalError("Need at least one thread, not " + theNThreads);
+        }
+        if (anExperiment.getEventQueue().size() > 0) {
+            // e.g., a power capping enforcer's recalculations, which
+            // carry on across cycles rather than starting over
+            Sim.fatalError("Regenerative runs can't have events scheduled"
+                    + " before the run starts, but there are "
+                    + anExperiment.getEventQueue().size());
+        }
+        Iterator<Server> iter
+            = anExperiment.getInput().getDataCenter().getServers().iterator();
+        while (iter.hasNext()) {
+            Server server = iter.next();
+            if (!server.isMemorylessWhenIdle()) {
+                Sim.fatalError("Regenerative runs need servers that don't"
+                        + " park or nap, but a " + server.getClass().getName()
+                        + " does");
+            }
+        }
+        this.experiment = anExperiment;
+        this.cyclesPerSegment = theCyclesPerSegment;
+        this.nThreads = theNThreads;
+        this.template = new ExperimentCopier(anExperiment);
+    }
+
+    /**
+     * Runs the experiment until it halts.
+     */
+    public void run() {
+        this.executor = Executors.newFixedThreadPool(this.nThreads,
+                new ThreadFactory() {
+                    public Thread newThread(final Runnable runnable) {
+                        Thread thread = new Thread(runnable);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        StatisticsCollection stats = this.experiment.getOutput().getStats();
+        ArrayList<Future<Segment>> pending = new ArrayList<Future<Segment>>();
+        try {
+            int inFlight = this.nThreads * SEGMENTS_PER_THREAD;
+            for (int i = 0; i < inFlight; i++) {
+                pending.add(this.submitSegment(stats));
+            }
+
+            double offset = 0.0d;
+            boolean first = true;
+            while (!this.experiment.isStopped()) {
+                Segment segment = this.getSegment(pending.remove(0));
+                if (this.experiment.isStopped()) {
+                    break;
+                }
+                pending.add(this.submitSegment(stats));
+
+                // The first segment keeps the idle time before
+                // its first arrival, like a sequential run
+                double start = segment.start;
+                if (first) {
+                    start = 0.0d;
+                }
+                double shift = offset - start;
+                if (segment.instrumentation != null
+                        && this.experiment.getInstrumentation() != null) {
+                    this.experiment.getInstrumentation().merge(
+                            segment.instrumentation);
+                }
+                if (this.replay(segment, start, shift)) {
+                    break;
+                }
+                offset += segment.end - start;
+                this.experiment.addProcessedEvents(segment.nEvents, offset);
+                if (this.experiment.isOverBudget()) {
+                    break;
+                }
+                first = false;
+            }
+        } finally {
+            this.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts simulating a new segment.
+     *
+     * @param stats - the statistics the segment's samples are for
+     * @return the future result of the segment
+     */
+    private Future<Segment> submitSegment(final StatisticsCollection stats) {
+        long seed = this.experiment.nextSeed();
+        return this.executor.submit(new Segment(seed,
+                new RecordingStatisticsCollection(stats)));
+    }
+
+    /**
+     * Waits for a segment to finish.
+     *
+     * @param future - the future result of the segment
+     * @return the finished segment
+     */
+    private Segment getSegment(final Future<Segment> future) {
+        Segment segment = null;
+        try {
+            segment = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Sim.fatalError("Interrupted while simulating a segment");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            Sim.fatalError("Segment failed: " + e.getCause());
+        }
+
+        return segment;
+    }
+
+    /**
+     * Replays a segment's samples into the experiment's statistics,
+     * checking if the experiment should halt after each event.
+     *
+     * @param segment - the segment to replay
+     * @param start - the time from which samples are used
+     * @param shift - the amount of time to shift the samples by
+     * @return if the experiment should halt
+     */
+    private boolean replay(final Segment segment,
+                           final double start,
+                           final double shift) {
+        RecordingStatisticsCollection stats = segment.stats;
+        int position = 0;
+        while (position < stats.size()) {
+            long event = stats.getEvent(position);
+            while (position < stats.size()
+                    && stats.getEvent(position) == event) {
+                if (stats.getTime(position) >= start) {
+                    stats.replay(position, shift);
+                }
+                position++;
+            }
+            if (this.experiment.isHalted()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * A segment of the run, simulated from its own copy of the experiment.
+     */
+    private final class Segment implements Callable<Segment> {
+
+        /** The seed for the copy's random number generator. */
+        private long seed;
+
+        /** Records the samples added by the segment's events. */
+        private RecordingStatisticsCollection stats;
+
+        /** The time of the segment's first arrival. */
+        private double start;
+
+        /** The time of the arrival that starts the next segment. */
+        private double end;
+
+        /** The number of events the segment processed. */
+        private long nEvents;
+
+        /** The measurements of the segment's events, if instrumented. */
+        private Instrumentation instrumentation;
+
+        /**
+         * Creates a new Segment.
+         *
+         * @param theSeed - the seed for the copy's random number generator
+         * @param theStats - records the samples added by the segment's events
+         */
+        public Segment(final long theSeed,
+                       final RecordingStatisticsCollection theStats) {
+            this.seed = theSeed;
+            this.stats = theStats;
+            this.start = 0.0d;
+            this.end = 0.0d;
+            this.nEvents = 0;
+        }
+
+        /**
+         * Simulates the segment.
+         *
+         * @return the simulated segment
+         */
+        public Segment call() {
+            Experiment copy = template.copy();
+            copy.prepareSegment(this.seed, this.stats);
+            copy.initialize();
+            this.instrumentation = copy.getInstrumentation();
+            Vector<Server> servers
+                = copy.getInput().getDataCenter().getServers();
+            EventQueue queue = copy.getEventQueue();
+
+            int cycles = 0;
+            Event next = queue.peekEvent();
+            while (next != null && !copy.isStopped()) {
+                if (isGlobal(next) && !(next instanceof JobDispatchEvent)) {
+                    Sim.fatalError("Regenerative runs can only have arrivals"
+                            + " outside the servers, not a "
+                            + next.getClass().getName());
+                }
+                if (this.nEvents >= MAX_SEGMENT_EVENTS
+                        || this.stats.size() >= MAX_SEGMENT_SAMPLES) {
+                    Sim.fatalError("A segment reached " + this.nEvents
+                            + " events and " + this.stats.size()
+                            + " samples after " + cycles + " of its "
+                            + cyclesPerSegment + " regeneration cycles."
+                            + " The data center rarely empties, so use fewer"
+                            + " cycles per segment or a sequential run");
+                }
+                if ((next instanceof JobArrivalEvent
+                        || next instanceof JobDispatchEvent)
+                        && isEmpty(servers)) {
+                    if (cycles == cyclesPerSegment) {
+                        this.end = next.getTime();
+                        break;
+                    }
+                    if (cycles == 0) {
+                        this.start = next.getTime();
+                    }
+                    cycles++;
+                }
+                this.stats.setClock(next.getTime(), this.nEvents);
+                copy.processEvent(queue.nextEvent());
+                this.nEvents++;
+                next = queue.peekEvent();
+            }
+            if (copy.getInstabilityReason() != null) {
+                // An unstable segment never empties, so it never ends
+                experiment.markUnstable(copy.getInstabilityReason());
+            } else if (next == null) {
+                Sim.fatalError("Ran out of events in a segment");
+            }
+
+            return this;
+        }
+
+    }
+
+    /**
+     * Checks if an event isn't tied to a single server.
+     *
+     * @param event - the event to check
+     * @return if the event isn't tied to a server
+     */
+    private static boolean isGlobal(final Event event) {
+        return !(event instanceof AbstractEvent)
+                || ((AbstractEvent) event).getServer() == null;
+    }
+
+    /**
+     * Checks if no server has jobs in it.
+     *
+     * @param servers - the servers to check
+     * @return if none of the servers have jobs in them
+     */
+    private static boolean isEmpty(final Vector<Server> servers) {
+        Iterator<Server> iter = servers.iterator();
+        while (iter.hasNext()) {
+            if (iter.next().getJobsInSystem() > 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+}
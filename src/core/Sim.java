@@ -43,7 +43,10 @@ public final class Sim {
     private static final int DEFAULT_DEBUG_LEVEL = 5;
 
     /**
-     * The current debug level of the simulator.
+     * The current debug level of the simulator, used by
+     * {@link #debug(int, String)}. Each experiment has its own debug
+     * level, which starts at this one when the experiment is created
+     * (see {@link ExperimentContext#getDebugLevel()}).
      */
     private static int debugLevel = DEFAULT_DEBUG_LEVEL;
 
@@ -95,6 +98,10 @@ public final class Sim {
     /**
      * Set the level of debugging.
      * Higher levels of debugging prints more information.
+     * Sets the level {@link #debug(int, String)} checks and the level
+     * experiments created afterwards start at; an existing experiment's
+     * output is controlled by its own context
+     * ({@link ExperimentContext#setDebugLevel(int)}).
      * @param level - The level of debugging to set the simulator to
      */
     public static void setDebugLevel(final int level) {
@@ -144,7 +151,7 @@ public final class Sim {
      */
     public static void fatalError(final String message) {
         System.out.println(message);
-        throw new RuntimeException();
+        throw new RuntimeException(message);
     }
 
 }
@@ -30,6 +30,7 @@
  */
 package core;
 
+import datacenter.Server;
 import datacenter.Socket;
 
 /**
@@ -62,6 +63,25 @@ public final class SocketEnteredParkEvent extends AbstractEvent {
         this.socket = theSocket;
     }
 
+    /**
+     * Re-arms a recycled event.
+     * @param time - the time the socket enters park
+     * @param theSocket - the socket being parked
+     */
+    void reset(final double time, final Socket theSocket) {
+        this.rearm(time);
+        this.socket = theSocket;
+    }
+
+    /**
+     * Get the server the event acts on.
+     * @return the server of the socket
+     */
+    @Override
+    public Server getServer() {
+        return this.socket.getServer();
+    }
+
     /**
      * Puts the socket in park.
      */
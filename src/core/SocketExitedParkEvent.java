@@ -30,6 +30,7 @@
  */
 package core;
 
+import datacenter.Server;
 import datacenter.Socket;
 
 /**
@@ -62,6 +63,15 @@ public final class SocketExitedParkEvent extends AbstractEvent {
         this.socket = theSocket;
     }
 
+    /**
+     * Get the server the event acts on.
+     * @return the server of the socket
+     */
+    @Override
+    public Server getServer() {
+        return this.socket.getServer();
+    }
+
     /**
      * Takes the socket out of park.
      */
@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package core;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Vector;
+
+import stat.Statistic;
+import core.Constants.StatName;
+import datacenter.Server;
+
+/**
+ * Watches a running experiment for signs that it's unstable (i.e., jobs
+ * arrive faster than the servers can finish them), so the experiment can
+ * end instead of running forever while its queues grow without bound.
+ *
+ * The monitor splits the run into periods, each twice as long as the one
+ * before. At the end of each period it counts the jobs in the data center
+ * and works out the mean response time of the jobs that finished during
+ * the period. The queues of an unstable experiment grow roughly linearly,
+ * so both roughly double from one period to the next, while a stable
+ * experiment's only grow during excursions, which don't last across
+ * several ever longer periods. The experiment is unstable once both have
+ * grown by {@link #GROWTH} for {@link #N_CONFIRMATIONS} periods in a row.
+ *
+ * Heavily overloaded experiments can have their statistics converge
+ * (on values that keep drifting) before that, so convergence is only
+ * trusted if the queues weren't still growing (see
+ * {@link #isStillGrowing()}).
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public final class StabilityMonitor implements Serializable {
+
+    /**
+     * The serialization id.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The fewest events in the first period. */
+    private static final long MIN_FIRST_PERIOD = 1L << 13;
+
+    /** The events in the first period for each server. */
+    private static final long FIRST_PERIOD_PER_SERVER = 200;
+
+    /** How much both measures have to grow each period. */
+    private static final double GROWTH = 1.5;
+
+    /** The number of periods in a row that have to show growth. */
+    private static final int N_CONFIRMATIONS = 3;
+
+    /** The servers being watched. */
+    private Vector<Server> servers;
+
+    /** The response time statistic. */
+    private Statistic sojournTime;
+
+    /** The number of events in the current period. */
+    private long periodEvents;
+
+    /** The number of processed events at which the current period ends. */
+    private long nextCheck;
+
+    /** The jobs in the data center at the end of the last period. */
+    private int lastJobs;
+
+    /**
+     * The mean response time in the last period
+     * (infinite if no jobs finished).
+     */
+    private double lastSojournMean;
+
+    /** The number of periods in a row that have shown growth. */
+    private int nGrowing;
+
+    /** The jobs in the data center when the growth started. */
+    private int startJobs;
+
+    /** The mean response time when the growth started. */
+    private double startSojournMean;
+
+    /** The number of response times at the end of the last period. */
+    private long lastSojournCount;
+
+    /** The sum of the response times at the end of the last period. */
+    private double lastSojournSum;
+
+    /** If any jobs have finished since the monitor started. */
+    private boolean sawSojourns;
+
+    /**
+     * Creates a new StabilityMonitor.
+     *
+     * @param experiment - the experiment to watch
+     * @param nEvents - the number of events the experiment has processed
+     */
+    public StabilityMonitor(final Experiment experiment, final long nEvents) {
+        this.servers = experiment.getInput().getDataCenter().getServers();
+        this.sojournTime = experiment.getOutput().getStats().getStat(
+                StatName.SOJOURN_TIME);
+        this.periodEvents = Math.max(MIN_FIRST_PERIOD,
+                FIRST_PERIOD_PER_SERVER * this.servers.size());
+        this.nextCheck = nEvents + this.periodEvents;
+        this.lastJobs = 0;
+        this.lastSojournMean = Double.NaN;
+        this.nGrowing = 0;
+        this.lastSojournCount = this.sojournTime.getTotalSamples();
+        this.lastSojournSum = this.sojournTime.getSampleSum();
+        this.sawSojourns = false;
+    }
+
+    /**
+     * Checks if the experiment has become unstable. Only does any work
+     * at the end of a period.
+     *
+     * @param nEvents - the number of events the experiment has processed
+     * @return if the experiment is unstable
+     */
+    public boolean check(final long nEvents) {
+        if (nEvents < this.nextCheck) {
+            return false;
+        }
+        this.periodEvents *= 2;
+        this.nextCheck = nEvents + this.periodEvents;
+
+        int jobs = 0;
+        Iterator<Server> iter = this.servers.iterator();
+        while (iter.hasNext()) {
+            jobs += iter.next().getJobsInSystem();
+        }
+        long sojournCount = this.sojournTime.getTotalSamples();
+        double sojournSum = this.sojournTime.getSampleSum();
+        double sojournMean = Double.POSITIVE_INFINITY;
+        if (sojournCount > this.lastSojournCount) {
+            sojournMean = (sojournSum - this.lastSojournSum)
+                    / (sojournCount - this.lastSojournCount);
+            this.sawSojourns = true;
+        }
+        this.lastSojournCount = sojournCount;
+        this.lastSojournSum = sojournSum;
+
+        // Response times are ignored if no jobs have finished
+        // (e.g., the statistic isn't collected)
+        boolean growing = this.lastJobs > 0
+                && jobs >= GROWTH * this.lastJobs
+                && (!this.sawSojourns
+                        || sojournMean >= GROWTH * this.lastSojournMean);
+        if (!growing) {
+            this.nGrowing = 0;
+        } else if (this.nGrowing++ == 0) {
+            this.startJobs = this.lastJobs;
+            this.startSojournMean = this.lastSojournMean;
+        }
+        this.lastJobs = jobs;
+        this.lastSojournMean = sojournMean;
+
+        return this.nGrowing >= N_CONFIRMATIONS;
+    }
+
+    /**
+     * Checks if the experiment is still growing: the periods before the
+     * current one all grew and the current one has grown so far. Meant for
+     * when the statistics converge before the monitor could confirm
+     * the experiment is unstable. Doesn't change the monitor's state,
+     * so it can be called any number of times.
+     *
+     * @return if the experiment is still growing
+     */
+    public boolean isStillGrowing() {
+        if (this.nGrowing < N_CONFIRMATIONS - 1) {
+            return false;
+        }
+
+        int jobs = 0;
+        Iterator<Server> iter = this.servers.iterator();
+        while (iter.hasNext()) {
+            jobs += iter.next().getJobsInSystem();
+        }
+        long sojournCount = this.sojournTime.getTotalSamples();
+        double sojournMean = Double.POSITIVE_INFINITY;
+        if (sojournCount > this.lastSojournCount) {
+            sojournMean = (this.sojournTime.getSampleSum()
+                    - this.lastSojournSum)
+                    / (sojournCount - this.lastSojournCount);
+        }
+
+        return jobs > this.lastJobs && (!this.sawSojourns
+                || sojournMean > this.lastSojournMean);
+    }
+
+    /**
+     * Describes why the experiment is considered unstable, as of the end
+     * of the last period.
+     *
+     * @return the reason the experiment is unstable
+     */
+    public String getReason() {
+        return "jobs in the data center grew from " + this.startJobs
+                + " to " + this.lastJobs + " and mean response time from "
+                + this.startSojournMean + " to " + this.lastSojournMean
+                + " over " + this.nGrowing + " periods in a row";
+    }
+
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package core;
+
+import java.io.Serializable;
+
+/**
+ * A clock that only ticks a whole number of times per second
+ * (e.g., once a nanosecond). Event times on the clock are whole numbers
+ * of ticks, so adding a small delay to a large time always lands on
+ * the same tick no matter how the sum was rounded, and events on the
+ * same tick are simultaneous and happen in the order they were scheduled.
+ *
+ * Times are still passed around in seconds: a tick count {@code k} is
+ * the double nearest {@code k / ticksPerSecond}. Since that mapping
+ * never reorders ticks, the event queues order events exactly as they
+ * would by tick count.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public final class TickClock implements Serializable {
+
+    /**
+     * The serialization id.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** Ticks per second for a nanosecond clock. */
+    public static final long NANOSECONDS = 1000000000L;
+
+    /** The number of ticks per second. */
+    private long ticksPerSecond;
+
+    /** The number of ticks per second, as a double. */
+    private double tickRate;
+
+    /**
+     * Creates a new TickClock.
+     *
+     * @param theTicksPerSecond - the number of ticks per second
+     */
+    public TickClock(final long theTicksPerSecond) {
+        if (theTicksPerSecond < 1) {
+            Sim.fatalError("A clock needs at least one tick per second, not "
+                    + theTicksPerSecond);
+        }
+        this.ticksPerSecond = theTicksPerSecond;
+        this.tickRate = theTicksPerSecond;
+    }
+
+    /**
+     * Gets the number of ticks per second.
+     *
+     * @return the number of ticks per second
+     */
+    public long getTicksPerSecond() {
+        return this.ticksPerSecond;
+    }
+
+    /**
+     * Converts a time to the nearest number of ticks.
+     *
+     * @param seconds - the time in seconds
+     * @return the time in ticks
+     */
+    public long toTicks(final double seconds) {
+        return Math.round(seconds * this.tickRate);
+    }
+
+    /**
+     * Converts a number of ticks to a time.
+     *
+     * @param ticks - the time in ticks
+     * @return the time in seconds
+     */
+    public double toSeconds(final long ticks) {
+        return ticks / this.tickRate;
+    }
+
+    /**
+     * Rounds a time to the nearest tick.
+     *
+     * @param seconds - the time in seconds
+     * @return the time of the nearest tick in seconds
+     */
+    public double round(final double seconds) {
+        return this.toSeconds(this.toTicks(seconds));
+    }
+
+}
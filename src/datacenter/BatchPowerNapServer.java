@@ -57,6 +57,9 @@ public class BatchPowerNapServer extends PowerNapServer {
     /** The time between releasing batches. */
     private double batchInterval;
 
+    /** The experiment's fixed-delay lane for batch events. */
+    private int batchLane;
+
     /**
      * Creates a new BatchPowerNapServer.
      *
@@ -88,10 +91,11 @@ public class BatchPowerNapServer extends PowerNapServer {
               napPower);
         this.batchBuffer = new Vector<Job>();
         this.batchInterval = theBatchInterval;
+        this.batchLane = this.experiment.registerFixedDelay(theBatchInterval);
         StartBatchEvent startBatchEvent = new StartBatchEvent(theBatchInterval,
                                                              this.experiment,
                                                              this);
-        this.experiment.addEvent(startBatchEvent);
+        this.experiment.addEvent(startBatchEvent, this.batchLane);
     }
 
     /**
@@ -122,7 +126,7 @@ public class BatchPowerNapServer extends PowerNapServer {
         double batchTime = time + this.batchInterval;
         StartBatchEvent startBatchEvent = new StartBatchEvent(batchTime,
                 this.experiment, this);
-        this.experiment.addEvent(startBatchEvent);
+        this.experiment.addEvent(startBatchEvent, this.batchLane);
     }
 
     /**
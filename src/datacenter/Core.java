@@ -63,7 +63,7 @@ public final class Core implements Powerable, Serializable {
     /**
      * THe possible power states the core can be in.
      */
-    private enum PowerState {
+    enum PowerState {
 
         /** The core is actively processing. */
         ACTIVE,
@@ -141,6 +141,9 @@ public final class Core implements Powerable, Serializable {
      */
     private AbstractEvent transitionEvent;
 
+    /** The experiment's fixed-delay lane for park transition events. */
+    private int parkTransitionLane;
+
     /**
      * If the core is paused.
      */
@@ -169,6 +172,8 @@ public final class Core implements Powerable, Serializable {
         idlePower = dynamicPower / 5.0;
         transitionToParkTime = 100e-6;
         this.paused = false;
+        this.parkTransitionLane
+            = this.experiment.registerFixedDelay(this.transitionToParkTime);
     }
 
     /**
@@ -187,6 +192,14 @@ public final class Core implements Powerable, Serializable {
         return this.powerPolicy;
     }
 
+    /**
+     * Gets the socket the core is part of.
+     * @return the socket the core is part of
+     */
+    public Socket getSocket() {
+        return this.socket;
+    }
+
     /**
      * Puts a job on the core for the first time.
      *
@@ -210,6 +223,7 @@ public final class Core implements Powerable, Serializable {
                 Sim.fatalError("Tried to cancel the wrong type of event");
             }
             this.experiment.cancelEvent(this.transitionEvent);
+            this.transitionEvent = null;
         }
 
         if (this.powerState == PowerState.LOW_POWER_IDLE
@@ -218,18 +232,20 @@ public final class Core implements Powerable, Serializable {
             double exitTime = time + this.transitionToParkTime;
             CoreExitedParkEvent coreExitedParkEvent = new CoreExitedParkEvent(
                     exitTime, this.experiment, this);
-            this.experiment.addEvent(coreExitedParkEvent);
+            this.experiment.addEvent(coreExitedParkEvent,
+                                     this.parkTransitionLane);
         } else {
             double alpha = .9;
             double slowdown = (1 - alpha) + alpha / this.speed;
             double finishTime = time + this.job.getSize() / slowdown;
             Server server = this.socket.getServer();
-            JobFinishEvent finishEvent = new JobFinishEvent(finishTime,
-                    experiment, aJob, server, time, this.speed);
+            JobFinishEvent finishEvent
+                = this.experiment.getEventPool().createJobFinishEvent(
+                    finishTime, aJob, server, time, this.speed);
             aJob.setLastResumeTime(time);
             this.experiment.addEvent(finishEvent);
             // Core now goes into full power state
-            this.powerState = PowerState.ACTIVE;
+            this.setPowerState(PowerState.ACTIVE);
         }
     }
 
@@ -262,17 +278,18 @@ public final class Core implements Powerable, Serializable {
         if (!jobWaiting) {
 
             if (this.powerPolicy == CorePowerPolicy.CORE_PARKING) {
-                this.powerState = PowerState.TRANSITIONINGG_TO_LOW_POWER_IDLE;
+                this.setPowerState(
+                        PowerState.TRANSITIONINGG_TO_LOW_POWER_IDLE);
                 double enteredLowPowerTime = time + this.transitionToParkTime;
                 CoreEnteredParkEvent coreEnteredParkEvent
-                    = new CoreEnteredParkEvent(enteredLowPowerTime,
-                                               this.experiment,
-                                               this);
+                    = this.experiment.getEventPool()
+                        .createCoreEnteredParkEvent(enteredLowPowerTime, this);
                 this.transitionEvent = coreEnteredParkEvent;
-                this.experiment.addEvent(coreEnteredParkEvent);
+                this.experiment.addEvent(coreEnteredParkEvent,
+                                         this.parkTransitionLane);
 
             } else {
-                this.powerState = PowerState.HALT;
+                this.setPowerState(PowerState.HALT);
             }
         }
     }
@@ -329,7 +346,7 @@ public final class Core implements Powerable, Serializable {
      * @param time - the time the core enters park
      */
     public void enterPark(final double time) {
-        this.powerState = PowerState.LOW_POWER_IDLE;
+        this.setPowerState(PowerState.LOW_POWER_IDLE);
     }
 
     /**
@@ -344,11 +361,35 @@ public final class Core implements Powerable, Serializable {
 
         double finishTime = time + this.job.getSize();
         Server server = this.socket.getServer();
-        JobFinishEvent finishEvent = new JobFinishEvent(finishTime, experiment,
+        JobFinishEvent finishEvent
+            = this.experiment.getEventPool().createJobFinishEvent(finishTime,
                 job, server, time, this.speed);
         job.setLastResumeTime(time);
         this.experiment.addEvent(finishEvent);
-        this.powerState = PowerState.ACTIVE;
+        this.setPowerState(PowerState.ACTIVE);
+    }
+
+    /**
+     * Changes the power state of the core and lets the socket know,
+     * so it can keep its power up to date.
+     *
+     * @param newState - the new power state
+     */
+    private void setPowerState(final PowerState newState) {
+        PowerState oldState = this.powerState;
+        this.powerState = newState;
+        if (oldState != newState) {
+            this.socket.coreStateChanged(oldState, newState);
+        }
+    }
+
+    /**
+     * Gets the power state of the core.
+     *
+     * @return the power state of the core
+     */
+    PowerState getPowerState() {
+        return this.powerState;
     }
 
     /**
@@ -362,12 +403,13 @@ public final class Core implements Powerable, Serializable {
         // Figure out it's new completion time
         if (this.job != null) {
 
+            // Read the old finish event before canceling it,
+            // since a canceled event may be recycled
             JobFinishEvent finishEvent = this.job.getJobFinishEvent();
-            this.experiment.cancelEvent(finishEvent);
-
             Job theJob = finishEvent.getJob();
             double finishSpeed = finishEvent.getFinishSpeed();
             double finishStartTime = finishEvent.getFinishTimeSet();
+            this.experiment.cancelEvent(finishEvent);
             double duration = time - finishStartTime;
             //TODO Fix this magic number
             double alpha = 0.9;
@@ -380,9 +422,10 @@ public final class Core implements Powerable, Serializable {
                     + (theJob.getSize() - theJob.getAmountCompleted())
                         / slowdown;
 
-            JobFinishEvent newFinishEvent = new JobFinishEvent(finishTime,
-                    this.experiment, finishEvent.getJob(),
-                    this.socket.getServer(), time, this.speed);
+            JobFinishEvent newFinishEvent
+                = this.experiment.getEventPool().createJobFinishEvent(
+                    finishTime, theJob, this.socket.getServer(), time,
+                    this.speed);
             this.experiment.addEvent(newFinishEvent);
         }
     }
@@ -465,8 +508,9 @@ public final class Core implements Powerable, Serializable {
                 Sim.fatalError("time left has been miscalculated");
             }
 
-            JobFinishEvent finishEvent = new JobFinishEvent(finishTime,
-                    experiment, job, server, time, this.speed);
+            JobFinishEvent finishEvent
+                = this.experiment.getEventPool().createJobFinishEvent(
+                    finishTime, job, server, time, this.speed);
             job.setLastResumeTime(time);
             this.experiment.addEvent(finishEvent);
         }
@@ -479,6 +523,7 @@ public final class Core implements Powerable, Serializable {
      */
     public void setIdlePower(final double coreIdlePower) {
         this.idlePower = coreIdlePower;
+        this.socket.corePowerChanged();
     }
 
     /**
@@ -488,6 +533,7 @@ public final class Core implements Powerable, Serializable {
      */
     public void setParkPower(final double coreParkPower) {
         this.parkPower = coreParkPower;
+        this.socket.corePowerChanged();
     }
 
     /**
@@ -498,6 +544,34 @@ public final class Core implements Powerable, Serializable {
      */
     public void setActivePower(final double coreDynamicPower) {
         this.dynamicPower = coreDynamicPower;
+        this.socket.corePowerChanged();
+    }
+
+    /**
+     * Gets the power of the core while idle (in watts).
+     *
+     * @return the power of the core while idle (in watts)
+     */
+    double getHaltPower() {
+        return this.idlePower;
+    }
+
+    /**
+     * Gets the park power of the core (in watts).
+     *
+     * @return the park power of the core (in watts)
+     */
+    double getParkPower() {
+        return this.parkPower;
+    }
+
+    /**
+     * Gets the power of the core while active (in watts).
+     *
+     * @return the power of the core while active (in watts)
+     */
+    double getActivePower() {
+        return this.dynamicPower;
     }
 
     /**
@@ -51,6 +51,12 @@ public final class DataCenter implements Serializable {
      */
     private Vector<Server> servers;
 
+    /**
+     * Generates the jobs for all the servers, or null if each server
+     * generates its own.
+     */
+    private JobDispatcher dispatcher;
+
     /**
      * Creates a new datacenter.
      */
@@ -76,6 +82,26 @@ public final class DataCenter implements Serializable {
         return this.servers;
     }
 
+    /**
+     * Has a single stream of jobs arrive to the datacenter, instead of
+     * each server generating its own jobs.
+     *
+     * @param aDispatcher - generates the jobs and sends them to servers,
+     * or null for each server to generate its own
+     */
+    public void setJobDispatcher(final JobDispatcher aDispatcher) {
+        this.dispatcher = aDispatcher;
+    }
+
+    /**
+     * Gets what generates the jobs for all the servers.
+     *
+     * @return the dispatcher or null if each server generates its own jobs
+     */
+    public JobDispatcher getJobDispatcher() {
+        return this.dispatcher;
+    }
+
     /**
      * Updates the statistics of all the objects in the datacenter.
      *
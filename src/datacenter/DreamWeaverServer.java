@@ -31,7 +31,6 @@
 package datacenter;
 
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Vector;
 
 import generator.Generator;
@@ -204,11 +203,8 @@ public class DreamWeaverServer extends PowerNapServer {
     public void cancelTimeoutEvent(final double time) {
         for (int i = 0; i < sockets.length; i++) {
             Socket socket = sockets[i];
-            Vector<Core> cores = socket.getCores();
-            Iterator<Core> iter = cores.iterator();
-            while (iter.hasNext()) {
-                Core core = iter.next();
-                Job coreJob = core.getJob();
+            for (int j = 0; j < socket.getNCores(); j++) {
+                Job coreJob = socket.getCore(j).getJob();
 
                 if (coreJob != null) {
                     DreamWeaverJobTimeoutEvent timeoutEvent
@@ -245,11 +241,8 @@ public class DreamWeaverServer extends PowerNapServer {
         Socket[] sockets = this.getSockets();
         for (int i = 0; i < sockets.length; i++) {
             Socket socket = sockets[i];
-            Vector<Core> cores = socket.getCores();
-            Iterator<Core> iter = cores.iterator();
-            while (iter.hasNext()) {
-                Core core = iter.next();
-                Job coreJob = core.getJob();
+            for (int j = 0; j < socket.getNCores(); j++) {
+                Job coreJob = socket.getCore(j).getJob();
 
                 if (coreJob != null) {
                     double amountDelayed = time - coreJob.getStartTime()
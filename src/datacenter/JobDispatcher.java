@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package datacenter;
+
+import generator.Generator;
+
+import java.io.Serializable;
+import java.util.Vector;
+
+import core.Experiment;
+import core.Job;
+import core.Constants.StatName;
+
+/**
+ * Generates the jobs arriving to a whole data center as a single stream
+ * and sends each to a server with a {@link JobRouter}. Instead of every
+ * server keeping its own pending arrival, there is only ever one, so the
+ * cost of an arrival doesn't grow with the number of servers. Meant for
+ * pools of identical servers (e.g., a Poisson stream with the aggregate
+ * rate split at random, which is the same as independent Poisson streams
+ * per server). The generated arrival time statistic then records the
+ * data center's interarrival times rather than a server's.
+ *
+ * Every arrival is an event not tied to a single server, so parallel
+ * runs synchronize at each one, unless they're optimistic (see
+ * {@link Experiment#setOptimisticWindow(double)}).
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public final class JobDispatcher implements Serializable {
+
+    /**
+     * The serialization id.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The experiment the dispatcher is part of. */
+    private Experiment experiment;
+
+    /** The servers jobs are sent to. */
+    private Vector<Server> servers;
+
+    /** The interarrival time generator for the whole data center. */
+    private Generator arrivalGenerator;
+
+    /** The service time generator. */
+    private Generator serviceGenerator;
+
+    /** Picks the server each job is sent to. */
+    private JobRouter router;
+
+    /**
+     * Creates a new JobDispatcher.
+     *
+     * @param anExperiment - the experiment the dispatcher is part of
+     * @param dataCenter - the data center whose servers jobs are sent to
+     * @param anArrivalGenerator - the interarrival time generator for the
+     * whole data center (i.e., at the aggregate arrival rate)
+     * @param aServiceGenerator - the service time generator
+     * @param aRouter - picks the server each job is sent to
+     */
+    public JobDispatcher(final Experiment anExperiment,
+                         final DataCenter dataCenter,
+                         final Generator anArrivalGenerator,
+                         final Generator aServiceGenerator,
+                         final JobRouter aRouter) {
+        this.experiment = anExperiment;
+        this.servers = dataCenter.getServers();
+        this.arrivalGenerator = anArrivalGenerator;
+        this.serviceGenerator = aServiceGenerator;
+        this.router = aRouter;
+    }
+
+    /**
+     * Creates the next arrival to the data center.
+     *
+     * @param time - the time the new arrival is created
+     */
+    public void createNewArrival(final double time) {
+        double interarrivalTime = this.arrivalGenerator.next();
+        double serviceTime = this.serviceGenerator.next();
+        this.experiment.getStats().getStat(StatName.GENERATED_ARRIVAL_TIME)
+                .addSample(interarrivalTime);
+        this.experiment.getStats().getStat(StatName.GENERATED_SERVICE_TIME)
+                .addSample(serviceTime);
+
+        Job job = this.experiment.getEventPool().createJob(serviceTime);
+        this.experiment.addEvent(new JobDispatchEvent(time + interarrivalTime,
+                this.experiment, job, this));
+    }
+
+    /**
+     * Sends an arriving job to a server and creates the next arrival.
+     *
+     * @param time - the time the job arrives
+     * @param job - the arriving job
+     */
+    public void dispatch(final double time, final Job job) {
+        Server server = this.route(time, job);
+        server.insertJob(time, job);
+        job.markArrival(time);
+    }
+
+    /**
+     * Creates the next arrival and picks the server a job is sent to,
+     * without sending it there.
+     *
+     * @param time - the time the job arrives
+     * @param job - the arriving job
+     * @return the server the job is sent to
+     */
+    public Server route(final double time, final Job job) {
+        this.createNewArrival(time);
+
+        return this.router.route(time, job, this.servers);
+    }
+
+    /**
+     * Gets what picks the server each job is sent to.
+     *
+     * @return the dispatcher's router
+     */
+    public JobRouter getRouter() {
+        return this.router;
+    }
+
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package datacenter;
+
+import java.io.Serializable;
+import java.util.Vector;
+
+import core.Job;
+
+/**
+ * Decides which server each job arriving to the data center is sent to
+ * (see {@link JobDispatcher}).
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public interface JobRouter extends Serializable {
+
+    /**
+     * Picks the server a job is sent to.
+     *
+     * @param time - the time the job arrives
+     * @param job - the arriving job
+     * @param servers - the servers the job can be sent to
+     * @return the server the job is sent to
+     */
+    Server route(double time, Job job, Vector<Server> servers);
+
+    /**
+     * Checks if the router looks at the servers' state (e.g., how many
+     * jobs they have) to pick one. Optimistic runs (see
+     * {@link core.Experiment#setOptimisticWindow(double)}) route jobs
+     * ahead of the servers, so they can only use routers that don't.
+     *
+     * @return if the router looks at the servers' state
+     */
+    boolean readsServerState();
+
+}
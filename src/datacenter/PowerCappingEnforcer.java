@@ -68,6 +68,9 @@ public final class PowerCappingEnforcer implements Serializable {
     /** The time period at which to recalculate server budgets. */
     private double capPeriod;
 
+    /** The experiment's fixed-delay lane for recalculation events. */
+    private int capLane;
+
     /** the experiment the enforcer is part of. */
     private Experiment experiment;
 
@@ -92,11 +95,13 @@ public final class PowerCappingEnforcer implements Serializable {
         this.globalCap = theGlobalCap;
         this.minPower = theMinPower;
         this.maxPower = theMaxPower;
+        this.capLane = this.experiment.registerFixedDelay(this.capPeriod);
         this.experiment.addEvent(
                 new RecalculateCapsEvent(
                         this.capPeriod,
                         this.experiment,
-                        this));
+                        this),
+                this.capLane);
     }
 
     /**
@@ -132,6 +137,7 @@ public final class PowerCappingEnforcer implements Serializable {
 
         iter = this.servers.iterator();
         SimpleStatistic serverCapStat = new SimpleStatistic();
+        this.experiment.startEventBatch();
         while (iter.hasNext()) {
             Server server = iter.next();
             double allocatedPower = powerRate * server.getInstantUtilization()
@@ -144,12 +150,13 @@ public final class PowerCappingEnforcer implements Serializable {
             serverCapStat.addSample(Math.max(idealPower - allocatedPower, 0));
             server.assignPowerBudget(time, allocatedPower);
         }
+        this.experiment.finishEventBatch();
         this.experiment.getStats().getStat(StatName.SERVER_LEVEL_CAP)
                 .addSample(Math.max(serverCapStat.getAverage(), 0));
         this.experiment.getStats().getStat(StatName.TOTAL_CAPPING)
                 .addSample(serverCapStat.getTotalAccumulation());
         this.experiment.addEvent(new RecalculateCapsEvent(time
-                + this.capPeriod, this.experiment, this));
+                + this.capPeriod, this.experiment, this), this.capLane);
     }
 
 }
@@ -87,6 +87,11 @@ public class PowerNapServer extends Server {
     /** Whether the PowerNap server is transitioning to nap. */
     private boolean transitioningToNap;
 
+    /**
+     * The experiment's fixed-delay lane for nap transition events.
+     */
+    private int napTransitionLane;
+
     /**
      * Creates a new PowerNapServer.
      *
@@ -110,6 +115,8 @@ public class PowerNapServer extends Server {
                 serviceGenerator);
 
         this.napTransitionTime = theNapTransitionTime;
+        this.napTransitionLane
+            = experiment.registerFixedDelay(theNapTransitionTime);
         this.napPower = theNapPower;
         this.powerNapState = PowerNapState.NAP;
         this.transitioningToActive = false;
@@ -128,6 +135,17 @@ public class PowerNapServer extends Server {
                 || this.transitioningToNap;
     }
 
+    /**
+     * A PowerNap server's idle behavior depends on how long it has been
+     * idle, since it naps once idle.
+     *
+     * @return false
+     */
+    @Override
+    public boolean isMemorylessWhenIdle() {
+        return false;
+    }
+
     /**
      * Inserts the job into the server.
      *
@@ -219,7 +237,11 @@ public class PowerNapServer extends Server {
             = new PowerNapTransitionedToActiveEvent(napTime,
                                                     this.getExperiment(),
                                                     this);
-        this.getExperiment().addEvent(napEvent);
+        if (extraDelay == 0) {
+            this.getExperiment().addEvent(napEvent, this.napTransitionLane);
+        } else {
+            this.getExperiment().addEvent(napEvent);
+        }
     }
 
     /**
@@ -245,7 +267,7 @@ public class PowerNapServer extends Server {
                                                  this.getExperiment(),
                                                  this);
         this.transitionEvent = napEvent;
-        this.getExperiment().addEvent(napEvent);
+        this.getExperiment().addEvent(napEvent, this.napTransitionLane);
         this.pauseProcessing(time);
     }
 
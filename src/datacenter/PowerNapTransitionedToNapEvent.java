@@ -64,6 +64,15 @@ public final class PowerNapTransitionedToNapEvent extends AbstractEvent {
         this.server = aServer;
     }
 
+    /**
+     * Get the server the event acts on.
+     * @return the server the event acts on
+     */
+    @Override
+    public Server getServer() {
+        return this.server;
+    }
+
     /**
      * Sets the server to nap.
      */
@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package datacenter;
+
+import generator.MTRandom;
+
+import java.util.Vector;
+
+import core.Job;
+
+/**
+ * Sends each job to a server picked uniformly at random. Splitting a
+ * Poisson arrival stream this way gives every server an independent
+ * Poisson stream with an equal share of the rate.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public final class RandomJobRouter implements JobRouter {
+
+    /**
+     * The serialization id.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The random number generator used to pick servers. */
+    private MTRandom random;
+
+    /**
+     * Creates a new RandomJobRouter.
+     *
+     * @param aRandom - the random number generator used to pick servers
+     */
+    public RandomJobRouter(final MTRandom aRandom) {
+        this.random = aRandom;
+    }
+
+    /**
+     * Picks a server uniformly at random.
+     *
+     * @param time - the time the job arrives
+     * @param job - the arriving job
+     * @param servers - the servers the job can be sent to
+     * @return the server the job is sent to
+     */
+    public Server route(final double time,
+                        final Job job,
+                        final Vector<Server> servers) {
+        return servers.get(this.random.nextInt(servers.size()));
+    }
+
+    /**
+     * Picks servers at random, without looking at them.
+     *
+     * @return false
+     */
+    public boolean readsServerState() {
+        return false;
+    }
+
+}
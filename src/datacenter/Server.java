@@ -31,14 +31,15 @@
 package datacenter;
 
 import generator.Generator;
+import generator.MTRandom;
 
 import java.io.Serializable;
-import java.util.HashMap;
 import java.util.LinkedList;
 
 import stat.Statistic;
 import stat.TimeWeightedStatistic;
 import core.Constants;
+import core.EventPool;
 import core.Experiment;
 import core.Job;
 import core.JobArrivalEvent;
@@ -89,11 +90,6 @@ public class Server implements Powerable, Serializable {
      */
     protected Socket[] sockets;
 
-    /**
-     * Map that saves which socket has a job to avoid searching.
-     */
-    protected HashMap<Job, Socket> jobToSocketMap;
-
     /**
      * The experiment the server is running in.
      */
@@ -125,6 +121,52 @@ public class Server implements Powerable, Serializable {
      */
     protected int jobsInServerInvariant;
 
+    /**
+     * Interarrival times generated ahead of time, or null if arrivals
+     * are generated one at a time.
+     */
+    private double[] interarrivalBuffer;
+
+    /**
+     * Service times generated ahead of time, matching the interarrival times.
+     */
+    private double[] serviceBuffer;
+
+    /**
+     * The position of the next unused arrival in the buffers.
+     */
+    private int bufferPosition;
+
+    /** The number of jobs the server's sockets can hold at once. */
+    private int totalCapacity;
+
+    /** The number of jobs running on the server's cores. */
+    private int nJobsInService;
+
+    /**
+     * The number of jobs waiting for one of the server's sockets
+     * to come out of park.
+     */
+    private int nJobsWaitingForTransition;
+
+    /**
+     * The idle power of the server's sockets, recomputed when it's read
+     * after one of them changes power.
+     */
+    private double socketIdlePower;
+
+    /**
+     * The dynamic power of the server's sockets, recomputed when it's read
+     * after one of them changes power.
+     */
+    private double socketDynamicPower;
+
+    /**
+     * If one of the server's sockets has changed power since the power
+     * of the sockets was last added up.
+     */
+    private boolean socketPowerStale;
+
     /**
      * Creates a new server.
      *
@@ -147,10 +189,19 @@ public class Server implements Powerable, Serializable {
         for (int i = 0; i < theNumberOfSockets; i++) {
             this.sockets[i] = new Socket(experiment, this, theCoresPerSocket);
         }
-        this.jobToSocketMap = new HashMap<Job, Socket>();
+        this.totalCapacity = 0;
+        for (int i = 0; i < theNumberOfSockets; i++) {
+            this.totalCapacity += this.sockets[i].getTotalCapacity();
+        }
+        this.nJobsInService = 0;
+        this.nJobsWaitingForTransition = 0;
+        this.socketPowerChanged();
         this.scheduler = Scheduler.LOAD_BALANCE;
         this.jobsInServerInvariant = 0;
         this.paused = false;
+        this.interarrivalBuffer = null;
+        this.serviceBuffer = null;
+        this.bufferPosition = 0;
     }
 
     /**
@@ -176,42 +227,91 @@ public class Server implements Powerable, Serializable {
         return this.paused;
     }
 
+    /**
+     * Gives the server its own random number stream, so the jobs it
+     * generates don't depend on the other servers.
+     *
+     * @param aRandom - the random number generator for the server's
+     * arrival and service time generators
+     */
+    public final void setRandomSubstream(final MTRandom aRandom) {
+        this.discardArrivalBuffer();
+        if (this.arrivalGenerator != null) {
+            this.arrivalGenerator = this.arrivalGenerator.withRandom(aRandom);
+        }
+        if (this.serviceGenerator != null) {
+            this.serviceGenerator = this.serviceGenerator.withRandom(aRandom);
+        }
+    }
+
     /**
      * Creates a new arrival for the server.
      *
      * @param time - the time the new arrival is created
      */
     public final void createNewArrival(final double time) {
-        double interarrivalTime = this.arrivalGenerator.next();
+        double interarrivalTime;
+        double serviceTime;
+        int blockSize = this.experiment.getArrivalBlockSize();
+        if (blockSize > 1) {
+            if (this.interarrivalBuffer == null
+                    || this.interarrivalBuffer.length != blockSize) {
+                this.interarrivalBuffer = new double[blockSize];
+                this.serviceBuffer = new double[blockSize];
+                this.bufferPosition = blockSize;
+            }
+            if (this.bufferPosition == blockSize) {
+                this.fillArrivalBuffer();
+            }
+            interarrivalTime = this.interarrivalBuffer[this.bufferPosition];
+            serviceTime = this.serviceBuffer[this.bufferPosition];
+            this.bufferPosition++;
+        } else {
+            interarrivalTime = this.arrivalGenerator.next();
+            serviceTime = this.serviceGenerator.next();
+            Statistic arrivalStat
+                = this.experiment.getStats().getStat(
+                                    StatName.GENERATED_ARRIVAL_TIME);
+            arrivalStat.addSample(interarrivalTime);
+            Statistic serviceStat
+                = this.experiment.getStats().getStat(
+                                    StatName.GENERATED_SERVICE_TIME);
+            serviceStat.addSample(serviceTime);
+        }
         double arrivalTime = time + interarrivalTime;
-        double serviceTime = this.serviceGenerator.next();
-        Statistic arrivalStat
-            = this.experiment.getStats().getStat(
-                                StatName.GENERATED_ARRIVAL_TIME);
-        arrivalStat.addSample(interarrivalTime);
-        Statistic serviceStat
-            = this.experiment.getStats().getStat(
-                                StatName.GENERATED_SERVICE_TIME);
-        serviceStat.addSample(serviceTime);
-
-        Job job = new Job(serviceTime);
+
+        EventPool eventPool = this.experiment.getEventPool();
+        Job job = eventPool.createJob(serviceTime);
         JobArrivalEvent jobArrivalEvent
-                = new JobArrivalEvent(arrivalTime,
-                                      experiment,
-                                      job,
-                                      this);
+                = eventPool.createJobArrivalEvent(arrivalTime, job, this);
         this.experiment.addEvent(jobArrivalEvent);
     }
 
-//    /**
-//     * Assigns a job to
-//     * @param time
-//     * @param socket
-//     * @param job
-//     */
-//    public void setSocketJobMapping(double time, Socket socket, Job job) {
-//        this.jobToSocketMap.put(job, socket);
-//    }
+    /**
+     * Generates a block of interarrival and service times and records
+     * them in the generated time statistics.
+     */
+    private void fillArrivalBuffer() {
+        int blockSize = this.interarrivalBuffer.length;
+        this.arrivalGenerator.fill(this.interarrivalBuffer, blockSize);
+        this.serviceGenerator.fill(this.serviceBuffer, blockSize);
+        this.experiment.getStats().getStat(StatName.GENERATED_ARRIVAL_TIME)
+                .addSamples(this.interarrivalBuffer, blockSize);
+        this.experiment.getStats().getStat(StatName.GENERATED_SERVICE_TIME)
+                .addSamples(this.serviceBuffer, blockSize);
+        this.bufferPosition = 0;
+    }
+
+    /**
+     * Throws away any arrivals generated ahead of time, so the next
+     * arrival is drawn fresh (e.g., after the random number generator
+     * is reseeded).
+     */
+    public final void discardArrivalBuffer() {
+        this.interarrivalBuffer = null;
+        this.serviceBuffer = null;
+        this.bufferPosition = 0;
+    }
 
     /**
      * Inserts a job into the server.
@@ -226,6 +326,10 @@ public class Server implements Powerable, Serializable {
         if (this.getRemainingCapacity() == 0) {
             // There was no room in the server, put it in the queue
             this.queue.add(job);
+            if (this.queue.size() > Constants.MAX_QUEUE_SIZE) {
+                this.experiment.markUnstable("A server's queue grew past "
+                        + Constants.MAX_QUEUE_SIZE + " jobs");
+            }
         } else {
             // The job can start service immediately
             this.startJobService(time, job);
@@ -242,25 +346,69 @@ public class Server implements Powerable, Serializable {
      * @return the number of jobs in the server
      */
     public final int getJobsInSystem() {
-        // Jobs that need to be counted for socket parking
-        int transJobs = 0;
-        for (int i = 0; i < this.sockets.length; i++) {
-            transJobs += this.sockets[i].getNJobsWaitingForTransistion();
-        }
-
-        int jobsInSystem = this.getQueueLength() + this.getJobsInService()
-                            + transJobs;
-        return jobsInSystem;
+        // Jobs waiting for socket parking are counted too
+        return this.queue.size() + this.nJobsInService
+            + this.nJobsWaitingForTransition;
     }
 
     /**
      * Runs sanity check to make sure we didn't lose a  job.
+     * If the experiment is validating (see
+     * {@link Experiment#setValidating(boolean)}), the server's counters
+     * are also checked against a recount of its sockets.
      */
     public final void checkInvariants() {
         int jobsInSystem = this.getJobsInSystem();
         if (jobsInSystem != this.jobsInServerInvariant) {
             Sim.fatalError("From insert: Job balance is off.");
         }
+
+        if (this.experiment.isValidating()) {
+            this.validateCounters();
+        }
+    }
+
+    /**
+     * Recounts the jobs and capacity of the server's sockets and checks
+     * them against the server's counters.
+     */
+    private void validateCounters() {
+        int inService = 0;
+        int waiting = 0;
+        int capacity = 0;
+        for (int i = 0; i < this.sockets.length; i++) {
+            inService += this.sockets[i].getJobsInService();
+            waiting += this.sockets[i].getNJobsWaitingForTransistion();
+            capacity += this.sockets[i].getRemainingCapacity();
+        }
+
+        if (inService != this.nJobsInService) {
+            Sim.fatalError("Server counted " + this.nJobsInService
+                    + " jobs in service, but its sockets have " + inService);
+        }
+        if (waiting != this.nJobsWaitingForTransition) {
+            Sim.fatalError("Server counted " + this.nJobsWaitingForTransition
+                    + " jobs waiting for sockets to transition,"
+                    + " but its sockets have " + waiting);
+        }
+        if (capacity != this.getRemainingCapacity()) {
+            Sim.fatalError("Server counted " + this.getRemainingCapacity()
+                    + " free slots, but its sockets have " + capacity);
+        }
+    }
+
+    /**
+     * Accounts for jobs starting or finishing on one of the server's
+     * sockets, or waiting for one to come out of park.
+     *
+     * @param inServiceChange - the change in jobs being serviced
+     * @param waitingChange - the change in jobs waiting for the socket
+     * to transition
+     */
+    final void socketJobsChanged(final int inServiceChange,
+                                 final int waitingChange) {
+        this.nJobsInService += inServiceChange;
+        this.nJobsWaitingForTransition += waitingChange;
     }
 
     /**
@@ -314,11 +462,8 @@ public class Server implements Powerable, Serializable {
      * @return the remaining capacity of the server (in jobs)
      */
     public final int getRemainingCapacity() {
-        int capacity = 0;
-        for (int i = 0; i < this.sockets.length; i++) {
-            capacity += this.sockets[i].getRemainingCapacity();
-        }
-        return capacity;
+        return this.totalCapacity - this.nJobsInService
+            - this.nJobsWaitingForTransition;
     }
 
     /**
@@ -327,11 +472,7 @@ public class Server implements Powerable, Serializable {
      * @return the number of jobs this server can ever support
      */
     public final int getTotalCapacity() {
-        int nJobs = 0;
-        for (int i = 0; i < this.sockets.length; i++) {
-            nJobs += this.sockets[i].getTotalCapacity();
-        }
-        return nJobs;
+        return this.totalCapacity;
     }
 
     /**
@@ -340,12 +481,7 @@ public class Server implements Powerable, Serializable {
      * @return - the number of jobs currently being processed
      */
     public int getJobsInService() {
-        int nInService = 0;
-        for (int i = 0; i < this.sockets.length; i++) {
-            nInService += this.sockets[i].getJobsInService();
-        }
-
-        return nInService;
+        return this.nJobsInService;
     }
 
     /**
@@ -357,10 +493,10 @@ public class Server implements Powerable, Serializable {
      * @param job - the job that starts
      */
     public void startJobService(final double time, final Job job) {
-        Socket targetSocket = null;
-        Socket mostUtilizedSocket = null;
+        int targetSocket = -1;
+        int mostUtilizedSocket = -1;
         double highestUtilization = Double.MIN_VALUE;
-        Socket leastUtilizedSocket = null;
+        int leastUtilizedSocket = -1;
         double lowestUtilization = Double.MAX_VALUE;
 
         for (int i = 0; i < this.sockets.length; i++) {
@@ -370,13 +506,13 @@ public class Server implements Powerable, Serializable {
             if (currentUtilization > highestUtilization
                     && currentSocket.getRemainingCapacity() > 0) {
                 highestUtilization = currentUtilization;
-                mostUtilizedSocket = currentSocket;
+                mostUtilizedSocket = i;
             }
 
             if (currentUtilization < lowestUtilization
                     && currentSocket.getRemainingCapacity() > 0) {
                 lowestUtilization = currentUtilization;
-                leastUtilizedSocket = currentSocket;
+                leastUtilizedSocket = i;
             }
 
         }
@@ -390,9 +526,14 @@ public class Server implements Powerable, Serializable {
             Sim.fatalError("Bad scheduler");
         }
 
+        if (targetSocket < 0) {
+            Sim.fatalError("No socket has room for job " + job.getJobId());
+        }
+
+        // Save the socket the job is on so we can remove it later
         job.markStart(time);
-        targetSocket.insertJob(time, job);
-        this.jobToSocketMap.put(job, targetSocket);
+        job.setPlacement(this, targetSocket);
+        this.sockets[targetSocket].insertJob(time, job);
     }
 
     /**
@@ -405,12 +546,14 @@ public class Server implements Powerable, Serializable {
     public void removeJob(final double time, final Job job) {
 
         // Remove the job from the socket it is running on
-        Socket socket = this.jobToSocketMap.remove(job);
+        int socketIndex = job.getSocketIndex();
 
         // Error check we could resolve which socket the job was on
-        if (socket == null) {
+        if (job.getServer() != this || socketIndex < 0) {
             Sim.fatalError("Job to Socket mapping failed");
         }
+        Socket socket = this.sockets[socketIndex];
+        job.setPlacement(null, -1);
 
         // See if we're going to schedule another job or if it can go to sleep
         boolean jobWaiting = !this.queue.isEmpty();
@@ -432,18 +575,13 @@ public class Server implements Powerable, Serializable {
     /**
      * Gets the instant utilization of the server.
      * utilization = (jobs running)/(total capacity)
+     * Jobs waiting for a socket to come out of park count as running.
      *
      * @return the instant utilization of the server
      */
     public double getInstantUtilization() {
-        double avg = 0.0d;
-
-        for (int i = 0; i < this.sockets.length; i++) {
-            avg += this.sockets[i].getInstantUtilization();
-        }
-        avg /= this.sockets.length;
-
-        return avg;
+        return ((double) this.nJobsInService + this.nJobsWaitingForTransition)
+                / this.totalCapacity;
     }
 
     /**
@@ -493,10 +631,8 @@ public class Server implements Powerable, Serializable {
      * @return the dynamic power consumption of the server (in watts)
      */
     public double getDynamicPower() {
-        double dynamicPower = 0.0d;
-        for (int i = 0; i < this.sockets.length; i++) {
-            dynamicPower += this.sockets[i].getDynamicPower();
-        }
+        this.updateSocketPower();
+        double dynamicPower = this.socketDynamicPower;
         double util = this.getInstantUtilization();
         double memoryPower = 10 * util;
         double diskPower = 1.0 * util;
@@ -524,12 +660,8 @@ public class Server implements Powerable, Serializable {
      * @return the idle power consumption of the server (in watts)
      */
     public double getIdlePower() {
-        double idlePower = 0.0d;
-
-        for (int i = 0; i < this.sockets.length; i++) {
-            idlePower += this.sockets[i].getIdlePower();
-        }
-
+        this.updateSocketPower();
+        double idlePower = this.socketIdlePower;
         double memoryPower = 25;
         double diskPower = 9;
         double otherPower = 10;
@@ -538,6 +670,35 @@ public class Server implements Powerable, Serializable {
         return idlePower;
     }
 
+    /**
+     * Notes that one of the server's sockets changed power. The power of
+     * the sockets is only added up again when it's next read, so changing
+     * many cores at once (e.g., setting their power) doesn't add it up
+     * after every core.
+     */
+    final void socketPowerChanged() {
+        this.socketPowerStale = true;
+    }
+
+    /**
+     * Adds up the power of the server's sockets if one of them has
+     * changed power since it was last added up.
+     */
+    private void updateSocketPower() {
+        if (!this.socketPowerStale) {
+            return;
+        }
+        double idlePower = 0.0d;
+        double dynamicPower = 0.0d;
+        for (int i = 0; i < this.sockets.length; i++) {
+            idlePower += this.sockets[i].getIdlePower();
+            dynamicPower += this.sockets[i].getDynamicPower();
+        }
+        this.socketIdlePower = idlePower;
+        this.socketDynamicPower = dynamicPower;
+        this.socketPowerStale = false;
+    }
+
     /**
      * Resume processing at the server.
      *
@@ -581,6 +742,23 @@ public class Server implements Powerable, Serializable {
 
     }
 
+    /**
+     * Checks if the server's idle behavior doesn't depend on how long it
+     * has been idle (e.g., it doesn't park or nap), so a run regenerates
+     * whenever the server empties.
+     *
+     * @return if the server's idle behavior is memoryless
+     */
+    public boolean isMemorylessWhenIdle() {
+        for (int i = 0; i < this.sockets.length; i++) {
+            if (!this.sockets[i].isMemorylessWhenIdle()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     /**
      * Sets the server's cores' active power (in watts).
      *
@@ -647,9 +825,11 @@ public class Server implements Powerable, Serializable {
      * @param speed - the speed to set the cores to (relative to 1.0)
      */
     public void setDvfsSpeed(final double time, final double speed) {
+        this.experiment.startEventBatch();
         for (int i = 0; i < this.sockets.length; i++) {
             this.sockets[i].setDvfsSpeed(time, speed);
         }
+        this.experiment.finishEventBatch();
     }
 
     /**
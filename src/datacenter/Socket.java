@@ -31,7 +31,7 @@
 package datacenter;
 
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Vector;
 
@@ -43,6 +43,7 @@ import core.Sim;
 import core.SocketEnteredParkEvent;
 import core.SocketExitedParkEvent;
 import datacenter.Core.CorePowerPolicy;
+import datacenter.Core.PowerState;
 
 /**
  * This class represents a single socket (physical processor chip) in a server.
@@ -71,12 +72,6 @@ public final class Socket implements Powerable, Serializable {
      */
     private Experiment experiment;
 
-    /**
-     * A mapping of jobs to cores.
-     * This allows bookeeping of cores when jobs finish.
-     */
-    private HashMap<Job, Core> jobToCoreMap;
-
     /**
      * Available socket power states.
      */
@@ -128,14 +123,19 @@ public final class Socket implements Powerable, Serializable {
     private SocketPowerState powerState;
 
     /**
-     * Cores are available to process jobs.
+     * The indices of the cores available to process jobs, as a circular
+     * queue: jobs go to the core that has been free the longest.
      */
-    private Vector<Core> availableCores;
+    private int[] freeCores;
 
-    /**
-     *  Cores that are busy processing a job.
-     */
-    private Vector<Core> busyCores;
+    /** The position of the first free core in the circular queue. */
+    private int freeHead;
+
+    /** The number of cores available to process jobs. */
+    private int nFreeCores;
+
+    /** The number of cores busy processing a job. */
+    private int nBusyCores;
 
     /**
      * A temporary queue for jobs while a socket is transitioning.
@@ -157,6 +157,61 @@ public final class Socket implements Powerable, Serializable {
      */
     private Event trasitionEvent;
 
+    /** The experiment's fixed-delay lane for park transition events. */
+    private int parkTransitionLane;
+
+    /** All the socket's cores, in a fixed order. */
+    private Core[] cores;
+
+    /** The number of the socket's cores in each power state. */
+    private int[] nCoresInState;
+
+    /**
+     * If all the socket's cores have the same power settings, so
+     * the socket's power only depends on how many cores are
+     * in each power state.
+     */
+    private boolean uniformCorePower;
+
+    /**
+     * The idle power of n halted or active cores, by n. Sums are
+     * added up a core at a time, so they match adding up the cores.
+     */
+    private double[] haltPowerSums;
+
+    /** The power of n parked cores, by n. */
+    private double[] parkPowerSums;
+
+    /** The power of n transitioning cores, by n. */
+    private double[] transitionPowerSums;
+
+    /** The dynamic power of n active cores, by n. */
+    private double[] dynamicPowerSums;
+
+    /**
+     * If a core's power settings have changed since the power sums
+     * were worked out.
+     */
+    private boolean corePowerSumsStale;
+
+    /**
+     * The current idle power of the socket and its cores,
+     * recomputed when it's read after a core or the socket changes.
+     */
+    private double idlePower;
+
+    /**
+     * The current dynamic power of the socket,
+     * recomputed when it's read after a core changes.
+     */
+    private double dynamicPower;
+
+    /**
+     * If a core or the socket has changed since the socket's power was
+     * last computed.
+     */
+    private boolean powerStale;
+
     /**
      * Instantiate a socket with nCores cores.
      *
@@ -172,19 +227,33 @@ public final class Socket implements Powerable, Serializable {
         this.server = aServer;
         this.nCores = theNCores;
 
-        this.jobToCoreMap = new HashMap<Job, Core>();
-        this.availableCores = new Vector<Core>();
-        this.busyCores = new Vector<Core>();
         this.transitionQueue = new Vector<Job>();
 
         // Create nCores Cores and put them on the free list
+        this.cores = new Core[nCores];
+        this.freeCores = new int[nCores];
         for (int i = 0; i < nCores; i++) {
-            Core core = new Core(experiment, this);
-            this.availableCores.add(core);
+            this.cores[i] = new Core(experiment, this);
+            this.freeCores[i] = i;
         }
+        this.freeHead = 0;
+        this.nFreeCores = nCores;
+        this.nBusyCores = 0;
 
         this.powerPolicy = SocketPowerPolicy.NO_MANAGEMENT;
         this.powerState = SocketPowerState.ACTIVE;
+        this.parkTransitionLane = this.experiment.registerFixedDelay(
+                Constants.SOCKET_PARK_TRANSITION_TIME);
+
+        // Every core starts out halted
+        this.nCoresInState = new int[PowerState.values().length];
+        this.nCoresInState[PowerState.HALT.ordinal()] = this.nCores;
+        this.haltPowerSums = new double[this.nCores + 1];
+        this.parkPowerSums = new double[this.nCores + 1];
+        this.transitionPowerSums = new double[this.nCores + 1];
+        this.dynamicPowerSums = new double[this.nCores + 1];
+        this.corePowerSumsStale = true;
+        this.powerStale = true;
     }
 
     /**
@@ -198,19 +267,31 @@ public final class Socket implements Powerable, Serializable {
 
         if (this.powerState == SocketPowerState.ACTIVE) {
             // Pick the first core off the available cores
-            Core core = this.availableCores.remove(0);
-            core.insertJob(time, job);
-            this.busyCores.add(core);
+            if (this.nFreeCores == 0) {
+                Sim.fatalError("Tried to insert a job into a socket"
+                               + " with no free cores");
+            }
+            int coreIndex = this.freeCores[this.freeHead];
+            this.freeHead++;
+            if (this.freeHead == this.nCores) {
+                this.freeHead = 0;
+            }
+            this.nFreeCores--;
 
             // Save the core the job is on so we can remove it later
-            this.jobToCoreMap.put(job, core);
+            job.setCoreIndex(coreIndex);
+            this.cores[coreIndex].insertJob(time, job);
+            this.nBusyCores++;
+            this.server.socketJobsChanged(1, 0);
         } else if (this.powerState
                    == SocketPowerState.TRANSITIONG_TO_LOW_POWER_IDLE) {
             this.transitionQueue.add(job);
-            this.powerState = SocketPowerState.TRANSITIONG_TO_ACTIVE;
+            this.server.socketJobsChanged(0, 1);
+            this.setPowerState(SocketPowerState.TRANSITIONG_TO_ACTIVE);
 
             if (this.trasitionEvent != null) {
                 this.experiment.cancelEvent(this.trasitionEvent);
+                this.trasitionEvent = null;
             }
 
             double exitParkTime = time + Constants.SOCKET_PARK_TRANSITION_TIME;
@@ -218,18 +299,22 @@ public final class Socket implements Powerable, Serializable {
                     = new SocketExitedParkEvent(exitParkTime,
                                                 this.experiment,
                                                 this);
-            this.experiment.addEvent(socketExitedParkEvent);
+            this.experiment.addEvent(socketExitedParkEvent,
+                                     this.parkTransitionLane);
         } else if (this.powerState == SocketPowerState.TRANSITIONG_TO_ACTIVE) {
             this.transitionQueue.add(job);
+            this.server.socketJobsChanged(0, 1);
         } else if (this.powerState == SocketPowerState.LOW_POWER_IDLE) {
             this.transitionQueue.add(job);
-            this.powerState = SocketPowerState.TRANSITIONG_TO_ACTIVE;
+            this.server.socketJobsChanged(0, 1);
+            this.setPowerState(SocketPowerState.TRANSITIONG_TO_ACTIVE);
             double exitParkTime = time + Constants.SOCKET_PARK_TRANSITION_TIME;
             SocketExitedParkEvent socketExitedParkEvent
                 = new SocketExitedParkEvent(exitParkTime,
                                             this.experiment,
                                             this);
-            this.experiment.addEvent(socketExitedParkEvent);
+            this.experiment.addEvent(socketExitedParkEvent,
+                                     this.parkTransitionLane);
         }
 
     }
@@ -245,38 +330,39 @@ public final class Socket implements Powerable, Serializable {
                           final Job job,
                           final boolean jobWaiting) {
 
-        // Find out which socket this job was running on
-        Core core = this.jobToCoreMap.remove(job);
+        // Find out which core this job was running on
+        int coreIndex = job.getCoreIndex();
 
-        // Error check we got a real socket
-        if (core == null) {
+        // Error check we got a real core
+        if (coreIndex < 0 || coreIndex >= this.nCores
+                || this.cores[coreIndex].getJob() != job) {
             Sim.fatalError("Couldn't resolve which core this job belonged to");
         }
 
-        core.removeJob(time, job, jobWaiting);
-
-        // Mark that the job is no longer busy
-        boolean found = this.busyCores.remove(core);
+        this.cores[coreIndex].removeJob(time, job, jobWaiting);
+        job.setCoreIndex(-1);
 
-        // Error check the socket was considered busy
-        if (!found) {
-            Sim.fatalError("Could take core off the busy list");
+        // Core is now available, at the back of the free list
+        int tail = this.freeHead + this.nFreeCores;
+        if (tail >= this.nCores) {
+            tail -= this.nCores;
         }
+        this.freeCores[tail] = coreIndex;
+        this.nFreeCores++;
+        this.nBusyCores--;
+        this.server.socketJobsChanged(-1, 0);
 
-        // Core is now available
-        this.availableCores.add(core);
-
-        if (this.busyCores.size() == 0 && !jobWaiting) {
+        if (this.nBusyCores == 0 && !jobWaiting) {
             if (this.powerPolicy == SocketPowerPolicy.SOCKET_PARKING) {
-                this.powerState
-                    = SocketPowerState.TRANSITIONG_TO_LOW_POWER_IDLE;
+                this.setPowerState(
+                        SocketPowerState.TRANSITIONG_TO_LOW_POWER_IDLE);
                 double enterParkTime
                     = time + Constants.SOCKET_PARK_TRANSITION_TIME;
                 SocketEnteredParkEvent socketEnteredParkEvent
-                        = new SocketEnteredParkEvent(enterParkTime,
-                                                     this.experiment,
-                                                     this);
-                this.experiment.addEvent(socketEnteredParkEvent);
+                        = this.experiment.getEventPool()
+                            .createSocketEnteredParkEvent(enterParkTime, this);
+                this.experiment.addEvent(socketEnteredParkEvent,
+                                         this.parkTransitionLane);
                 this.trasitionEvent = socketEnteredParkEvent;
             }
             // Otherwise the socket stays active
@@ -289,7 +375,7 @@ public final class Socket implements Powerable, Serializable {
      * @return the number of cores that are available for jobs
      */
     public int getRemainingCapacity() {
-        return this.availableCores.size() - this.transitionQueue.size();
+        return this.nFreeCores - this.transitionQueue.size();
     }
 
     /**
@@ -307,21 +393,39 @@ public final class Socket implements Powerable, Serializable {
      * @return the instant utilization of the core
      */
     public double getInstantUtilization() {
-        return ((double) this.busyCores.size() + this.transitionQueue.size())
+        return ((double) this.nBusyCores + this.transitionQueue.size())
                 / this.nCores;
     }
 
     /**
-     * Gets an Vector of cores on this socket.
+     * Gets an Vector of cores on this socket. The vector is a new copy,
+     * so code that runs often should use {@link #getNCores()} and
+     * {@link #getCore(int)} instead.
      *
      * @return a vector of the cores on the socket
      */
     public Vector<Core> getCores() {
-        Vector<Core> combined = new Vector<Core>();
-        combined.addAll(this.availableCores);
-        combined.addAll(this.busyCores);
+        return new Vector<Core>(Arrays.asList(this.cores));
+    }
 
-        return combined;
+    /**
+     * Gets the number of cores on this socket.
+     *
+     * @return the number of cores on the socket
+     */
+    public int getNCores() {
+        return this.nCores;
+    }
+
+    /**
+     * Gets one of the cores on this socket, which are in a fixed order.
+     *
+     * @param index - the index of the core (from 0 to the number of
+     * cores - 1)
+     * @return the core
+     */
+    public Core getCore(final int index) {
+        return this.cores[index];
     }
 
     /**
@@ -339,7 +443,7 @@ public final class Socket implements Powerable, Serializable {
      * @return The number of jobs being serviced
      */
     public int getJobsInService() {
-        return this.busyCores.size();
+        return this.nBusyCores;
     }
 
     /**
@@ -348,11 +452,8 @@ public final class Socket implements Powerable, Serializable {
      * @param corePowerPolicy - the power management policy to use on the cores
      */
     public void setCorePolicy(final CorePowerPolicy corePowerPolicy) {
-        Vector<Core> cores = this.getCores();
-        Iterator<Core> iter = cores.iterator();
-        while (iter.hasNext()) {
-            Core core = iter.next();
-            core.setPowerPolicy(corePowerPolicy);
+        for (int i = 0; i < this.cores.length; i++) {
+            this.cores[i].setPowerPolicy(corePowerPolicy);
         }
     }
 
@@ -365,16 +466,37 @@ public final class Socket implements Powerable, Serializable {
         this.powerPolicy = policy;
     }
 
+    /**
+     * Checks if the socket's idle behavior doesn't depend on how long it
+     * has been idle, which is the case when neither the socket nor its
+     * cores park.
+     *
+     * @return if the socket and its cores don't park
+     */
+    public boolean isMemorylessWhenIdle() {
+        if (this.powerPolicy != SocketPowerPolicy.NO_MANAGEMENT) {
+            return false;
+        }
+        for (int i = 0; i < this.cores.length; i++) {
+            if (this.cores[i].getPowerPolicy()
+                    != CorePowerPolicy.NO_MANAGEMENT) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     /**
      * Put the socket into park.
      * @param time - the time the socket is put into park
      */
     public void enterPark(final double time) {
-        if (this.busyCores.size() != 0) {
+        if (this.nBusyCores != 0) {
             Sim.fatalError("Socket tried to enter park when it shouldn't have");
         }
 
-        this.powerState = SocketPowerState.LOW_POWER_IDLE;
+        this.setPowerState(SocketPowerState.LOW_POWER_IDLE);
     }
 
     /**
@@ -383,7 +505,8 @@ public final class Socket implements Powerable, Serializable {
      * @param time - the time the socket comes out of park
      */
     public void exitPark(final double time) {
-        this.powerState = SocketPowerState.ACTIVE;
+        this.setPowerState(SocketPowerState.ACTIVE);
+        this.server.socketJobsChanged(0, -this.transitionQueue.size());
         Iterator<Job> iter = this.transitionQueue.iterator();
         while (iter.hasNext()) {
             Job job = iter.next();
@@ -407,11 +530,8 @@ public final class Socket implements Powerable, Serializable {
      * @param time - the time the socket processing is paused
      */
     public void pauseProcessing(final double time) {
-        Vector<Core> cores = this.getCores();
-        Iterator<Core> iter = cores.iterator();
-        while (iter.hasNext()) {
-            Core core = iter.next();
-            core.pauseProcessing(time);
+        for (int i = 0; i < this.cores.length; i++) {
+            this.cores[i].pauseProcessing(time);
         }
     }
 
@@ -421,11 +541,8 @@ public final class Socket implements Powerable, Serializable {
      * @param time - the time the socket resumes processing
      */
     public void resumeProcessing(final double time) {
-        Vector<Core> cores = this.getCores();
-        Iterator<Core> iter = cores.iterator();
-        while (iter.hasNext()) {
-            Core core = iter.next();
-            core.resumeProcessing(time);
+        for (int i = 0; i < this.cores.length; i++) {
+            this.cores[i].resumeProcessing(time);
         }
     }
 
@@ -453,10 +570,8 @@ public final class Socket implements Powerable, Serializable {
      * @param coreHaltPower - the idle power of the socket's cores (in watts)
      */
     public void setCoreIdlePower(final double coreHaltPower) {
-        Iterator<Core> iter = this.getCores().iterator();
-        while (iter.hasNext()) {
-            Core core = iter.next();
-            core.setIdlePower(coreHaltPower);
+        for (int i = 0; i < this.cores.length; i++) {
+            this.cores[i].setIdlePower(coreHaltPower);
         }
     }
 
@@ -466,10 +581,8 @@ public final class Socket implements Powerable, Serializable {
      * @param coreParkPower - the power of the socket's cores whil parked
      */
     public void setCoreParkPower(final double coreParkPower) {
-        Iterator<Core> iter = this.getCores().iterator();
-        while (iter.hasNext()) {
-            Core core = iter.next();
-            core.setParkPower(coreParkPower);
+        for (int i = 0; i < this.cores.length; i++) {
+            this.cores[i].setParkPower(coreParkPower);
         }
     }
 
@@ -480,10 +593,8 @@ public final class Socket implements Powerable, Serializable {
      * socket's cores (in watts)
      */
     public void setCoreActivePower(final double coreActivePower) {
-        Iterator<Core> iter = this.getCores().iterator();
-        while (iter.hasNext()) {
-            Core core = iter.next();
-            core.setActivePower(coreActivePower);
+        for (int i = 0; i < this.cores.length; i++) {
+            this.cores[i].setActivePower(coreActivePower);
         }
     }
 
@@ -494,9 +605,8 @@ public final class Socket implements Powerable, Serializable {
      * @param speed - the speed to set the cores to (relative to 1.0)
      */
     public void setDvfsSpeed(final double time, final double speed) {
-        Iterator<Core> iter = this.getCores().iterator();
-        while (iter.hasNext()) {
-            iter.next().setDvfsSpeed(time, speed);
+        for (int i = 0; i < this.cores.length; i++) {
+            this.cores[i].setDvfsSpeed(time, speed);
         }
     }
 
@@ -515,34 +625,8 @@ public final class Socket implements Powerable, Serializable {
      * @return the current idle power of the socket and its cores
      */
     public double getIdlePower() {
-
-        double idlePower = 0.0d;
-        if (this.powerState == SocketPowerState.ACTIVE) {
-
-            Iterator<Core> coreIter = this.getCores().iterator();
-            while (coreIter.hasNext()) {
-                Core core = coreIter.next();
-                double corePower = core.getIdlePower();
-                idlePower += corePower;
-            }
-            idlePower += Constants.SOCKET_IDLE_POWER;
-
-        } else if (this.powerState == SocketPowerState.TRANSITIONG_TO_ACTIVE) {
-
-            idlePower = Constants.SOCKET_IDLE_POWER;
-
-        } else if (this.powerState
-                        == SocketPowerState.TRANSITIONG_TO_LOW_POWER_IDLE) {
-
-            idlePower = Constants.SOCKET_IDLE_POWER;
-
-        } else if (this.powerState == SocketPowerState.LOW_POWER_IDLE) {
-
-            idlePower = Constants.SOCKET_PARK_POWER;
-
-        }
-
-        return idlePower;
+        this.computePower();
+        return this.idlePower;
     }
 
     /**
@@ -553,17 +637,128 @@ public final class Socket implements Powerable, Serializable {
      * @return the current dynamic power consumption of the socket
      */
     public double getDynamicPower() {
+        this.computePower();
+        return this.dynamicPower;
+    }
+
+    /**
+     * Changes the power state of the socket and updates its power.
+     *
+     * @param newState - the new power state
+     */
+    private void setPowerState(final SocketPowerState newState) {
+        this.powerState = newState;
+        this.updatePower();
+    }
+
+    /**
+     * Accounts for one of the socket's cores changing power state.
+     *
+     * @param oldState - the core's previous power state
+     * @param newState - the core's new power state
+     */
+    void coreStateChanged(final PowerState oldState,
+                          final PowerState newState) {
+        this.nCoresInState[oldState.ordinal()]--;
+        this.nCoresInState[newState.ordinal()]++;
+        this.updatePower();
+    }
+
+    /**
+     * Accounts for the power settings of one of the socket's cores
+     * changing. The power sums are only worked out again when the
+     * socket's power is next read, so setting the power of every core
+     * doesn't rescan the cores after each one.
+     */
+    void corePowerChanged() {
+        this.corePowerSumsStale = true;
+        this.updatePower();
+    }
 
-        double dynamicPower = 0.0d;
+    /**
+     * Works out the power of any number of cores in each power state,
+     * if all the cores have the same power settings.
+     */
+    private void computeCorePowerSums() {
+        this.corePowerSumsStale = false;
+        Core first = this.cores[0];
+        this.uniformCorePower = true;
+        for (int i = 1; i < this.cores.length; i++) {
+            Core core = this.cores[i];
+            if (core.getHaltPower() != first.getHaltPower()
+                    || core.getParkPower() != first.getParkPower()
+                    || core.getActivePower() != first.getActivePower()) {
+                this.uniformCorePower = false;
+                return;
+            }
+        }
 
-        Iterator<Core> coreIter = this.getCores().iterator();
-        while (coreIter.hasNext()) {
-            Core core = coreIter.next();
-            double corePower = core.getDynamicPower();
-            dynamicPower += corePower;
+        double dynamic = first.getActivePower() - first.getHaltPower();
+        for (int n = 1; n <= this.nCores; n++) {
+            this.haltPowerSums[n] = this.haltPowerSums[n - 1]
+                + first.getHaltPower();
+            this.parkPowerSums[n] = this.parkPowerSums[n - 1]
+                + first.getParkPower();
+            this.transitionPowerSums[n] = this.transitionPowerSums[n - 1]
+                + first.getActivePower();
+            this.dynamicPowerSums[n] = this.dynamicPowerSums[n - 1]
+                + dynamic;
         }
+    }
 
-        return dynamicPower;
+    /**
+     * Notes that the socket's power changed and passes it on to
+     * the server.
+     */
+    private void updatePower() {
+        this.powerStale = true;
+        this.server.socketPowerChanged();
+    }
+
+    /**
+     * Recomputes the socket's power from the power states of the socket
+     * and its cores, if either has changed since it was last computed.
+     */
+    private void computePower() {
+        if (!this.powerStale) {
+            return;
+        }
+        if (this.corePowerSumsStale) {
+            this.computeCorePowerSums();
+        }
+        this.powerStale = false;
+        double coreIdlePower = 0.0d;
+        double coreDynamicPower = 0.0d;
+        if (this.uniformCorePower) {
+            int[] nInState = this.nCoresInState;
+            coreIdlePower = this.haltPowerSums[
+                    nInState[PowerState.ACTIVE.ordinal()]
+                    + nInState[PowerState.HALT.ordinal()]]
+                + this.parkPowerSums[
+                    nInState[PowerState.LOW_POWER_IDLE.ordinal()]]
+                + this.transitionPowerSums[
+                    nInState[PowerState.TRANSITIONINGG_TO_ACTIVE.ordinal()]
+                    + nInState[PowerState
+                        .TRANSITIONINGG_TO_LOW_POWER_IDLE.ordinal()]];
+            coreDynamicPower = this.dynamicPowerSums[
+                    nInState[PowerState.ACTIVE.ordinal()]];
+        } else {
+            for (int i = 0; i < this.cores.length; i++) {
+                coreIdlePower += this.cores[i].getIdlePower();
+                coreDynamicPower += this.cores[i].getDynamicPower();
+            }
+        }
+
+        if (this.powerState == SocketPowerState.ACTIVE) {
+            this.idlePower = coreIdlePower + Constants.SOCKET_IDLE_POWER;
+        } else if (this.powerState == SocketPowerState.TRANSITIONG_TO_ACTIVE
+                || this.powerState
+                    == SocketPowerState.TRANSITIONG_TO_LOW_POWER_IDLE) {
+            this.idlePower = Constants.SOCKET_IDLE_POWER;
+        } else {
+            this.idlePower = Constants.SOCKET_PARK_POWER;
+        }
+        this.dynamicPower = coreDynamicPower;
     }
 
 }
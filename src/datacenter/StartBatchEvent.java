@@ -63,6 +63,15 @@ public final class StartBatchEvent extends AbstractEvent {
         this.batchServer = server;
     }
 
+    /**
+     * Get the server the event acts on.
+     * @return the server the event acts on
+     */
+    @Override
+    public Server getServer() {
+        return this.batchServer;
+    }
+
     /**
      * Processes this event by starting a batch (accepting jobs to the server).
      */
@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package experiment;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import core.Sim;
+
+/**
+ * A grid of parameters to sweep: every combination of the workloads,
+ * server counts, power caps, service time variabilities and accuracies
+ * added to it is a point of the sweep.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public final class ParameterGrid {
+
+    /** The names of the workloads. */
+    private ArrayList<String> workloads;
+
+    /** The numbers of servers. */
+    private ArrayList<Integer> serverCounts;
+
+    /** The power caps per server (in watts). */
+    private ArrayList<Double> capLevels;
+
+    /** The coefficients of variation of the service times. */
+    private ArrayList<Double> cvs;
+
+    /** The accuracies the statistics have to converge to. */
+    private ArrayList<Double> accuracies;
+
+    /**
+     * Creates a new, empty ParameterGrid.
+     */
+    public ParameterGrid() {
+        this.workloads = new ArrayList<String>();
+        this.serverCounts = new ArrayList<Integer>();
+        this.capLevels = new ArrayList<Double>();
+        this.cvs = new ArrayList<Double>();
+        this.accuracies = new ArrayList<Double>();
+    }
+
+    /**
+     * Adds a workload to the grid.
+     *
+     * @param workload - the name of the workload
+     */
+    public void addWorkload(final String workload) {
+        this.workloads.add(workload);
+    }
+
+    /**
+     * Adds a number of servers to the grid.
+     *
+     * @param nServers - the number of servers
+     */
+    public void addServerCount(final int nServers) {
+        this.serverCounts.add(nServers);
+    }
+
+    /**
+     * Adds a power cap to the grid.
+     *
+     * @param capLevel - the power cap per server (in watts)
+     */
+    public void addCapLevel(final double capLevel) {
+        this.capLevels.add(capLevel);
+    }
+
+    /**
+     * Adds a service time variability to the grid.
+     *
+     * @param cv - the coefficient of variation of the service times,
+     * or 0 to use the workload's service time distribution
+     */
+    public void addCv(final double cv) {
+        this.cvs.add(cv);
+    }
+
+    /**
+     * Adds an accuracy to the grid.
+     *
+     * @param accuracy - the accuracy the statistics have to converge to
+     */
+    public void addAccuracy(final double accuracy) {
+        this.accuracies.add(accuracy);
+    }
+
+    /**
+     * Gets every point of the grid, grouped by workload, then number
+     * of servers, power cap, variability and accuracy.
+     *
+     * @return the points of the grid
+     */
+    public List<SweepPoint> getPoints() {
+        if (this.workloads.isEmpty() || this.serverCounts.isEmpty()
+                || this.capLevels.isEmpty() || this.cvs.isEmpty()
+                || this.accuracies.isEmpty()) {
+            Sim.fatalError("Every parameter of the grid needs a value");
+        }
+
+        ArrayList<SweepPoint> points = new ArrayList<SweepPoint>();
+        Iterator<String> workloadIter = this.workloads.iterator();
+        while (workloadIter.hasNext()) {
+            String workload = workloadIter.next();
+            Iterator<Integer> serverIter = this.serverCounts.iterator();
+            while (serverIter.hasNext()) {
+                int nServers = serverIter.next();
+                Iterator<Double> capIter = this.capLevels.iterator();
+                while (capIter.hasNext()) {
+                    double capLevel = capIter.next();
+                    Iterator<Double> cvIter = this.cvs.iterator();
+                    while (cvIter.hasNext()) {
+                        double cv = cvIter.next();
+                        Iterator<Double> accuracyIter
+                            = this.accuracies.iterator();
+                        while (accuracyIter.hasNext()) {
+                            points.add(new SweepPoint(workload, nServers,
+                                    capLevel, cv, accuracyIter.next()));
+                        }
+                    }
+                }
+            }
+        }
+
+        return points;
+    }
+
+}
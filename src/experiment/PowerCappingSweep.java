@@ -0,0 +1,285 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package experiment;
+
+import generator.EmpiricalGenerator;
+import generator.GammaGenerator;
+import generator.Generator;
+import generator.MTRandom;
+
+import java.util.HashMap;
+import java.util.List;
+
+import math.EmpiricalDistribution;
+import core.Experiment;
+import core.ExperimentInput;
+import core.ExperimentOutput;
+import core.Sim;
+import core.Constants.StatName;
+import datacenter.Core.CorePowerPolicy;
+import datacenter.DataCenter;
+import datacenter.PowerCappingEnforcer;
+import datacenter.Server;
+import datacenter.Socket.SocketPowerPolicy;
+
+/**
+ * Sweeps the power capping experiment (see {@link PowerCappingExperiment})
+ * over workloads, server counts, power caps, service time variabilities
+ * and accuracies in one JVM. Each workload's distributions are only
+ * loaded once, and shared by the experiments that use them.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public final class PowerCappingSweep implements ExperimentFactory {
+
+    /** The number of cores per socket. */
+    private static final int CORES = 4;
+
+    /** The number of sockets per server. */
+    private static final int SOCKETS = 1;
+
+    /** The utilization the servers are run at. */
+    private static final double TARGET_RHO = .5;
+
+    /** How often (in seconds) power caps are recalculated. */
+    private static final double CAP_PERIOD = 1.0;
+
+    /** The peak power of a server (in watts). */
+    private static final double MAX_POWER = 100;
+
+    /** The idle power of a server (in watts). */
+    private static final double MIN_POWER = 59;
+
+    /** The power of the cores and sockets of a busy server (in watts). */
+    private static final double ACTIVE_POWER = 40;
+
+    /** The quantile the statistics have to converge on. */
+    private static final double QUANTILE = .95;
+
+    /** The number of warmup samples. */
+    private static final int WARMUP_SAMPLES = 5000;
+
+    /** The directory containing the "workloads" directory. */
+    private String workloadDir;
+
+    /** The seed of each experiment's random number generator. */
+    private long seed;
+
+    /** The distributions loaded so far, by file name. */
+    private HashMap<String, EmpiricalDistribution> distributions;
+
+    /**
+     * Creates a new PowerCappingSweep.
+     *
+     * @param theWorkloadDir - the directory containing the "workloads"
+     * directory
+     * @param theSeed - the seed of each experiment's random number
+     * generator
+     */
+    public PowerCappingSweep(final String theWorkloadDir, final long theSeed) {
+        this.workloadDir = theWorkloadDir;
+        this.seed = theSeed;
+        this.distributions = new HashMap<String, EmpiricalDistribution>();
+    }
+
+    /**
+     * Builds the power capping experiment for a point of the sweep.
+     *
+     * @param point - the point of the sweep
+     * @return the experiment, ready to run
+     */
+    public Experiment createExperiment(final SweepPoint point) {
+        String prefix = this.workloadDir + "workloads/" + point.getWorkload();
+        EmpiricalDistribution arrivalDistribution
+            = this.getDistribution(prefix + ".arrival.cdf");
+        EmpiricalDistribution serviceDistribution
+            = this.getDistribution(prefix + ".service.cdf");
+        double averageInterarrival = arrivalDistribution.getMean();
+        double averageServiceTime = serviceDistribution.getMean();
+        double qps = 1 / averageInterarrival;
+        double rho = qps / (CORES * (1 / averageServiceTime));
+        double arrivalScale = rho / TARGET_RHO;
+
+        MTRandom rand = new MTRandom(this.seed);
+        Generator arrivalGenerator = new EmpiricalGenerator(rand,
+                arrivalDistribution, "arrival", arrivalScale);
+        Generator serviceGenerator;
+        if (point.getCv() > 0) {
+            double k = 1 / (point.getCv() * point.getCv());
+            serviceGenerator = new GammaGenerator(rand, k,
+                    averageServiceTime / k);
+        } else {
+            serviceGenerator = new EmpiricalGenerator(rand,
+                    serviceDistribution, "service", 1.0);
+        }
+
+        ExperimentInput experimentInput = new ExperimentInput();
+        ExperimentOutput experimentOutput = new ExperimentOutput();
+        double accuracy = point.getAccuracy();
+        experimentOutput.addOutput(StatName.SOJOURN_TIME, accuracy, QUANTILE,
+                accuracy, WARMUP_SAMPLES);
+        experimentOutput.addOutput(StatName.SERVER_LEVEL_CAP, accuracy,
+                QUANTILE, accuracy, WARMUP_SAMPLES);
+        Experiment experiment = new Experiment("Power capping sweep "
+                + point, rand, experimentInput, experimentOutput);
+
+        DataCenter dataCenter = new DataCenter();
+        int nServers = point.getNServers();
+        PowerCappingEnforcer enforcer = new PowerCappingEnforcer(experiment,
+                CAP_PERIOD, point.getCapLevel() * nServers,
+                MAX_POWER * nServers, MIN_POWER * nServers);
+        double coreActivePower = ACTIVE_POWER * (4.0 / 5) / CORES;
+        double socketActivePower = ACTIVE_POWER * (1.0 / 5) / SOCKETS;
+        for (int i = 0; i < nServers; i++) {
+            Server server = new Server(SOCKETS, CORES, experiment,
+                    arrivalGenerator, serviceGenerator);
+            server.setSocketPolicy(SocketPowerPolicy.NO_MANAGEMENT);
+            server.setCorePolicy(CorePowerPolicy.NO_MANAGEMENT);
+            server.setCoreActivePower(coreActivePower);
+            server.setCoreParkPower(0);
+            server.setCoreIdlePower(coreActivePower * .2);
+            server.setSocketActivePower(socketActivePower);
+            server.setSocketParkPower(0);
+            enforcer.addServer(server);
+            dataCenter.addServer(server);
+        }
+        experimentInput.setDataCenter(dataCenter);
+
+        return experiment;
+    }
+
+    /**
+     * Gets a distribution, loading it the first time it's needed.
+     *
+     * @param fileName - the file the distribution is in
+     * @return the distribution
+     */
+    private synchronized EmpiricalDistribution getDistribution(
+            final String fileName) {
+        EmpiricalDistribution distribution = this.distributions.get(fileName);
+        if (distribution == null) {
+            distribution = EmpiricalDistribution.loadDistribution(fileName,
+                    1e-3);
+            this.distributions.put(fileName, distribution);
+        }
+
+        return distribution;
+    }
+
+    /**
+     * Parses a comma separated list of numbers.
+     *
+     * @param list - the list
+     * @return the numbers
+     */
+    private static double[] parseList(final String list) {
+        String[] values = list.split(",");
+        double[] numbers = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            numbers[i] = Double.parseDouble(values[i].trim());
+        }
+
+        return numbers;
+    }
+
+    /**
+     * Runs a sweep.
+     *
+     * @param args - the directory containing the "workloads" directory,
+     * then comma separated lists of workloads, server counts, power caps
+     * per server (in watts), service time coefficients of variation
+     * (0 for the workload's distribution) and accuracies, then the number
+     * of threads (0 for one per processor) and the results file,
+     * optionally followed by a time limit (in seconds) for each point
+     * and the number of rounds to run points that don't converge in time
+     */
+    public static void main(final String[] args) {
+        final int nArgs = 8;
+        final int nBudgetArgs = 10;
+        if (args.length != nArgs && args.length != nBudgetArgs) {
+            Sim.fatalError("Usage: PowerCappingSweep workloadDir workloads"
+                    + " servers caps cvs accuracies threads resultsFile"
+                    + " [timeLimit rounds]");
+        }
+
+        ParameterGrid grid = new ParameterGrid();
+        String[] workloads = args[1].split(",");
+        for (int i = 0; i < workloads.length; i++) {
+            grid.addWorkload(workloads[i].trim());
+        }
+        double[] values = parseList(args[2]);
+        for (int i = 0; i < values.length; i++) {
+            grid.addServerCount((int) values[i]);
+        }
+        values = parseList(args[3]);
+        for (int i = 0; i < values.length; i++) {
+            grid.addCapLevel(values[i]);
+        }
+        values = parseList(args[4]);
+        for (int i = 0; i < values.length; i++) {
+            grid.addCv(values[i]);
+        }
+        values = parseList(args[5]);
+        for (int i = 0; i < values.length; i++) {
+            grid.addAccuracy(values[i]);
+        }
+
+        int nThreads = Integer.parseInt(args[6]);
+        if (nThreads == 0) {
+            nThreads = Runtime.getRuntime().availableProcessors();
+        }
+        SweepRunner runner = new SweepRunner(
+                new PowerCappingSweep(args[0], 1), nThreads, args[7]);
+        if (args.length == nArgs) {
+            runner.run(grid.getPoints());
+            System.out.println("Sweep done, " + runner.getNFailed()
+                    + " points failed");
+            return;
+        }
+
+        // Points that run out of time are continued in later rounds,
+        // each with twice the time of the last
+        double timeLimit = Double.parseDouble(args[8]);
+        int nRounds = Integer.parseInt(args[9]);
+        runner.setCheckpointDirectory(args[7] + ".checkpoints");
+        List<SweepPoint> points = grid.getPoints();
+        int nFailed = 0;
+        for (int round = 0; round < nRounds && !points.isEmpty(); round++) {
+            runner.setTimeLimit(timeLimit);
+            points = runner.run(points);
+            nFailed += runner.getNFailed();
+            timeLimit *= 2;
+        }
+        System.out.println("Sweep done, " + nFailed + " points failed and "
+                + points.size() + " points didn't converge in time");
+    }
+
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package experiment;
+
+import java.io.Serializable;
+
+/**
+ * One point of a parameter sweep: the workload, the number of servers,
+ * the power cap, the service time variability and the accuracy
+ * the statistics have to converge to.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public final class SweepPoint implements Serializable {
+
+    /**
+     * The serialization id.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The name of the workload (e.g., "csedns"). */
+    private String workload;
+
+    /** The number of servers. */
+    private int nServers;
+
+    /** The power cap per server (in watts). */
+    private double capLevel;
+
+    /**
+     * The coefficient of variation of the service times, or 0 to use
+     * the workload's service time distribution.
+     */
+    private double cv;
+
+    /** The accuracy the statistics have to converge to (e.g., .05). */
+    private double accuracy;
+
+    /**
+     * Creates a new SweepPoint.
+     *
+     * @param theWorkload - the name of the workload
+     * @param theNServers - the number of servers
+     * @param theCapLevel - the power cap per server (in watts)
+     * @param theCv - the coefficient of variation of the service times,
+     * or 0 to use the workload's service time distribution
+     * @param theAccuracy - the accuracy the statistics have to converge to
+     */
+    public SweepPoint(final String theWorkload,
+                      final int theNServers,
+                      final double theCapLevel,
+                      final double theCv,
+                      final double theAccuracy) {
+        this.workload = theWorkload;
+        this.nServers = theNServers;
+        this.capLevel = theCapLevel;
+        this.cv = theCv;
+        this.accuracy = theAccuracy;
+    }
+
+    /**
+     * Gets the name of the workload.
+     *
+     * @return the name of the workload
+     */
+    public String getWorkload() {
+        return this.workload;
+    }
+
+    /**
+     * Gets the number of servers.
+     *
+     * @return the number of servers
+     */
+    public int getNServers() {
+        return this.nServers;
+    }
+
+    /**
+     * Gets the power cap per server.
+     *
+     * @return the power cap per server (in watts)
+     */
+    public double getCapLevel() {
+        return this.capLevel;
+    }
+
+    /**
+     * Gets the coefficient of variation of the service times.
+     *
+     * @return the coefficient of variation of the service times,
+     * or 0 to use the workload's service time distribution
+     */
+    public double getCv() {
+        return this.cv;
+    }
+
+    /**
+     * Gets the accuracy the statistics have to converge to.
+     *
+     * @return the accuracy the statistics have to converge to
+     */
+    public double getAccuracy() {
+        return this.accuracy;
+    }
+
+    /**
+     * Gets a name for the point that can be used in file names,
+     * e.g., "csedns-20-65.0-0.0-0.05".
+     *
+     * @return the name of the point
+     */
+    public String getName() {
+        return this.workload + "-" + this.nServers + "-" + this.capLevel
+                + "-" + this.cv + "-" + this.accuracy;
+    }
+
+    /**
+     * Describes the point as tab separated name=value pairs.
+     *
+     * @return the description of the point
+     */
+    @Override
+    public String toString() {
+        return "workload=" + this.workload
+                + "\tservers=" + this.nServers
+                + "\tcap=" + this.capLevel
+                + "\tcv=" + this.cv
+                + "\taccuracy=" + this.accuracy;
+    }
+
+}
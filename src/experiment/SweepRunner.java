@@ -0,0 +1,337 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package experiment;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import stat.StatisticSummary;
+import core.Checkpointer;
+import core.Experiment;
+import core.Experiment.RunStatus;
+import core.Sim;
+
+/**
+ * Runs the points of a parameter sweep concurrently in one JVM, so
+ * JVM startup, JIT warmup and loading workloads are paid once per sweep
+ * rather than once per point. Each point's experiment is built by
+ * an {@link ExperimentFactory} when a thread is free to run it, so only
+ * as many experiments as there are threads are in memory at once.
+ *
+ * Each point's results are appended to the results file as soon as
+ * the point finishes, one line per point, as tab separated name=value
+ * pairs: the point's parameters, how its run ended (e.g., "converged" or
+ * "unstable", see {@link Experiment.RunStatus}), the events simulated,
+ * the wall clock time it took and, for each statistic, its mean and
+ * target quantile, how accurate they are and if they converged.
+ * A point whose experiment fails (e.g., a fatal error) is recorded as
+ * failed and the rest of the sweep carries on.
+ *
+ * Points can be given a time limit, so a sweep fits in a fixed slot
+ * and points that are slow to converge still report their estimates
+ * so far. If the runner has a checkpoint directory, the points that
+ * run out of time are checkpointed there, and running them again
+ * (e.g., with a longer time limit) continues where they stopped,
+ * so more time is only spent on the points that need it.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public final class SweepRunner {
+
+    /** Milliseconds per second. */
+    private static final double MILLIS_PER_SECOND = 1000.0;
+
+    /** Builds the experiment for each point. */
+    private ExperimentFactory factory;
+
+    /** The number of points run at once. */
+    private int nThreads;
+
+    /** The name of the file results are written to. */
+    private String resultsFile;
+
+    /**
+     * If results have been written yet, so later runs append to
+     * the results file rather than replace it.
+     */
+    private boolean started;
+
+    /** The time limit (in seconds) for each point, or 0 for none. */
+    private double timeLimit;
+
+    /**
+     * The directory points that run out of time are checkpointed to,
+     * or null if they aren't.
+     */
+    private File checkpointDir;
+
+    /** The number of points that failed in the last run. */
+    private int nFailed;
+
+    /**
+     * Creates a new SweepRunner.
+     *
+     * @param aFactory - builds the experiment for each point
+     * @param theNThreads - the number of points run at once
+     * (e.g., the number of cores)
+     * @param theResultsFile - the name of the file results are written to
+     */
+    public SweepRunner(final ExperimentFactory aFactory,
+                       final int theNThreads,
+                       final String theResultsFile) {
+        if (theNThreads < 1) {
+            Sim.fatalError("A sweep needs at least one thread");
+        }
+        this.factory = aFactory;
+        this.nThreads = theNThreads;
+        this.resultsFile = theResultsFile;
+        this.started = false;
+        this.timeLimit = 0.0d;
+        this.checkpointDir = null;
+        this.nFailed = 0;
+    }
+
+    /**
+     * Sets how long (in seconds of wall clock time) each point can run
+     * (see {@link Experiment#setTimeLimit(double)}).
+     *
+     * @param seconds - the time limit for each point or 0 for none
+     */
+    public void setTimeLimit(final double seconds) {
+        this.timeLimit = seconds;
+    }
+
+    /**
+     * Sets the directory the points that run out of time are
+     * checkpointed to, so running them again continues where they
+     * stopped. A point's checkpoint is deleted once it finishes.
+     *
+     * @param dirName - the name of the directory
+     */
+    public void setCheckpointDirectory(final String dirName) {
+        this.checkpointDir = new File(dirName);
+        if (!this.checkpointDir.isDirectory()
+                && !this.checkpointDir.mkdirs()) {
+            Sim.fatalError("Couldn't create checkpoint directory " + dirName);
+        }
+    }
+
+    /**
+     * Runs every point of a sweep and writes their results.
+     * The first run replaces the results file and later runs
+     * add to it.
+     *
+     * @param points - the points of the sweep
+     * @return the points that reached their time or event limit
+     * before converging
+     */
+    public List<SweepPoint> run(final List<SweepPoint> points) {
+        PrintWriter out = null;
+        try {
+            out = new PrintWriter(new FileWriter(this.resultsFile,
+                                                 this.started));
+            this.started = true;
+        } catch (IOException e) {
+            Sim.fatalError("Couldn't open results file " + this.resultsFile
+                    + ": " + e);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(this.nThreads);
+        CompletionService<PointResult> completion
+            = new ExecutorCompletionService<PointResult>(executor);
+        ArrayList<SweepPoint> unfinished = new ArrayList<SweepPoint>();
+        this.nFailed = 0;
+        try {
+            Iterator<SweepPoint> iter = points.iterator();
+            while (iter.hasNext()) {
+                final SweepPoint point = iter.next();
+                completion.submit(new Callable<PointResult>() {
+                    public PointResult call() {
+                        return runPoint(point);
+                    }
+                });
+            }
+
+            for (int i = 0; i < points.size(); i++) {
+                PointResult result = completion.take().get();
+                if (result.failed) {
+                    this.nFailed++;
+                } else if (result.unfinished) {
+                    unfinished.add(result.point);
+                }
+                out.println(result.line);
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Sim.fatalError("Interrupted while running a sweep");
+        } catch (ExecutionException e) {
+            Sim.fatalError("Couldn't run a sweep point: " + e.getCause());
+        } finally {
+            executor.shutdownNow();
+            out.close();
+        }
+
+        return unfinished;
+    }
+
+    /**
+     * Gets the number of points that failed in the last run.
+     *
+     * @return the number of points that failed
+     */
+    public int getNFailed() {
+        return this.nFailed;
+    }
+
+    /**
+     * Runs one point of a sweep, continuing from its checkpoint if
+     * it has one.
+     *
+     * @param point - the point to run
+     * @return the point's results
+     */
+    private PointResult runPoint(final SweepPoint point) {
+        long start = System.currentTimeMillis();
+        StringBuilder line = new StringBuilder(point.toString());
+        boolean failed = false;
+        boolean unfinished = false;
+        try {
+            File checkpoint = null;
+            if (this.checkpointDir != null) {
+                checkpoint = new File(this.checkpointDir,
+                                      point.getName() + ".ckpt");
+            }
+
+            Experiment experiment = null;
+            if (checkpoint != null && checkpoint.exists()) {
+                experiment = Checkpointer.restore(checkpoint.getPath());
+            } else {
+                experiment = this.factory.createExperiment(point);
+            }
+            experiment.setTimeLimit(this.timeLimit);
+            experiment.run();
+
+            RunStatus status = experiment.getStatus();
+            unfinished = status == RunStatus.TIME_LIMIT
+                || status == RunStatus.EVENT_LIMIT;
+            if (checkpoint != null) {
+                if (unfinished) {
+                    Checkpointer checkpointer
+                        = new Checkpointer(checkpoint.getPath());
+                    checkpointer.checkpoint(experiment);
+                    checkpointer.close();
+                } else {
+                    checkpoint.delete();
+                }
+            }
+
+            line.append("\tstatus=" + status.toString().toLowerCase());
+            if (experiment.getInstabilityReason() != null) {
+                line.append("\treason=" + experiment.getInstabilityReason());
+            }
+            line.append("\tevents=" + experiment.getNEventsSimulated());
+            line.append("\tseconds="
+                    + (System.currentTimeMillis() - start) / MILLIS_PER_SECOND);
+            Iterator<StatisticSummary> stats
+                = experiment.getStats().summarize().iterator();
+            while (stats.hasNext()) {
+                StatisticSummary stat = stats.next();
+                String name = "\t" + stat.getStatName();
+                line.append(name + ".mean=" + stat.getMean());
+                line.append(name + ".meanAccuracy=" + stat.getMeanAccuracy());
+                line.append(name + ".q" + stat.getQuantileSetting()
+                        + "=" + stat.getQuantile());
+                line.append(name + ".quantileAccuracy="
+                        + stat.getQuantileAccuracy());
+                line.append(name + ".converged=" + stat.isConverged());
+            }
+        } catch (RuntimeException e) {
+            failed = true;
+            line.append("\tstatus=failed");
+            line.append("\tseconds="
+                    + (System.currentTimeMillis() - start) / MILLIS_PER_SECOND);
+            line.append("\terror=" + e.getMessage());
+        }
+
+        return new PointResult(point, line.toString(), failed, unfinished);
+    }
+
+    /**
+     * The results of one point of a sweep.
+     */
+    private static final class PointResult {
+
+        /** The point. */
+        private SweepPoint point;
+
+        /** The line of results for the point. */
+        private String line;
+
+        /** If the point's experiment failed. */
+        private boolean failed;
+
+        /** If the point reached its time or event limit first. */
+        private boolean unfinished;
+
+        /**
+         * Creates a new PointResult.
+         *
+         * @param thePoint - the point
+         * @param theLine - the line of results for the point
+         * @param isFailed - if the point's experiment failed
+         * @param isUnfinished - if the point reached its time or
+         * event limit before converging
+         */
+        public PointResult(final SweepPoint thePoint,
+                           final String theLine,
+                           final boolean isFailed,
+                           final boolean isUnfinished) {
+            this.point = thePoint;
+            this.line = theLine;
+            this.failed = isFailed;
+            this.unfinished = isUnfinished;
+        }
+
+    }
+
+}
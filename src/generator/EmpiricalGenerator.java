@@ -113,6 +113,22 @@ public class EmpiricalGenerator extends Generator {
     return this.scale * nextVal;
   }
 
+  /**
+   * Generates the next values in bulk, in the same order
+   * {@link #next()} would. The uniform random numbers are all drawn
+   * in one call, then looked up in the cdf in place.
+   *
+   * @param values - the array to put the values in
+   * @param count - the number of values to generate
+   */
+  @Override
+  public void fill(final double[] values, final int count) {
+    this.generator.nextDoubles(values, count);
+    for (int i = 0; i < count; i++) {
+      values[i] = this.scale * this.cdf.getQuantile(values[i]);
+    }
+  }
+
   /**
    * Gets the name of the generator.
    *
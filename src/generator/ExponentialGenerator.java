@@ -69,6 +69,22 @@ public class ExponentialGenerator extends Generator {
         return value;
     }
 
+    /**
+     * Generates the next values in bulk, in the same order
+     * {@link #next()} would. The uniform random numbers are all drawn
+     * in one call, then transformed in place.
+     *
+     * @param values - the array to put the values in
+     * @param count - the number of values to generate
+     */
+    @Override
+    public void fill(final double[] values, final int count) {
+        this.generator.nextDoubles(values, count);
+        for (int i = 0; i < count; i++) {
+            values[i] = -Math.log(values[i]) / this.lambda;
+        }
+    }
+
     /**
      * Gets the name of the generator.
      *
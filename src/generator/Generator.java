@@ -32,13 +32,15 @@ package generator;
 
 import java.io.Serializable;
 
+import core.Sim;
+
 /**
  * A Generator creates sequences of number based on distributions
  * or other rules.
  *
  * @author David Meisner (meisner@umich.edu)
  */
-public abstract class Generator implements Serializable {
+public abstract class Generator implements Serializable, Cloneable {
 
     /**
      * The serialization id.
@@ -57,6 +59,26 @@ public abstract class Generator implements Serializable {
         this.generator = aGenerator;
     }
 
+    /**
+     * Creates a copy of this generator that draws from a different
+     * random number generator. The copy shares the (immutable)
+     * distribution of this generator.
+     *
+     * @param aGenerator - the random number generator to feed the copy
+     * @return the copy of the generator
+     */
+    public Generator withRandom(final MTRandom aGenerator) {
+        Generator copy = null;
+        try {
+            copy = (Generator) this.clone();
+        } catch (CloneNotSupportedException e) {
+            Sim.fatalError("Couldn't copy generator " + this.getName());
+        }
+        copy.generator = aGenerator;
+
+        return copy;
+    }
+
     /**
      * Get the name of the generator.
      *
@@ -70,4 +92,17 @@ public abstract class Generator implements Serializable {
      * @return the next values
      */
     public abstract double next();
+
+    /**
+     * Generates the next values in bulk, in the same order
+     * {@link #next()} would.
+     *
+     * @param values - the array to put the values in
+     * @param count - the number of values to generate
+     */
+    public void fill(final double[] values, final int count) {
+        for (int i = 0; i < count; i++) {
+            values[i] = this.next();
+        }
+    }
 }
@@ -193,6 +193,17 @@ public final class Master {
         System.out.println("Done running to steady state");
     }
 
+    /**
+     * Forks one experiment per slave from the master experiment, once it
+     * has run to steady state, so the slaves don't repeat warmup and
+     * calibration.
+     *
+     * @return the experiments for the slaves
+     */
+    public Experiment[] forkSlaveExperiments() {
+        return masterExperiment.fork(this.slaves.size());
+    }
+
     /**
      * This method runs the slave experiments.
      *
@@ -154,6 +154,29 @@ public final class Histogram implements Serializable {
         this.yValues[bin] += 1;
     }
 
+    /**
+     * Adds every stride-th sample of part of an array to the histogram.
+     *
+     * @param values - the array of samples
+     * @param from - the index of the first sample to add
+     * @param to - the index past the last sample that may be added
+     * @param stride - the spacing of the samples to add
+     */
+    public void addSamples(final double[] values,
+                           final int from,
+                           final int to,
+                           final int stride) {
+        this.cdf = null;
+        int lastBin = this.yValues.length - 1;
+        for (int i = from; i < to; i += stride) {
+            int bin = findClosestBin(this.xValues, values[i]);
+            if (bin > lastBin) {
+                bin = lastBin;
+            }
+            this.yValues[bin] += 1;
+        }
+    }
+
     /**
      * Combine a histogram with this one.
      *
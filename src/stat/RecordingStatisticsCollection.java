@@ -0,0 +1,350 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package stat;
+
+import java.util.HashMap;
+
+import core.Constants.StatName;
+import core.Constants.TimeWeightedStatName;
+
+/**
+ * A statistics collection that doesn't compute anything. Instead it
+ * records every sample added to it, stamped with the simulated time and
+ * the event that added it, so the samples can later be replayed into
+ * another (target) collection. This lets events be simulated away from
+ * the target collection (e.g., on another thread) while the target still
+ * sees the samples in simulated-time order.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public final class RecordingStatisticsCollection extends StatisticsCollection {
+
+    /**
+     * The serialization id.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The initial capacity of the sample log. */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** The collection samples are replayed into. */
+    private StatisticsCollection target;
+
+    /** The recorders standing in for the target's statistics. */
+    private HashMap<StatName, Statistic> recorders;
+
+    /** The recorders standing in for the target's time-weighted stats. */
+    private HashMap<TimeWeightedStatName, TimeWeightedStatistic>
+        twRecorders;
+
+    /** The simulated time of the event currently adding samples. */
+    private double clockTime;
+
+    /** The id of the event currently adding samples. */
+    private long clockEvent;
+
+    /** The number of recorded samples. */
+    private int size;
+
+    /** The simulated time each sample was recorded at. */
+    private double[] times;
+
+    /** The id of the event that recorded each sample. */
+    private long[] events;
+
+    /** The value of each sample. */
+    private double[] values;
+
+    /** The time argument of each time-weighted sample. */
+    private double[] sampleTimes;
+
+    /** The target statistic of each sample. */
+    private Statistic[] targets;
+
+    /**
+     * Creates a new RecordingStatisticsCollection.
+     * @param theTarget - the collection samples are replayed into
+     */
+    public RecordingStatisticsCollection(
+                                final StatisticsCollection theTarget) {
+        this.target = theTarget;
+        this.recorders = new HashMap<StatName, Statistic>();
+        this.twRecorders
+            = new HashMap<TimeWeightedStatName, TimeWeightedStatistic>();
+        this.size = 0;
+        this.times = new double[INITIAL_CAPACITY];
+        this.events = new long[INITIAL_CAPACITY];
+        this.values = new double[INITIAL_CAPACITY];
+        this.sampleTimes = new double[INITIAL_CAPACITY];
+        this.targets = new Statistic[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Sets the time and id of the event that is about to add samples.
+     * @param time - the simulated time of the event
+     * @param event - the id of the event
+     */
+    public void setClock(final double time, final long event) {
+        this.clockTime = time;
+        this.clockEvent = event;
+    }
+
+    /**
+     * Sends the samples of one of the target's statistics straight to
+     * another statistic (e.g., a copy local to one thread) rather than
+     * recording them.
+     * @param name - the name of the statistic
+     * @param stat - the statistic to send samples to
+     */
+    public void setDirectStatistic(final StatName name, final Statistic stat) {
+        this.recorders.put(name, stat);
+    }
+
+    /**
+     * Get a recorder for one of the target's statistics.
+     * @param name - the name of the statistic
+     * @return the recorder for the statistic
+     */
+    @Override
+    public Statistic getStat(final StatName name) {
+        Statistic recorder = this.recorders.get(name);
+        if (recorder == null) {
+            recorder = new RecordingStatistic(this.target.getStat(name));
+            this.recorders.put(name, recorder);
+        }
+
+        return recorder;
+    }
+
+    /**
+     * Get a recorder for one of the target's time-weighted statistics.
+     * @param name - the name of the time-weighted statistic
+     * @return the recorder for the time-weighted statistic
+     */
+    @Override
+    public TimeWeightedStatistic getTimeWeightedStat(
+                                final TimeWeightedStatName name) {
+        TimeWeightedStatistic recorder = this.twRecorders.get(name);
+        if (recorder == null) {
+            recorder = new RecordingTimeWeightedStatistic(
+                    this.target.getTimeWeightedStat(name));
+            this.twRecorders.put(name, recorder);
+        }
+
+        return recorder;
+    }
+
+    /**
+     * Get the number of recorded samples.
+     * @return the number of recorded samples
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Get the simulated time a sample was recorded at.
+     * @param index - the index of the sample
+     * @return the simulated time the sample was recorded at
+     */
+    public double getTime(final int index) {
+        return this.times[index];
+    }
+
+    /**
+     * Get the id of the event that recorded a sample.
+     * @param index - the index of the sample
+     * @return the id of the event that recorded the sample
+     */
+    public long getEvent(final int index) {
+        return this.events[index];
+    }
+
+    /**
+     * Adds a recorded sample to its target statistic.
+     * @param index - the index of the sample
+     */
+    public void replay(final int index) {
+        this.replay(index, 0.0d);
+    }
+
+    /**
+     * Adds a recorded sample to its target statistic, shifting the time of
+     * time-weighted samples (e.g., when stitching independently simulated
+     * stretches of time together).
+     * @param index - the index of the sample
+     * @param timeShift - the amount of time to add to the sample's time
+     */
+    public void replay(final int index, final double timeShift) {
+        Statistic stat = this.targets[index];
+        if (stat instanceof TimeWeightedStatistic) {
+            ((TimeWeightedStatistic) stat).addSample(this.values[index],
+                    this.sampleTimes[index] + timeShift);
+        } else {
+            stat.addSample(this.values[index]);
+        }
+    }
+
+    /**
+     * Forget the first samples, e.g., once they have been replayed.
+     * @param count - the number of samples to forget
+     */
+    public void discard(final int count) {
+        int remaining = this.size - count;
+        System.arraycopy(this.times, count, this.times, 0, remaining);
+        System.arraycopy(this.events, count, this.events, 0, remaining);
+        System.arraycopy(this.values, count, this.values, 0, remaining);
+        System.arraycopy(this.sampleTimes, count, this.sampleTimes, 0,
+                remaining);
+        System.arraycopy(this.targets, count, this.targets, 0, remaining);
+        for (int i = remaining; i < this.size; i++) {
+            this.targets[i] = null;
+        }
+        this.size = remaining;
+    }
+
+    /**
+     * Forget the last samples, e.g., once the events that added them
+     * have been rolled back.
+     * @param newSize - the number of samples to keep
+     */
+    public void truncate(final int newSize) {
+        for (int i = newSize; i < this.size; i++) {
+            this.targets[i] = null;
+        }
+        this.size = newSize;
+    }
+
+    /**
+     * Add a sample to the log.
+     * @param stat - the target statistic of the sample
+     * @param value - the value of the sample
+     * @param sampleTime - the time argument of a time-weighted sample
+     */
+    private void record(final Statistic stat, final double value,
+                        final double sampleTime) {
+        if (this.size == this.times.length) {
+            int capacity = 2 * this.times.length;
+            double[] newTimes = new double[capacity];
+            long[] newEvents = new long[capacity];
+            double[] newValues = new double[capacity];
+            double[] newSampleTimes = new double[capacity];
+            Statistic[] newTargets = new Statistic[capacity];
+            System.arraycopy(this.times, 0, newTimes, 0, this.size);
+            System.arraycopy(this.events, 0, newEvents, 0, this.size);
+            System.arraycopy(this.values, 0, newValues, 0, this.size);
+            System.arraycopy(this.sampleTimes, 0, newSampleTimes, 0,
+                    this.size);
+            System.arraycopy(this.targets, 0, newTargets, 0, this.size);
+            this.times = newTimes;
+            this.events = newEvents;
+            this.values = newValues;
+            this.sampleTimes = newSampleTimes;
+            this.targets = newTargets;
+        }
+        this.times[this.size] = this.clockTime;
+        this.events[this.size] = this.clockEvent;
+        this.values[this.size] = value;
+        this.sampleTimes[this.size] = sampleTime;
+        this.targets[this.size] = stat;
+        this.size++;
+    }
+
+    /**
+     * Stands in for a statistic, recording its samples.
+     */
+    private final class RecordingStatistic extends Statistic {
+
+        /**
+         * The serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /** The statistic samples are replayed into. */
+        private Statistic stat;
+
+        /**
+         * Creates a new RecordingStatistic.
+         * @param theStat - the statistic samples are replayed into
+         */
+        public RecordingStatistic(final Statistic theStat) {
+            super(null, null, 0, 0, 0, 0);
+            this.stat = theStat;
+        }
+
+        /**
+         * Records a sample.
+         * @param value - the value of the sample
+         */
+        @Override
+        public void addSample(final double value) {
+            record(this.stat, value, 0.0);
+        }
+
+    }
+
+    /**
+     * Stands in for a time-weighted statistic, recording its samples.
+     */
+    private final class RecordingTimeWeightedStatistic
+            extends TimeWeightedStatistic {
+
+        /**
+         * The serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /** The statistic samples are replayed into. */
+        private TimeWeightedStatistic stat;
+
+        /**
+         * Creates a new RecordingTimeWeightedStatistic.
+         * @param theStat - the statistic samples are replayed into
+         */
+        public RecordingTimeWeightedStatistic(
+                final TimeWeightedStatistic theStat) {
+            super(null, null, 0, 0, 0, 0, 0);
+            this.stat = theStat;
+        }
+
+        /**
+         * Records a sample.
+         * @param value - the value of the sample
+         * @param time - the time of the sample
+         */
+        @Override
+        public void addSample(final double value, final double time) {
+            record(this.stat, value, time);
+        }
+
+    }
+
+}
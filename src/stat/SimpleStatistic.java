@@ -120,6 +120,39 @@ public class SimpleStatistic implements Serializable {
         this.maxValue = Math.max(this.maxValue, value);
     }
 
+    /**
+     * Add every stride-th sample of part of an array to the simple
+     * statistic, in order.
+     *
+     * @param values - the array of samples
+     * @param from - the index of the first sample to add
+     * @param to - the index past the last sample that may be added
+     * @param stride - the spacing of the samples to add
+     */
+    public void addSamples(final double[] values,
+                           final int from,
+                           final int to,
+                           final int stride) {
+        long count = this.s0;
+        double sum = this.s1;
+        double sumOfSquares = this.s2;
+        double min = this.minValue;
+        double max = this.maxValue;
+        for (int i = from; i < to; i += stride) {
+            double value = values[i];
+            count += 1;
+            sum += value;
+            sumOfSquares += value * value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        this.s0 = count;
+        this.s1 = sum;
+        this.s2 = sumOfSquares;
+        this.minValue = min;
+        this.maxValue = max;
+    }
+
     /**
      * Get the number of samples.
      *
@@ -83,6 +83,9 @@ public class Statistic implements Serializable {
     /** Total samples seen by the statistic. */
     private long totalSamples;
 
+    /** The sum of all the samples seen by the statistic. */
+    private double sampleSum;
+
     /** The number of samples that will be used for calibration. */
     private int calibrationSamples;
 
@@ -132,6 +135,9 @@ public class Statistic implements Serializable {
     /** If this statistic was created by combining statistics. */
     private boolean combined;
 
+    /** If the statistic had converged when it was last checked. */
+    private boolean converged;
+
     /**
      * The possible states the statistic can be in.
      */
@@ -251,12 +257,14 @@ public class Statistic implements Serializable {
         this.justBins = false;
         this.statCollection = aStatCollection;
         this.combined = false;
+        this.converged = false;
         this.statName = aStatName;
         this.otherStatsWarmed = false;
         this.steadyStateSamples = 0;
         this.discardedWarmupSamples = 0;
         this.discardedSteadyStateSamples = 0;
         this.totalSamples = 0;
+        this.sampleSum = 0;
         this.phase = Phase.WARMUP;
         this.nWarmupSamples = theNWarmupSamples;
         this.requiredMeanAccuracy = meanAccuracy;
@@ -318,7 +326,7 @@ public class Statistic implements Serializable {
                 this.histogram = new Histogram(10000,
                                                minValue / 2,
                                                maxValue * 2);
-                this.phase = Phase.STEADYSTATE;
+                this.enterSteadyState();
                 System.out.println(this.statName
                         + " entered steady state and only took 100 samples");
 
@@ -346,7 +354,7 @@ public class Statistic implements Serializable {
                     this.histogram = new Histogram(10000, minValue, maxValue);
                 }
 
-                this.phase = Phase.STEADYSTATE;
+                this.enterSteadyState();
                 System.out.println(this.statName
                         + " entered steady state, lag spacing of " + this.lag);
             }
@@ -362,8 +370,15 @@ public class Statistic implements Serializable {
         }
 
         this.totalSamples++;
+        this.sampleSum += value;
 
-        // Assert sample balance
+        this.checkSampleBalance();
+    }
+
+    /**
+     * Checks that every sample the statistic has seen is accounted for.
+     */
+    private void checkSampleBalance() {
         if (this.totalSamples
                 != (this.steadyStateSamples
                         + this.discardedWarmupSamples
@@ -378,7 +393,149 @@ public class Statistic implements Serializable {
                            + " discarded warmup samples "
                            + this.discardedWarmupSamples);
         }
+    }
+
+    /**
+     * Adds several samples to the statistic, in order, with the same
+     * result as adding them one at a time. Once the statistic is in
+     * steady state, the kept samples (every lag-th one) go into the
+     * mean and histogram in runs between convergence checks, and the
+     * rest are only counted.
+     *
+     * @param values - the values of the samples
+     * @param count - the number of samples to add
+     */
+    public void addSamples(final double[] values, final int count) {
+        // Samples before steady state go through the phases one at a time
+        int start = 0;
+        while (start < count
+                && (this.phase != Phase.STEADYSTATE || this.combined)) {
+            this.addSample(values[start]);
+            start++;
+        }
+        if (start == count) {
+            return;
+        }
+
+        int checkInterval = Integer.MAX_VALUE;
+        if (this.statCollection != null) {
+            checkInterval = this.statCollection.getConvergenceCheckInterval();
+        }
+        long nKept = 0;
+        int next = start
+            + (int) ((this.lag - this.totalSamples % this.lag) % this.lag);
+        while (next < count) {
+            // Keep samples up to the next convergence check
+            long untilCheck = checkInterval
+                - this.steadyStateSamples % checkInterval;
+            int end = (int) Math.min(count,
+                    next + (untilCheck - 1) * this.lag + 1);
+            int kept = (end - next + this.lag - 1) / this.lag;
+            this.simpleStat.addSamples(values, next, end, this.lag);
+            this.histogram.addSamples(values, next, end, this.lag);
+            this.steadyStateSamples += kept;
+            nKept += kept;
+            if (this.steadyStateSamples % checkInterval == 0) {
+                this.checkConvergence();
+            }
+            next += kept * this.lag;
+        }
+
+        double sum = this.sampleSum;
+        for (int i = start; i < count; i++) {
+            sum += values[i];
+        }
+        this.sampleSum = sum;
+        this.totalSamples += count - start;
+        this.discardedSteadyStateSamples += count - start - nKept;
+        this.checkSampleBalance();
+    }
+
+    /**
+     * Creates an empty statistic that picks up where this one is: in steady
+     * state, with the same lag spacing and histogram bins. Its samples can
+     * be moved back into this statistic with {@link #mergeSamples(Statistic)}.
+     *
+     * @return the steady state copy
+     */
+    public Statistic createSteadyStateCopy() {
+        if (this.phase != Phase.STEADYSTATE) {
+            Sim.fatalError("Can only copy " + this.statName
+                    + " once it's in steady state");
+        }
+
+        Statistic copy = new Statistic(this.statCollection,
+                                       this.statName,
+                                       this.nWarmupSamples,
+                                       this.requiredMeanAccuracy,
+                                       this.quantile,
+                                       this.requiredQuantileAccuracy,
+                                       this.histogram.getXValues());
+        copy.statCollection = null;
+        copy.lag = this.lag;
+        copy.justBins = this.justBins;
+        copy.otherStatsWarmed = true;
+        copy.phase = Phase.STEADYSTATE;
+
+        return copy;
+    }
+
+    /**
+     * Moves the samples of a steady state copy of this statistic
+     * (see {@link #createSteadyStateCopy()}) into this statistic,
+     * leaving the copy empty.
+     *
+     * @param copy - the steady state copy
+     */
+    public void mergeSamples(final Statistic copy) {
+        if (this.combined) {
+            Sim.fatalError("Shouldn't add samples after being combined");
+        }
+        if (this.phase != Phase.STEADYSTATE
+                || copy.phase != Phase.STEADYSTATE) {
+            Sim.fatalError("Can only merge " + this.statName
+                    + " in steady state");
+        }
+
+        this.simpleStat = this.simpleStat.combineSimpleStatistics(
+                copy.simpleStat);
+        this.histogram = this.histogram.combineHistogram(copy.histogram);
+        this.steadyStateSamples += copy.steadyStateSamples;
+        this.discardedSteadyStateSamples += copy.discardedSteadyStateSamples;
+        this.totalSamples += copy.totalSamples;
+        this.sampleSum += copy.sampleSum;
+        this.checkConvergence();
 
+        copy.clearSamples();
+    }
+
+    /**
+     * Throws away the samples the statistic has seen, keeping its phase,
+     * lag spacing and histogram bins, so it starts steady state over
+     * (e.g., in a forked copy of an experiment).
+     */
+    public void discardSteadyStateSamples() {
+        if (this.phase != Phase.STEADYSTATE) {
+            Sim.fatalError("Can only discard samples of " + this.statName
+                    + " in steady state");
+        }
+
+        this.clearSamples();
+        this.discardedWarmupSamples = 0;
+        this.calibrationSequence = new Sequence();
+        this.checkConvergence();
+    }
+
+    /**
+     * Empties the steady state estimates of the statistic.
+     */
+    private void clearSamples() {
+        this.simpleStat = new SimpleStatistic();
+        this.histogram = new Histogram(this.histogram.getXValues());
+        this.steadyStateSamples = 0;
+        this.discardedSteadyStateSamples = 0;
+        this.totalSamples = 0;
+        this.sampleSum = 0;
     }
 
     /**
@@ -453,6 +610,16 @@ public class Statistic implements Serializable {
         return this.totalSamples;
     }
 
+    /**
+     * Get the sum of all the samples (including non-steady-state)
+     * the statistic has seen.
+     *
+     * @return the sum of all the samples the statistic has seen
+     */
+    public double getSampleSum() {
+        return this.sampleSum;
+    }
+
     /**
      * Provides a sample to the statistic to make its estimates.
      *
@@ -462,6 +629,56 @@ public class Statistic implements Serializable {
         this.simpleStat.addSample(value);
         this.histogram.addSample(value);
         this.steadyStateSamples++;
+        if (this.statCollection != null
+                && this.steadyStateSamples
+                    % this.statCollection.getConvergenceCheckInterval() == 0) {
+            this.checkConvergence();
+        }
+    }
+
+    /**
+     * Moves the statistic to steady state and tells its collection.
+     */
+    private void enterSteadyState() {
+        this.phase = Phase.STEADYSTATE;
+        if (this.statCollection != null) {
+            this.statCollection.reportSteadyState();
+        }
+        this.checkConvergence();
+    }
+
+    /**
+     * Checks if the statistic has converged and tells its collection
+     * if that changed.
+     */
+    private void checkConvergence() {
+        if (this.statCollection == null) {
+            return;
+        }
+        boolean nowConverged = this.isConverged();
+        if (nowConverged != this.converged) {
+            this.converged = nowConverged;
+            this.statCollection.reportConvergence(nowConverged);
+        }
+    }
+
+    /**
+     * Checks if the statistic had converged when it was last checked
+     * (which is cheaper than {@link #isConverged()}).
+     *
+     * @return if the statistic had converged when it was last checked
+     */
+    boolean hasConverged() {
+        return this.converged;
+    }
+
+    /**
+     * Gets the collection the statistic reports its changes to.
+     *
+     * @return the collection the statistic reports its changes to
+     */
+    StatisticsCollection getStatCollection() {
+        return this.statCollection;
     }
 
     /**
@@ -0,0 +1,205 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package stat;
+
+import java.io.Serializable;
+
+import core.Constants.StatName;
+
+/**
+ * A snapshot of a statistic's estimates, which can be taken at any
+ * point of a run (e.g., when it runs out of time before converging).
+ * Before the statistic reaches steady state its mean is the plain mean
+ * of every sample seen so far, warmup included, and its quantile and
+ * accuracies are unknown (NaN).
+ *
+ * @author David Meisner (meisner@umich.edu)
+ */
+public final class StatisticSummary implements Serializable {
+
+    /** The serialization id. */
+    private static final long serialVersionUID = 1L;
+
+    /** The name of the statistic. */
+    private StatName statName;
+
+    /** If the statistic was in steady state. */
+    private boolean steadyState;
+
+    /** If the statistic had converged. */
+    private boolean converged;
+
+    /** The mean estimate. */
+    private double mean;
+
+    /** The accuracy of the mean estimate. */
+    private double meanAccuracy;
+
+    /** The quantile the statistic converges on (e.g., .95). */
+    private double quantileSetting;
+
+    /** The estimate of the quantile the statistic converges on. */
+    private double quantile;
+
+    /** The accuracy of the quantile estimate. */
+    private double quantileAccuracy;
+
+    /** The number of samples the estimates are based on. */
+    private long nSamples;
+
+    /**
+     * Creates a new StatisticSummary of a statistic as it is now.
+     *
+     * @param stat - the statistic
+     */
+    public StatisticSummary(final Statistic stat) {
+        this.statName = stat.getStatName();
+        this.steadyState = stat.isSteadyState();
+        this.converged = stat.isConverged();
+        this.quantileSetting = stat.getQuantileSetting();
+        if (stat.getGoodSamples() > 0) {
+            this.mean = stat.getAverage();
+            this.meanAccuracy = stat.getMeanAccuracy();
+            this.quantile = stat.getQuantile(this.quantileSetting);
+            this.quantileAccuracy = stat.getQuantileAccuracy();
+            this.nSamples = stat.getGoodSamples();
+        } else {
+            this.mean = stat.getSampleSum() / stat.getTotalSamples();
+            this.meanAccuracy = Double.NaN;
+            this.quantile = Double.NaN;
+            this.quantileAccuracy = Double.NaN;
+            this.nSamples = stat.getTotalSamples();
+        }
+    }
+
+    /**
+     * Gets the name of the statistic.
+     *
+     * @return the name of the statistic
+     */
+    public StatName getStatName() {
+        return this.statName;
+    }
+
+    /**
+     * Checks if the statistic was in steady state.
+     *
+     * @return if the statistic was in steady state
+     */
+    public boolean isSteadyState() {
+        return this.steadyState;
+    }
+
+    /**
+     * Checks if the statistic had converged.
+     *
+     * @return if the statistic had converged
+     */
+    public boolean isConverged() {
+        return this.converged;
+    }
+
+    /**
+     * Gets the mean estimate.
+     *
+     * @return the mean estimate
+     */
+    public double getMean() {
+        return this.mean;
+    }
+
+    /**
+     * Gets the accuracy of the mean estimate.
+     *
+     * @return the accuracy of the mean estimate or NaN if unknown
+     */
+    public double getMeanAccuracy() {
+        return this.meanAccuracy;
+    }
+
+    /**
+     * Gets the quantile the statistic converges on.
+     *
+     * @return the quantile the statistic converges on (e.g., .95)
+     */
+    public double getQuantileSetting() {
+        return this.quantileSetting;
+    }
+
+    /**
+     * Gets the estimate of the quantile the statistic converges on.
+     *
+     * @return the quantile estimate or NaN if unknown
+     */
+    public double getQuantile() {
+        return this.quantile;
+    }
+
+    /**
+     * Gets the accuracy of the quantile estimate.
+     *
+     * @return the accuracy of the quantile estimate or NaN if unknown
+     */
+    public double getQuantileAccuracy() {
+        return this.quantileAccuracy;
+    }
+
+    /**
+     * Gets the number of samples the estimates are based on.
+     *
+     * @return the number of samples the estimates are based on
+     */
+    public long getNSamples() {
+        return this.nSamples;
+    }
+
+    /**
+     * Describes the summary in one line.
+     *
+     * @return the summary as a string
+     */
+    @Override
+    public String toString() {
+        String phase = "warming";
+        if (this.converged) {
+            phase = "converged";
+        } else if (this.steadyState) {
+            phase = "not converged";
+        }
+
+        return this.statName + " (" + phase + ", " + this.nSamples
+                + " samples): mean " + this.mean
+                + " (accuracy " + this.meanAccuracy + "), quantile("
+                + this.quantileSetting + ") " + this.quantile
+                + " (accuracy " + this.quantileAccuracy + ")";
+    }
+
+}
@@ -31,8 +31,10 @@
 package stat;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.Vector;
 
@@ -78,6 +80,25 @@ public class StatisticsCollection implements Serializable {
      * time weighted statistic name is requested. */
     private FakeTimeWeightedStatistic twFakeStatistic;
 
+    /** The number of statistics in steady state. */
+    private int nSteadyState;
+
+    /** The number of statistics that had converged when last checked. */
+    private int nConverged;
+
+    /**
+     * If every statistic that must converge reports its changes
+     * to this collection, so convergence can be tracked incrementally
+     * rather than by checking every statistic.
+     */
+    private boolean tracking;
+
+    /**
+     * The number of steady state samples a statistic takes between
+     * checks of its convergence.
+     */
+    private int convergenceCheckInterval;
+
     /**
      * Creates a new StatisticsCollection.
      */
@@ -89,6 +110,10 @@ public class StatisticsCollection implements Serializable {
             = new HashMap<TimeWeightedStatName, TimeWeightedStatistic>();
         this.fakeStatistic = new FakeStatistic();
         this.twFakeStatistic = new FakeTimeWeightedStatistic();
+        this.nSteadyState = 0;
+        this.nConverged = 0;
+        this.tracking = true;
+        this.convergenceCheckInterval = 1;
     }
 
     /**
@@ -103,6 +128,7 @@ public class StatisticsCollection implements Serializable {
         this();
         this.statsMap = aStatsMap;
         this.convergeStats = aConvergeStats;
+        this.tracking = false;
     }
 
     /**
@@ -143,6 +169,9 @@ public class StatisticsCollection implements Serializable {
      * @return if all the needed statistics have converged
      */
     public boolean allStatsConverged() {
+        if (this.tracking) {
+            return this.nConverged == this.convergeStats.size();
+        }
 
         boolean allConverged = true;
         Iterator<Statistic> iter = this.convergeStats.iterator();
@@ -157,6 +186,71 @@ public class StatisticsCollection implements Serializable {
         return allConverged;
     }
 
+    /**
+     * Sets how many steady state samples a statistic takes between checks
+     * of its convergence. Checking less often makes adding samples cheaper,
+     * but the simulation may run a little past convergence.
+     *
+     * @param interval - the number of samples between convergence checks
+     */
+    public void setConvergenceCheckInterval(final int interval) {
+        if (interval < 1) {
+            Sim.fatalError("Convergence check interval must be positive, not "
+                    + interval);
+        }
+        this.convergenceCheckInterval = interval;
+    }
+
+    /**
+     * Gets how many steady state samples a statistic takes between checks
+     * of its convergence.
+     *
+     * @return the number of samples between convergence checks
+     */
+    int getConvergenceCheckInterval() {
+        return this.convergenceCheckInterval;
+    }
+
+    /**
+     * Reports that a statistic entered steady state.
+     */
+    void reportSteadyState() {
+        this.nSteadyState++;
+    }
+
+    /**
+     * Reports that a statistic has converged or is no longer converged.
+     *
+     * @param converged - if the statistic has converged
+     */
+    void reportConvergence(final boolean converged) {
+        if (converged) {
+            this.nConverged++;
+        } else {
+            this.nConverged--;
+        }
+    }
+
+    /**
+     * Starts tracking a statistic that must converge. If it doesn't
+     * report its changes to this collection, convergence is checked by
+     * going through every statistic instead.
+     *
+     * @param stat - the statistic
+     */
+    private void track(final Statistic stat) {
+        if (stat.getStatCollection() != this) {
+            this.tracking = false;
+            return;
+        }
+        if (stat.isSteadyState()) {
+            this.nSteadyState++;
+        }
+        if (stat.hasConverged()) {
+            this.nConverged++;
+        }
+    }
+
     /**
      * Reports that a statistic is warm by outputting a
      * message, removing it from the collection of statistics that
@@ -225,6 +319,7 @@ public class StatisticsCollection implements Serializable {
 
         this.statsMap.put(name, stat);
         this.convergeStats.add(stat);
+        this.track(stat);
     }
 
     /**
@@ -242,6 +337,7 @@ public class StatisticsCollection implements Serializable {
 
         this.twStatsMap.put(name, stat);
         this.convergeStats.add(stat);
+        this.track(stat);
     }
 
     //TODO comment these once we find out if they're still needed
@@ -283,12 +379,33 @@ public class StatisticsCollection implements Serializable {
         }
     }
 
+    /**
+     * Takes a snapshot of every statistic's current estimates
+     * (e.g., to report partial results when a run stops early).
+     *
+     * @return a summary of each statistic
+     */
+    public List<StatisticSummary> summarize() {
+        ArrayList<StatisticSummary> summaries
+            = new ArrayList<StatisticSummary>();
+        Iterator<Statistic> iter = this.convergeStats.iterator();
+        while (iter.hasNext()) {
+            summaries.add(new StatisticSummary(iter.next()));
+        }
+
+        return summaries;
+    }
+
     /**
      * Checks if all the statistics are in steady state.
      *
      * @return if all the statistics are in steady state.
      */
     public boolean allStatsSteadyState() {
+        if (this.tracking) {
+            return this.nSteadyState == this.convergeStats.size();
+        }
+
         boolean allSteadyState = true;
         Iterator<Statistic> iter = this.convergeStats.iterator();
 
@@ -302,6 +419,17 @@ public class StatisticsCollection implements Serializable {
         return allSteadyState;
     }
 
+    /**
+     * Throws away the samples of all the statistics, which must be in
+     * steady state, so they start steady state over.
+     */
+    public void discardSteadyStateSamples() {
+        Iterator<Statistic> iter = this.convergeStats.iterator();
+        while (iter.hasNext()) {
+            iter.next().discardSteadyStateSamples();
+        }
+    }
+
     /**
      * Combines this statistic collection with another one.
      *
@@ -34,6 +34,8 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import test.core.AllCoreTests;
+import test.datacenter.AllDatacenterTests;
 import test.master.MasterTest;
 import test.stat.AllStatTests;
 
@@ -43,7 +45,10 @@ import test.stat.AllStatTests;
  * @author David Meisner (meisner@umich.edu)
  */
 @RunWith(Suite.class)
-@SuiteClasses({ AllStatTests.class, MasterTest.class })
+@SuiteClasses({ AllCoreTests.class,
+                 AllDatacenterTests.class,
+                 AllStatTests.class,
+                 MasterTest.class })
 public class AllTests {
 
 }
@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package test.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import core.Checkpointer;
+import core.Experiment;
+
+/**
+ * Tests for {@link Checkpointer} and checkpointing runs.
+ *
+ * @author meisner@umich.edu
+ */
+public class CheckpointTest extends TestCase {
+
+    /** The number of servers in the experiment. */
+    private static final int N_SERVERS = 2;
+
+    /** The number of events each run processes. */
+    private static final int EVENT_LIMIT = 100000;
+
+    /** The number of events between checkpoints. */
+    private static final long CHECKPOINT_INTERVAL = 30000;
+
+    /** The number of events before the first run is stopped. */
+    private static final int STOP_LIMIT = 45000;
+
+    /**
+     * Tests that a run restored from its last checkpoint ends just like
+     * the run that took it and a run that was never checkpointed.
+     */
+    @Test
+    public void testRestoredRunMatchesUninterrupted() throws IOException {
+        Experiment plain = TestExperiments.newExperiment("plain",
+                N_SERVERS, true);
+        plain.setEventLimit(EVENT_LIMIT);
+        plain.run();
+        String expected = TestExperiments.describeRun(plain);
+
+        File file = this.newCheckpointFile();
+        try {
+            Experiment checkpointed = TestExperiments.newExperiment("plain",
+                    N_SERVERS, true);
+            checkpointed.setEventLimit(EVENT_LIMIT);
+            checkpointed.setCheckpointing(file.getPath(),
+                    CHECKPOINT_INTERVAL);
+            checkpointed.run();
+            assertEquals(expected, TestExperiments.describeRun(checkpointed));
+
+            Experiment restored = Checkpointer.restore(file.getPath());
+            assertTrue(restored.getNEventsSimulated() < EVENT_LIMIT);
+            restored.run();
+            assertEquals(expected, TestExperiments.describeRun(restored));
+        } finally {
+            this.delete(file);
+        }
+    }
+
+    /**
+     * Tests that an experiment checkpointed after stopping at an event
+     * limit can be restored and continued like the original.
+     */
+    @Test
+    public void testCheckpointStoppedRun() throws IOException {
+        File file = this.newCheckpointFile();
+        try {
+            Experiment experiment = TestExperiments.newExperiment("stopped",
+                    N_SERVERS, false);
+            experiment.setEventLimit(STOP_LIMIT);
+            experiment.run();
+            assertEquals(Experiment.RunStatus.EVENT_LIMIT,
+                    experiment.getStatus());
+            Checkpointer checkpointer = new Checkpointer(file.getPath());
+            checkpointer.checkpoint(experiment);
+            checkpointer.close();
+
+            Experiment restored = Checkpointer.restore(file.getPath());
+            assertEquals(experiment.getNEventsSimulated(),
+                    restored.getNEventsSimulated());
+            experiment.setEventLimit(EVENT_LIMIT);
+            experiment.run();
+            restored.setEventLimit(EVENT_LIMIT);
+            restored.run();
+            assertEquals(TestExperiments.describeRun(experiment),
+                    TestExperiments.describeRun(restored));
+        } finally {
+            this.delete(file);
+        }
+    }
+
+    /**
+     * Tests that restoring a file that isn't a checkpoint fails.
+     */
+    @Test
+    public void testRejectsOtherFiles() throws IOException {
+        File file = this.newCheckpointFile();
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write("not a checkpoint, just some text".getBytes("UTF-8"));
+            out.close();
+            try {
+                Checkpointer.restore(file.getPath());
+                fail("Expected the file to be rejected");
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage().contains("isn't a checkpoint"));
+            }
+        } finally {
+            this.delete(file);
+        }
+    }
+
+    /**
+     * Tests that parallel runs can't be checkpointed.
+     */
+    @Test
+    public void testRejectsParallelRuns() throws IOException {
+        File file = this.newCheckpointFile();
+        try {
+            Experiment experiment = TestExperiments.newExperiment("parallel",
+                    N_SERVERS, false);
+            experiment.setParallelism(N_SERVERS);
+            experiment.setCheckpointing(file.getPath(), CHECKPOINT_INTERVAL);
+            try {
+                experiment.run();
+                fail("Expected the parallel run to be rejected");
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage().contains("sequential"));
+            }
+        } finally {
+            this.delete(file);
+        }
+    }
+
+    /**
+     * Creates an empty file for checkpoints.
+     *
+     * @return the file
+     * @throws IOException if the file can't be created
+     */
+    private File newCheckpointFile() throws IOException {
+        return File.createTempFile("bighouse", ".checkpoint");
+    }
+
+    /**
+     * Deletes a checkpoint file and any partly written checkpoint.
+     *
+     * @param file - the checkpoint file
+     */
+    private void delete(final File file) {
+        file.delete();
+        new File(file.getPath() + ".partial").delete();
+    }
+
+}
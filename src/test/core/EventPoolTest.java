@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package test.core;
+
+import generator.MTRandom;
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import core.EventPool;
+import core.Experiment;
+import core.ExperimentInput;
+import core.ExperimentOutput;
+import core.Job;
+import core.JobArrivalEvent;
+import core.JobFinishEvent;
+
+/**
+ * Tests for the {@link EventPool} class.
+ *
+ * @author meisner@umich.edu
+ */
+public class EventPoolTest extends TestCase {
+
+    /**
+     * Tests that processed events and their jobs are reused
+     * once pooling is enabled.
+     */
+    @Test
+    public void testRecycleProcessed() {
+        EventPool pool = new EventPool(newExperiment());
+        pool.setEnabled(true);
+
+        Job job = pool.createJob(1.0);
+        long firstId = job.getJobId();
+        JobArrivalEvent arrival = pool.createJobArrivalEvent(2.0, job, null);
+        JobFinishEvent finish = pool.createJobFinishEvent(3.0, job, null,
+                2.0, 1.0);
+        assertSame(finish, job.getJobFinishEvent());
+
+        pool.recycleProcessed(arrival);
+        pool.recycleProcessed(finish);
+        assertNull(job.getJobFinishEvent());
+
+        Job newJob = pool.createJob(4.0);
+        assertSame(job, newJob);
+        assertTrue(newJob.getJobId() != firstId);
+        assertEquals(4.0, newJob.getSize(), 0.0);
+        assertEquals(0.0, newJob.getArrivalTime(), 0.0);
+
+        JobArrivalEvent newArrival = pool.createJobArrivalEvent(5.0, newJob,
+                null);
+        assertSame(arrival, newArrival);
+        assertEquals(5.0, newArrival.getTime(), 0.0);
+        assertSame(newJob, newArrival.getJob());
+    }
+
+    /**
+     * Tests that a canceled finish event is reused but its job is not,
+     * and that nothing is reused when pooling is disabled.
+     */
+    @Test
+    public void testRecycleCanceled() {
+        EventPool pool = new EventPool(newExperiment());
+        Job job = new Job(1.0, 0);
+        JobFinishEvent finish = pool.createJobFinishEvent(3.0, job, null,
+                2.0, 1.0);
+        pool.recycleCanceled(finish);
+        assertNotSame(finish, pool.createJobFinishEvent(3.0, job, null,
+                2.0, 1.0));
+
+        pool.setEnabled(true);
+        pool.recycleCanceled(finish);
+        assertNotSame(job, pool.createJob(1.0));
+        JobFinishEvent newFinish = pool.createJobFinishEvent(6.0, job, null,
+                5.0, 0.5);
+        assertSame(finish, newFinish);
+        assertEquals(6.0, newFinish.getTime(), 0.0);
+        assertEquals(0.5, newFinish.getFinishSpeed(), 0.0);
+        assertSame(newFinish, job.getJobFinishEvent());
+    }
+
+    /**
+     * Creates an experiment for the pool to assign job ids from.
+     * @return the experiment
+     */
+    private static Experiment newExperiment() {
+        return new Experiment("pool", new MTRandom(1), new ExperimentInput(),
+                new ExperimentOutput());
+    }
+
+}
@@ -0,0 +1,459 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package test.core;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import core.AbstractEvent;
+import core.AgendaEventQueue;
+import core.CalendarEventQueue;
+import core.Event;
+import core.EventQueue;
+import core.Experiment;
+import core.ExperimentInput;
+import core.ExperimentOutput;
+import core.HeapEventQueue;
+import core.TickClock;
+import datacenter.Server;
+import generator.MTRandom;
+
+/**
+ * Tests for the {@link EventQueue} implementations.
+ *
+ * @author meisner@umich.edu
+ */
+public class EventQueueTest extends TestCase {
+
+    /** The number of events the run with a tick clock processes. */
+    private static final int CLOCK_EVENT_LIMIT = 1000;
+
+    /**
+     * An event that does nothing, used to fill the queues.
+     * An event may only be in one queue at a time, so queues are
+     * compared using twins: distinct events with the same time and id.
+     */
+    private static final class TestEvent extends AbstractEvent {
+
+        /**
+         * The serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /** The id of the event, shared with its twin. */
+        private final int id;
+
+        /** The server the event acts on (may be null). */
+        private final Server server;
+
+        /**
+         * Creates a new TestEvent.
+         * @param theTime - the time the event occurs at
+         */
+        public TestEvent(final double theTime) {
+            this(theTime, 0, null);
+        }
+
+        /**
+         * Creates a new TestEvent.
+         * @param theTime - the time the event occurs at
+         * @param theId - the id of the event
+         * @param aServer - the server the event acts on (may be null)
+         */
+        public TestEvent(final double theTime, final int theId,
+                         final Server aServer) {
+            super(theTime, null);
+            this.id = theId;
+            this.server = aServer;
+        }
+
+        /**
+         * Creates a twin of this event.
+         * @return a new event with the same time, id and server
+         */
+        public TestEvent twin() {
+            return new TestEvent(this.getTime(), this.id, this.server);
+        }
+
+        /**
+         * Get the server the event acts on.
+         * @return the server the event acts on
+         */
+        @Override
+        public Server getServer() {
+            return this.server;
+        }
+
+        /**
+         * Does nothing.
+         */
+        public void process() {
+        }
+
+    }
+
+    /**
+     * Checks that two events are twins.
+     * @param expected - the expected event
+     * @param actual - the actual event
+     */
+    private static void assertTwins(final Event expected, final Event actual) {
+        assertNotNull(actual);
+        assertEquals(((TestEvent) expected).id, ((TestEvent) actual).id);
+    }
+
+    /**
+     * Tests that {@link CalendarEventQueue} returns events in the same
+     * order as {@link HeapEventQueue}.
+     */
+    @Test
+    public void testCalendarMatchesHeap() {
+        checkMatchesHeap(new CalendarEventQueue(), new Server[] {null});
+    }
+
+    // TODO fix magic numbers
+    /**
+     * Tests that {@link AgendaEventQueue} returns events in the same
+     * order as {@link HeapEventQueue}, with events spread over
+     * several servers and some not tied to any server.
+     */
+    @Test
+    public void testAgendaMatchesHeap() {
+        Experiment experiment = new Experiment("test", new MTRandom(1),
+                new ExperimentInput(), new ExperimentOutput());
+        Server[] servers = new Server[21];
+        for (int i = 1; i < servers.length; i++) {
+            servers[i] = new Server(1, 1, experiment, null, null);
+        }
+        checkMatchesHeap(new AgendaEventQueue(), servers);
+    }
+
+    // TODO fix magic numbers
+    /**
+     * Checks that a queue returns events in the same order as
+     * {@link HeapEventQueue} while events are added, removed
+     * and canceled as in a simulation.
+     * @param queue - the queue to check
+     * @param servers - the servers to give the events (may include null)
+     */
+    private static void checkMatchesHeap(final EventQueue queue,
+                                         final Server[] servers) {
+        EventQueue heap = new HeapEventQueue();
+        Random random = new Random(1);
+        ArrayList<TestEvent[]> pending = new ArrayList<TestEvent[]>();
+        double now = 0.0;
+        int nEvents = 0;
+
+        for (int i = 0; i < 2000; i++) {
+            TestEvent event = new TestEvent(random.nextDouble(), nEvents++,
+                    servers[random.nextInt(servers.length)]);
+            TestEvent twin = event.twin();
+            heap.addEvent(event);
+            queue.addEvent(twin);
+            pending.add(new TestEvent[] {event, twin});
+        }
+
+        for (int i = 0; i < 100000; i++) {
+            assertEquals(heap.size(), queue.size());
+            double choice = random.nextDouble();
+            if (choice < .45 || pending.isEmpty()) {
+                // Mostly short delays with an occasional long one
+                double delay = -Math.log(random.nextDouble()) * 1e-3;
+                if (random.nextDouble() < .01) {
+                    delay *= 1e4;
+                }
+                TestEvent event = new TestEvent(now + delay, nEvents++,
+                        servers[random.nextInt(servers.length)]);
+                TestEvent twin = event.twin();
+                heap.addEvent(event);
+                queue.addEvent(twin);
+                pending.add(new TestEvent[] {event, twin});
+            } else if (choice < .5) {
+                TestEvent[] pair = pending.remove(
+                        random.nextInt(pending.size()));
+                heap.cancelEvent(pair[0]);
+                queue.cancelEvent(pair[1]);
+            } else {
+                Event event = heap.nextEvent();
+                assertTwins(event, queue.nextEvent());
+                assertTrue(event.getTime() >= now);
+                now = event.getTime();
+                removePair(pending, event);
+            }
+        }
+
+        while (heap.size() > 0) {
+            assertTwins(heap.nextEvent(), queue.nextEvent());
+        }
+        assertNull(queue.nextEvent());
+    }
+
+    // TODO fix magic numbers
+    /**
+     * Tests that events in fixed-delay lanes come out in the same
+     * order as if they were all in the main queue.
+     */
+    @Test
+    public void testFixedDelayLanes() {
+        EventQueue heap = new HeapEventQueue();
+        EventQueue laned = new HeapEventQueue();
+        double[] delays = {1e-4, 5e-4, 1e-4, 1e-1};
+        int[] lanes = new int[delays.length];
+        for (int i = 0; i < delays.length; i++) {
+            lanes[i] = laned.registerFixedDelay(delays[i]);
+        }
+        assertEquals(lanes[0], lanes[2]);
+
+        Random random = new Random(2);
+        ArrayList<TestEvent[]> pending = new ArrayList<TestEvent[]>();
+        double now = 0.0;
+        int nEvents = 0;
+        for (int i = 0; i < 100000; i++) {
+            assertEquals(heap.size(), laned.size());
+            double choice = random.nextDouble();
+            if (choice < .45 || pending.isEmpty()) {
+                TestEvent event;
+                int lane = -1;
+                if (choice < .2) {
+                    event = new TestEvent(now
+                        - Math.log(random.nextDouble()) * 1e-3, nEvents++,
+                        null);
+                } else {
+                    int delay = random.nextInt(delays.length);
+                    event = new TestEvent(now + delays[delay], nEvents++,
+                            null);
+                    lane = lanes[delay];
+                }
+                TestEvent twin = event.twin();
+                heap.addEvent(event);
+                if (lane == -1) {
+                    laned.addEvent(twin);
+                } else {
+                    laned.addEvent(twin, lane);
+                }
+                pending.add(new TestEvent[] {event, twin});
+            } else if (choice < .55) {
+                TestEvent[] pair = pending.remove(
+                        random.nextInt(pending.size()));
+                heap.cancelEvent(pair[0]);
+                laned.cancelEvent(pair[1]);
+            } else {
+                Event peeked = laned.peekEvent();
+                Event event = heap.nextEvent();
+                Event next = laned.nextEvent();
+                assertSame(peeked, next);
+                assertTwins(event, next);
+                now = event.getTime();
+                removePair(pending, event);
+            }
+        }
+
+        EventQueue calendar = new CalendarEventQueue();
+        laned.transferTo(calendar);
+        assertEquals(0, laned.size());
+        while (heap.size() > 0) {
+            assertTwins(heap.nextEvent(), calendar.nextEvent());
+        }
+        assertEquals(0, calendar.size());
+    }
+
+    /**
+     * Removes the pair an event belongs to from a list of pending pairs.
+     * @param pending - the pending pairs
+     * @param event - the first event of the pair to remove
+     */
+    private static void removePair(final ArrayList<TestEvent[]> pending,
+                                   final Event event) {
+        for (int i = 0; i < pending.size(); i++) {
+            if (pending.get(i)[0] == event) {
+                pending.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Tests that both queues return simultaneous events
+     * in the order they were added.
+     */
+    @Test
+    public void testSimultaneousEvents() {
+        checkSimultaneousEvents(new HeapEventQueue());
+        checkSimultaneousEvents(new CalendarEventQueue());
+        checkSimultaneousEvents(new AgendaEventQueue());
+    }
+
+    /**
+     * Checks that a queue returns simultaneous events
+     * in the order they were added, even when some are canceled.
+     * @param queue - the queue to check
+     */
+    private static void checkSimultaneousEvents(final EventQueue queue) {
+        Event[] events = new Event[100];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new TestEvent(5.0);
+            queue.addEvent(events[i]);
+        }
+        Event early = new TestEvent(1.0);
+        queue.addEvent(early);
+        for (int i = 0; i < events.length; i += 3) {
+            queue.cancelEvent(events[i]);
+        }
+
+        assertSame(early, queue.nextEvent());
+        for (int i = 0; i < events.length; i++) {
+            if (i % 3 != 0) {
+                assertSame(events[i], queue.nextEvent());
+            }
+        }
+        assertEquals(0, queue.size());
+    }
+
+    /**
+     * Tests that adding events all at once gives the same order as
+     * adding them one at a time, including ties.
+     */
+    @Test
+    public void testAddEvents() {
+        checkAddEvents(new HeapEventQueue());
+        checkAddEvents(new CalendarEventQueue());
+        checkAddEvents(new AgendaEventQueue());
+    }
+
+    /**
+     * Checks that a queue returns events added all at once in the same
+     * order as a heap they were added to one at a time.
+     * @param queue - the queue to check
+     */
+    private static void checkAddEvents(final EventQueue queue) {
+        EventQueue heap = new HeapEventQueue();
+        Random random = new Random(1);
+        int nEvents = 0;
+        for (int i = 0; i < 10; i++) {
+            TestEvent event = new TestEvent(random.nextInt(5), nEvents++,
+                    null);
+            queue.addEvent(event);
+            heap.addEvent(event.twin());
+        }
+        ArrayList<Event> batch = new ArrayList<Event>();
+        for (int i = 0; i < 100; i++) {
+            TestEvent event = new TestEvent(random.nextInt(5), nEvents++,
+                    null);
+            batch.add(event);
+            heap.addEvent(event.twin());
+        }
+        queue.addEvents(batch);
+
+        assertEquals(heap.size(), queue.size());
+        while (heap.size() > 0) {
+            assertTwins(heap.nextEvent(), queue.nextEvent());
+        }
+        assertEquals(0, queue.size());
+    }
+
+    /**
+     * Tests that times rounded to a {@link TickClock} land on the same tick
+     * however they were summed, so the events are simultaneous and
+     * happen in the order they were added.
+     */
+    @Test
+    public void testTickClockTies() {
+        TickClock clock = new TickClock(TickClock.NANOSECONDS);
+        double base = 123456.789;
+        double first = clock.round((base + 500e-6) + 250e-6);
+        double second = clock.round(base + (500e-6 + 250e-6));
+        assertEquals(first, second, 0.0);
+        assertEquals(clock.toTicks(first), clock.toTicks(base) + 750000);
+        assertEquals(first, clock.round(first), 0.0);
+
+        EventQueue queue = new HeapEventQueue();
+        Event firstAdded = new TestEvent(first);
+        Event secondAdded = new TestEvent(second);
+        queue.addEvent(firstAdded);
+        queue.addEvent(secondAdded);
+        assertSame(firstAdded, queue.nextEvent());
+        assertSame(secondAdded, queue.nextEvent());
+    }
+
+    /**
+     * Tests that an experiment refuses a {@link TickClock} once events
+     * have been scheduled with unrounded times.
+     */
+    @Test
+    public void testTickClockSetBeforeEvents() {
+        // The power capping enforcer schedules its first recalculation
+        Experiment capped = TestExperiments.newExperiment("clock", 1, true);
+        try {
+            capped.setTickClock(TickClock.NANOSECONDS);
+            fail("Set a tick clock after events were scheduled");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("tick clock"));
+        }
+
+        Experiment experiment = TestExperiments.newExperiment("clock", 1,
+                false);
+        experiment.setTickClock(TickClock.NANOSECONDS);
+        experiment.setEventLimit(CLOCK_EVENT_LIMIT);
+        experiment.run();
+        assertNotNull(experiment.getTickClock());
+        try {
+            experiment.setTickClock(0);
+            fail("Set a tick clock on an experiment underway");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("tick clock"));
+        }
+    }
+
+    /**
+     * Tests that {@link EventQueue#transferTo(EventQueue)} moves
+     * all pending events.
+     */
+    @Test
+    public void testTransferTo() {
+        EventQueue heap = new HeapEventQueue();
+        EventQueue calendar = new CalendarEventQueue();
+        for (int i = 0; i < 10; i++) {
+            heap.addEvent(new TestEvent(10 - i));
+        }
+        heap.transferTo(calendar);
+
+        assertEquals(0, heap.size());
+        assertEquals(10, calendar.size());
+        for (int i = 1; i <= 10; i++) {
+            assertEquals(i, calendar.nextEvent().getTime(), 0.0);
+        }
+    }
+
+}
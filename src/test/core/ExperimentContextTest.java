@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package test.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import core.Experiment;
+import core.ExperimentContext;
+
+/**
+ * Tests for {@link ExperimentContext}.
+ *
+ * @author meisner@umich.edu
+ */
+public class ExperimentContextTest extends TestCase {
+
+    /** The number of experiments run at once. */
+    private static final int N_EXPERIMENTS = 4;
+
+    /** The number of events each experiment runs. */
+    private static final int EVENT_LIMIT = 100000;
+
+    /**
+     * Creates one of the experiments run at once. Each has a different
+     * number of servers, and every other one is power capped, so no two
+     * produce the same statistics.
+     *
+     * @param index - which experiment to create
+     * @return the experiment
+     */
+    private Experiment newExperiment(final int index) {
+        Experiment experiment = TestExperiments.newExperiment("context"
+                + index, index + 1, index % 2 == 1);
+        experiment.setEventLimit(EVENT_LIMIT);
+        return experiment;
+    }
+
+    /**
+     * Tests that experiments run concurrently on threads in one JVM end
+     * with the same statistics and job ids as when run one at a time.
+     */
+    @Test
+    public void testConcurrentRunsMatchSequential() throws Exception {
+        String[] expected = new String[N_EXPERIMENTS];
+        long[] expectedJobIds = new long[N_EXPERIMENTS];
+        for (int i = 0; i < N_EXPERIMENTS; i++) {
+            Experiment experiment = this.newExperiment(i);
+            experiment.run();
+            expected[i] = TestExperiments.describeRun(experiment);
+            expectedJobIds[i] = experiment.getContext().getNextJobId();
+        }
+
+        final Experiment[] experiments = new Experiment[N_EXPERIMENTS];
+        final Throwable[] errors = new Throwable[N_EXPERIMENTS];
+        Thread[] threads = new Thread[N_EXPERIMENTS];
+        for (int i = 0; i < N_EXPERIMENTS; i++) {
+            experiments[i] = this.newExperiment(i);
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        experiments[index].run();
+                    } catch (Throwable t) {
+                        errors[index] = t;
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < N_EXPERIMENTS; i++) {
+            threads[i].start();
+        }
+        for (int i = 0; i < N_EXPERIMENTS; i++) {
+            threads[i].join();
+        }
+
+        for (int i = 0; i < N_EXPERIMENTS; i++) {
+            assertNull(errors[i]);
+            assertEquals(Experiment.RunStatus.EVENT_LIMIT,
+                    experiments[i].getStatus());
+            assertEquals(expected[i],
+                    TestExperiments.describeRun(experiments[i]));
+            assertEquals(expectedJobIds[i],
+                    experiments[i].getContext().getNextJobId());
+        }
+        for (int i = 1; i < N_EXPERIMENTS; i++) {
+            assertFalse(expected[0].equals(expected[i]));
+        }
+    }
+
+    /**
+     * Tests that an experiment's debug level controls what it prints,
+     * independently of the other experiments.
+     */
+    @Test
+    public void testDebugLevelIsPerExperiment() {
+        Experiment quiet = this.newExperiment(0);
+        quiet.getContext().setDebugLevel(0);
+        Experiment verbose = this.newExperiment(0);
+
+        assertFalse(this.runAndCapture(quiet).contains("Starting"));
+        String output = this.runAndCapture(verbose);
+        assertTrue(output.contains("Starting simulation"));
+        assertTrue(output.contains("Partial results"));
+        assertEquals(TestExperiments.describeRun(verbose),
+                TestExperiments.describeRun(quiet));
+    }
+
+    /**
+     * Runs an experiment and captures what it prints.
+     *
+     * @param experiment - the experiment to run
+     * @return what the experiment printed
+     */
+    private String runAndCapture(final Experiment experiment) {
+        PrintStream out = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured));
+        try {
+            experiment.run();
+        } finally {
+            System.setOut(out);
+        }
+
+        return captured.toString();
+    }
+
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package test.core;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import core.Constants.StatName;
+import core.Experiment;
+import core.StabilityMonitor;
+import stat.Statistic;
+
+/**
+ * Tests for {@link Experiment#fork(int)}.
+ *
+ * @author meisner@umich.edu
+ */
+public class ExperimentForkTest extends TestCase {
+
+    /** The number of servers in the experiment. */
+    private static final int N_SERVERS = 2;
+
+    /** The number of copies to fork. */
+    private static final int N_COPIES = 2;
+
+    /** The number of events the experiment runs before it's forked. */
+    private static final int MONITORED_EVENTS = 30000;
+
+    /**
+     * The number of events each copy runs, enough for its monitor to
+     * finish its first period.
+     */
+    private static final int COPY_EVENTS = 10000;
+
+    /**
+     * Tests that forked copies start steady state without the samples
+     * the experiment collected, and collect their own once run.
+     */
+    @Test
+    public void testCopiesStartWithoutSamples() {
+        Experiment experiment = TestExperiments.newExperiment("fork",
+                N_SERVERS, false);
+        experiment.runToSteadyState();
+        Statistic stat = experiment.getStats().getStat(StatName.SOJOURN_TIME);
+        assertTrue(stat.isSteadyState());
+        long masterSamples = stat.getTotalSamples();
+        assertTrue(masterSamples > 0);
+
+        Experiment[] copies = experiment.fork(N_COPIES);
+        for (int i = 0; i < N_COPIES; i++) {
+            Statistic copyStat
+                = copies[i].getStats().getStat(StatName.SOJOURN_TIME);
+            assertTrue(copyStat.isSteadyState());
+            assertEquals(0, copyStat.getGoodSamples());
+            assertEquals(0, copyStat.getTotalSamples());
+
+            copies[i].run();
+            assertEquals(Experiment.RunStatus.CONVERGED,
+                    copies[i].getStatus());
+            assertTrue(copyStat.getGoodSamples() > 0);
+        }
+        assertEquals(masterSamples, stat.getTotalSamples());
+    }
+
+    /**
+     * Tests that forked copies are watched for instability by a new
+     * monitor, rather than one comparing against the experiment's samples.
+     */
+    @Test
+    public void testCopiesGetNewStabilityMonitor() {
+        Experiment experiment = TestExperiments.newExperiment("fork",
+                N_SERVERS, false);
+        experiment.setStabilityMonitoring(true);
+        // Run long enough for the monitor to finish a few periods
+        experiment.setEventLimit(MONITORED_EVENTS);
+        experiment.run();
+        String masterReason = experiment.getStabilityMonitor().getReason();
+
+        Experiment[] copies = experiment.fork(N_COPIES);
+        for (int i = 0; i < N_COPIES; i++) {
+            StabilityMonitor monitor = copies[i].getStabilityMonitor();
+            assertNotNull(monitor);
+            StabilityMonitor newMonitor = new StabilityMonitor(copies[i],
+                    copies[i].getNEventsSimulated());
+            assertEquals(newMonitor.getReason(), monitor.getReason());
+            assertFalse(masterReason.equals(monitor.getReason()));
+
+            // The first period only counts the copy's own response times
+            copies[i].setEventLimit(MONITORED_EVENTS + COPY_EVENTS);
+            copies[i].run();
+            assertEquals(Experiment.RunStatus.EVENT_LIMIT,
+                    copies[i].getStatus());
+            assertFalse(monitor.getReason().contains("Infinity"));
+            assertFalse(monitor.getReason().contains("NaN"));
+        }
+    }
+
+    /**
+     * Tests that forked copies of an experiment that's no longer watched
+     * for instability aren't watched either.
+     */
+    @Test
+    public void testCopiesWithoutStabilityMonitoring() {
+        Experiment experiment = TestExperiments.newExperiment("fork",
+                N_SERVERS, false);
+        experiment.setStabilityMonitoring(true);
+        experiment.setEventLimit(MONITORED_EVENTS);
+        experiment.run();
+        experiment.setStabilityMonitoring(false);
+
+        Experiment[] copies = experiment.fork(N_COPIES);
+        for (int i = 0; i < N_COPIES; i++) {
+            assertNull(copies[i].getStabilityMonitor());
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package test.core;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import core.Experiment;
+import core.Instrumentation;
+import core.JobArrivalEvent;
+import core.JobFinishEvent;
+import datacenter.RecalculateCapsEvent;
+
+/**
+ * Tests for {@link Instrumentation}.
+ *
+ * @author meisner@umich.edu
+ */
+public class InstrumentationTest extends TestCase {
+
+    /** The number of servers in the experiment. */
+    private static final int N_SERVERS = 2;
+
+    /** The number of events each run processes. */
+    private static final int EVENT_LIMIT = 100000;
+
+    /**
+     * Tests that a sequential run counts every event it processes
+     * by type.
+     */
+    @Test
+    public void testCountsEveryEvent() {
+        Experiment experiment = this.runInstrumented(1, false);
+        Instrumentation instrumentation = experiment.getInstrumentation();
+        long arrivals = instrumentation.getProcessed(JobArrivalEvent.class);
+        long finishes = instrumentation.getProcessed(JobFinishEvent.class);
+        assertTrue(arrivals > 0);
+        assertTrue(finishes > 0);
+        assertTrue(finishes <= arrivals);
+        assertEquals(experiment.getNEventsSimulated(), arrivals + finishes);
+        assertTrue(instrumentation.getQueueHighWaterMark() >= N_SERVERS);
+    }
+
+    /**
+     * Tests that a parallel run merges the counts of its threads with
+     * those of the global events. The threads may simulate a little past
+     * the event that ends the run.
+     */
+    @Test
+    public void testParallelRunMergesCounts() {
+        Experiment experiment = this.runInstrumented(N_SERVERS, true);
+        Instrumentation instrumentation = experiment.getInstrumentation();
+        long arrivals = instrumentation.getProcessed(JobArrivalEvent.class);
+        long finishes = instrumentation.getProcessed(JobFinishEvent.class);
+        long recalculations
+            = instrumentation.getProcessed(RecalculateCapsEvent.class);
+        assertTrue(arrivals > 0);
+        assertTrue(recalculations > 0);
+        assertTrue(arrivals + finishes + recalculations
+                >= experiment.getNEventsSimulated());
+    }
+
+    /**
+     * Tests that merging adds the counts and keeps the larger queue
+     * high-water mark.
+     */
+    @Test
+    public void testMerge() {
+        Instrumentation first = this.runInstrumented(1, false)
+                .getInstrumentation();
+        Instrumentation second = this.runInstrumented(1, false)
+                .getInstrumentation();
+        long arrivals = first.getProcessed(JobArrivalEvent.class);
+        int highWaterMark = first.getQueueHighWaterMark();
+
+        Instrumentation merged = new Instrumentation();
+        merged.observeQueueSize(highWaterMark + 1);
+        merged.merge(first);
+        merged.merge(second);
+        assertEquals(2 * arrivals, merged.getProcessed(JobArrivalEvent.class));
+        assertEquals(highWaterMark + 1, merged.getQueueHighWaterMark());
+        assertEquals(0, merged.getProcessed(RecalculateCapsEvent.class));
+    }
+
+    /**
+     * Tests that runs aren't instrumented unless asked.
+     */
+    @Test
+    public void testOptIn() {
+        Experiment experiment = TestExperiments.newExperiment("plain",
+                N_SERVERS, false);
+        experiment.setEventLimit(EVENT_LIMIT);
+        experiment.run();
+        assertNull(experiment.getInstrumentation());
+    }
+
+    /**
+     * Runs an instrumented data center up to the event limit.
+     *
+     * @param nThreads - the number of threads to run with
+     * @param capped - if the servers are power capped
+     * @return the experiment
+     */
+    private Experiment runInstrumented(final int nThreads,
+                                       final boolean capped) {
+        Experiment experiment = TestExperiments.newExperiment("instrumented",
+                N_SERVERS, capped);
+        experiment.setInstrumented(true);
+        experiment.setParallelism(nThreads);
+        experiment.setEventLimit(EVENT_LIMIT);
+        experiment.run();
+        assertEquals(Experiment.RunStatus.EVENT_LIMIT, experiment.getStatus());
+        assertNotNull(experiment.getInstrumentation());
+
+        return experiment;
+    }
+
+}
@@ -0,0 +1,246 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package test.core;
+
+import java.util.Iterator;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import stat.Statistic;
+import core.Experiment;
+import core.Instrumentation;
+import core.Job;
+import core.OptimisticEngine;
+import datacenter.JobRouter;
+import datacenter.RandomJobRouter;
+import datacenter.Server;
+import generator.MTRandom;
+
+/**
+ * Tests for {@link OptimisticEngine}.
+ *
+ * @author meisner@umich.edu
+ */
+public class OptimisticEngineTest extends TestCase {
+
+    /** The number of servers in the experiment. */
+    private static final int N_SERVERS = 4;
+
+    /** The number of events each run processes. */
+    private static final int EVENT_LIMIT = 50000;
+
+    /** The seed of the router's random number generator. */
+    private static final long ROUTER_SEED = 7;
+
+    /** The amount of simulated time the dispatcher works on at a time. */
+    private static final double WINDOW = 0.05;
+
+    /**
+     * An optimistic window short enough that the logical processes rarely
+     * simulate past an arrival.
+     */
+    private static final double SHORT_OPTIMISM = 0.002;
+
+    /**
+     * An optimistic window long enough that the logical processes often
+     * roll back.
+     */
+    private static final double LONG_OPTIMISM = 0.1;
+
+    /**
+     * The fewest committed events per saved state, which holds when
+     * each logical process gets several arrivals per window.
+     */
+    private static final int MIN_EVENTS_PER_SAVE = 20;
+
+    /**
+     * Tests that optimistic runs are identical to a sequential run with
+     * random substreams, whether or not they roll back.
+     */
+    @Test
+    public void testMatchesSequential() {
+        String sequential = this.runDispatched(1, 0.0);
+        assertEquals(sequential, this.runDispatched(2, SHORT_OPTIMISM));
+        assertEquals(sequential, this.runDispatched(2, LONG_OPTIMISM));
+        assertEquals(sequential,
+                this.runDispatched(N_SERVERS, LONG_OPTIMISM));
+    }
+
+    /**
+     * Tests that each logical process saves its state at most once per
+     * window of arrivals, so saving costs a small fraction of a save per
+     * committed event, even when it often rolls back.
+     */
+    @Test
+    public void testSavesAtMostOncePerWindow() {
+        int nThreads = 2;
+        Experiment experiment = TestExperiments.newDispatchedExperiment(
+                "optimistic", N_SERVERS,
+                new RandomJobRouter(new MTRandom(ROUTER_SEED)));
+        experiment.setRandomSubstreams(true);
+        experiment.setInstrumented(true);
+        experiment.setParallelism(nThreads);
+        experiment.setParallelWindow(WINDOW);
+        experiment.setOptimisticWindow(LONG_OPTIMISM);
+        experiment.setEventLimit(EVENT_LIMIT);
+        experiment.run();
+
+        Instrumentation instrumentation = experiment.getInstrumentation();
+        long nSaves = instrumentation.getSavedStates();
+        long nWindows = (long) Math.ceil(experiment.getCurrentTime()
+                / WINDOW);
+        assertTrue(nSaves > 0);
+        assertTrue(nSaves <= nThreads * (nWindows + 1));
+        assertTrue(nSaves * MIN_EVENTS_PER_SAVE
+                <= experiment.getNEventsSimulated());
+        assertTrue(instrumentation.getSavedStateBytes() > nSaves);
+    }
+
+    /**
+     * Tests that optimistic runs reject routers that look at the servers'
+     * state, since jobs are routed ahead of the servers.
+     */
+    @Test
+    public void testRejectsStateReadingRouter() {
+        Experiment experiment = TestExperiments.newDispatchedExperiment(
+                "optimistic", N_SERVERS, new FirstServerRouter());
+        experiment.setParallelism(2);
+        experiment.setOptimisticWindow(SHORT_OPTIMISM);
+        experiment.setEventLimit(EVENT_LIMIT);
+        try {
+            experiment.run();
+            fail("Expected the router to be rejected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("state"));
+        }
+    }
+
+    /**
+     * Tests that optimistic runs reject data centers without
+     * a dispatcher.
+     */
+    @Test
+    public void testRejectsServerArrivals() {
+        Experiment experiment = TestExperiments.newExperiment("optimistic",
+                N_SERVERS, false);
+        experiment.setParallelism(2);
+        experiment.setOptimisticWindow(SHORT_OPTIMISM);
+        experiment.setEventLimit(EVENT_LIMIT);
+        try {
+            experiment.run();
+            fail("Expected the data center to be rejected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("dispatcher"));
+        }
+    }
+
+    /**
+     * Runs a dispatched data center up to the event limit.
+     *
+     * @param nThreads - the number of threads to run with
+     * @param optimism - the optimistic window, or 0 for a sequential run
+     * @return a description of how the run ended and its statistics
+     */
+    private String runDispatched(final int nThreads, final double optimism) {
+        Experiment experiment = TestExperiments.newDispatchedExperiment(
+                "optimistic", N_SERVERS,
+                new RandomJobRouter(new MTRandom(ROUTER_SEED)));
+        experiment.setRandomSubstreams(true);
+        experiment.setParallelism(nThreads);
+        experiment.setParallelWindow(WINDOW);
+        experiment.setOptimisticWindow(optimism);
+        experiment.setEventLimit(EVENT_LIMIT);
+        experiment.run();
+        assertEquals(Experiment.RunStatus.EVENT_LIMIT, experiment.getStatus());
+
+        StringBuilder result = new StringBuilder();
+        result.append(experiment.getNEventsSimulated());
+        Iterator<Statistic> iter = experiment.getStats().getAllStats();
+        while (iter.hasNext()) {
+            Statistic stat = iter.next();
+            result.append(" " + stat.getStatName()
+                    + " " + stat.getTotalSamples()
+                    + " " + stat.getGoodSamples()
+                    + " " + stat.getSampleSum()
+                    + " " + stat.getAverage());
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Sends every job to the first idle server, which means looking at
+     * the servers' state.
+     */
+    private static final class FirstServerRouter implements JobRouter {
+
+        /**
+         * The serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Picks the first server without jobs, or the first server.
+         *
+         * @param time - the time the job arrives
+         * @param job - the arriving job
+         * @param servers - the servers to choose from
+         * @return the server the job is sent to
+         */
+        public Server route(final double time,
+                            final Job job,
+                            final Vector<Server> servers) {
+            Iterator<Server> iter = servers.iterator();
+            while (iter.hasNext()) {
+                Server server = iter.next();
+                if (server.getJobsInSystem() == 0) {
+                    return server;
+                }
+            }
+
+            return servers.get(0);
+        }
+
+        /**
+         * Checks if the router looks at the servers' state.
+         *
+         * @return true
+         */
+        public boolean readsServerState() {
+            return true;
+        }
+
+    }
+
+}
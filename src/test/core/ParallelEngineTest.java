@@ -0,0 +1,197 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package test.core;
+
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import stat.Statistic;
+import core.Constants.StatName;
+import core.Experiment;
+import core.Instrumentation;
+import core.ParallelEngine;
+
+/**
+ * Tests for {@link ParallelEngine}.
+ *
+ * @author meisner@umich.edu
+ */
+public class ParallelEngineTest extends TestCase {
+
+    /** The number of servers in the experiment. */
+    private static final int N_SERVERS = 3;
+
+    /** The number of events each run processes. */
+    private static final int EVENT_LIMIT = 300000;
+
+    /**
+     * A coarse clock (ticks per second), so events on different servers
+     * are often simultaneous.
+     */
+    private static final long COARSE_TICKS = 10000;
+
+    /**
+     * A maximum parallel window (in seconds) far longer than the runs,
+     * so the windows have to be sized from the event rate.
+     */
+    private static final double LONG_WINDOW = 1000.0;
+
+    /** The number of events the runs of independent servers process. */
+    private static final int INDEPENDENT_EVENT_LIMIT = 600000;
+
+    /**
+     * How far apart (relative to the sequential run) the estimates of runs
+     * with different random numbers can be.
+     */
+    private static final double MERGED_TOLERANCE = 0.05;
+
+    /**
+     * Tests that parallel runs of a capped data center are identical to
+     * a sequential run with random substreams.
+     */
+    @Test
+    public void testCappedMatchesSequential() {
+        String sequential = this.runCapped(1, 0);
+        assertEquals(sequential, this.runCapped(2, 0));
+        assertEquals(sequential, this.runCapped(N_SERVERS, 0));
+    }
+
+    /**
+     * Tests that parallel runs break ties between simultaneous events on
+     * different servers just like a sequential run.
+     */
+    @Test
+    public void testSimultaneousEventsMatchSequential() {
+        String sequential = this.runCapped(1, COARSE_TICKS);
+        assertEquals(sequential, this.runCapped(2, COARSE_TICKS));
+        assertEquals(sequential, this.runCapped(N_SERVERS, COARSE_TICKS));
+    }
+
+    /**
+     * Tests that windows are sized from the rate events are simulated at,
+     * rather than filled up to the maximum window, and that no thread
+     * simulates much past the event limit.
+     */
+    @Test
+    public void testWindowsSizedFromEventRate() {
+        Experiment experiment = TestExperiments.newExperiment("windows",
+                N_SERVERS, false);
+        experiment.setInstrumented(true);
+        experiment.setRandomSubstreams(true);
+        experiment.setParallelism(N_SERVERS);
+        experiment.setParallelWindow(LONG_WINDOW);
+        experiment.setEventLimit(EVENT_LIMIT);
+        experiment.run();
+        assertEquals(Experiment.RunStatus.EVENT_LIMIT, experiment.getStatus());
+        assertTrue(experiment.getNEventsSimulated()
+                <= EVENT_LIMIT + N_SERVERS);
+
+        Instrumentation instrumentation = experiment.getInstrumentation();
+        assertTrue(instrumentation.getWindows() > 1);
+        assertTrue(instrumentation.getWindowHighWaterMark()
+                <= EVENT_LIMIT / 4);
+    }
+
+    /**
+     * Tests that a parallel run of independent servers, whose threads
+     * merge their own copies of the statistics once in steady state,
+     * estimates the same response time as a sequential run.
+     */
+    @Test
+    public void testIndependentServersMatchSequential() {
+        Statistic sequential = this.runIndependent(1);
+        Statistic parallel = this.runIndependent(N_SERVERS);
+        assertEquals(sequential.getAverage(), parallel.getAverage(),
+                MERGED_TOLERANCE * sequential.getAverage());
+        assertEquals(sequential.getQuantile(sequential.getQuantileSetting()),
+                parallel.getQuantile(parallel.getQuantileSetting()),
+                MERGED_TOLERANCE
+                * sequential.getQuantile(sequential.getQuantileSetting()));
+        assertTrue(parallel.getGoodSamples() > 0);
+        assertTrue(parallel.getTotalSamples() >= parallel.getGoodSamples());
+    }
+
+    /**
+     * Runs an uncapped data center, whose statistics can't converge,
+     * up to the event limit.
+     *
+     * @param nThreads - the number of threads to run with
+     * @return the response time statistic
+     */
+    private Statistic runIndependent(final int nThreads) {
+        Experiment experiment = TestExperiments.newExperiment("independent",
+                N_SERVERS, false, 0.0);
+        experiment.setRandomSubstreams(true);
+        experiment.setParallelism(nThreads);
+        experiment.setEventLimit(INDEPENDENT_EVENT_LIMIT);
+        experiment.run();
+        assertEquals(Experiment.RunStatus.EVENT_LIMIT, experiment.getStatus());
+        Statistic stat = experiment.getStats().getStat(StatName.SOJOURN_TIME);
+        assertTrue(stat.isSteadyState());
+
+        return stat;
+    }
+
+    /**
+     * Runs a capped data center up to the event limit.
+     *
+     * @param nThreads - the number of threads to run with
+     * @param ticksPerSecond - the clock to round event times to, or 0
+     * @return a description of how the run ended and its statistics
+     */
+    private String runCapped(final int nThreads, final long ticksPerSecond) {
+        Experiment experiment = TestExperiments.newExperiment("parallel",
+                N_SERVERS, true, TestExperiments.ACCURACY, ticksPerSecond);
+        experiment.setRandomSubstreams(true);
+        experiment.setParallelism(nThreads);
+        experiment.setEventLimit(EVENT_LIMIT);
+        experiment.run();
+        assertEquals(Experiment.RunStatus.EVENT_LIMIT, experiment.getStatus());
+
+        StringBuilder result = new StringBuilder();
+        result.append(experiment.getNEventsSimulated());
+        Iterator<Statistic> iter = experiment.getStats().getAllStats();
+        while (iter.hasNext()) {
+            Statistic stat = iter.next();
+            result.append(" " + stat.getStatName()
+                    + " " + stat.getTotalSamples()
+                    + " " + stat.getGoodSamples()
+                    + " " + stat.getSampleSum()
+                    + " " + stat.getAverage());
+        }
+
+        return result.toString();
+    }
+
+}
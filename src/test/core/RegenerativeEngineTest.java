@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package test.core;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import core.Constants.StatName;
+import core.Experiment;
+import core.RegenerativeEngine;
+import datacenter.Core.CorePowerPolicy;
+import datacenter.Server;
+
+/**
+ * Tests for {@link RegenerativeEngine}.
+ *
+ * @author meisner@umich.edu
+ */
+public class RegenerativeEngineTest extends TestCase {
+
+    /** The number of regeneration cycles in each segment. */
+    private static final int CYCLES_PER_SEGMENT = 1000;
+
+    /** The number of threads simulating segments. */
+    private static final int N_THREADS = 2;
+
+    /** The number of events each run processes. */
+    private static final int EVENT_LIMIT = 2000000;
+
+    /**
+     * How far apart the regenerative and sequential estimates of the
+     * mean sojourn time can be (as a fraction of the sequential one).
+     */
+    private static final double TOLERANCE = 0.05;
+
+    /**
+     * Tests that a regenerative run of a single server estimates the
+     * same mean sojourn time as a sequential run.
+     */
+    @Test
+    public void testSingleServerMatchesSequential() {
+        Experiment sequential = TestExperiments.newExperiment("sequential",
+                1, false);
+        sequential.setEventLimit(EVENT_LIMIT);
+        sequential.run();
+        assertEquals(Experiment.RunStatus.EVENT_LIMIT, sequential.getStatus());
+
+        Experiment regenerative = TestExperiments.newExperiment("regenerative",
+                1, false);
+        regenerative.setRegenerativeSegments(CYCLES_PER_SEGMENT);
+        regenerative.setParallelism(N_THREADS);
+        regenerative.setEventLimit(EVENT_LIMIT);
+        regenerative.run();
+        assertEquals(Experiment.RunStatus.EVENT_LIMIT,
+                regenerative.getStatus());
+
+        double expected = sequential.getStats()
+                .getStat(StatName.SOJOURN_TIME).getAverage();
+        double actual = regenerative.getStats()
+                .getStat(StatName.SOJOURN_TIME).getAverage();
+        assertEquals(expected, actual, expected * TOLERANCE);
+    }
+
+    /**
+     * Tests that experiments with power capping, whose recalculations
+     * carry on across cycles, are rejected.
+     */
+    @Test
+    public void testRejectsCapping() {
+        Experiment experiment = TestExperiments.newExperiment("capped", 1,
+                true);
+        experiment.setRegenerativeSegments(CYCLES_PER_SEGMENT);
+        try {
+            experiment.run();
+            fail("A capped experiment can't regenerate");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("scheduled before the run"));
+        }
+    }
+
+    /**
+     * Tests that experiments with parking cores, whose idle behavior
+     * depends on how long they have been idle, are rejected.
+     */
+    @Test
+    public void testRejectsParking() {
+        Experiment experiment = TestExperiments.newExperiment("parking", 1,
+                false);
+        Server server = experiment.getInput().getDataCenter().getServers()
+                .get(0);
+        server.setCorePolicy(CorePowerPolicy.CORE_PARKING);
+        experiment.setRegenerativeSegments(CYCLES_PER_SEGMENT);
+        try {
+            experiment.run();
+            fail("An experiment with parking cores can't regenerate");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("park or nap"));
+        }
+    }
+
+}
@@ -0,0 +1,239 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package test.core;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import core.Constants.StatName;
+import core.Experiment;
+import core.ExperimentInput;
+import core.ExperimentOutput;
+import core.StabilityMonitor;
+import datacenter.DataCenter;
+import datacenter.Server;
+import generator.ExponentialGenerator;
+import generator.MTRandom;
+
+/**
+ * Tests for {@link StabilityMonitor}.
+ *
+ * @author meisner@umich.edu
+ */
+public class StabilityMonitorTest extends TestCase {
+
+    /** The number of servers in the experiment. */
+    private static final int N_SERVERS = 2;
+
+    /** The utilization of a stable experiment. */
+    private static final double STABLE_UTILIZATION = 0.5;
+
+    /** The utilization of an overloaded experiment. */
+    private static final double OVERLOADED_UTILIZATION = 1.5;
+
+    /** The number of sockets in each server. */
+    private static final int SOCKETS_PER_SERVER = 2;
+
+    /** The number of cores in each socket. */
+    private static final int CORES_PER_SOCKET = 2;
+
+    /** The mean service time of a job (in seconds). */
+    private static final double MEAN_SERVICE_TIME = 0.01;
+
+    /**
+     * The accuracy required of the response time, tight enough that
+     * the runs reach their event limit (or become unstable) first.
+     */
+    private static final double ACCURACY = 0.001;
+
+    /** The quantile the response time must estimate. */
+    private static final double QUANTILE = 0.95;
+
+    /** The number of warmup samples for the response time. */
+    private static final int WARMUP_SAMPLES = 1000;
+
+    /** The seed of the experiment's random number generator. */
+    private static final long SEED = 1;
+
+    /** The most events a run is allowed. */
+    private static final int EVENT_LIMIT = 1000000;
+
+    /** The events in a run too short to fill a queue. */
+    private static final int SHORT_EVENT_LIMIT = 200000;
+
+    /**
+     * A number of events longer than any period, so each check ends one.
+     */
+    private static final long PERIOD_STEP = 1L << 40;
+
+    /** The jobs in the data center when the manual checks start. */
+    private static final int START_JOBS = 10;
+
+    /** The size of the jobs added for the manual checks. */
+    private static final double JOB_SIZE = 1.0;
+
+    /**
+     * Tests that a stable experiment isn't flagged as unstable.
+     */
+    @Test
+    public void testStableRunIsNotFlagged() {
+        Experiment experiment = this.newExperiment("stable",
+                STABLE_UTILIZATION);
+        experiment.setStabilityMonitoring(true);
+        experiment.setEventLimit(EVENT_LIMIT);
+        experiment.run();
+        assertEquals(Experiment.RunStatus.EVENT_LIMIT, experiment.getStatus());
+        assertNull(experiment.getInstabilityReason());
+    }
+
+    /**
+     * Tests that an overloaded experiment ends as unstable long before
+     * its event limit.
+     */
+    @Test
+    public void testOverloadedRunIsFlagged() {
+        Experiment experiment = this.newExperiment("overloaded",
+                OVERLOADED_UTILIZATION);
+        experiment.setStabilityMonitoring(true);
+        experiment.setEventLimit(EVENT_LIMIT);
+        experiment.run();
+        assertEquals(Experiment.RunStatus.UNSTABLE, experiment.getStatus());
+        assertTrue(experiment.getInstabilityReason().contains("grew"));
+        assertTrue(experiment.getNEventsSimulated() < EVENT_LIMIT);
+    }
+
+    /**
+     * Tests that runs aren't watched unless monitoring is turned on.
+     */
+    @Test
+    public void testMonitoringIsOptIn() {
+        Experiment experiment = this.newExperiment("overloaded",
+                OVERLOADED_UTILIZATION);
+        experiment.setEventLimit(SHORT_EVENT_LIMIT);
+        experiment.run();
+        assertNull(experiment.getStabilityMonitor());
+        assertEquals(Experiment.RunStatus.EVENT_LIMIT, experiment.getStatus());
+    }
+
+    /**
+     * Tests that the monitor only flags periods in a row that grow, and
+     * that asking if the experiment is still growing changes nothing.
+     */
+    @Test
+    public void testCheckCountsGrowingPeriods() {
+        Experiment experiment = TestExperiments.newExperiment("manual",
+                N_SERVERS, false);
+        Server server = experiment.getInput().getDataCenter().getServers()
+                .get(0);
+        StabilityMonitor monitor = new StabilityMonitor(experiment, 0);
+        long nEvents = 0;
+
+        // Periods that don't grow reset the count
+        assertFalse(monitor.check(nEvents));
+        this.addJobs(experiment, server, START_JOBS);
+        nEvents += PERIOD_STEP;
+        assertFalse(monitor.check(nEvents));
+        nEvents += PERIOD_STEP;
+        assertFalse(monitor.check(nEvents));
+        assertFalse(monitor.isStillGrowing());
+
+        // Doubling each period
+        this.addJobs(experiment, server, server.getJobsInSystem());
+        nEvents += PERIOD_STEP;
+        assertFalse(monitor.check(nEvents));
+        this.addJobs(experiment, server, server.getJobsInSystem());
+        nEvents += PERIOD_STEP;
+        assertFalse(monitor.check(nEvents));
+
+        // Two periods grew and so has the current one
+        this.addJobs(experiment, server, 1);
+        String reason = monitor.getReason();
+        assertTrue(monitor.isStillGrowing());
+        assertTrue(monitor.isStillGrowing());
+        assertEquals(reason, monitor.getReason());
+
+        this.addJobs(experiment, server, server.getJobsInSystem());
+        nEvents += PERIOD_STEP;
+        assertTrue(monitor.check(nEvents));
+        assertTrue(monitor.getReason().contains("over 3 periods"));
+    }
+
+    /**
+     * Creates an experiment whose response time takes long to converge,
+     * with a data center of identical servers with exponential
+     * interarrival and service times.
+     *
+     * @param name - the name of the experiment
+     * @param utilization - the utilization each server is loaded to
+     * @return the experiment
+     */
+    private Experiment newExperiment(final String name,
+                                     final double utilization) {
+        MTRandom random = new MTRandom(SEED);
+        ExperimentInput input = new ExperimentInput();
+        ExperimentOutput output = new ExperimentOutput();
+        output.addOutput(StatName.SOJOURN_TIME, ACCURACY, QUANTILE, ACCURACY,
+                WARMUP_SAMPLES);
+        Experiment experiment = new Experiment(name, random, input, output);
+
+        int nCores = SOCKETS_PER_SERVER * CORES_PER_SOCKET;
+        double arrivalRate = utilization * nCores / MEAN_SERVICE_TIME;
+        DataCenter dataCenter = new DataCenter();
+        for (int i = 0; i < N_SERVERS; i++) {
+            dataCenter.addServer(new Server(SOCKETS_PER_SERVER,
+                    CORES_PER_SOCKET,
+                    experiment,
+                    new ExponentialGenerator(random, arrivalRate),
+                    new ExponentialGenerator(random, 1 / MEAN_SERVICE_TIME)));
+        }
+        input.setDataCenter(dataCenter);
+
+        return experiment;
+    }
+
+    /**
+     * Adds jobs to a server.
+     *
+     * @param experiment - the experiment the server is part of
+     * @param server - the server to add jobs to
+     * @param nJobs - the number of jobs to add
+     */
+    private void addJobs(final Experiment experiment,
+                         final Server server,
+                         final int nJobs) {
+        for (int i = 0; i < nJobs; i++) {
+            server.insertJob(0.0,
+                    experiment.getEventPool().createJob(JOB_SIZE));
+        }
+    }
+
+}
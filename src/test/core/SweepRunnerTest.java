@@ -0,0 +1,264 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package test.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import core.Experiment;
+import core.Sim;
+import experiment.ExperimentFactory;
+import experiment.ParameterGrid;
+import experiment.SweepPoint;
+import experiment.SweepRunner;
+
+/**
+ * Tests for {@link SweepRunner} and {@link ParameterGrid}.
+ *
+ * @author meisner@umich.edu
+ */
+public class SweepRunnerTest extends TestCase {
+
+    /** The number of points run at once. */
+    private static final int N_THREADS = 2;
+
+    /** A workload the factory can't build. */
+    private static final String BROKEN_WORKLOAD = "broken";
+
+    /** The accuracy of points that converge quickly. */
+    private static final double LOOSE_ACCURACY = 0.2;
+
+    /**
+     * The accuracy of points that can't converge within
+     * the time limit.
+     */
+    private static final double TIGHT_ACCURACY = 0.0005;
+
+    /** The time limit of each point (in seconds). */
+    private static final double TIME_LIMIT = 0.5;
+
+    /**
+     * Tests that a grid expands into every combination of its
+     * parameters, in order.
+     */
+    @Test
+    public void testGridExpandsEveryCombination() {
+        ParameterGrid grid = new ParameterGrid();
+        grid.addWorkload("a");
+        grid.addWorkload("b");
+        grid.addServerCount(1);
+        grid.addServerCount(2);
+        grid.addCapLevel(65.0);
+        grid.addCv(0.0);
+        grid.addAccuracy(0.05);
+        grid.addAccuracy(0.01);
+
+        List<SweepPoint> points = grid.getPoints();
+        assertEquals(8, points.size());
+        assertEquals("a-1-65.0-0.0-0.05", points.get(0).getName());
+        assertEquals("a-1-65.0-0.0-0.01", points.get(1).getName());
+        assertEquals("a-2-65.0-0.0-0.05", points.get(2).getName());
+        assertEquals("b-2-65.0-0.0-0.01", points.get(7).getName());
+    }
+
+    /**
+     * Tests that a grid missing a parameter is rejected.
+     */
+    @Test
+    public void testGridNeedsEveryParameter() {
+        ParameterGrid grid = new ParameterGrid();
+        grid.addWorkload("a");
+        grid.addServerCount(1);
+        grid.addCapLevel(65.0);
+        grid.addCv(0.0);
+        try {
+            grid.getPoints();
+            fail("Expected the grid to be rejected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("needs a value"));
+        }
+    }
+
+    /**
+     * Tests that every point's results are written, and a point that
+     * fails is recorded without stopping the rest.
+     */
+    @Test
+    public void testRunsEveryPoint() throws IOException {
+        List<SweepPoint> points = new ArrayList<SweepPoint>();
+        points.add(new SweepPoint("test", 1, 0.0, 0.0, LOOSE_ACCURACY));
+        points.add(new SweepPoint(BROKEN_WORKLOAD, 1, 0.0, 0.0,
+                LOOSE_ACCURACY));
+        points.add(new SweepPoint("test", 2, 0.0, 0.0, LOOSE_ACCURACY));
+
+        File results = File.createTempFile("bighouse", ".results");
+        try {
+            SweepRunner runner = new SweepRunner(new TestFactory(), N_THREADS,
+                    results.getPath());
+            List<SweepPoint> unfinished = runner.run(points);
+            assertTrue(unfinished.isEmpty());
+            assertEquals(1, runner.getNFailed());
+
+            List<String> lines = this.readLines(results);
+            assertEquals(points.size(), lines.size());
+            int nConverged = 0;
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                if (line.contains("workload=" + BROKEN_WORKLOAD)) {
+                    assertTrue(line.contains("status=failed"));
+                    assertTrue(line.contains("error=Can't build"));
+                } else {
+                    assertTrue(line.contains("status=converged"));
+                    assertTrue(line.contains("SOJOURN_TIME.mean="));
+                    nConverged++;
+                }
+            }
+            assertEquals(2, nConverged);
+        } finally {
+            results.delete();
+        }
+    }
+
+    /**
+     * Tests that points that run out of time are returned and
+     * checkpointed, and running them again continues where they stopped.
+     */
+    @Test
+    public void testUnfinishedPointsContinue() throws IOException {
+        List<SweepPoint> points = new ArrayList<SweepPoint>();
+        points.add(new SweepPoint("test", 1, 0.0, 0.0, TIGHT_ACCURACY));
+
+        File results = File.createTempFile("bighouse", ".results");
+        File checkpoints = File.createTempFile("bighouse", ".checkpoints");
+        checkpoints.delete();
+        try {
+            SweepRunner runner = new SweepRunner(new TestFactory(), N_THREADS,
+                    results.getPath());
+            runner.setTimeLimit(TIME_LIMIT);
+            runner.setCheckpointDirectory(checkpoints.getPath());
+            List<SweepPoint> unfinished = runner.run(points);
+            assertEquals(1, unfinished.size());
+            File checkpoint = new File(checkpoints,
+                    points.get(0).getName() + ".ckpt");
+            assertTrue(checkpoint.exists());
+
+            unfinished = runner.run(unfinished);
+            assertEquals(1, unfinished.size());
+            List<String> lines = this.readLines(results);
+            assertEquals(2, lines.size());
+            assertTrue(lines.get(0).contains("status=time_limit"));
+            assertTrue(lines.get(1).contains("status=time_limit"));
+            assertTrue(this.getEvents(lines.get(1))
+                    > this.getEvents(lines.get(0)));
+        } finally {
+            File[] files = checkpoints.listFiles();
+            if (files != null) {
+                for (int i = 0; i < files.length; i++) {
+                    files[i].delete();
+                }
+            }
+            checkpoints.delete();
+            results.delete();
+        }
+    }
+
+    /**
+     * Reads the lines of a results file.
+     *
+     * @param file - the results file
+     * @return the lines of the file
+     * @throws IOException if the file can't be read
+     */
+    private List<String> readLines(final File file) throws IOException {
+        ArrayList<String> lines = new ArrayList<String>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            String line = in.readLine();
+            while (line != null) {
+                lines.add(line);
+                line = in.readLine();
+            }
+        } finally {
+            in.close();
+        }
+
+        return lines;
+    }
+
+    /**
+     * Gets the number of events simulated from a line of results.
+     *
+     * @param line - the line of results
+     * @return the number of events simulated
+     */
+    private long getEvents(final String line) {
+        String[] fields = line.split("\t");
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].startsWith("events=")) {
+                return Long.parseLong(fields[i].substring("events=".length()));
+            }
+        }
+        fail("No events in " + line);
+
+        return 0;
+    }
+
+    /**
+     * Builds small test experiments, failing for the broken workload.
+     */
+    private static final class TestFactory implements ExperimentFactory {
+
+        /**
+         * Builds the experiment for a point of a sweep.
+         *
+         * @param point - the point of the sweep
+         * @return the experiment
+         */
+        public Experiment createExperiment(final SweepPoint point) {
+            if (point.getWorkload().equals(BROKEN_WORKLOAD)) {
+                Sim.fatalError("Can't build " + point.getWorkload());
+            }
+
+            return TestExperiments.newExperiment(point.getName(),
+                    point.getNServers(), false, point.getAccuracy());
+        }
+
+    }
+
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package test.core;
+
+import java.util.Iterator;
+
+import stat.Statistic;
+import core.Constants.StatName;
+import core.Experiment;
+import core.ExperimentInput;
+import core.ExperimentOutput;
+import datacenter.DataCenter;
+import datacenter.JobDispatcher;
+import datacenter.JobRouter;
+import datacenter.PowerCappingEnforcer;
+import datacenter.Server;
+import generator.ExponentialGenerator;
+import generator.MTRandom;
+
+/**
+ * Builds small data center experiments for the tests to run.
+ *
+ * @author meisner@umich.edu
+ */
+public final class TestExperiments {
+
+    /** The number of sockets in each server. */
+    public static final int SOCKETS_PER_SERVER = 2;
+
+    /** The number of cores in each socket. */
+    public static final int CORES_PER_SOCKET = 2;
+
+    /** The mean service time of a job (in seconds). */
+    private static final double MEAN_SERVICE_TIME = 0.01;
+
+    /** The utilization each server is loaded to. */
+    private static final double UTILIZATION = 0.5;
+
+    /** The seed of the experiment's random number generator. */
+    private static final long SEED = 1;
+
+    /** The accuracy required of the statistics' estimates. */
+    public static final double ACCURACY = 0.05;
+
+    /** The quantile the statistics must estimate. */
+    private static final double QUANTILE = 0.95;
+
+    /** The number of warmup samples for each statistic. */
+    private static final int WARMUP_SAMPLES = 1000;
+
+    /** How often the power caps are recalculated (in seconds). */
+    private static final double CAP_PERIOD = 0.1;
+
+    /** The power cap of each server (in watts). */
+    private static final double SERVER_CAP = 65;
+
+    /** The maximum power of each server (in watts). */
+    private static final double SERVER_MAX_POWER = 100;
+
+    /** The minimum power of each server (in watts). */
+    private static final double SERVER_MIN_POWER = 59;
+
+    /**
+     * Should not be instantiated.
+     */
+    private TestExperiments() {
+    }
+
+    /**
+     * Creates an experiment with a data center of identical servers
+     * with exponential interarrival and service times.
+     *
+     * @param name - the name of the experiment
+     * @param nServers - the number of servers in the data center
+     * @param capped - if a power capping enforcer should cap the servers
+     * @return the experiment
+     */
+    public static Experiment newExperiment(final String name,
+                                           final int nServers,
+                                           final boolean capped) {
+        return newExperiment(name, nServers, capped, ACCURACY);
+    }
+
+    /**
+     * Creates an experiment with a data center of identical servers
+     * with exponential interarrival and service times, whose statistics
+     * have to converge to a given accuracy.
+     *
+     * @param name - the name of the experiment
+     * @param nServers - the number of servers in the data center
+     * @param capped - if a power capping enforcer should cap the servers
+     * @param accuracy - the accuracy required of the statistics' estimates
+     * @return the experiment
+     */
+    public static Experiment newExperiment(final String name,
+                                           final int nServers,
+                                           final boolean capped,
+                                           final double accuracy) {
+        return newExperiment(name, nServers, capped, accuracy, 0);
+    }
+
+    /**
+     * Creates an experiment with a data center of identical servers
+     * with exponential interarrival and service times, whose event times
+     * are rounded to a clock.
+     *
+     * @param name - the name of the experiment
+     * @param nServers - the number of servers in the data center
+     * @param capped - if a power capping enforcer should cap the servers
+     * @param accuracy - the accuracy required of the statistics' estimates
+     * @param ticksPerSecond - the clock to round event times to, or 0
+     * @return the experiment
+     */
+    public static Experiment newExperiment(final String name,
+                                           final int nServers,
+                                           final boolean capped,
+                                           final double accuracy,
+                                           final long ticksPerSecond) {
+        MTRandom random = new MTRandom(SEED);
+        ExperimentInput input = new ExperimentInput();
+        ExperimentOutput output = new ExperimentOutput();
+        output.addOutput(StatName.SOJOURN_TIME, accuracy, QUANTILE, accuracy,
+                WARMUP_SAMPLES);
+        if (capped) {
+            output.addOutput(StatName.SERVER_LEVEL_CAP, accuracy, QUANTILE,
+                    accuracy, WARMUP_SAMPLES);
+        }
+        Experiment experiment = new Experiment(name, random, input, output);
+        // The clock has to be set before the enforcer schedules its events
+        experiment.setTickClock(ticksPerSecond);
+
+        int nCores = SOCKETS_PER_SERVER * CORES_PER_SOCKET;
+        double arrivalRate = UTILIZATION * nCores / MEAN_SERVICE_TIME;
+        PowerCappingEnforcer enforcer = null;
+        if (capped) {
+            enforcer = new PowerCappingEnforcer(experiment, CAP_PERIOD,
+                    SERVER_CAP * nServers,
+                    SERVER_MAX_POWER * nServers,
+                    SERVER_MIN_POWER * nServers);
+        }
+        DataCenter dataCenter = new DataCenter();
+        for (int i = 0; i < nServers; i++) {
+            Server server = new Server(SOCKETS_PER_SERVER,
+                    CORES_PER_SOCKET,
+                    experiment,
+                    new ExponentialGenerator(random, arrivalRate),
+                    new ExponentialGenerator(random, 1 / MEAN_SERVICE_TIME));
+            if (enforcer != null) {
+                enforcer.addServer(server);
+            }
+            dataCenter.addServer(server);
+        }
+        input.setDataCenter(dataCenter);
+
+        return experiment;
+    }
+
+    /**
+     * Creates an experiment with a data center of identical servers whose
+     * jobs all come from a dispatcher, with exponential interarrival and
+     * service times.
+     *
+     * @param name - the name of the experiment
+     * @param nServers - the number of servers in the data center
+     * @param router - picks the server each job is sent to
+     * @return the experiment
+     */
+    public static Experiment newDispatchedExperiment(final String name,
+                                                     final int nServers,
+                                                     final JobRouter router) {
+        Experiment experiment = newExperiment(name, nServers, false);
+        MTRandom random = new MTRandom(SEED);
+        int nCores = SOCKETS_PER_SERVER * CORES_PER_SOCKET;
+        double arrivalRate
+            = UTILIZATION * nCores * nServers / MEAN_SERVICE_TIME;
+        DataCenter dataCenter = experiment.getInput().getDataCenter();
+        dataCenter.setJobDispatcher(new JobDispatcher(experiment,
+                dataCenter,
+                new ExponentialGenerator(random, arrivalRate),
+                new ExponentialGenerator(random, 1 / MEAN_SERVICE_TIME),
+                router));
+
+        return experiment;
+    }
+
+    /**
+     * Describes how a run ended and its statistics, so runs that should
+     * be identical can be compared.
+     *
+     * @param experiment - the experiment that ran
+     * @return a description of how the run ended and its statistics
+     */
+    public static String describeRun(final Experiment experiment) {
+        StringBuilder result = new StringBuilder();
+        result.append(experiment.getStatus() + " "
+                + experiment.getNEventsSimulated());
+        Iterator<Statistic> iter = experiment.getStats().getAllStats();
+        while (iter.hasNext()) {
+            Statistic stat = iter.next();
+            result.append(" " + stat.getStatName()
+                    + " " + stat.getTotalSamples()
+                    + " " + stat.getGoodSamples()
+                    + " " + stat.getSampleSum()
+                    + " " + stat.getAverage());
+        }
+
+        return result.toString();
+    }
+
+}
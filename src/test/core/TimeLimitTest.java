@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package test.core;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import stat.Statistic;
+import stat.StatisticSummary;
+import stat.StatisticsCollection;
+import core.Constants.StatName;
+import core.Experiment;
+
+/**
+ * Tests for {@link Experiment#setTimeLimit(double)} and the partial
+ * results of runs that reach it.
+ *
+ * @author meisner@umich.edu
+ */
+public class TimeLimitTest extends TestCase {
+
+    /** The number of servers in the experiment. */
+    private static final int N_SERVERS = 2;
+
+    /**
+     * An accuracy the statistics can't converge to within
+     * the time limit.
+     */
+    private static final double TIGHT_ACCURACY = 0.0005;
+
+    /** The time limit of each run (in seconds). */
+    private static final double TIME_LIMIT = 0.3;
+
+    /** The longest a time limited run should take (in seconds). */
+    private static final double MAX_SECONDS = 5.0;
+
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Tests that a sequential run stops at its time limit with partial
+     * estimates, and running it again continues it.
+     */
+    @Test
+    public void testSequentialRunStopsAndContinues() {
+        Experiment experiment = TestExperiments.newExperiment("limited",
+                N_SERVERS, false, TIGHT_ACCURACY);
+        experiment.setTimeLimit(TIME_LIMIT);
+        this.runTimed(experiment);
+        assertEquals(Experiment.RunStatus.TIME_LIMIT, experiment.getStatus());
+        long firstEvents = experiment.getNEventsSimulated();
+        assertTrue(firstEvents > 0);
+
+        List<StatisticSummary> summaries
+            = experiment.getStats().summarize();
+        assertEquals(1, summaries.size());
+        StatisticSummary summary = summaries.get(0);
+        assertEquals(StatName.SOJOURN_TIME, summary.getStatName());
+        assertFalse(summary.isConverged());
+        assertTrue(summary.getNSamples() > 0);
+        assertTrue(summary.getMean() > 0);
+        assertTrue(summary.getMeanAccuracy() > TIGHT_ACCURACY);
+
+        long firstSamples = experiment.getStats()
+                .getStat(StatName.SOJOURN_TIME).getTotalSamples();
+        this.runTimed(experiment);
+        assertEquals(Experiment.RunStatus.TIME_LIMIT, experiment.getStatus());
+        assertTrue(experiment.getNEventsSimulated() > firstEvents);
+        assertTrue(experiment.getStats().getStat(StatName.SOJOURN_TIME)
+                .getTotalSamples() > firstSamples);
+    }
+
+    /**
+     * Tests that a parallel run stops at its time limit.
+     */
+    @Test
+    public void testParallelRunStops() {
+        Experiment experiment = TestExperiments.newExperiment("limited",
+                N_SERVERS, true, TIGHT_ACCURACY);
+        experiment.setParallelism(N_SERVERS);
+        experiment.setParallelWindow(0.01);
+        experiment.setTimeLimit(TIME_LIMIT);
+        this.runTimed(experiment);
+        assertEquals(Experiment.RunStatus.TIME_LIMIT, experiment.getStatus());
+    }
+
+    /**
+     * Tests that a negative time limit is rejected.
+     */
+    @Test
+    public void testRejectsNegativeLimit() {
+        Experiment experiment = TestExperiments.newExperiment("limited",
+                N_SERVERS, false);
+        try {
+            experiment.setTimeLimit(-1.0);
+            fail("Expected the time limit to be rejected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("negative"));
+        }
+    }
+
+    /**
+     * Tests that a statistic still warming up is summarized by the raw
+     * mean of its samples, without accuracies.
+     */
+    @Test
+    public void testSummaryBeforeSteadyState() {
+        StatisticsCollection stats = new StatisticsCollection();
+        Statistic stat = new Statistic(stats, StatName.SOJOURN_TIME, 1000,
+                .05, .95, .05);
+        stats.addStatistic(StatName.SOJOURN_TIME, stat);
+        stat.addSample(1.0);
+        stat.addSample(2.0);
+        stat.addSample(6.0);
+
+        StatisticSummary summary = stats.summarize().get(0);
+        assertFalse(summary.isSteadyState());
+        assertFalse(summary.isConverged());
+        assertEquals(3, summary.getNSamples());
+        assertEquals(3.0, summary.getMean(), 1e-12);
+        assertTrue(Double.isNaN(summary.getMeanAccuracy()));
+        assertTrue(Double.isNaN(summary.getQuantile()));
+    }
+
+    /**
+     * Runs an experiment, checking it stops soon after its time limit.
+     *
+     * @param experiment - the experiment to run
+     */
+    private void runTimed(final Experiment experiment) {
+        long start = System.nanoTime();
+        experiment.run();
+        double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+        assertTrue(seconds >= TIME_LIMIT);
+        assertTrue(seconds < MAX_SECONDS);
+    }
+
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package test.datacenter;
+
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import test.core.TestExperiments;
+import core.Constants.StatName;
+import core.Experiment;
+import core.Job;
+import datacenter.JobDispatcher;
+import datacenter.RandomJobRouter;
+import datacenter.RoundRobinJobRouter;
+import datacenter.Server;
+import generator.MTRandom;
+
+/**
+ * Tests for {@link JobDispatcher} and its routers.
+ *
+ * @author meisner@umich.edu
+ */
+public class JobDispatcherTest extends TestCase {
+
+    /** The number of servers in the experiment. */
+    private static final int N_SERVERS = 4;
+
+    /** The number of jobs routed when checking a router's spread. */
+    private static final int N_ROUTED = 40000;
+
+    /** How far from an even share each server's jobs can be. */
+    private static final double SHARE_TOLERANCE = 0.05;
+
+    /** The seed of the random router. */
+    private static final long ROUTER_SEED = 3;
+
+    /** The size of the jobs dispatched by hand. */
+    private static final double JOB_SIZE = 1.0;
+
+    /** The number of events the runs process. */
+    private static final int EVENT_LIMIT = 600000;
+
+    /**
+     * How far apart (relative to the per-server run) the response times
+     * of dispatched and per-server arrivals can be.
+     */
+    private static final double SOJOURN_TOLERANCE = 0.05;
+
+    /**
+     * Tests that the round robin router picks the servers in turn.
+     */
+    @Test
+    public void testRoundRobinRouter() {
+        Vector<Server> servers = this.newServers();
+        RoundRobinJobRouter router = new RoundRobinJobRouter();
+        for (int i = 0; i < 3 * N_SERVERS; i++) {
+            assertSame(servers.get(i % N_SERVERS),
+                    router.route(0.0, null, servers));
+        }
+        assertFalse(router.readsServerState());
+    }
+
+    /**
+     * Tests that the random router gives each server an even share.
+     */
+    @Test
+    public void testRandomRouterIsUniform() {
+        Vector<Server> servers = this.newServers();
+        RandomJobRouter router
+            = new RandomJobRouter(new MTRandom(ROUTER_SEED));
+        int[] counts = new int[N_SERVERS];
+        for (int i = 0; i < N_ROUTED; i++) {
+            counts[servers.indexOf(router.route(0.0, null, servers))]++;
+        }
+        double share = (double) N_ROUTED / N_SERVERS;
+        for (int i = 0; i < N_SERVERS; i++) {
+            assertEquals(share, counts[i], SHARE_TOLERANCE * share);
+        }
+        assertFalse(router.readsServerState());
+    }
+
+    /**
+     * Tests that dispatching a job inserts it into the routed server.
+     */
+    @Test
+    public void testDispatchInsertsJob() {
+        Experiment experiment = TestExperiments.newDispatchedExperiment(
+                "dispatch", N_SERVERS, new RoundRobinJobRouter());
+        JobDispatcher dispatcher
+            = experiment.getInput().getDataCenter().getJobDispatcher();
+        Vector<Server> servers
+            = experiment.getInput().getDataCenter().getServers();
+        for (int i = 0; i < N_SERVERS + 1; i++) {
+            Job job = experiment.getEventPool().createJob(JOB_SIZE);
+            dispatcher.dispatch(0.0, job);
+            assertEquals(0.0, job.getArrivalTime());
+        }
+        assertEquals(2, servers.get(0).getJobsInSystem());
+        for (int i = 1; i < N_SERVERS; i++) {
+            assertEquals(1, servers.get(i).getJobsInSystem());
+        }
+    }
+
+    /**
+     * Tests that a run whose arrivals are dispatched at the data center's
+     * rate and split at random behaves like one with per-server arrivals.
+     */
+    @Test
+    public void testRandomSplitMatchesPerServerArrivals() {
+        Experiment perServer = TestExperiments.newExperiment("per server",
+                N_SERVERS, false);
+        perServer.setEventLimit(EVENT_LIMIT);
+        perServer.run();
+
+        Experiment dispatched = TestExperiments.newDispatchedExperiment(
+                "dispatched", N_SERVERS,
+                new RandomJobRouter(new MTRandom(ROUTER_SEED)));
+        dispatched.setEventLimit(EVENT_LIMIT);
+        dispatched.run();
+
+        double expected = perServer.getStats()
+                .getStat(StatName.SOJOURN_TIME).getAverage();
+        double actual = dispatched.getStats()
+                .getStat(StatName.SOJOURN_TIME).getAverage();
+        assertEquals(expected, actual, SOJOURN_TOLERANCE * expected);
+
+        // The interarrival times are the data center's, not a server's
+        double perServerGap = perServer.getStats()
+                .getStat(StatName.GENERATED_ARRIVAL_TIME).getAverage();
+        double dispatchedGap = dispatched.getStats()
+                .getStat(StatName.GENERATED_ARRIVAL_TIME).getAverage();
+        assertEquals(perServerGap / N_SERVERS, dispatchedGap,
+                SOJOURN_TOLERANCE * dispatchedGap);
+    }
+
+    /**
+     * Gets the servers of a data center without a dispatcher.
+     *
+     * @return the servers
+     */
+    private Vector<Server> newServers() {
+        return TestExperiments.newExperiment("servers", N_SERVERS, false)
+                .getInput().getDataCenter().getServers();
+    }
+
+}
@@ -0,0 +1,263 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package test.datacenter;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import test.core.TestExperiments;
+import core.Constants;
+import core.Experiment;
+import core.Job;
+import datacenter.Core.CorePowerPolicy;
+import datacenter.PowerNapServer;
+import datacenter.Server;
+import datacenter.Socket;
+import datacenter.Socket.SocketPowerPolicy;
+import generator.ExponentialGenerator;
+import generator.MTRandom;
+
+/**
+ * Tests for {@link Server}.
+ *
+ * @author meisner@umich.edu
+ */
+public class ServerTest extends TestCase {
+
+    /** The size of the jobs inserted. */
+    private static final double JOB_SIZE = 1.0;
+
+    /** The number of events the validating runs are limited to. */
+    private static final int EVENT_LIMIT = 50000;
+
+    /** The rate jobs arrive at the napping server (per second). */
+    private static final double NAP_ARRIVAL_RATE = 200;
+
+    /** The rate the napping server services jobs (per second). */
+    private static final double NAP_SERVICE_RATE = 100;
+
+    /** The time the napping server takes to go in and out of nap. */
+    private static final double NAP_TRANSITION_TIME = 0.001;
+
+    /** The power of the napping server while it naps (in watts). */
+    private static final double NAP_POWER = 5;
+
+    /**
+     * Checks that a server's job and capacity counters match a recount
+     * of its sockets.
+     *
+     * @param server - the server to check
+     */
+    private static void assertCountersMatchSockets(final Server server) {
+        int inService = 0;
+        int waiting = 0;
+        int capacity = 0;
+        for (Socket socket : server.getSockets()) {
+            inService += socket.getJobsInService();
+            waiting += socket.getNJobsWaitingForTransistion();
+            capacity += socket.getRemainingCapacity();
+        }
+        assertEquals(inService, server.getJobsInService());
+        assertEquals(capacity, server.getRemainingCapacity());
+        assertEquals(server.getQueueLength() + inService + waiting,
+                server.getJobsInSystem());
+        assertEquals((double) (inService + waiting)
+                / server.getTotalCapacity(),
+                server.getInstantUtilization());
+    }
+
+    /**
+     * Runs an experiment that checks its servers' counters on every job
+     * inserted or removed, then checks them once more at the end.
+     *
+     * @param experiment - the experiment to run
+     */
+    private static void runValidating(final Experiment experiment) {
+        experiment.setValidating(true);
+        experiment.setEventLimit(EVENT_LIMIT);
+        experiment.run();
+        assertTrue(experiment.getNEventsSimulated() >= EVENT_LIMIT);
+        for (Server server
+                : experiment.getInput().getDataCenter().getServers()) {
+            assertCountersMatchSockets(server);
+        }
+    }
+
+    /**
+     * Tests that a server's counters match its sockets while a power
+     * capping enforcer keeps changing its DVFS speed.
+     */
+    @Test
+    public void testCountersMatchSocketsUnderDvfs() {
+        runValidating(TestExperiments.newExperiment("dvfs", 1, true));
+    }
+
+    /**
+     * Tests that a server's counters match its sockets while its sockets
+     * and cores park, which leaves jobs waiting for sockets.
+     */
+    @Test
+    public void testCountersMatchSocketsWithParking() {
+        Experiment experiment = TestExperiments.newExperiment("park", 1,
+                false);
+        Server server = experiment.getInput().getDataCenter().getServers()
+                .get(0);
+        server.setSocketPolicy(SocketPowerPolicy.SOCKET_PARKING);
+        server.setCorePolicy(CorePowerPolicy.CORE_PARKING);
+        runValidating(experiment);
+    }
+
+    /**
+     * Tests that a server's counters match its sockets while the whole
+     * server goes in and out of nap.
+     */
+    @Test
+    public void testCountersMatchSocketsWithNap() {
+        Experiment experiment = TestExperiments.newExperiment("nap", 0,
+                false);
+        MTRandom random = new MTRandom(1);
+        experiment.getInput().getDataCenter().addServer(
+                new PowerNapServer(TestExperiments.SOCKETS_PER_SERVER,
+                        TestExperiments.CORES_PER_SOCKET,
+                        experiment,
+                        new ExponentialGenerator(random, NAP_ARRIVAL_RATE),
+                        new ExponentialGenerator(random, NAP_SERVICE_RATE),
+                        NAP_TRANSITION_TIME,
+                        NAP_POWER));
+        runValidating(experiment);
+    }
+
+    /**
+     * Tests that a server whose queue grows past
+     * {@link Constants#MAX_QUEUE_SIZE} marks the experiment unstable,
+     * even if the experiment isn't watched for instability.
+     */
+    @Test
+    public void testQueueLimitMarksUnstable() {
+        Experiment experiment = TestExperiments.newExperiment("queue", 1,
+                false);
+        Server server = experiment.getInput().getDataCenter().getServers()
+                .get(0);
+        int nCores = TestExperiments.SOCKETS_PER_SERVER
+                * TestExperiments.CORES_PER_SOCKET;
+        for (int i = 0; i < nCores + Constants.MAX_QUEUE_SIZE; i++) {
+            server.insertJob(0.0,
+                    experiment.getEventPool().createJob(JOB_SIZE));
+        }
+        assertEquals(Constants.MAX_QUEUE_SIZE, server.getQueueLength());
+        assertNull(experiment.getInstabilityReason());
+
+        server.insertJob(0.0, experiment.getEventPool().createJob(JOB_SIZE));
+        assertTrue(experiment.getInstabilityReason().contains("queue"));
+    }
+
+    /**
+     * Checks that a job is recorded as running on the core of the server
+     * that holds it.
+     *
+     * @param server - the server the job should be running on
+     * @param job - the job to check
+     */
+    private static void assertPlaced(final Server server, final Job job) {
+        assertSame(server, job.getServer());
+        Socket socket = server.getSockets()[job.getSocketIndex()];
+        assertSame(job, socket.getCore(job.getCoreIndex()).getJob());
+    }
+
+    /**
+     * Checks that a job is recorded as not running anywhere.
+     *
+     * @param job - the job to check
+     */
+    private static void assertNotPlaced(final Job job) {
+        assertNull(job.getServer());
+        assertEquals(-1, job.getSocketIndex());
+        assertEquals(-1, job.getCoreIndex());
+    }
+
+    /**
+     * Tests that jobs record where they run as they start, wait in the
+     * queue and finish.
+     */
+    @Test
+    public void testJobPlacement() {
+        Experiment experiment = TestExperiments.newExperiment("placement", 1,
+                false);
+        Server server = experiment.getInput().getDataCenter().getServers()
+                .get(0);
+        int nCores = TestExperiments.SOCKETS_PER_SERVER
+                * TestExperiments.CORES_PER_SOCKET;
+        Job[] running = new Job[nCores];
+        for (int i = 0; i < nCores; i++) {
+            running[i] = experiment.getEventPool().createJob(JOB_SIZE);
+            assertNotPlaced(running[i]);
+            server.insertJob(0.0, running[i]);
+            assertPlaced(server, running[i]);
+        }
+        Job queued = experiment.getEventPool().createJob(JOB_SIZE);
+        server.insertJob(0.0, queued);
+        assertNotPlaced(queued);
+
+        // The queued job takes over the core the finished job leaves
+        Job finished = running[1];
+        int socketIndex = finished.getSocketIndex();
+        int coreIndex = finished.getCoreIndex();
+        server.removeJob(0.0, finished);
+        assertNotPlaced(finished);
+        assertPlaced(server, queued);
+        assertEquals(socketIndex, queued.getSocketIndex());
+        assertEquals(coreIndex, queued.getCoreIndex());
+    }
+
+    /**
+     * Tests that a server won't remove a job placed on another server.
+     */
+    @Test
+    public void testRemoveJobFromWrongServer() {
+        Experiment experiment = TestExperiments.newExperiment("placement", 2,
+                false);
+        Server server = experiment.getInput().getDataCenter().getServers()
+                .get(0);
+        Server otherServer = experiment.getInput().getDataCenter()
+                .getServers().get(1);
+        Job job = experiment.getEventPool().createJob(JOB_SIZE);
+        server.insertJob(0.0, job);
+        try {
+            otherServer.removeJob(0.0, job);
+            fail("A server removed a job placed on another server");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("mapping failed"));
+        }
+        assertPlaced(server, job);
+    }
+
+}
@@ -0,0 +1,297 @@
+/**
+ * Copyright (c) 2011 The Regents of The University of Michigan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met: redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer;
+ * redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution;
+ * neither the name of the copyright holders nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * @author David Meisner (meisner@umich.edu)
+ *
+ */
+package test.datacenter;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import test.core.TestExperiments;
+import core.Constants;
+import core.Experiment;
+import core.Job;
+import datacenter.Core;
+import datacenter.Core.CorePowerPolicy;
+import datacenter.Server;
+import datacenter.Socket;
+
+/**
+ * Tests for {@link Socket}.
+ *
+ * @author meisner@umich.edu
+ */
+public class SocketTest extends TestCase {
+
+    /** The size of the jobs inserted. */
+    private static final double JOB_SIZE = 1.0;
+
+    /** The idle power of each core (in watts). */
+    private static final double CORE_IDLE_POWER = 2.0;
+
+    /** The active power of each core (in watts). */
+    private static final double CORE_ACTIVE_POWER = 5.0;
+
+    /** The park power of each core (in watts). */
+    private static final double CORE_PARK_POWER = 0.5;
+
+    /** The idle power of the server outside its sockets (in watts). */
+    private static final double SERVER_OTHER_IDLE_POWER = 44.0;
+
+    /** The number of cores in the socket whose free list is tested. */
+    private static final int RING_CORES = 4;
+
+    /** How close power figures that should match have to be. */
+    private static final double TOLERANCE = 1e-9;
+
+    /**
+     * Creates a server whose cores all have the same power and park
+     * when idle.
+     *
+     * @return the server
+     */
+    private static Server newServer() {
+        Experiment experiment = TestExperiments.newExperiment("socket", 1,
+                false);
+        Server server = experiment.getInput().getDataCenter().getServers()
+                .get(0);
+        server.setCoreIdlePower(CORE_IDLE_POWER);
+        server.setCoreActivePower(CORE_ACTIVE_POWER);
+        server.setCoreParkPower(CORE_PARK_POWER);
+        server.setCorePolicy(CorePowerPolicy.CORE_PARKING);
+
+        return server;
+    }
+
+    /**
+     * Checks that the power of an active socket is the power of its
+     * cores added up one by one.
+     *
+     * @param socket - the socket to check
+     */
+    private static void assertPowerMatchesCores(final Socket socket) {
+        double idlePower = Constants.SOCKET_IDLE_POWER;
+        double dynamicPower = 0.0d;
+        for (int i = 0; i < socket.getNCores(); i++) {
+            idlePower += socket.getCore(i).getIdlePower();
+            dynamicPower += socket.getCore(i).getDynamicPower();
+        }
+        assertEquals(idlePower, socket.getIdlePower(), TOLERANCE);
+        assertEquals(dynamicPower, socket.getDynamicPower(), TOLERANCE);
+    }
+
+    /**
+     * Checks that the idle power of a server is the idle power of its
+     * sockets plus the rest of the server.
+     *
+     * @param server - the server to check
+     */
+    private static void assertServerPowerMatchesSockets(final Server server) {
+        double idlePower = SERVER_OTHER_IDLE_POWER;
+        for (Socket socket : server.getSockets()) {
+            idlePower += socket.getIdlePower();
+        }
+        assertEquals(idlePower, server.getIdlePower(), TOLERANCE);
+    }
+
+    /**
+     * Puts a new job on a socket and checks which core it lands on.
+     *
+     * @param socket - the socket to put the job on
+     * @param expectedCore - the index of the core the job should get
+     * @return the job
+     */
+    private static Job insertOnCore(final Socket socket,
+                                    final int expectedCore) {
+        Job job = socket.getServer().getExperiment().getEventPool()
+                .createJob(JOB_SIZE);
+        socket.insertJob(0.0, job);
+        assertEquals(expectedCore, job.getCoreIndex());
+        assertSame(job, socket.getCore(expectedCore).getJob());
+
+        return job;
+    }
+
+    /**
+     * Takes a job off a socket.
+     *
+     * @param socket - the socket the job is on
+     * @param job - the job to take off
+     */
+    private static void remove(final Socket socket, final Job job) {
+        int coreIndex = job.getCoreIndex();
+        socket.removeJob(0.0, job, false);
+        assertEquals(-1, job.getCoreIndex());
+        assertNull(socket.getCore(coreIndex).getJob());
+    }
+
+    /**
+     * Tests that a socket hands out its cores in order, and that freed
+     * cores go to the back of the line, wrapping around the free list.
+     */
+    @Test
+    public void testFreeCoreOrder() {
+        Server server = newServer();
+        Socket socket = new Socket(server.getExperiment(), server,
+                RING_CORES);
+        assertEquals(RING_CORES, socket.getNCores());
+        assertEquals(RING_CORES, socket.getRemainingCapacity());
+
+        Job first = insertOnCore(socket, 0);
+        Job second = insertOnCore(socket, 1);
+        insertOnCore(socket, 2);
+        assertEquals(3, socket.getJobsInService());
+        assertEquals(1, socket.getRemainingCapacity());
+
+        // The freed core is handed out after the never used one
+        remove(socket, second);
+        assertEquals(2, socket.getRemainingCapacity());
+        insertOnCore(socket, 3);
+        Job fifth = insertOnCore(socket, 1);
+        assertEquals(RING_CORES, socket.getJobsInService());
+        assertEquals(0, socket.getRemainingCapacity());
+
+        // Cores freed on a full socket come back in the order they were freed
+        remove(socket, fifth);
+        remove(socket, first);
+        assertEquals(2, socket.getJobsInService());
+        insertOnCore(socket, 1);
+        insertOnCore(socket, 0);
+        assertEquals(RING_CORES, socket.getJobsInService());
+        assertEquals(0, socket.getRemainingCapacity());
+    }
+
+    /**
+     * Tests that a full socket won't take another job.
+     */
+    @Test
+    public void testFullSocketRejectsJob() {
+        Server server = newServer();
+        Socket socket = new Socket(server.getExperiment(), server,
+                RING_CORES);
+        for (int i = 0; i < RING_CORES; i++) {
+            insertOnCore(socket, i);
+        }
+        try {
+            insertOnCore(socket, 0);
+            fail("A full socket took a job");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("no free cores"));
+        }
+    }
+
+    /**
+     * Tests that the power of a socket with identical cores matches its
+     * cores as they go through every power state.
+     */
+    @Test
+    public void testUniformCorePower() {
+        Server server = newServer();
+        Experiment experiment = server.getExperiment();
+        Socket socket = server.getSockets()[0];
+        assertPowerMatchesCores(socket);
+        assertServerPowerMatchesSockets(server);
+
+        // Fill the server, so every core is active
+        int nCores = TestExperiments.SOCKETS_PER_SERVER
+                * TestExperiments.CORES_PER_SOCKET;
+        Job[] jobs = new Job[nCores];
+        for (int i = 0; i < nCores; i++) {
+            jobs[i] = experiment.getEventPool().createJob(JOB_SIZE);
+            server.insertJob(0.0, jobs[i]);
+            assertPowerMatchesCores(socket);
+            assertServerPowerMatchesSockets(server);
+        }
+
+        // An idle core starts transitioning to park, then parks
+        Job job = socket.getCore(0).getJob();
+        server.removeJob(0.0, job);
+        assertPowerMatchesCores(socket);
+        assertServerPowerMatchesSockets(server);
+        socket.getCore(0).enterPark(0.0);
+        assertPowerMatchesCores(socket);
+        assertServerPowerMatchesSockets(server);
+    }
+
+    /**
+     * Tests that the power of a socket whose cores differ is still the
+     * power of its cores added up.
+     */
+    @Test
+    public void testNonUniformCorePower() {
+        Server server = newServer();
+        Experiment experiment = server.getExperiment();
+        Socket socket = server.getSockets()[0];
+        Core core = socket.getCore(socket.getNCores() - 1);
+        core.setIdlePower(2 * CORE_IDLE_POWER);
+        core.setActivePower(2 * CORE_ACTIVE_POWER);
+        assertPowerMatchesCores(socket);
+
+        int nCores = TestExperiments.SOCKETS_PER_SERVER
+                * TestExperiments.CORES_PER_SOCKET;
+        for (int i = 0; i < nCores; i++) {
+            server.insertJob(0.0,
+                    experiment.getEventPool().createJob(JOB_SIZE));
+            assertPowerMatchesCores(socket);
+            assertServerPowerMatchesSockets(server);
+        }
+
+        // Making the cores the same again goes back to the uniform sums
+        core.setIdlePower(CORE_IDLE_POWER);
+        core.setActivePower(CORE_ACTIVE_POWER);
+        assertPowerMatchesCores(socket);
+        assertServerPowerMatchesSockets(server);
+    }
+
+    /**
+     * Tests that changing the power of the cores after the socket's
+     * power has been read shows up the next time it's read.
+     */
+    @Test
+    public void testCorePowerChangeIsSeen() {
+        Server server = newServer();
+        Socket socket = server.getSockets()[0];
+        server.insertJob(0.0,
+                server.getExperiment().getEventPool().createJob(JOB_SIZE));
+        double oldIdlePower = socket.getIdlePower();
+        double oldDynamicPower = socket.getDynamicPower();
+        double oldServerPower = server.getIdlePower();
+
+        server.setCoreIdlePower(2 * CORE_IDLE_POWER);
+        assertEquals(oldIdlePower + socket.getNCores() * CORE_IDLE_POWER,
+                socket.getIdlePower(), TOLERANCE);
+        assertEquals(oldDynamicPower - CORE_IDLE_POWER,
+                socket.getDynamicPower(), TOLERANCE);
+        assertPowerMatchesCores(socket);
+        assertTrue(server.getIdlePower() > oldServerPower);
+        assertServerPowerMatchesSockets(server);
+    }
+
+}
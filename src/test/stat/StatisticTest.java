@@ -56,6 +56,129 @@ public class StatisticTest extends TestCase {
         // TODO write me
     }
 
+    /**
+     * Tests that merging a steady state copy of a statistic
+     * (see {@link Statistic#createSteadyStateCopy()}) moves all its
+     * samples into the original and leaves the copy empty.
+     */
+    @Test
+    public void testMergeSteadyStateCopy() {
+        ExponentialGenerator exp = new ExponentialGenerator(new MTRandom(5),
+                .5);
+        StatisticsCollection statCollection = new StatisticsCollection();
+        Statistic stat = new Statistic(statCollection, StatName.SOJOURN_TIME,
+                10, .05, .95, .05);
+        statCollection.addStatistic(StatName.SOJOURN_TIME, stat);
+        stat.setOtherStatsWarmed(true);
+        while (!stat.isSteadyState()) {
+            stat.addSample(exp.next());
+        }
+        for (int i = 0; i < 1000; i++) {
+            stat.addSample(exp.next());
+        }
+
+        Statistic copy = stat.createSteadyStateCopy();
+        assertTrue(copy.isSteadyState());
+        assertEquals(0, copy.getTotalSamples());
+        for (int i = 0; i < 3000; i++) {
+            copy.addSample(exp.next());
+        }
+        long total = stat.getTotalSamples() + copy.getTotalSamples();
+        long good = stat.getGoodSamples() + copy.getGoodSamples();
+        double average = (stat.getAverage() * stat.getGoodSamples()
+                + copy.getAverage() * copy.getGoodSamples()) / good;
+
+        stat.mergeSamples(copy);
+        assertEquals(total, stat.getTotalSamples());
+        assertEquals(good, stat.getGoodSamples());
+        assertEquals(average, stat.getAverage(), 1e-9 * average);
+        assertEquals(0, copy.getTotalSamples());
+        assertEquals(0, copy.getGoodSamples());
+    }
+
+    /**
+     * Tests that a collection tracking convergence incrementally
+     * agrees with checking every statistic.
+     */
+    @Test
+    public void testIncrementalConvergence() {
+        ExponentialGenerator exp = new ExponentialGenerator(new MTRandom(3),
+                .5);
+        StatisticsCollection statCollection = new StatisticsCollection();
+        Statistic sojourn = new Statistic(statCollection,
+                StatName.SOJOURN_TIME, 10, .05, .95, .05);
+        Statistic wait = new Statistic(statCollection,
+                StatName.WAIT_TIME, 10, .1, .95, .1);
+        statCollection.addStatistic(StatName.SOJOURN_TIME, sojourn);
+        statCollection.addStatistic(StatName.WAIT_TIME, wait);
+        sojourn.setOtherStatsWarmed(true);
+        wait.setOtherStatsWarmed(true);
+
+        boolean converged = false;
+        for (int i = 0; i < 200000 && !converged; i++) {
+            sojourn.addSample(exp.next());
+            if (i % 3 == 0) {
+                wait.addSample(exp.next());
+            }
+            assertEquals(sojourn.isSteadyState() && wait.isSteadyState(),
+                    statCollection.allStatsSteadyState());
+            converged = sojourn.isConverged() && wait.isConverged();
+            assertEquals(converged, statCollection.allStatsConverged());
+        }
+        assertTrue(converged);
+    }
+
+    /**
+     * Tests that drawing samples in blocks with
+     * {@link ExponentialGenerator#fill(double[], int)} and adding them with
+     * {@link Statistic#addSamples(double[], int)} gives exactly the same
+     * samples and statistic as doing it one sample at a time, through
+     * warmup, calibration and steady state until convergence.
+     */
+    @Test
+    public void testBulkSamplesMatchOneAtATime() {
+        ExponentialGenerator exp = new ExponentialGenerator(new MTRandom(11),
+                .5);
+        ExponentialGenerator bulkExp
+            = new ExponentialGenerator(new MTRandom(11), .5);
+        StatisticsCollection statCollection = new StatisticsCollection();
+        Statistic stat = new Statistic(statCollection, StatName.SOJOURN_TIME,
+                10, .05, .95, .05);
+        statCollection.addStatistic(StatName.SOJOURN_TIME, stat);
+        stat.setOtherStatsWarmed(true);
+        StatisticsCollection bulkCollection = new StatisticsCollection();
+        Statistic bulkStat = new Statistic(bulkCollection,
+                StatName.SOJOURN_TIME, 10, .05, .95, .05);
+        bulkCollection.addStatistic(StatName.SOJOURN_TIME, bulkStat);
+        bulkStat.setOtherStatsWarmed(true);
+
+        // Uneven block sizes, so blocks straddle phase changes,
+        // convergence checks and the random number generator's refills
+        int[] blockSizes = {1, 37, 700};
+        double[] block = new double[700];
+        for (int i = 0; i < 2000 && !statCollection.allStatsConverged();
+                i++) {
+            int count = blockSizes[i % blockSizes.length];
+            bulkExp.fill(block, count);
+            bulkStat.addSamples(block, count);
+            for (int j = 0; j < count; j++) {
+                double value = exp.next();
+                assertEquals(value, block[j]);
+                stat.addSample(value);
+            }
+            assertEquals(stat.isSteadyState(), bulkStat.isSteadyState());
+            assertEquals(stat.getTotalSamples(), bulkStat.getTotalSamples());
+            assertEquals(stat.getGoodSamples(), bulkStat.getGoodSamples());
+            assertEquals(stat.getSampleSum(), bulkStat.getSampleSum());
+            assertEquals(statCollection.allStatsConverged(),
+                    bulkCollection.allStatsConverged());
+        }
+        assertTrue(bulkCollection.allStatsConverged());
+        assertEquals(stat.getAverage(), bulkStat.getAverage());
+        assertEquals(stat.getStdDev(), bulkStat.getStdDev());
+        assertEquals(stat.getQuantile(.95), bulkStat.getQuantile(.95));
+    }
+
     //TODO fix magic nubmers
     /**
      * Tests if sampling an exponential distribution works.